@@ -0,0 +1,297 @@
+/**
+* Copyright (c) Acroquest Technology Co, Ltd. All Rights Reserved.
+* Please read the associated COPYRIGHTS file for more details.
+*
+* THE SOFTWARE IS PROVIDED BY Acroquest Technolog Co., Ltd.,
+* WITHOUT WARRANTY OF ANY KIND, EXPRESS OR IMPLIED, INCLUDING
+* BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+* FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT.
+* IN NO EVENT SHALL THE AUTHORS OR COPYRIGHT HOLDER BE LIABLE FOR ANY
+* CLAIM, DAMAGES SUFFERED BY LICENSEE AS A RESULT OF USING, MODIFYING
+* OR DISTRIBUTING THIS SOFTWARE OR ITS DERIVATIVES.
+*/
+package acromusashi.kafka.log.producer;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.NoSuchFileException;
+import java.nio.file.Path;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * ファイルのサイズと更新日時でファイルの変更を検知するポーラ<br>
+ * <br>
+ * 変更を検知するとポーリング間隔を最小間隔に戻し、変更がない間は最大間隔まで倍々に延ばす。
+ * 追記が続いている間は短い遅延で検知し、アイドル中はファイル情報の取得(stat)の回数を抑える。<br>
+ * 変更通知(WatchService)で検知した場合も{@link #check(Path...)}を呼び出すことで、前回の状態と検知遅延を記録できる。<br>
+ * 確認は1スレッドから行うこと。統計値は他のスレッドから参照できる。
+ *
+ * @author kimura
+ */
+public class AdaptivePoller
+{
+    /** デフォルトの最小ポーリング間隔(ミリ秒) */
+    public static final long                DEFAULT_MIN_INTERVAL = 100L;
+
+    /** デフォルトの最大ポーリング間隔(ミリ秒) */
+    public static final long                DEFAULT_MAX_INTERVAL = 5000L;
+
+    /** 自動切替方式で、ポーリングに切り替えるまでの変更通知なしで変更を検知した連続回数 */
+    public static final int                 SWITCH_THRESHOLD     = 3;
+
+    /** 最小ポーリング間隔(ミリ秒) */
+    private final long                      minIntervalMillis;
+
+    /** 最大ポーリング間隔(ミリ秒) */
+    private final long                      maxIntervalMillis;
+
+    /** 現在のポーリング間隔(ミリ秒) */
+    private volatile long                   intervalMillis;
+
+    /** 前回確認したファイルの状態 */
+    private final Map<Path, FileSnapshot>   snapshots            = new HashMap<>();
+
+    /** ファイル情報の取得回数 */
+    private final AtomicLong                statCount            = new AtomicLong();
+
+    /** 変更の検知回数 */
+    private final AtomicLong                detectionCount       = new AtomicLong();
+
+    /** 変更の検知遅延(更新日時から検知までの時間)の合計(ミリ秒) */
+    private final AtomicLong                totalLatencyMillis   = new AtomicLong();
+
+    /** 変更の検知遅延の最大値(ミリ秒) */
+    private final AtomicLong                maxLatencyMillis     = new AtomicLong();
+
+    /**
+     * デフォルトのポーリング間隔でインスタンスを生成する。
+     */
+    public AdaptivePoller()
+    {
+        this(DEFAULT_MIN_INTERVAL, DEFAULT_MAX_INTERVAL);
+    }
+
+    /**
+     * ポーリング間隔の範囲を指定してインスタンスを生成する。
+     *
+     * @param minIntervalMillis 最小ポーリング間隔(ミリ秒)
+     * @param maxIntervalMillis 最大ポーリング間隔(ミリ秒)
+     */
+    public AdaptivePoller(long minIntervalMillis, long maxIntervalMillis)
+    {
+        if (minIntervalMillis <= 0 || maxIntervalMillis < minIntervalMillis)
+        {
+            throw new IllegalArgumentException("Invalid poll interval. : min=" + minIntervalMillis
+                    + ", max=" + maxIntervalMillis);
+        }
+
+        this.minIntervalMillis = minIntervalMillis;
+        this.maxIntervalMillis = maxIntervalMillis;
+        this.intervalMillis = minIntervalMillis;
+    }
+
+    /**
+     * 指定したファイルのサイズ・更新日時・識別子を前回の確認時と比較し、変更を検知する。<br>
+     * 変更があった場合はポーリング間隔を最小間隔に戻し、なかった場合は倍に延ばす。
+     * 初めて確認するファイルは変更ありとして扱う(検知遅延は記録しない)。
+     * 前回の確認時に指定し、今回指定しなかったファイルの状態は破棄する。
+     *
+     * @param paths 確認するファイル
+     * @return いずれかのファイルに変更があった場合true
+     * @throws IOException ファイル情報の取得失敗時
+     */
+    public boolean check(Path... paths) throws IOException
+    {
+        long now = System.currentTimeMillis();
+        boolean changed = false;
+        Map<Path, FileSnapshot> current = new HashMap<>();
+
+        for (Path path : paths)
+        {
+            FileSnapshot snapshot = stat(path);
+            current.put(path, snapshot);
+
+            FileSnapshot previous = this.snapshots.get(path);
+            if (previous == null)
+            {
+                changed = true;
+                continue;
+            }
+            if (snapshot.equals(previous) == false)
+            {
+                changed = true;
+                recordLatency(now - snapshot.lastModified);
+            }
+        }
+
+        this.snapshots.clear();
+        this.snapshots.putAll(current);
+
+        if (changed)
+        {
+            this.intervalMillis = this.minIntervalMillis;
+        }
+        else
+        {
+            this.intervalMillis = Math.min(this.maxIntervalMillis, this.intervalMillis * 2);
+        }
+        return changed;
+    }
+
+    /**
+     * ファイル情報を取得する。
+     *
+     * @param path ファイル
+     * @return ファイルの状態。ファイルが存在しない場合は存在しないことを示す状態
+     * @throws IOException ファイル情報の取得失敗時
+     */
+    private FileSnapshot stat(Path path) throws IOException
+    {
+        this.statCount.incrementAndGet();
+        try
+        {
+            BasicFileAttributes attributes = Files.readAttributes(path, BasicFileAttributes.class);
+            return new FileSnapshot(attributes.size(), attributes.lastModifiedTime().toMillis(),
+                    attributes.fileKey());
+        }
+        catch (NoSuchFileException ex)
+        {
+            // ローテーション中でファイルが存在しない
+            return new FileSnapshot(-1L, -1L, null);
+        }
+    }
+
+    /**
+     * 検知遅延を記録する。
+     *
+     * @param latencyMillis 検知遅延(ミリ秒)
+     */
+    private void recordLatency(long latencyMillis)
+    {
+        long latency = Math.max(0L, latencyMillis);
+        this.detectionCount.incrementAndGet();
+        this.totalLatencyMillis.addAndGet(latency);
+
+        long max = this.maxLatencyMillis.get();
+        while (latency > max && this.maxLatencyMillis.compareAndSet(max, latency) == false)
+        {
+            max = this.maxLatencyMillis.get();
+        }
+    }
+
+    /**
+     * 次の確認までの待ち時間を取得する。
+     *
+     * @return ポーリング間隔(ミリ秒)
+     */
+    public long getIntervalMillis()
+    {
+        return this.intervalMillis;
+    }
+
+    /**
+     * @return ファイル情報の取得回数
+     */
+    public long getStatCount()
+    {
+        return this.statCount.get();
+    }
+
+    /**
+     * @return 変更の検知回数
+     */
+    public long getDetectionCount()
+    {
+        return this.detectionCount.get();
+    }
+
+    /**
+     * 変更の検知遅延(ファイルの更新日時から検知までの時間)の平均を取得する。<br>
+     * 更新日時の精度はファイルシステムに依存するため、目安として扱うこと。
+     *
+     * @return 検知遅延の平均(ミリ秒)。検知していない場合は0
+     */
+    public long getAverageLatencyMillis()
+    {
+        long count = this.detectionCount.get();
+        if (count == 0)
+        {
+            return 0L;
+        }
+        return this.totalLatencyMillis.get() / count;
+    }
+
+    /**
+     * @return 変更の検知遅延の最大値(ミリ秒)
+     */
+    public long getMaxLatencyMillis()
+    {
+        return this.maxLatencyMillis.get();
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public String toString()
+    {
+        return "AdaptivePoller[interval=" + this.intervalMillis + ", statCount=" + getStatCount()
+                + ", detectionCount=" + getDetectionCount() + ", averageLatency="
+                + getAverageLatencyMillis() + ", maxLatency=" + getMaxLatencyMillis() + "]";
+    }
+
+    /**
+     * 確認時のファイルの状態
+     */
+    private static final class FileSnapshot
+    {
+        /** サイズ */
+        final long   size;
+
+        /** 更新日時(エポックミリ秒) */
+        final long   lastModified;
+
+        /** ファイルの識別子 */
+        final Object fileKey;
+
+        /**
+         * @param size サイズ
+         * @param lastModified 更新日時(エポックミリ秒)
+         * @param fileKey ファイルの識別子
+         */
+        FileSnapshot(long size, long lastModified, Object fileKey)
+        {
+            this.size = size;
+            this.lastModified = lastModified;
+            this.fileKey = fileKey;
+        }
+
+        /**
+         * {@inheritDoc}
+         */
+        @Override
+        public boolean equals(Object obj)
+        {
+            if ((obj instanceof FileSnapshot) == false)
+            {
+                return false;
+            }
+
+            FileSnapshot other = (FileSnapshot) obj;
+            return this.size == other.size && this.lastModified == other.lastModified
+                    && (this.fileKey == null ? other.fileKey == null : this.fileKey.equals(other.fileKey));
+        }
+
+        /**
+         * {@inheritDoc}
+         */
+        @Override
+        public int hashCode()
+        {
+            return (int) (this.size ^ this.lastModified);
+        }
+    }
+}
@@ -0,0 +1,47 @@
+/**
+* Copyright (c) Acroquest Technology Co, Ltd. All Rights Reserved.
+* Please read the associated COPYRIGHTS file for more details.
+*
+* THE SOFTWARE IS PROVIDED BY Acroquest Technolog Co., Ltd.,
+* WITHOUT WARRANTY OF ANY KIND, EXPRESS OR IMPLIED, INCLUDING
+* BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+* FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT.
+* IN NO EVENT SHALL THE AUTHORS OR COPYRIGHT HOLDER BE LIABLE FOR ANY
+* CLAIM, DAMAGES SUFFERED BY LICENSEE AS A RESULT OF USING, MODIFYING
+* OR DISTRIBUTING THIS SOFTWARE OR ITS DERIVATIVES.
+*/
+package acromusashi.kafka.log.producer;
+
+import java.util.List;
+
+import kafka.producer.KeyedMessage;
+
+/**
+ * メッセージのまとまりを非同期に送信するインタフェース<br>
+ * <br>
+ * 送信中のまとまりの数に上限を持ち、上限に達している場合は{@link #send(List, SendCallback)}が空くまで待つことで、
+ * 呼び出し元(パイプラインの送信段)とその前段に背圧をかける。完了・失敗はまとまりごとに{@link SendCallback}で通知する。<br>
+ * Kafkaの非同期Producer(KafkaProducer)で実装する場合は、まとまりの各メッセージをsend(record, callback)で送信し、
+ * 全てのメッセージのコールバックが呼び出された時点で、最初の失敗(なければnull)を指定してまとまりのコールバックを呼び出す。
+ *
+ * @author kimura
+ */
+public interface AsyncMessageSink
+{
+    /**
+     * まとまりの送信を開始する。送信中のまとまりの数が上限に達している場合は、空くまで待つ。
+     *
+     * @param messages メッセージのまとまり
+     * @param callback 完了・失敗の通知先
+     * @throws InterruptedException 待機中に割り込まれた場合
+     */
+    void send(List<KeyedMessage<String, String>> messages, SendCallback callback)
+            throws InterruptedException;
+
+    /**
+     * 送信中の全てのまとまりが完了・失敗するまで待つ。
+     *
+     * @throws InterruptedException 待機中に割り込まれた場合
+     */
+    void flush() throws InterruptedException;
+}
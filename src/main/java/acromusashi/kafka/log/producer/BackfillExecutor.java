@@ -0,0 +1,128 @@
+/**
+* Copyright (c) Acroquest Technology Co, Ltd. All Rights Reserved.
+* Please read the associated COPYRIGHTS file for more details.
+*
+* THE SOFTWARE IS PROVIDED BY Acroquest Technolog Co., Ltd.,
+* WITHOUT WARRANTY OF ANY KIND, EXPRESS OR IMPLIED, INCLUDING
+* BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+* FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT.
+* IN NO EVENT SHALL THE AUTHORS OR COPYRIGHT HOLDER BE LIABLE FOR ANY
+* CLAIM, DAMAGES SUFFERED BY LICENSEE AS A RESULT OF USING, MODIFYING
+* OR DISTRIBUTING THIS SOFTWARE OR ITS DERIVATIVES.
+*/
+package acromusashi.kafka.log.producer;
+
+import java.util.List;
+
+import acromusashi.kafka.log.producer.util.CompiledLogFormat;
+
+/**
+ * ローテート済みのログファイルを{@link LogBackfiller}で読み込み、kafka producerで送信するクラス<br>
+ * <br>
+ * 行の変換と送信は{@link MessageLineHandler}で行い、1回の読込ごとに残りを送信する。
+ * 全てのファイルを送信し終えるとproducerを閉じて終了する。
+ *
+ * @author kimura
+ */
+public class BackfillExecutor extends MessageLineHandler implements Runnable
+{
+    /** ファイルの読込 */
+    private final LogBackfiller backfiller;
+
+    /**
+     * 以下のパラメタを指定するコンストラクタ
+     * 
+     * @param backfillPaths 読み込むファイルのglobのリスト
+     * @param topic 送信する際のトピック
+     * @param logFormats コンパイル済みのapacheのログのフォーマットのリスト(優先順)
+     * @param jsonDateFormat jsonで送る際の時刻の形式
+     * @param hostName Producerが動作するホスト
+     * @param typedFields 数値のフィールドを数値型で送る場合true
+     * @param epochMillisTime 時刻をエポックミリ秒で送る場合true
+     * @param workerCount ワーカー数(並行して展開するファイル数)
+     * @param maxLinesPerSecond 1秒あたりの最大行数。0以下の場合は制限しない
+     */
+    public BackfillExecutor(List<String> backfillPaths, String topic,
+            List<CompiledLogFormat> logFormats, String jsonDateFormat, String hostName,
+            boolean typedFields, boolean epochMillisTime, int workerCount, double maxLinesPerSecond)
+    {
+        super(topic, logFormats, jsonDateFormat, hostName, typedFields, epochMillisTime);
+        this.backfiller = new LogBackfiller(backfillPaths, this, workerCount, maxLinesPerSecond);
+    }
+
+    /**
+     * 最大行長を設定する。超える行は最大行長までに切り詰めて送信する。
+     * 
+     * @param maxLineLength 最大行長(byte)
+     */
+    public void setMaxLineLength(int maxLineLength)
+    {
+        this.backfiller.setMaxLineLength(maxLineLength);
+    }
+
+    /**
+     * 大きな非圧縮のファイルを範囲に分割して並行して送信するよう設定する。<br>
+     * 並行数に応じてKafkaProducerを生成するため、{@link #initialize(kafka.producer.ProducerConfig)}の前に設定すること。
+     * 
+     * @param splitSize 範囲に分割して送信するファイルのサイズの閾値(byte)。0以下の場合は分割しない
+     * @param parallelism 分割した範囲を並行して送信する数
+     */
+    public void setSplit(long splitSize, int parallelism)
+    {
+        this.backfiller.setSplit(splitSize, parallelism);
+    }
+
+    /**
+     * 送信に失敗した場合の再試行を設定する。失敗した場合は最後に送信した位置から読み込み直す。
+     * 
+     * @param retryInterval 再試行までの間隔(ミリ秒)。失敗が続く場合は倍にする
+     * @param maxRetries 連続した再試行の上限回数。超えた場合はファイルの送信を失敗とする
+     */
+    public void setRetry(long retryInterval, int maxRetries)
+    {
+        this.backfiller.setRetry(retryInterval, maxRetries);
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public void run()
+    {
+        try
+        {
+            this.backfiller.run();
+        }
+        finally
+        {
+            closeProducers();
+        }
+    }
+
+    /**
+     * {@inheritDoc}<br>
+     * ファイル単位のワーカーと、分割した範囲を読み込むfork/joinプールのスレッドから送信する。
+     */
+    @Override
+    protected int getSenderCount()
+    {
+        return this.backfiller.getConcurrency();
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public void endBatch(TailedFile file)
+    {
+        sendPending();
+    }
+
+    /**
+     * @return ファイルの読込
+     */
+    public LogBackfiller getBackfiller()
+    {
+        return this.backfiller;
+    }
+}
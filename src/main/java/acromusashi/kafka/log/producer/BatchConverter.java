@@ -0,0 +1,34 @@
+/**
+* Copyright (c) Acroquest Technology Co, Ltd. All Rights Reserved.
+* Please read the associated COPYRIGHTS file for more details.
+*
+* THE SOFTWARE IS PROVIDED BY Acroquest Technolog Co., Ltd.,
+* WITHOUT WARRANTY OF ANY KIND, EXPRESS OR IMPLIED, INCLUDING
+* BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+* FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT.
+* IN NO EVENT SHALL THE AUTHORS OR COPYRIGHT HOLDER BE LIABLE FOR ANY
+* CLAIM, DAMAGES SUFFERED BY LICENSEE AS A RESULT OF USING, MODIFYING
+* OR DISTRIBUTING THIS SOFTWARE OR ITS DERIVATIVES.
+*/
+package acromusashi.kafka.log.producer;
+
+import java.util.List;
+
+import kafka.producer.KeyedMessage;
+
+/**
+ * パイプラインの変換段で、区切った行のまとまりをKafka用メッセージに変換するインタフェース
+ *
+ * @author kimura
+ */
+public interface BatchConverter
+{
+    /**
+     * 行のまとまりをKafka用メッセージに変換する。変換に失敗した行は破棄する。<br>
+     * 変換段のスレッドから呼び出される。
+     *
+     * @param batch 行のまとまり
+     * @return Kafka用メッセージ(行の順)
+     */
+    List<KeyedMessage<String, String>> convert(LineBatch batch);
+}
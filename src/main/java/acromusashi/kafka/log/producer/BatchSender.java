@@ -0,0 +1,29 @@
+/**
+* Copyright (c) Acroquest Technology Co, Ltd. All Rights Reserved.
+* Please read the associated COPYRIGHTS file for more details.
+*
+* THE SOFTWARE IS PROVIDED BY Acroquest Technolog Co., Ltd.,
+* WITHOUT WARRANTY OF ANY KIND, EXPRESS OR IMPLIED, INCLUDING
+* BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+* FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT.
+* IN NO EVENT SHALL THE AUTHORS OR COPYRIGHT HOLDER BE LIABLE FOR ANY
+* CLAIM, DAMAGES SUFFERED BY LICENSEE AS A RESULT OF USING, MODIFYING
+* OR DISTRIBUTING THIS SOFTWARE OR ITS DERIVATIVES.
+*/
+package acromusashi.kafka.log.producer;
+
+/**
+ * パイプラインの送信段で、変換済みのメッセージのまとまりをKafkaに送信するインタフェース
+ *
+ * @author kimura
+ */
+public interface BatchSender
+{
+    /**
+     * メッセージのまとまりを送信し、送信済み位置を記録する。<br>
+     * 送信段のスレッドから、読み込んだ順に呼び出される。
+     *
+     * @param batch メッセージのまとまり
+     */
+    void send(MessageBatch batch);
+}
@@ -0,0 +1,181 @@
+/**
+* Copyright (c) Acroquest Technology Co, Ltd. All Rights Reserved.
+* Please read the associated COPYRIGHTS file for more details.
+*
+* THE SOFTWARE IS PROVIDED BY Acroquest Technolog Co., Ltd.,
+* WITHOUT WARRANTY OF ANY KIND, EXPRESS OR IMPLIED, INCLUDING
+* BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+* FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT.
+* IN NO EVENT SHALL THE AUTHORS OR COPYRIGHT HOLDER BE LIABLE FOR ANY
+* CLAIM, DAMAGES SUFFERED BY LICENSEE AS A RESULT OF USING, MODIFYING
+* OR DISTRIBUTING THIS SOFTWARE OR ITS DERIVATIVES.
+*/
+package acromusashi.kafka.log.producer;
+
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/**
+ * 送信したまとまりのサイズの分布と、行を読み込んでから送信が完了するまでの時間の分布を集計するクラス<br>
+ * <br>
+ * 分布は2のべき乗ごとの区間の件数として保持し、百分位数は区間の上限値で近似する。
+ * まとまりを送信に渡した契機(行数・サイズ・待機時間の上限、入力の終了)ごとの件数も集計する。<br>
+ * 複数のスレッドから同時に記録できる。
+ *
+ * @author kimura
+ */
+public final class BatchStatistics
+{
+    /** 行数の上限に達したため渡した */
+    public static final int       FLUSH_MESSAGES = 0;
+
+    /** サイズの上限に達したため渡した */
+    public static final int       FLUSH_BYTES    = 1;
+
+    /** 待機時間の上限に達したため渡した */
+    public static final int       FLUSH_LINGER   = 2;
+
+    /** 入力の終了時に渡した */
+    public static final int       FLUSH_END      = 3;
+
+    /** 契機の名称 */
+    private static final String[] FLUSH_NAMES    = {"messages", "bytes", "linger", "end"};
+
+    /** 分布の区間数 */
+    private static final int      BUCKET_COUNT   = 64;
+
+    /** 契機ごとの件数 */
+    private final AtomicLongArray flushCounts    = new AtomicLongArray(FLUSH_NAMES.length);
+
+    /** まとまりの行数の分布 */
+    private final AtomicLongArray sizeBuckets    = new AtomicLongArray(BUCKET_COUNT);
+
+    /** 読込から送信完了までの時間(マイクロ秒)の分布 */
+    private final AtomicLongArray latencyBuckets = new AtomicLongArray(BUCKET_COUNT);
+
+    /**
+     * まとまりを送信に渡したことを記録する。
+     *
+     * @param reason 契機(FLUSH_MESSAGES等)
+     * @param lineCount まとまりの行数
+     */
+    public void recordFlush(int reason, int lineCount)
+    {
+        this.flushCounts.incrementAndGet(reason);
+        this.sizeBuckets.incrementAndGet(getBucket(lineCount));
+    }
+
+    /**
+     * まとまりの送信が完了したことを記録する。
+     *
+     * @param firstLineNanos まとまりの最初の行を読み込んだ時刻(System.nanoTime())。0の場合は記録しない
+     */
+    public void recordSent(long firstLineNanos)
+    {
+        if (firstLineNanos == 0L)
+        {
+            return;
+        }
+
+        long micros = TimeUnit.NANOSECONDS.toMicros(System.nanoTime() - firstLineNanos);
+        this.latencyBuckets.incrementAndGet(getBucket(micros));
+    }
+
+    /**
+     * 値が属する区間を求める。区間iは[2^(i-1), 2^i)の値を含む(区間0は0以下)。
+     *
+     * @param value 値
+     * @return 区間の位置
+     */
+    static int getBucket(long value)
+    {
+        if (value <= 0L)
+        {
+            return 0;
+        }
+        return Math.min(BUCKET_COUNT - 1, 64 - Long.numberOfLeadingZeros(value));
+    }
+
+    /**
+     * 分布の百分位数を、区間の上限値で近似して求める。
+     *
+     * @param buckets 分布
+     * @param percentile 百分位(0～100)
+     * @return 百分位数の近似値。件数が0の場合は0
+     */
+    static long getPercentile(AtomicLongArray buckets, double percentile)
+    {
+        long total = 0L;
+        for (int index = 0; index < buckets.length(); index++)
+        {
+            total += buckets.get(index);
+        }
+        if (total == 0L)
+        {
+            return 0L;
+        }
+
+        long threshold = (long) Math.ceil(total * percentile / 100.0);
+        long accumulated = 0L;
+        for (int index = 0; index < buckets.length(); index++)
+        {
+            accumulated += buckets.get(index);
+            if (accumulated >= threshold)
+            {
+                return index == 0 ? 0L : (1L << index) - 1;
+            }
+        }
+        return Long.MAX_VALUE;
+    }
+
+    /**
+     * @param reason 契機(FLUSH_MESSAGES等)
+     * @return 契機ごとの件数
+     */
+    public long getFlushCount(int reason)
+    {
+        return this.flushCounts.get(reason);
+    }
+
+    /**
+     * @param percentile 百分位(0～100)
+     * @return まとまりの行数の百分位数の近似値
+     */
+    public long getSizePercentile(double percentile)
+    {
+        return getPercentile(this.sizeBuckets, percentile);
+    }
+
+    /**
+     * @param percentile 百分位(0～100)
+     * @return 読込から送信完了までの時間(マイクロ秒)の百分位数の近似値
+     */
+    public long getLatencyPercentile(double percentile)
+    {
+        return getPercentile(this.latencyBuckets, percentile);
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public String toString()
+    {
+        StringBuilder builder = new StringBuilder("flush={");
+        for (int reason = 0; reason < FLUSH_NAMES.length; reason++)
+        {
+            if (reason > 0)
+            {
+                builder.append(", ");
+            }
+            builder.append(FLUSH_NAMES[reason]).append('=').append(getFlushCount(reason));
+        }
+        builder.append("}, batchSize={p50<=").append(getSizePercentile(50.0));
+        builder.append(", p99<=").append(getSizePercentile(99.0));
+        builder.append(", max<=").append(getSizePercentile(100.0));
+        builder.append("}, latencyMicros={p50<=").append(getLatencyPercentile(50.0));
+        builder.append(", p99<=").append(getLatencyPercentile(99.0));
+        builder.append(", max<=").append(getLatencyPercentile(100.0)).append('}');
+        return builder.toString();
+    }
+}
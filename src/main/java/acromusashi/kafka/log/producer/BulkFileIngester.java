@@ -0,0 +1,438 @@
+/**
+* Copyright (c) Acroquest Technology Co, Ltd. All Rights Reserved.
+* Please read the associated COPYRIGHTS file for more details.
+*
+* THE SOFTWARE IS PROVIDED BY Acroquest Technolog Co., Ltd.,
+* WITHOUT WARRANTY OF ANY KIND, EXPRESS OR IMPLIED, INCLUDING
+* BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+* FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT.
+* IN NO EVENT SHALL THE AUTHORS OR COPYRIGHT HOLDER BE LIABLE FOR ANY
+* CLAIM, DAMAGES SUFFERED BY LICENSEE AS A RESULT OF USING, MODIFYING
+* OR DISTRIBUTING THIS SOFTWARE OR ITS DERIVATIVES.
+*/
+package acromusashi.kafka.log.producer;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveAction;
+import java.util.concurrent.atomic.AtomicLong;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import com.google.common.util.concurrent.RateLimiter;
+
+/**
+ * 1つの大きなログファイル(非圧縮)を行の境界に揃えた範囲に分割し、fork/joinプールで並行して読み込むクラス<br>
+ * <br>
+ * ファイルを範囲サイズ以下になるまで二分割し、分割位置は次の改行の直後に揃える。
+ * 各範囲は1つのワーカーが先頭から順に読み込んで{@link LineHandler}に渡すため、範囲内の行の順序は保たれる。
+ * 範囲の読込ごとに{@link LineHandler#endBatch(TailedFile)}を呼び出すため、送信も範囲内の順序で行われる。<br>
+ * パース・変換は範囲ごとに別のワーカーで行われるため、コア数に応じてスループットが向上する。
+ * 進捗(読込済みサイズ、行数、1秒あたりの行数)は一定間隔でログに出力する。
+ *
+ * @author kimura
+ */
+public class BulkFileIngester
+{
+    /** デフォルトの範囲サイズ(byte) */
+    public static final long    DEFAULT_RANGE_SIZE     = 8L * 1024L * 1024L;
+
+    /** ロガー */
+    private static final Logger logger                 = LoggerFactory.getLogger(BulkFileIngester.class);
+
+    /** 進捗をログに出力する間隔(ミリ秒) */
+    private static final long   PROGRESS_INTERVAL      = 10000L;
+
+    /** 分割位置の改行を探す際の読込サイズ */
+    private static final int    ALIGN_READ_SIZE        = 4096;
+
+    /** 範囲の読込に使用するfork/joinプール */
+    private final ForkJoinPool  pool;
+
+    /** 読み込んだ行を処理するハンドラ */
+    private final LineHandler   handler;
+
+    /** 範囲サイズ(byte) */
+    private final long          rangeSize;
+
+    /** 1秒あたりの最大行数の制限。制限しない場合はnull */
+    private final RateLimiter   rateLimiter;
+
+    /** 最大行長(byte) */
+    private int                 maxLineLength          = LineFramer.DEFAULT_MAX_LINE_LENGTH;
+
+    /** 送信失敗時の再試行までの間隔(ミリ秒)。失敗が続く場合は倍にする */
+    private long                retryInterval          = LogBackfiller.DEFAULT_RETRY;
+
+    /** 送信失敗時の連続した再試行の上限回数 */
+    private int                 maxRetries             = LogBackfiller.DEFAULT_RETRIES;
+
+    /** 最大行長を超えたため切り詰めた行数 */
+    private final AtomicLong    truncatedCount         = new AtomicLong();
+
+    /** 読み込んだ行数 */
+    private final AtomicLong    lineCount              = new AtomicLong();
+
+    /** 読み込んだサイズ */
+    private final AtomicLong    byteCount              = new AtomicLong();
+
+    /** 最後に進捗をログに出力した時刻 */
+    private final AtomicLong    lastProgressMillis     = new AtomicLong();
+
+    /**
+     * 以下のパラメタを指定してインスタンスを生成する。
+     *
+     * @param pool 範囲の読込に使用するfork/joinプール
+     * @param handler 読み込んだ行を処理するハンドラ
+     * @param rangeSize 範囲サイズ(byte)
+     * @param rateLimiter 1秒あたりの最大行数の制限。制限しない場合はnull
+     */
+    public BulkFileIngester(ForkJoinPool pool, LineHandler handler, long rangeSize,
+            RateLimiter rateLimiter)
+    {
+        this.pool = pool;
+        this.handler = handler;
+        this.rangeSize = Math.max(ALIGN_READ_SIZE, rangeSize);
+        this.rateLimiter = rateLimiter;
+    }
+
+    /**
+     * 最大行長を設定する。超える行は最大行長までに切り詰めてハンドラに渡す。
+     *
+     * @param maxLineLength 最大行長(byte)
+     */
+    public void setMaxLineLength(int maxLineLength)
+    {
+        this.maxLineLength = maxLineLength;
+    }
+
+    /**
+     * ハンドラが失敗した場合の再試行を設定する。
+     * 失敗した場合は範囲内の最後に確定させた位置から読み込み直し、連続して失敗した回数が上限を超えた場合はファイルの読込を失敗とする。
+     *
+     * @param retryInterval 再試行までの間隔(ミリ秒)。失敗が続く場合は倍にする
+     * @param maxRetries 連続した再試行の上限回数
+     */
+    public void setRetry(long retryInterval, int maxRetries)
+    {
+        this.retryInterval = retryInterval;
+        this.maxRetries = maxRetries;
+    }
+
+    /**
+     * ファイルを範囲に分割して並行して読み込み、全ての範囲を読み終えるまで待つ。
+     *
+     * @param path ファイル
+     * @return 読み込んだ行数
+     * @throws IOException 入出力例外発生時
+     */
+    public long ingest(Path path) throws IOException
+    {
+        try (FileChannel channel = FileChannel.open(path, StandardOpenOption.READ))
+        {
+            long size = channel.size();
+            long startLines = this.lineCount.get();
+            long startMillis = System.currentTimeMillis();
+            this.lastProgressMillis.set(startMillis);
+
+            try
+            {
+                this.pool.invoke(new RangeTask(channel, path, 0L, size, size, startMillis));
+            }
+            catch (RangeFailedException ex)
+            {
+                throw ex.getCause();
+            }
+
+            long lines = this.lineCount.get() - startLines;
+            long elapsedMillis = Math.max(1L, System.currentTimeMillis() - startMillis);
+            logger.info("Bulk ingest completed. : file=" + path + ", bytes=" + size + ", lines="
+                    + lines + ", linesPerSec=" + (lines * 1000L / elapsedMillis) + ", parallelism="
+                    + this.pool.getParallelism());
+            return lines;
+        }
+    }
+
+    /**
+     * 指定位置以降の最初の改行の直後の位置を求める。
+     *
+     * @param channel ファイルのチャネル
+     * @param position 探索の開始位置
+     * @param end 探索の終了位置(排他)
+     * @return 改行の直後の位置。改行がない場合は終了位置
+     * @throws IOException 入出力例外発生時
+     */
+    static long alignToLine(FileChannel channel, long position, long end) throws IOException
+    {
+        ByteBuffer buffer = ByteBuffer.allocate(ALIGN_READ_SIZE);
+        long current = position;
+        while (current < end)
+        {
+            buffer.clear();
+            buffer.limit((int) Math.min(ALIGN_READ_SIZE, end - current));
+            int readSize = channel.read(buffer, current);
+            if (readSize <= 0)
+            {
+                break;
+            }
+
+            for (int index = 0; index < readSize; index++)
+            {
+                if (buffer.get(index) == '\n')
+                {
+                    return current + index + 1;
+                }
+            }
+            current += readSize;
+        }
+        return end;
+    }
+
+    /**
+     * 1つの範囲を先頭から順に読み込み、行単位でハンドラに渡す。<br>
+     * ハンドラが失敗した場合は、待ってから範囲内の最後に確定させた位置から読み込み直す。
+     *
+     * @param channel ファイルのチャネル
+     * @param path ファイル
+     * @param start 範囲の開始位置
+     * @param end 範囲の終了位置(排他)
+     * @param fileSize ファイルのサイズ
+     * @param startMillis 読込の開始時刻
+     * @throws IOException 入出力例外発生時
+     */
+    private void ingestRange(FileChannel channel, Path path, long start, long end,
+            long fileSize, long startMillis) throws IOException
+    {
+        final TailedFile file = new TailedFile(path, start, new LineFramer(this.maxLineLength,
+                this.truncatedCount));
+        final int[] batchLines = new int[1];
+        final LineSink sink = new LineSink() {
+            @Override
+            public void handleLine(byte[] buffer, int lineStart, int lineEnd)
+            {
+                batchLines[0]++;
+                BulkFileIngester.this.handler.handleLine(file, buffer, lineStart, lineEnd);
+            }
+        };
+
+        final long[] committedOffset = {start};
+        final int[] failures = new int[1];
+        ChunkHandler chunkHandler = new ChunkHandler() {
+            @Override
+            public int handleChunk(byte[] buffer, int offset, int length)
+            {
+                file.setPosition(file.getPosition() + length);
+                file.getFramer().frame(buffer, offset, length, sink);
+                endBatch(file, batchLines, file.getCommittedOffset() - committedOffset[0]);
+                committedOffset[0] = file.getCommittedOffset();
+                failures[0] = 0;
+                return length;
+            }
+        };
+
+        ChunkedFileReader reader = new ChunkedFileReader();
+        while (true)
+        {
+            try
+            {
+                reader.read(channel, committedOffset[0], end, chunkHandler);
+
+                // 範囲の終端は改行の直後に揃えているため、持ち越しはファイル末尾の改行なしの行のみ
+                file.getFramer().flush(sink);
+                endBatch(file, batchLines, file.getPosition() - committedOffset[0]);
+                break;
+            }
+            catch (RuntimeException ex)
+            {
+                failures[0]++;
+                if (failures[0] > this.maxRetries
+                        || LogBackfiller.awaitRetry(this.retryInterval, failures[0]) == false)
+                {
+                    throw ex;
+                }
+
+                logger.warn("Range batch failed. Retry from the last sent position. : file=" + path
+                        + ", position=" + committedOffset[0] + ", retry=" + failures[0], ex);
+                file.getFramer().reset();
+                file.setPosition(committedOffset[0]);
+                batchLines[0] = 0;
+            }
+        }
+        reportProgress(path, fileSize, startMillis);
+    }
+
+    /**
+     * 1回の読込で渡した行を確定させ、行数の制限に応じて待つ。
+     *
+     * @param file 読込中の範囲
+     * @param batchLines 1回の読込で渡した行数(0に戻す)
+     * @param readSize 1回の読込で確定させたサイズ
+     */
+    private void endBatch(TailedFile file, int[] batchLines, long readSize)
+    {
+        int lines = batchLines[0];
+        batchLines[0] = 0;
+        this.handler.endBatch(file);
+        this.lineCount.addAndGet(lines);
+        this.byteCount.addAndGet(readSize);
+
+        if (this.rateLimiter != null && lines > 0)
+        {
+            this.rateLimiter.acquire(lines);
+        }
+    }
+
+    /**
+     * 前回の出力から一定時間が経過している場合、進捗をログに出力する。
+     *
+     * @param path ファイル
+     * @param fileSize ファイルのサイズ
+     * @param startMillis 読込の開始時刻
+     */
+    private void reportProgress(Path path, long fileSize, long startMillis)
+    {
+        long now = System.currentTimeMillis();
+        long last = this.lastProgressMillis.get();
+        if (now - last < PROGRESS_INTERVAL || this.lastProgressMillis.compareAndSet(last, now) == false)
+        {
+            return;
+        }
+
+        long elapsedMillis = Math.max(1L, now - startMillis);
+        long lines = this.lineCount.get();
+        logger.info("Bulk ingest progress. : file=" + path + ", bytes=" + this.byteCount.get()
+                + "/" + fileSize + ", lines=" + lines + ", linesPerSec="
+                + (lines * 1000L / elapsedMillis));
+    }
+
+    /**
+     * @return 読み込んだ行数
+     */
+    public long getLineCount()
+    {
+        return this.lineCount.get();
+    }
+
+    /**
+     * @return 読み込んだサイズ
+     */
+    public long getByteCount()
+    {
+        return this.byteCount.get();
+    }
+
+    /**
+     * @return 最大行長を超えたため切り詰めた行数
+     */
+    public long getTruncatedCount()
+    {
+        return this.truncatedCount.get();
+    }
+
+    /**
+     * 範囲を二分割しながら読み込むタスク
+     */
+    private final class RangeTask extends RecursiveAction
+    {
+        /** serialVersionUID */
+        private static final long serialVersionUID = 1L;
+
+        /** ファイルのチャネル */
+        private final FileChannel channel;
+
+        /** ファイル */
+        private final Path        path;
+
+        /** 範囲の開始位置 */
+        private final long        start;
+
+        /** 範囲の終了位置(排他) */
+        private final long        end;
+
+        /** ファイルのサイズ */
+        private final long        fileSize;
+
+        /** 読込の開始時刻 */
+        private final long        startMillis;
+
+        /**
+         * @param channel ファイルのチャネル
+         * @param path ファイル
+         * @param start 範囲の開始位置
+         * @param end 範囲の終了位置(排他)
+         * @param fileSize ファイルのサイズ
+         * @param startMillis 読込の開始時刻
+         */
+        RangeTask(FileChannel channel, Path path, long start, long end, long fileSize,
+                long startMillis)
+        {
+            this.channel = channel;
+            this.path = path;
+            this.start = start;
+            this.end = end;
+            this.fileSize = fileSize;
+            this.startMillis = startMillis;
+        }
+
+        /**
+         * {@inheritDoc}
+         */
+        @Override
+        protected void compute()
+        {
+            try
+            {
+                if (this.end - this.start > BulkFileIngester.this.rangeSize)
+                {
+                    long middle = alignToLine(this.channel, this.start + (this.end - this.start) / 2,
+                            this.end);
+                    if (middle < this.end)
+                    {
+                        invokeAll(new RangeTask(this.channel, this.path, this.start, middle,
+                                this.fileSize, this.startMillis), new RangeTask(this.channel,
+                                this.path, middle, this.end, this.fileSize, this.startMillis));
+                        return;
+                    }
+                }
+
+                ingestRange(this.channel, this.path, this.start, this.end, this.fileSize,
+                        this.startMillis);
+            }
+            catch (IOException ex)
+            {
+                throw new RangeFailedException(ex);
+            }
+        }
+    }
+
+    /**
+     * 範囲の読込に失敗したことを、fork/joinプールの呼び出し元に伝える例外
+     */
+    private static final class RangeFailedException extends RuntimeException
+    {
+        /** serialVersionUID */
+        private static final long serialVersionUID = 1L;
+
+        /**
+         * @param cause 読込失敗時の例外
+         */
+        RangeFailedException(IOException cause)
+        {
+            super(cause);
+        }
+
+        /**
+         * {@inheritDoc}
+         */
+        @Override
+        public synchronized IOException getCause()
+        {
+            return (IOException) super.getCause();
+        }
+    }
+}
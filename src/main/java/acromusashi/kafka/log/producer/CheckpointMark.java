@@ -0,0 +1,96 @@
+/**
+* Copyright (c) Acroquest Technology Co, Ltd. All Rights Reserved.
+* Please read the associated COPYRIGHTS file for more details.
+*
+* THE SOFTWARE IS PROVIDED BY Acroquest Technolog Co., Ltd.,
+* WITHOUT WARRANTY OF ANY KIND, EXPRESS OR IMPLIED, INCLUDING
+* BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+* FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT.
+* IN NO EVENT SHALL THE AUTHORS OR COPYRIGHT HOLDER BE LIABLE FOR ANY
+* CLAIM, DAMAGES SUFFERED BY LICENSEE AS A RESULT OF USING, MODIFYING
+* OR DISTRIBUTING THIS SOFTWARE OR ITS DERIVATIVES.
+*/
+package acromusashi.kafka.log.producer;
+
+import java.nio.file.Path;
+
+/**
+ * 読込時点の送信済み位置の候補を保持するクラス<br>
+ * <br>
+ * 読込を行うスレッドでファイルの識別子とフィンガープリントを計算して保持し、
+ * 送信が完了したスレッドで{@link #commit(CheckpointStore)}を呼び出して記録する。
+ * 送信の完了時点ではファイルの読込位置が先に進んでいるため、送信した行の末尾の位置を読込時点で確定させておく。
+ *
+ * @author kimura
+ */
+public final class CheckpointMark
+{
+    /** ログファイルのパス */
+    private final Path   path;
+
+    /** ログファイルの識別子(inode等)。取得できない環境ではnull */
+    private final Object fileKey;
+
+    /** 送信が完了した場合の送信済み位置 */
+    private final long   offset;
+
+    /** フィンガープリントの計算に使用したファイル先頭のサイズ */
+    private final int    fingerprintLength;
+
+    /** ファイル先頭のフィンガープリント */
+    private final long   fingerprint;
+
+    /**
+     * 以下のパラメタを指定してインスタンスを生成する。
+     *
+     * @param path ログファイルのパス
+     * @param fileKey ログファイルの識別子(inode等)。取得できない環境ではnull
+     * @param offset 送信が完了した場合の送信済み位置
+     * @param head ログファイルの先頭
+     * @param headLength ログファイルの先頭のサイズ
+     */
+    public CheckpointMark(Path path, Object fileKey, long offset, byte[] head, int headLength)
+    {
+        this.path = path;
+        this.fileKey = fileKey;
+        this.offset = offset;
+        this.fingerprintLength = (int) Math.min(
+                Math.min(headLength, CheckpointStore.FINGERPRINT_SIZE), offset);
+        this.fingerprint = CheckpointStore.fingerprint(head, this.fingerprintLength);
+    }
+
+    /**
+     * 送信済み位置を記録する。
+     *
+     * @param store 送信済み位置の保存先
+     */
+    public void commit(CheckpointStore store)
+    {
+        store.update(this.path, this.fileKey, this.offset, this.fingerprintLength,
+                this.fingerprint);
+    }
+
+    /**
+     * @return ログファイルのパス
+     */
+    public Path getPath()
+    {
+        return this.path;
+    }
+
+    /**
+     * @return ログファイルの識別子(inode等)。取得できない環境ではnull
+     */
+    public Object getFileKey()
+    {
+        return this.fileKey;
+    }
+
+    /**
+     * @return 送信が完了した場合の送信済み位置
+     */
+    public long getOffset()
+    {
+        return this.offset;
+    }
+}
@@ -0,0 +1,417 @@
+/**
+* Copyright (c) Acroquest Technology Co, Ltd. All Rights Reserved.
+* Please read the associated COPYRIGHTS file for more details.
+*
+* THE SOFTWARE IS PROVIDED BY Acroquest Technolog Co., Ltd.,
+* WITHOUT WARRANTY OF ANY KIND, EXPRESS OR IMPLIED, INCLUDING
+* BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+* FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT.
+* IN NO EVENT SHALL THE AUTHORS OR COPYRIGHT HOLDER BE LIABLE FOR ANY
+* CLAIM, DAMAGES SUFFERED BY LICENSEE AS A RESULT OF USING, MODIFYING
+* OR DISTRIBUTING THIS SOFTWARE OR ITS DERIVATIVES.
+*/
+package acromusashi.kafka.log.producer;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.AtomicMoveNotSupportedException;
+import java.nio.file.Files;
+import java.nio.file.NoSuchFileException;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.zip.CRC32;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import acromusashi.kafka.log.producer.entity.FileCheckpoint;
+import acromusashi.kafka.log.producer.util.YamlReadUtil;
+
+import com.fasterxml.jackson.core.type.TypeReference;
+import com.fasterxml.jackson.databind.ObjectMapper;
+
+/**
+ * ログファイルごとの送信済み位置(チェックポイント)を保持し、ファイルに保存するクラス<br>
+ * <br>
+ * チェックポイントはKafkaへの送信が完了した後に{@link #update(Path, Object, long, byte[], int)}で更新する。
+ * 更新はメモリ上で行い、ファイルへの保存は専用のスレッドが一定間隔で変更があった場合のみ行うため、送信処理を待たせない。
+ * 保存は一時ファイルへの書き込み後の置き換えで行い、保存中に停止しても前回の内容が残る。<br>
+ * ファイルの識別子(inode等)とファイル先頭のフィンガープリントを併せて保存し、
+ * 再起動時に同じファイルであることを確認できた場合のみ、送信済み位置から読込を再開する。
+ *
+ * @author kimura
+ */
+public class CheckpointStore
+{
+    /** ロガー */
+    private static final Logger                  logger                 = LoggerFactory.getLogger(CheckpointStore.class);
+
+    /** フィンガープリントの計算に使用するファイル先頭の最大サイズ */
+    public static final int                      FINGERPRINT_SIZE       = 256;
+
+    /** デフォルトの保存間隔(ミリ秒) */
+    public static final long                     DEFAULT_FLUSH_INTERVAL = 1000L;
+
+    /** チェックポイントがないことを示す再開位置 */
+    public static final long                     NO_CHECKPOINT          = -1L;
+
+    /** 保存先ファイル */
+    private final Path                           storePath;
+
+    /** 保存間隔(ミリ秒) */
+    private final long                           flushIntervalMillis;
+
+    /** ファイルパスごとのチェックポイント */
+    private final Map<String, FileCheckpoint>    checkpoints            = new ConcurrentHashMap<>();
+
+    /** 保存後に更新されたか */
+    private final AtomicBoolean                  dirty                  = new AtomicBoolean();
+
+    /** JSON変換マッパー */
+    private final ObjectMapper                   objectMapper           = new ObjectMapper();
+
+    /** 保存を行うスレッド */
+    private ScheduledExecutorService             flushExecutor;
+
+    /**
+     * 保存先ファイルと保存間隔を指定してインスタンスを生成する。<br>
+     * 保存先ファイルが存在する場合は、保存済みのチェックポイントを読み込む。
+     *
+     * @param storePath 保存先ファイル
+     * @param flushIntervalMillis 保存間隔(ミリ秒)
+     * @throws IOException 保存済みのチェックポイントの読込失敗時
+     */
+    public CheckpointStore(Path storePath, long flushIntervalMillis) throws IOException
+    {
+        this.storePath = storePath.toAbsolutePath();
+        this.flushIntervalMillis = flushIntervalMillis;
+
+        if (Files.exists(this.storePath))
+        {
+            Map<String, FileCheckpoint> stored = this.objectMapper.readValue(
+                    this.storePath.toFile(), new TypeReference<Map<String, FileCheckpoint>>() {});
+            if (stored != null)
+            {
+                this.checkpoints.putAll(stored);
+            }
+            logger.info("Checkpoint loaded. : path=" + this.storePath + ", checkpoints="
+                    + this.checkpoints.values());
+        }
+    }
+
+    /**
+     * 設定値から送信済み位置の保存先を生成し、保存を開始する。<br>
+     * 停止時に未保存の送信済み位置を保存するため、シャットダウンフックを登録する。
+     *
+     * @param configMap 設定値格納Map
+     * @return 送信済み位置の保存先。checkpoint.pathが設定されていない場合、または読込に失敗した場合はnull
+     */
+    public static CheckpointStore createCheckpointStore(Map<String, Object> configMap)
+    {
+        String storePath = YamlReadUtil.getString(configMap, "checkpoint.path");
+        if (storePath == null)
+        {
+            return null;
+        }
+
+        final CheckpointStore store;
+        try
+        {
+            store = new CheckpointStore(Paths.get(storePath), YamlReadUtil.getLong(configMap,
+                    "checkpoint.interval", DEFAULT_FLUSH_INTERVAL));
+        }
+        catch (IOException ex)
+        {
+            logger.error("Checkpoint load failed. Checkpoint is disabled. : path=" + storePath, ex);
+            return null;
+        }
+
+        store.start();
+        Runtime.getRuntime().addShutdownHook(new Thread("CheckpointStoreShutdown") {
+            @Override
+            public void run()
+            {
+                store.close();
+            }
+        });
+        return store;
+    }
+
+    /**
+     * 一定間隔での保存を開始する。
+     */
+    public synchronized void start()
+    {
+        if (this.flushExecutor != null)
+        {
+            return;
+        }
+
+        this.flushExecutor = Executors.newSingleThreadScheduledExecutor(new ThreadFactory() {
+            @Override
+            public Thread newThread(Runnable runnable)
+            {
+                Thread thread = new Thread(runnable, "CheckpointStore");
+                thread.setDaemon(true);
+                return thread;
+            }
+        });
+        this.flushExecutor.scheduleWithFixedDelay(new Runnable() {
+            @Override
+            public void run()
+            {
+                flushQuietly();
+            }
+        }, this.flushIntervalMillis, this.flushIntervalMillis, TimeUnit.MILLISECONDS);
+    }
+
+    /**
+     * 保存を停止し、未保存のチェックポイントを保存する。
+     */
+    public synchronized void close()
+    {
+        if (this.flushExecutor != null)
+        {
+            this.flushExecutor.shutdown();
+            try
+            {
+                this.flushExecutor.awaitTermination(this.flushIntervalMillis, TimeUnit.MILLISECONDS);
+            }
+            catch (InterruptedException ex)
+            {
+                Thread.currentThread().interrupt();
+            }
+            this.flushExecutor = null;
+        }
+        flushQuietly();
+    }
+
+    /**
+     * Kafkaへの送信が完了した位置を記録する。ファイルへの保存は非同期に行う。
+     *
+     * @param path ログファイルのパス
+     * @param fileKey ログファイルの識別子(inode等)。取得できない環境ではnull
+     * @param offset 送信が完了した位置
+     * @param head ログファイルの先頭
+     * @param headLength ログファイルの先頭のサイズ
+     */
+    public void update(Path path, Object fileKey, long offset, byte[] head, int headLength)
+    {
+        int fingerprintLength = (int) Math.min(Math.min(headLength, FINGERPRINT_SIZE), offset);
+        update(path, fileKey, offset, fingerprintLength, fingerprint(head, fingerprintLength));
+    }
+
+    /**
+     * 計算済みのフィンガープリントを指定して、Kafkaへの送信が完了した位置を記録する。ファイルへの保存は非同期に行う。
+     *
+     * @param path ログファイルのパス
+     * @param fileKey ログファイルの識別子(inode等)。取得できない環境ではnull
+     * @param offset 送信が完了した位置
+     * @param fingerprintLength フィンガープリントの計算に使用したファイル先頭のサイズ(offset以下)
+     * @param fingerprint ファイル先頭のフィンガープリント
+     */
+    public void update(Path path, Object fileKey, long offset, int fingerprintLength,
+            long fingerprint)
+    {
+        String key = toKey(path);
+        FileCheckpoint checkpoint = new FileCheckpoint(key, toFileKeyString(fileKey), offset,
+                fingerprintLength, fingerprint);
+        this.checkpoints.put(key, checkpoint);
+        this.dirty.set(true);
+    }
+
+    /**
+     * ログファイルの読込を再開する位置を取得する。<br>
+     * 記録したファイルと同じファイル(識別子とフィンガープリントが一致し、送信済み位置以上のサイズ)の場合は送信済み位置を返す。
+     * 異なるファイルの場合は、記録後に置き換えられたファイルのため先頭(0)を返す。
+     *
+     * @param path ログファイルのパス
+     * @return 再開位置。チェックポイントがない場合は{@link #NO_CHECKPOINT}
+     */
+    public long getResumePosition(Path path)
+    {
+        FileCheckpoint checkpoint = this.checkpoints.get(toKey(path));
+        if (checkpoint == null)
+        {
+            return NO_CHECKPOINT;
+        }
+
+        try
+        {
+            BasicFileAttributes attributes = Files.readAttributes(path, BasicFileAttributes.class);
+            String currentKey = toFileKeyString(attributes.fileKey());
+            byte[] head = new byte[checkpoint.getFingerprintLength()];
+            int headLength = readHead(path, head);
+
+            boolean sameKey = checkpoint.getFileKey() == null || currentKey == null
+                    || checkpoint.getFileKey().equals(currentKey);
+            boolean sameHead = headLength == checkpoint.getFingerprintLength()
+                    && fingerprint(head, headLength) == checkpoint.getFingerprint();
+            if (sameKey && sameHead && checkpoint.getOffset() <= attributes.size())
+            {
+                logger.info("Resume from checkpoint. : checkpoint=" + checkpoint);
+                return checkpoint.getOffset();
+            }
+
+            logger.info("File was replaced after checkpoint. Read from head. : checkpoint="
+                    + checkpoint + ", fileKey=" + currentKey + ", size=" + attributes.size());
+            return 0L;
+        }
+        catch (NoSuchFileException ex)
+        {
+            // 記録後にローテーションされ、新しいファイルが作成されていない
+            return 0L;
+        }
+        catch (IOException ex)
+        {
+            logger.warn("Checkpoint verify failed. Read from head. : checkpoint=" + checkpoint, ex);
+            return 0L;
+        }
+    }
+
+    /**
+     * ログファイルのチェックポイントを取得する。
+     *
+     * @param path ログファイルのパス
+     * @return チェックポイント。記録していない場合はnull
+     */
+    public FileCheckpoint getCheckpoint(Path path)
+    {
+        return this.checkpoints.get(toKey(path));
+    }
+
+    /**
+     * 変更があった場合に、チェックポイントをファイルに保存する。
+     *
+     * @throws IOException 保存失敗時
+     */
+    public void flush() throws IOException
+    {
+        if (this.dirty.getAndSet(false) == false)
+        {
+            return;
+        }
+
+        try
+        {
+            Path tempPath = this.storePath.resolveSibling(this.storePath.getFileName() + ".tmp");
+            this.objectMapper.writeValue(tempPath.toFile(),
+                    new TreeMap<String, FileCheckpoint>(this.checkpoints));
+            try
+            {
+                Files.move(tempPath, this.storePath, StandardCopyOption.REPLACE_EXISTING,
+                        StandardCopyOption.ATOMIC_MOVE);
+            }
+            catch (AtomicMoveNotSupportedException ex)
+            {
+                Files.move(tempPath, this.storePath, StandardCopyOption.REPLACE_EXISTING);
+            }
+        }
+        catch (IOException ex)
+        {
+            // 次回の保存で再試行する
+            this.dirty.set(true);
+            throw ex;
+        }
+    }
+
+    /**
+     * チェックポイントをファイルに保存する。失敗した場合はログに出力する。
+     */
+    private void flushQuietly()
+    {
+        try
+        {
+            flush();
+        }
+        catch (IOException | RuntimeException ex)
+        {
+            logger.warn("Checkpoint save failed. : path=" + this.storePath, ex);
+        }
+    }
+
+    /**
+     * ファイルの先頭を読み込む。
+     *
+     * @param path ファイルのパス
+     * @param head 格納先
+     * @return 読み込んだサイズ
+     * @throws IOException 読込失敗時
+     */
+    public static int readHead(Path path, byte[] head) throws IOException
+    {
+        try (FileChannel channel = FileChannel.open(path, StandardOpenOption.READ))
+        {
+            return readHead(channel, head);
+        }
+    }
+
+    /**
+     * ファイルの先頭を、チャネルの読込位置を変えずに読み込む。
+     *
+     * @param channel ファイルのチャネル
+     * @param head 格納先
+     * @return 読み込んだサイズ
+     * @throws IOException 読込失敗時
+     */
+    public static int readHead(FileChannel channel, byte[] head) throws IOException
+    {
+        ByteBuffer buffer = ByteBuffer.wrap(head);
+        while (buffer.hasRemaining())
+        {
+            if (channel.read(buffer, buffer.position()) <= 0)
+            {
+                break;
+            }
+        }
+        return buffer.position();
+    }
+
+    /**
+     * ファイル先頭のフィンガープリントを計算する。
+     *
+     * @param head ファイルの先頭
+     * @param length 計算に使用するサイズ
+     * @return フィンガープリント
+     */
+    public static long fingerprint(byte[] head, int length)
+    {
+        CRC32 crc = new CRC32();
+        crc.update(head, 0, length);
+        return crc.getValue();
+    }
+
+    /**
+     * ログファイルのパスから、チェックポイントのキーを生成する。
+     *
+     * @param path ログファイルのパス
+     * @return キー
+     */
+    private static String toKey(Path path)
+    {
+        return path.toAbsolutePath().normalize().toString();
+    }
+
+    /**
+     * ファイルの識別子を文字列に変換する。
+     *
+     * @param fileKey ファイルの識別子
+     * @return 文字列。識別子がnullの場合はnull
+     */
+    private static String toFileKeyString(Object fileKey)
+    {
+        return fileKey == null ? null : fileKey.toString();
+    }
+}
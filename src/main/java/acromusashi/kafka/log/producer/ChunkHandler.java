@@ -0,0 +1,35 @@
+/**
+* Copyright (c) Acroquest Technology Co, Ltd. All Rights Reserved.
+* Please read the associated COPYRIGHTS file for more details.
+*
+* THE SOFTWARE IS PROVIDED BY Acroquest Technolog Co., Ltd.,
+* WITHOUT WARRANTY OF ANY KIND, EXPRESS OR IMPLIED, INCLUDING
+* BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+* FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT.
+* IN NO EVENT SHALL THE AUTHORS OR COPYRIGHT HOLDER BE LIABLE FOR ANY
+* CLAIM, DAMAGES SUFFERED BY LICENSEE AS A RESULT OF USING, MODIFYING
+* OR DISTRIBUTING THIS SOFTWARE OR ITS DERIVATIVES.
+*/
+package acromusashi.kafka.log.producer;
+
+import java.io.IOException;
+
+/**
+ * {@link ChunkedFileReader}が読み込んだチャンクを処理するハンドラ
+ *
+ * @author kimura
+ */
+public interface ChunkHandler
+{
+    /**
+     * 読み込んだチャンクを処理する。<br>
+     * 処理しなかった末尾のbyte列(書き込み途中の行等)は、次のチャンクの先頭に含めて再度渡される。
+     *
+     * @param buffer チャンクを格納したbyte配列(呼び出し後に再利用されるため、保持しないこと)
+     * @param offset チャンクの開始位置
+     * @param length チャンクの長さ
+     * @return 処理したbyte数。チャンクの先頭から数える
+     * @throws IOException 入出力例外発生時
+     */
+    int handleChunk(byte[] buffer, int offset, int length) throws IOException;
+}
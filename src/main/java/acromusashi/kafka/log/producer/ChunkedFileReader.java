@@ -0,0 +1,121 @@
+/**
+* Copyright (c) Acroquest Technology Co, Ltd. All Rights Reserved.
+* Please read the associated COPYRIGHTS file for more details.
+*
+* THE SOFTWARE IS PROVIDED BY Acroquest Technolog Co., Ltd.,
+* WITHOUT WARRANTY OF ANY KIND, EXPRESS OR IMPLIED, INCLUDING
+* BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+* FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT.
+* IN NO EVENT SHALL THE AUTHORS OR COPYRIGHT HOLDER BE LIABLE FOR ANY
+* CLAIM, DAMAGES SUFFERED BY LICENSEE AS A RESULT OF USING, MODIFYING
+* OR DISTRIBUTING THIS SOFTWARE OR ITS DERIVATIVES.
+*/
+package acromusashi.kafka.log.producer;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+
+/**
+ * ファイルの指定範囲を固定サイズのチャンクに分けて読み込むクラス<br>
+ * <br>
+ * 読込に使用するバッファはインスタンスごとに1つだけ確保して再利用し、チャンクを読み込むたびに{@link ChunkHandler}へ渡す。
+ * 未読のデータがどれだけ溜まっていても、使用するメモリはチャンクサイズで一定となる。<br>
+ * ハンドラが処理しなかった末尾のbyte列はバッファの先頭に移し、続きを読み込んでから再度渡す。
+ * バッファが満杯でもハンドラが1byteも処理しない場合は、それ以上読み進められないため、バッファ全体を読み捨てる。<br>
+ * 1インスタンスを複数のスレッドから同時に使用しないこと。
+ *
+ * @author kimura
+ */
+public class ChunkedFileReader
+{
+    /** デフォルトのチャンクサイズ(byte) */
+    public static final int  DEFAULT_CHUNK_SIZE = 65536;
+
+    /** 読込バッファ */
+    private final byte[]     buffer;
+
+    /** 読込バッファをラップしたByteBuffer */
+    private final ByteBuffer byteBuffer;
+
+    /**
+     * デフォルトのチャンクサイズでインスタンスを生成する。
+     */
+    public ChunkedFileReader()
+    {
+        this(DEFAULT_CHUNK_SIZE);
+    }
+
+    /**
+     * チャンクサイズを指定してインスタンスを生成する。
+     *
+     * @param chunkSize チャンクサイズ(byte)
+     */
+    public ChunkedFileReader(int chunkSize)
+    {
+        if (chunkSize <= 0)
+        {
+            throw new IllegalArgumentException("chunkSize must be positive. : chunkSize=" + chunkSize);
+        }
+
+        this.buffer = new byte[chunkSize];
+        this.byteBuffer = ByteBuffer.wrap(this.buffer);
+    }
+
+    /**
+     * ファイルの開始位置から終了位置までをチャンクに分けて読み込み、ハンドラに渡す。<br>
+     * 読込中にファイルが切り詰められた場合は、その時点で読込を終了する。
+     *
+     * @param channel 読込対象のファイルのチャネル
+     * @param startPosition 開始位置
+     * @param endPosition 終了位置(排他)
+     * @param handler チャンクを処理するハンドラ
+     * @return ハンドラが処理を終えたファイル上の位置。次回はこの位置から読み込む
+     * @throws IOException 入出力例外発生時、またはハンドラで例外が発生した場合
+     */
+    public long read(FileChannel channel, long startPosition, long endPosition,
+            ChunkHandler handler) throws IOException
+    {
+        long readPosition = startPosition;
+        long handledPosition = startPosition;
+        int filled = 0;
+
+        while (readPosition < endPosition)
+        {
+            int readLength = (int) Math.min(this.buffer.length - filled, endPosition - readPosition);
+            this.byteBuffer.limit(filled + readLength);
+            this.byteBuffer.position(filled);
+            int readSize = channel.read(this.byteBuffer, readPosition);
+            if (readSize <= 0)
+            {
+                break;
+            }
+            readPosition += readSize;
+            filled += readSize;
+
+            int handled = handler.handleChunk(this.buffer, 0, filled);
+            if (handled == 0 && filled == this.buffer.length)
+            {
+                // 1チャンクに収まらないデータは、これ以上読み進められないため読み捨てる
+                handled = filled;
+            }
+
+            handledPosition += handled;
+            filled -= handled;
+            if (filled > 0 && handled > 0)
+            {
+                System.arraycopy(this.buffer, handled, this.buffer, 0, filled);
+            }
+        }
+
+        return handledPosition;
+    }
+
+    /**
+     * @return チャンクサイズ(byte)
+     */
+    public int getChunkSize()
+    {
+        return this.buffer.length;
+    }
+}
@@ -0,0 +1,153 @@
+/**
+* Copyright (c) Acroquest Technology Co, Ltd. All Rights Reserved.
+* Please read the associated COPYRIGHTS file for more details.
+*
+* THE SOFTWARE IS PROVIDED BY Acroquest Technolog Co., Ltd.,
+* WITHOUT WARRANTY OF ANY KIND, EXPRESS OR IMPLIED, INCLUDING
+* BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+* FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT.
+* IN NO EVENT SHALL THE AUTHORS OR COPYRIGHT HOLDER BE LIABLE FOR ANY
+* CLAIM, DAMAGES SUFFERED BY LICENSEE AS A RESULT OF USING, MODIFYING
+* OR DISTRIBUTING THIS SOFTWARE OR ITS DERIVATIVES.
+*/
+package acromusashi.kafka.log.producer;
+
+import java.util.ArrayDeque;
+import java.util.Deque;
+
+/**
+ * 非同期に送信したまとまりの完了を送信開始順に整列し、送信済み位置を記録するクラス<br>
+ * <br>
+ * 送信中のまとまりが複数ある場合、完了順は送信開始順と一致しない。
+ * 送信済み位置は、それより前に送信を開始した全てのまとまりが完了した時点で記録する。
+ * 失敗したまとまりがある場合、それ以降の送信済み位置は記録しない。
+ *
+ * @author kimura
+ */
+public final class CompletionTracker
+{
+    /** 送信済み位置の保存先。記録しない場合はnull */
+    private final CheckpointStore     checkpointStore;
+
+    /** 送信開始順の、完了を待つまとまり */
+    private final Deque<PendingBatch> pending = new ArrayDeque<>();
+
+    /** 最初に失敗したまとまりの原因。失敗していない場合はnull */
+    private Exception                 failure;
+
+    /** 先頭から連続して完了したまとまりのうち、最後の送信済み位置。ない場合はnull */
+    private CheckpointMark            committedMark;
+
+    /**
+     * 送信済み位置の保存先を指定してインスタンスを生成する。
+     *
+     * @param checkpointStore 送信済み位置の保存先。記録しない場合はnull
+     */
+    public CompletionTracker(CheckpointStore checkpointStore)
+    {
+        this.checkpointStore = checkpointStore;
+    }
+
+    /**
+     * まとまりの送信開始を登録する。送信開始順に呼び出すこと。
+     *
+     * @param checkpointMark 送信が完了した場合の送信済み位置。記録しない場合はnull
+     * @return 完了・失敗時に通知する対象
+     */
+    public synchronized PendingBatch register(CheckpointMark checkpointMark)
+    {
+        PendingBatch batch = new PendingBatch(checkpointMark);
+        this.pending.addLast(batch);
+        return batch;
+    }
+
+    /**
+     * まとまりの完了・失敗を記録し、先頭から連続して完了したまとまりの送信済み位置を記録する。
+     *
+     * @param batch 完了・失敗したまとまり
+     * @param exception 失敗時の原因。成功時はnull
+     */
+    public synchronized void complete(PendingBatch batch, Exception exception)
+    {
+        if (exception != null)
+        {
+            if (this.failure == null)
+            {
+                this.failure = exception;
+            }
+            return;
+        }
+
+        batch.completed = true;
+        CheckpointMark committable = null;
+        while (this.failure == null && this.pending.isEmpty() == false
+                && this.pending.peekFirst().completed)
+        {
+            CheckpointMark mark = this.pending.pollFirst().checkpointMark;
+            if (mark != null)
+            {
+                committable = mark;
+            }
+        }
+
+        // 送信済み位置は読込位置の順に増加するため、連続して完了した中で最後のもののみを記録する。
+        // 記録の順序が前後しないよう、ロックを保持したまま記録する
+        if (committable == null)
+        {
+            return;
+        }
+
+        this.committedMark = committable;
+        if (this.checkpointStore != null)
+        {
+            committable.commit(this.checkpointStore);
+        }
+    }
+
+    /**
+     * @return 最初に失敗したまとまりの原因。失敗していない場合はnull
+     */
+    public synchronized Exception getFailure()
+    {
+        return this.failure;
+    }
+
+    /**
+     * 先頭から連続して完了したまとまりのうち、最後の送信済み位置を取得する。
+     * 送信済み位置の保存先の有無によらず保持するため、失敗時の読み直しの位置に使用できる。
+     *
+     * @return 送信済み位置。完了したまとまりがない場合はnull
+     */
+    public synchronized CheckpointMark getCommittedMark()
+    {
+        return this.committedMark;
+    }
+
+    /**
+     * @return 完了を待つまとまりの数
+     */
+    public synchronized int getPendingCount()
+    {
+        return this.pending.size();
+    }
+
+    /**
+     * 送信中のまとまり
+     */
+    public static final class PendingBatch
+    {
+        /** 送信が完了した場合の送信済み位置。記録しない場合はnull */
+        final CheckpointMark checkpointMark;
+
+        /** 完了したか */
+        boolean              completed;
+
+        /**
+         * @param checkpointMark 送信が完了した場合の送信済み位置。記録しない場合はnull
+         */
+        PendingBatch(CheckpointMark checkpointMark)
+        {
+            this.checkpointMark = checkpointMark;
+        }
+    }
+}
@@ -0,0 +1,438 @@
+/**
+* Copyright (c) Acroquest Technology Co, Ltd. All Rights Reserved.
+* Please read the associated COPYRIGHTS file for more details.
+*
+* THE SOFTWARE IS PROVIDED BY Acroquest Technolog Co., Ltd.,
+* WITHOUT WARRANTY OF ANY KIND, EXPRESS OR IMPLIED, INCLUDING
+* BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+* FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT.
+* IN NO EVENT SHALL THE AUTHORS OR COPYRIGHT HOLDER BE LIABLE FOR ANY
+* CLAIM, DAMAGES SUFFERED BY LICENSEE AS A RESULT OF USING, MODIFYING
+* OR DISTRIBUTING THIS SOFTWARE OR ITS DERIVATIVES.
+*/
+package acromusashi.kafka.log.producer;
+
+import static java.nio.file.StandardWatchEventKinds.ENTRY_CREATE;
+import static java.nio.file.StandardWatchEventKinds.ENTRY_MODIFY;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InterruptedIOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.NoSuchFileException;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.nio.file.WatchKey;
+import java.nio.file.WatchService;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.util.concurrent.TimeUnit;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * ファイルの末尾をJVM内で追尾し、追記された内容を読み込むInputStream(tail -Fに相当)<br>
+ * <br>
+ * FileChannelで読み込み、末尾に達した場合はWatchServiceの通知を待つ。
+ * WatchServiceが使用できない環境、または通知が届かない場合に備え、ポーリング間隔ごとにファイルを確認する。<br>
+ * 読込位置はインスタンスが保持するため、読込処理を再開しても読み飛ばしは発生しない。
+ * ファイルが別のファイルに置き換えられた場合(ローテーション)、またはサイズが読込位置より小さくなった場合は、
+ * 置き換え前のファイルを最後まで読み込んでから、新しいファイルを先頭から読み込む。<br>
+ * {@link #read(byte[], int, int)}は読み込める内容があるまでブロックし、{@link #close()}されるまで-1を返さない。
+ *
+ * @author kimura
+ */
+public class FileTailInputStream extends InputStream
+{
+    /** ロガー */
+    private static final Logger logger = LoggerFactory.getLogger(FileTailInputStream.class);
+
+    /** 追尾するファイル */
+    private final Path          path;
+
+    /** ポーリング間隔(ミリ秒) */
+    private final long          pollIntervalMillis;
+
+    /** 変更通知の受信に使用するWatchService。使用できない場合はnull */
+    private WatchService        watchService;
+
+    /** 読込中のファイルのチャネル */
+    private FileChannel         channel;
+
+    /** 読込中のファイルの識別子(inode等) */
+    private Object              fileKey;
+
+    /** 読込位置 */
+    private long                position;
+
+    /** 読込中のファイルを開いた時点の読込位置。ファイルを開いていない場合は-1 */
+    private long                openedPosition = -1L;
+
+    /** クローズ済みか */
+    private volatile boolean    closed;
+
+    /**
+     * 追尾するファイルと開始位置を指定してインスタンスを生成する。
+     *
+     * @param path 追尾するファイル
+     * @param fromEnd ファイルの末尾から読み込む場合true、先頭から読み込む場合false
+     * @param pollIntervalMillis ポーリング間隔(ミリ秒)
+     */
+    public FileTailInputStream(Path path, boolean fromEnd, long pollIntervalMillis)
+    {
+        this(path, fromEnd ? -1L : 0L, pollIntervalMillis);
+    }
+
+    /**
+     * 追尾するファイルと開始位置を指定してインスタンスを生成する。<br>
+     * 開始位置がファイルのサイズを超える場合は、切り詰められたファイルとして先頭から読み込む。
+     *
+     * @param path 追尾するファイル
+     * @param startPosition 開始位置。負の値の場合はファイルの末尾
+     * @param pollIntervalMillis ポーリング間隔(ミリ秒)
+     */
+    public FileTailInputStream(Path path, long startPosition, long pollIntervalMillis)
+    {
+        this.path = path;
+        this.pollIntervalMillis = pollIntervalMillis;
+        this.position = startPosition < 0 ? -1L : startPosition;
+
+        try
+        {
+            WatchService service = path.getFileSystem().newWatchService();
+            path.toAbsolutePath().getParent().register(service, ENTRY_CREATE, ENTRY_MODIFY);
+            this.watchService = service;
+        }
+        catch (IOException | UnsupportedOperationException ex)
+        {
+            logger.warn("WatchService is not available. Use polling. : path=" + path, ex);
+            this.watchService = null;
+        }
+
+        try
+        {
+            // 末尾から読み込む場合に、生成後の追記を読み飛ばさないよう開始位置をここで確定する
+            openIfNeeded();
+        }
+        catch (IOException ex)
+        {
+            logger.warn("File open failed. Retry on read. : path=" + path, ex);
+        }
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public int read() throws IOException
+    {
+        byte[] single = new byte[1];
+        int readSize = read(single, 0, 1);
+        if (readSize < 0)
+        {
+            return -1;
+        }
+        return single[0] & 0xFF;
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public int read(byte[] buffer, int offset, int length) throws IOException
+    {
+        if (length == 0)
+        {
+            return 0;
+        }
+
+        while (this.closed == false)
+        {
+            if (openIfNeeded())
+            {
+                int readSize = readFile(this.channel, this.position, buffer, offset, length);
+                if (readSize > 0)
+                {
+                    this.position += readSize;
+                    return readSize;
+                }
+
+                // 末尾まで読み込んだ後に、ファイルが置き換え・切り詰めされていないかを確認する
+                if (isReplaced())
+                {
+                    closeChannel();
+                    this.position = 0L;
+                    continue;
+                }
+            }
+
+            awaitChange();
+        }
+
+        return -1;
+    }
+
+    /**
+     * ファイルの指定位置から読み込む。
+     *
+     * @param fileChannel 読込中のファイルのチャネル
+     * @param filePosition 読込位置
+     * @param buffer 格納先
+     * @param offset 格納先の開始位置
+     * @param length 最大読込サイズ
+     * @return 読み込んだサイズ。末尾に達している場合は0
+     * @throws IOException 入出力例外発生時
+     */
+    protected int readFile(FileChannel fileChannel, long filePosition, byte[] buffer, int offset,
+            int length) throws IOException
+    {
+        int readSize = fileChannel.read(ByteBuffer.wrap(buffer, offset, length), filePosition);
+        return Math.max(readSize, 0);
+    }
+
+    /**
+     * 読込中のファイルを閉じる前に、ファイルに関して保持している資源を解放する。
+     */
+    protected void releaseFile()
+    {
+        // 保持する資源はない
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public int available() throws IOException
+    {
+        if (this.closed || this.channel == null)
+        {
+            return 0;
+        }
+        return (int) Math.min(Integer.MAX_VALUE, Math.max(0L, this.channel.size() - this.position));
+    }
+
+    /**
+     * 読込中のファイルがない場合はファイルを開く。
+     *
+     * @return 読込中のファイルがある場合true
+     * @throws IOException 入出力例外発生時
+     */
+    private boolean openIfNeeded() throws IOException
+    {
+        if (this.channel != null)
+        {
+            return true;
+        }
+
+        try
+        {
+            FileChannel opened = FileChannel.open(this.path, StandardOpenOption.READ);
+            long size = opened.size();
+            if (this.position < 0 || this.position > size)
+            {
+                // 初回の末尾指定時、または前回の読込位置より小さいファイルの場合は末尾(切り詰め時は先頭)から読み込む
+                this.position = this.position < 0 ? size : 0L;
+            }
+            this.channel = opened;
+            this.openedPosition = this.position;
+            this.fileKey = Files.readAttributes(this.path, BasicFileAttributes.class).fileKey();
+            return true;
+        }
+        catch (NoSuchFileException ex)
+        {
+            // ローテーション中でファイルが存在しない場合は、作成されるまで待つ
+            return false;
+        }
+    }
+
+    /**
+     * 読込中のファイルが別のファイルに置き換えられた、または切り詰められたかを判定する。
+     *
+     * @return 置き換え・切り詰めされた場合true
+     * @throws IOException 入出力例外発生時
+     */
+    private boolean isReplaced() throws IOException
+    {
+        BasicFileAttributes attributes;
+        try
+        {
+            attributes = Files.readAttributes(this.path, BasicFileAttributes.class);
+        }
+        catch (NoSuchFileException ex)
+        {
+            // 移動後、新しいファイルがまだ作成されていない
+            return false;
+        }
+
+        Object currentKey = attributes.fileKey();
+        if (currentKey != null && currentKey.equals(this.fileKey) == false)
+        {
+            logger.info("File rotated. Reopen. : path=" + this.path);
+            return true;
+        }
+
+        if (attributes.size() < this.position)
+        {
+            logger.info("File truncated. Reopen. : path=" + this.path);
+            return true;
+        }
+        return false;
+    }
+
+    /**
+     * ファイルの変更通知、またはポーリング間隔の経過を待つ。
+     *
+     * @throws IOException 待機中に割り込まれた場合
+     */
+    private void awaitChange() throws IOException
+    {
+        try
+        {
+            if (this.watchService == null)
+            {
+                Thread.sleep(this.pollIntervalMillis);
+                return;
+            }
+
+            WatchKey key = this.watchService.poll(this.pollIntervalMillis, TimeUnit.MILLISECONDS);
+            if (key != null)
+            {
+                // 同一ディレクトリの他のファイルの通知も含まれるが、読込を試みるだけのため区別しない
+                key.pollEvents();
+                key.reset();
+            }
+        }
+        catch (InterruptedException ex)
+        {
+            Thread.currentThread().interrupt();
+            throw new InterruptedIOException("Interrupted while waiting for " + this.path);
+        }
+        catch (RuntimeException ex)
+        {
+            // WatchServiceがクローズされた場合はポーリングに切り替える
+            if (this.closed == false)
+            {
+                logger.warn("WatchService failed. Use polling. : path=" + this.path, ex);
+            }
+            this.watchService = null;
+        }
+    }
+
+    /**
+     * 読込中のファイルを閉じる。
+     */
+    private void closeChannel()
+    {
+        if (this.channel == null)
+        {
+            return;
+        }
+
+        releaseFile();
+        try
+        {
+            this.channel.close();
+        }
+        catch (IOException ex)
+        {
+            logger.warn("Channel close failed. : path=" + this.path, ex);
+        }
+        this.channel = null;
+        this.fileKey = null;
+        this.openedPosition = -1L;
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public void close() throws IOException
+    {
+        this.closed = true;
+        closeChannel();
+        if (this.watchService != null)
+        {
+            this.watchService.close();
+        }
+    }
+
+    /**
+     * 読込位置を、読込済みの位置に戻す。送信に失敗した内容を読み直す場合に使用する。<br>
+     * 指定したファイルが読込中のファイルと異なる場合(戻す位置がローテーション前のファイルにある場合)は、
+     * 置き換え前のファイルは読み直せないため、読込中のファイルの先頭に戻す。
+     *
+     * @param positionFileKey 戻す位置のファイルの識別子。nullの場合は読込中のファイルとみなす
+     * @param newPosition 戻す位置
+     * @return 指定した位置に戻した場合true、読込中のファイルの先頭に戻した場合false
+     */
+    public boolean rewind(Object positionFileKey, long newPosition)
+    {
+        if (positionFileKey != null && positionFileKey.equals(this.fileKey) == false)
+        {
+            logger.warn("Rewind position is in the rotated file. Rewind to the head. : path="
+                    + this.path + ", position=" + newPosition);
+            this.position = 0L;
+            return false;
+        }
+
+        this.position = Math.max(0L, newPosition);
+        return true;
+    }
+
+    /**
+     * 読込中のファイルの先頭を、読込位置を変えずに読み込む。
+     *
+     * @param head 格納先
+     * @return 読み込んだサイズ。読込中のファイルがない場合は0
+     * @throws IOException 入出力例外発生時
+     */
+    public int readHead(byte[] head) throws IOException
+    {
+        if (this.channel == null)
+        {
+            return 0;
+        }
+        return CheckpointStore.readHead(this.channel, head);
+    }
+
+    /**
+     * 読込中のファイルの識別子を取得する。
+     *
+     * @return ファイルの識別子(inode等)。読込中のファイルがない場合、または取得できない環境ではnull
+     */
+    public Object getFileKey()
+    {
+        return this.fileKey;
+    }
+
+    /**
+     * 読込中のファイルを開いた時点の読込位置を取得する。<br>
+     * 末尾から読み込む指定でファイルが存在しなかった場合に、ファイルが作成された後に確定した開始位置を取得するために使用する。
+     *
+     * @return ファイルを開いた時点の読込位置。ファイルを開いていない場合は-1
+     */
+    public long getOpenedPosition()
+    {
+        return this.openedPosition;
+    }
+
+    /**
+     * 読込位置を取得する。
+     *
+     * @return 読込位置
+     */
+    public long getPosition()
+    {
+        return this.position;
+    }
+
+    /**
+     * @return the path
+     */
+    public Path getPath()
+    {
+        return this.path;
+    }
+}
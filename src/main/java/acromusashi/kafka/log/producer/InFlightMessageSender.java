@@ -0,0 +1,223 @@
+/**
+* Copyright (c) Acroquest Technology Co, Ltd. All Rights Reserved.
+* Please read the associated COPYRIGHTS file for more details.
+*
+* THE SOFTWARE IS PROVIDED BY Acroquest Technolog Co., Ltd.,
+* WITHOUT WARRANTY OF ANY KIND, EXPRESS OR IMPLIED, INCLUDING
+* BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+* FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT.
+* IN NO EVENT SHALL THE AUTHORS OR COPYRIGHT HOLDER BE LIABLE FOR ANY
+* CLAIM, DAMAGES SUFFERED BY LICENSEE AS A RESULT OF USING, MODIFYING
+* OR DISTRIBUTING THIS SOFTWARE OR ITS DERIVATIVES.
+*/
+package acromusashi.kafka.log.producer;
+
+import java.io.Closeable;
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+import kafka.producer.KeyedMessage;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * 同期送信の送信先を、送信中のまとまりの数を上限として並行に呼び出すことで非同期化するクラス<br>
+ * <br>
+ * 上限と同数のスレッドで送信し、送信中のまとまりの数はセマフォで制限する。
+ * 送信先が例外を投げた場合は、その例外を指定してコールバックを呼び出す。<br>
+ * 並行に送信するため、まとまりの間の送信完了順は送信開始順と一致しない。上限を1とした場合は送信開始順に送信する。
+ *
+ * @author kimura
+ */
+public class InFlightMessageSender implements AsyncMessageSink, Closeable
+{
+    /** ロガー */
+    private static final Logger   logger         = LoggerFactory.getLogger(InFlightMessageSender.class);
+
+    /** 送信先 */
+    private final MessageSink     sink;
+
+    /** 送信中のまとまりの数の上限 */
+    private final int             maxInFlight;
+
+    /** 送信中のまとまりの数を制限するセマフォ */
+    private final Semaphore       permits;
+
+    /** 送信を行うスレッド */
+    private final ExecutorService executor;
+
+    /** 上限に達していたため待った回数 */
+    private final AtomicLong      blockedCount   = new AtomicLong();
+
+    /** 完了したまとまりの数 */
+    private final AtomicLong      completedCount = new AtomicLong();
+
+    /** 失敗したまとまりの数 */
+    private final AtomicLong      failedCount    = new AtomicLong();
+
+    /**
+     * 以下のパラメタを指定してインスタンスを生成する。
+     *
+     * @param name スレッド名の接頭辞
+     * @param sink 同期送信の送信先(複数のスレッドから同時に呼び出される)
+     * @param maxInFlight 送信中のまとまりの数の上限
+     */
+    public InFlightMessageSender(final String name, MessageSink sink, int maxInFlight)
+    {
+        this.sink = sink;
+        this.maxInFlight = Math.max(1, maxInFlight);
+        this.permits = new Semaphore(this.maxInFlight);
+
+        final AtomicInteger threadIndex = new AtomicInteger();
+        this.executor = Executors.newFixedThreadPool(this.maxInFlight, new ThreadFactory() {
+            @Override
+            public Thread newThread(Runnable runnable)
+            {
+                Thread thread = new Thread(runnable, name + "-send-" + threadIndex.incrementAndGet());
+                thread.setDaemon(true);
+                return thread;
+            }
+        });
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public void send(final List<KeyedMessage<String, String>> messages,
+            final SendCallback callback) throws InterruptedException
+    {
+        if (this.permits.tryAcquire() == false)
+        {
+            this.blockedCount.incrementAndGet();
+            this.permits.acquire();
+        }
+
+        try
+        {
+            this.executor.execute(new Runnable() {
+                @Override
+                public void run()
+                {
+                    sendAndNotify(messages, callback);
+                }
+            });
+        }
+        catch (RuntimeException ex)
+        {
+            this.permits.release();
+            throw ex;
+        }
+    }
+
+    /**
+     * 送信先に送信し、結果をコールバックに通知する。送信を行うスレッドで実行する。
+     *
+     * @param messages メッセージのまとまり
+     * @param callback 完了・失敗の通知先
+     */
+    private void sendAndNotify(List<KeyedMessage<String, String>> messages, SendCallback callback)
+    {
+        Exception failure = null;
+        try
+        {
+            this.sink.send(messages);
+            this.completedCount.incrementAndGet();
+        }
+        catch (RuntimeException ex)
+        {
+            this.failedCount.incrementAndGet();
+            failure = ex;
+        }
+
+        try
+        {
+            callback.onCompletion(failure);
+        }
+        catch (RuntimeException ex)
+        {
+            logger.error("Send callback failed.", ex);
+        }
+        finally
+        {
+            this.permits.release();
+        }
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public void flush() throws InterruptedException
+    {
+        this.permits.acquire(this.maxInFlight);
+        this.permits.release(this.maxInFlight);
+    }
+
+    /**
+     * {@inheritDoc}<br>
+     * 送信中のまとまりの完了を待たずに停止する。
+     */
+    @Override
+    public void close()
+    {
+        this.executor.shutdownNow();
+    }
+
+    /**
+     * @return 送信中のまとまりの数
+     */
+    public int getInFlightCount()
+    {
+        return this.maxInFlight - this.permits.availablePermits();
+    }
+
+    /**
+     * @return 送信中のまとまりの数の上限
+     */
+    public int getMaxInFlight()
+    {
+        return this.maxInFlight;
+    }
+
+    /**
+     * @return 上限に達していたため待った回数
+     */
+    public long getBlockedCount()
+    {
+        return this.blockedCount.get();
+    }
+
+    /**
+     * @return 完了したまとまりの数
+     */
+    public long getCompletedCount()
+    {
+        return this.completedCount.get();
+    }
+
+    /**
+     * @return 失敗したまとまりの数
+     */
+    public long getFailedCount()
+    {
+        return this.failedCount.get();
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public String toString()
+    {
+        return "inFlight=" + getInFlightCount() + "/" + this.maxInFlight + ", blocked="
+                + this.blockedCount.get() + ", completed=" + this.completedCount.get()
+                + ", failed=" + this.failedCount.get();
+    }
+}
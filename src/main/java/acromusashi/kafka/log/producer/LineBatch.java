@@ -0,0 +1,160 @@
+/**
+* Copyright (c) Acroquest Technology Co, Ltd. All Rights Reserved.
+* Please read the associated COPYRIGHTS file for more details.
+*
+* THE SOFTWARE IS PROVIDED BY Acroquest Technolog Co., Ltd.,
+* WITHOUT WARRANTY OF ANY KIND, EXPRESS OR IMPLIED, INCLUDING
+* BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+* FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT.
+* IN NO EVENT SHALL THE AUTHORS OR COPYRIGHT HOLDER BE LIABLE FOR ANY
+* CLAIM, DAMAGES SUFFERED BY LICENSEE AS A RESULT OF USING, MODIFYING
+* OR DISTRIBUTING THIS SOFTWARE OR ITS DERIVATIVES.
+*/
+package acromusashi.kafka.log.producer;
+
+import java.util.Arrays;
+
+/**
+ * パイプラインの段の間で受け渡す、区切った行のまとまり<br>
+ * <br>
+ * 読込バッファは次の読込で上書きされるため、行の内容を1つのbyte配列に連結してコピーし、行の終了位置を保持する。
+ * 行ごとにオブジェクトを生成しない。
+ *
+ * @author kimura
+ */
+public final class LineBatch
+{
+    /** 行の内容を連結したbyte配列 */
+    private byte[]         data;
+
+    /** 連結した行の合計サイズ */
+    private int            length;
+
+    /** 行ごとの終了位置(排他) */
+    private int[]          lineEnds;
+
+    /** 行数 */
+    private int            lineCount;
+
+    /** 送信が完了した場合の送信済み位置。記録しない場合はnull */
+    private CheckpointMark checkpointMark;
+
+    /** 最初の行を追加した時刻(System.nanoTime()) */
+    private long           firstLineNanos;
+
+    /**
+     * 初期容量を指定してインスタンスを生成する。
+     *
+     * @param byteCapacity 行の内容の初期容量(byte)
+     * @param lineCapacity 行数の初期容量
+     */
+    public LineBatch(int byteCapacity, int lineCapacity)
+    {
+        this.data = new byte[Math.max(16, byteCapacity)];
+        this.lineEnds = new int[Math.max(1, lineCapacity)];
+    }
+
+    /**
+     * 行をコピーして追加する。
+     *
+     * @param buffer 行を格納したbyte配列
+     * @param start 行の開始位置
+     * @param end 行の終了位置(改行を含まない)
+     */
+    public void add(byte[] buffer, int start, int end)
+    {
+        int lineLength = end - start;
+        if (this.length + lineLength > this.data.length)
+        {
+            this.data = Arrays.copyOf(this.data, Math.max(this.data.length * 2, this.length
+                    + lineLength));
+        }
+        if (this.lineCount == this.lineEnds.length)
+        {
+            this.lineEnds = Arrays.copyOf(this.lineEnds, this.lineEnds.length * 2);
+        }
+
+        if (this.lineCount == 0)
+        {
+            this.firstLineNanos = System.nanoTime();
+        }
+
+        System.arraycopy(buffer, start, this.data, this.length, lineLength);
+        this.length += lineLength;
+        this.lineEnds[this.lineCount++] = this.length;
+    }
+
+    /**
+     * @return 行の内容を連結したbyte配列
+     */
+    public byte[] getData()
+    {
+        return this.data;
+    }
+
+    /**
+     * @param index 行の位置
+     * @return 行の開始位置
+     */
+    public int getLineStart(int index)
+    {
+        return index == 0 ? 0 : this.lineEnds[index - 1];
+    }
+
+    /**
+     * @param index 行の位置
+     * @return 行の終了位置(排他)
+     */
+    public int getLineEnd(int index)
+    {
+        return this.lineEnds[index];
+    }
+
+    /**
+     * @return 行数
+     */
+    public int getLineCount()
+    {
+        return this.lineCount;
+    }
+
+    /**
+     * @return 連結した行の合計サイズ
+     */
+    public int getByteLength()
+    {
+        return this.length;
+    }
+
+    /**
+     * @return 行がない場合true
+     */
+    public boolean isEmpty()
+    {
+        return this.lineCount == 0;
+    }
+
+    /**
+     * @return 最初の行を追加した時刻(System.nanoTime())。行がない場合は0
+     */
+    public long getFirstLineNanos()
+    {
+        return this.firstLineNanos;
+    }
+
+    /**
+     * @return 送信が完了した場合の送信済み位置。記録しない場合はnull
+     */
+    public CheckpointMark getCheckpointMark()
+    {
+        return this.checkpointMark;
+    }
+
+    /**
+     * @param checkpointMark 送信が完了した場合の送信済み位置。記録しない場合はnull
+     */
+    public void setCheckpointMark(CheckpointMark checkpointMark)
+    {
+        this.checkpointMark = checkpointMark;
+    }
+}
@@ -0,0 +1,318 @@
+/**
+* Copyright (c) Acroquest Technology Co, Ltd. All Rights Reserved.
+* Please read the associated COPYRIGHTS file for more details.
+*
+* THE SOFTWARE IS PROVIDED BY Acroquest Technolog Co., Ltd.,
+* WITHOUT WARRANTY OF ANY KIND, EXPRESS OR IMPLIED, INCLUDING
+* BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+* FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT.
+* IN NO EVENT SHALL THE AUTHORS OR COPYRIGHT HOLDER BE LIABLE FOR ANY
+* CLAIM, DAMAGES SUFFERED BY LICENSEE AS A RESULT OF USING, MODIFYING
+* OR DISTRIBUTING THIS SOFTWARE OR ITS DERIVATIVES.
+*/
+package acromusashi.kafka.log.producer;
+
+import java.util.Arrays;
+import java.util.concurrent.atomic.AtomicLong;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * 順に読み込んだチャンクを改行(\nまたは\r\n)で区切り、行単位で{@link LineSink}に渡すクラス<br>
+ * <br>
+ * 各チャンクは1回だけ走査し、チャンク内で完結する行はコピーせずにチャンク上の範囲として渡す。
+ * チャンクの末尾の改行が現れていない行の途中は内部に持ち越し、次のチャンクの先頭と連結してから渡す。<br>
+ * 最大行長を超える行は最大行長までに切り詰めて渡し、残りは次の改行まで読み捨てる。
+ * そのため持ち越しに使用するメモリは最大行長を超えない。切り詰めた行数は{@link #getTruncatedCount()}で取得できる。<br>
+ * 持ち越しを保持するため、1つのストリーム(ファイル)ごとにインスタンスを生成し、複数のスレッドから同時に使用しないこと。
+ *
+ * @author kimura
+ */
+public final class LineFramer
+{
+    /** デフォルトの最大行長(byte) */
+    public static final int     DEFAULT_MAX_LINE_LENGTH = 1024 * 1024;
+
+    /** Logger */
+    private static final Logger logger                  = LoggerFactory.getLogger(LineFramer.class);
+
+    /** 空の持ち越し */
+    private static final byte[] NO_CARRY                = new byte[0];
+
+    /** 持ち越しが空になった後も保持し続ける持ち越しバッファの最大サイズ */
+    private static final int    RETAIN_CARRY_SIZE       = 8192;
+
+    /** 最大行長(byte) */
+    private final int           maxLineLength;
+
+    /** 切り詰めた行数 */
+    private final AtomicLong    truncatedCount;
+
+    /** 持ち越した行の途中 */
+    private byte[]              carry                   = NO_CARRY;
+
+    /** 持ち越した行の途中のサイズ */
+    private int                 carryLength;
+
+    /** 最大行長を超えた行の残りを読み捨て中の場合true */
+    private boolean             discarding;
+
+    /** 区切り中のチャンクの終了位置 */
+    private int                 chunkEnd;
+
+    /** 区切り中のチャンクで、次の行の開始位置 */
+    private int                 nextStart;
+
+    /**
+     * デフォルトの最大行長でインスタンスを生成する。
+     */
+    public LineFramer()
+    {
+        this(DEFAULT_MAX_LINE_LENGTH);
+    }
+
+    /**
+     * 最大行長を指定してインスタンスを生成する。
+     *
+     * @param maxLineLength 最大行長(byte)
+     */
+    public LineFramer(int maxLineLength)
+    {
+        this(maxLineLength, new AtomicLong());
+    }
+
+    /**
+     * 最大行長と、切り詰めた行数の集計先を指定してインスタンスを生成する。<br>
+     * 複数のインスタンスで集計先を共有することで、全体の切り詰め行数を集計できる。
+     *
+     * @param maxLineLength 最大行長(byte)
+     * @param truncatedCount 切り詰めた行数の集計先
+     */
+    public LineFramer(int maxLineLength, AtomicLong truncatedCount)
+    {
+        if (maxLineLength <= 0)
+        {
+            throw new IllegalArgumentException("maxLineLength must be positive. : maxLineLength="
+                    + maxLineLength);
+        }
+
+        this.maxLineLength = maxLineLength;
+        this.truncatedCount = truncatedCount;
+    }
+
+    /**
+     * 読み込んだチャンクを行に区切り、改行で終わる行をハンドラに渡す。
+     *
+     * @param buffer チャンクを格納したbyte配列
+     * @param offset チャンクの開始位置
+     * @param length チャンクの長さ
+     * @param sink 行を受け取るハンドラ
+     */
+    public void frame(byte[] buffer, int offset, int length, LineSink sink)
+    {
+        int end = offset + length;
+        int lineStart = offset;
+        this.chunkEnd = end;
+
+        for (int pos = offset; pos < end; pos++)
+        {
+            if (buffer[pos] != '\n')
+            {
+                continue;
+            }
+
+            this.nextStart = pos + 1;
+            emitLine(buffer, lineStart, pos, sink);
+            lineStart = pos + 1;
+        }
+
+        this.nextStart = end;
+        carryOver(buffer, lineStart, end, sink);
+
+        if (this.carryLength == 0 && this.carry.length > RETAIN_CARRY_SIZE)
+        {
+            this.carry = NO_CARRY;
+        }
+    }
+
+    /**
+     * 持ち越している行の途中を、改行で終わったものとしてハンドラに渡す。<br>
+     * ストリームの終端やファイルの切り替え時に呼び出す。
+     *
+     * @param sink 行を受け取るハンドラ
+     */
+    public void flush(LineSink sink)
+    {
+        this.discarding = false;
+        if (this.carryLength == 0)
+        {
+            return;
+        }
+
+        int lineEnd = this.carryLength;
+        if (this.carry[lineEnd - 1] == '\r')
+        {
+            lineEnd--;
+        }
+        this.carryLength = 0;
+        sink.handleLine(this.carry, 0, lineEnd);
+    }
+
+    /**
+     * 持ち越している行の途中を破棄する。
+     */
+    public void reset()
+    {
+        this.carry = NO_CARRY;
+        this.carryLength = 0;
+        this.discarding = false;
+        this.chunkEnd = 0;
+        this.nextStart = 0;
+    }
+
+    /**
+     * 読み込んだがハンドラに渡していないサイズを取得する。<br>
+     * {@link #frame(byte[], int, int, LineSink)}の実行中(ハンドラの呼び出し中)は、
+     * チャンクの残りと持ち越しの合計を、実行後は持ち越しのサイズを返す。読み捨てた分は含まない。
+     *
+     * @return ハンドラに渡していないサイズ
+     */
+    public int getPendingLength()
+    {
+        return this.carryLength + (this.chunkEnd - this.nextStart);
+    }
+
+    /**
+     * 1行を、持ち越しがある場合は連結してハンドラに渡す。
+     *
+     * @param buffer チャンクを格納したbyte配列
+     * @param start 行の開始位置
+     * @param newline 改行の位置
+     * @param sink 行を受け取るハンドラ
+     */
+    private void emitLine(byte[] buffer, int start, int newline, LineSink sink)
+    {
+        if (this.discarding)
+        {
+            // 切り詰めて渡した行の残りは読み捨てる
+            this.discarding = false;
+            return;
+        }
+
+        int end = newline;
+        if (this.carryLength == 0)
+        {
+            if (end > start && buffer[end - 1] == '\r')
+            {
+                end--;
+            }
+            if (end - start > this.maxLineLength)
+            {
+                end = start + this.maxLineLength;
+                countTruncated();
+            }
+            sink.handleLine(buffer, start, end);
+            return;
+        }
+
+        if (end > start && buffer[end - 1] == '\r')
+        {
+            end--;
+        }
+        else if (end == start && this.carry[this.carryLength - 1] == '\r')
+        {
+            // \r\nがチャンクの境界で分かれた場合
+            this.carryLength--;
+        }
+
+        int appendLength = end - start;
+        if (this.carryLength + appendLength > this.maxLineLength)
+        {
+            appendLength = this.maxLineLength - this.carryLength;
+            countTruncated();
+        }
+        appendCarry(buffer, start, appendLength);
+
+        int lineLength = this.carryLength;
+        this.carryLength = 0;
+        sink.handleLine(this.carry, 0, lineLength);
+    }
+
+    /**
+     * チャンクの末尾の改行が現れていない行の途中を持ち越す。<br>
+     * 持ち越しが最大行長を超える場合は、最大行長までを1行として渡し、以後は次の改行まで読み捨てる。
+     *
+     * @param buffer チャンクを格納したbyte配列
+     * @param start 行の途中の開始位置
+     * @param end 行の途中の終了位置(排他)
+     * @param sink 行を受け取るハンドラ
+     */
+    private void carryOver(byte[] buffer, int start, int end, LineSink sink)
+    {
+        if (this.discarding || start == end)
+        {
+            return;
+        }
+
+        int appendLength = end - start;
+        if (this.carryLength + appendLength <= this.maxLineLength)
+        {
+            appendCarry(buffer, start, appendLength);
+            return;
+        }
+
+        appendCarry(buffer, start, this.maxLineLength - this.carryLength);
+        countTruncated();
+        this.discarding = true;
+
+        int lineLength = this.carryLength;
+        this.carryLength = 0;
+        sink.handleLine(this.carry, 0, lineLength);
+    }
+
+    /**
+     * 持ち越しの末尾に追加する。
+     *
+     * @param buffer 追加するbyte列を格納したbyte配列
+     * @param start 開始位置
+     * @param length 長さ
+     */
+    private void appendCarry(byte[] buffer, int start, int length)
+    {
+        int required = this.carryLength + length;
+        if (required > this.carry.length)
+        {
+            int newLength = Math.min(this.maxLineLength, Math.max(required, this.carry.length * 2));
+            this.carry = Arrays.copyOf(this.carry, newLength);
+        }
+        System.arraycopy(buffer, start, this.carry, this.carryLength, length);
+        this.carryLength = required;
+    }
+
+    /**
+     * 切り詰めた行数を加算する。
+     */
+    private void countTruncated()
+    {
+        long count = this.truncatedCount.incrementAndGet();
+        logger.warn("Line exceeds max length. Truncated. : maxLineLength=" + this.maxLineLength
+                + ", truncatedCount=" + count);
+    }
+
+    /**
+     * @return 切り詰めた行数(集計先を共有している場合は合計)
+     */
+    public long getTruncatedCount()
+    {
+        return this.truncatedCount.get();
+    }
+
+    /**
+     * @return 最大行長(byte)
+     */
+    public int getMaxLineLength()
+    {
+        return this.maxLineLength;
+    }
+}
@@ -0,0 +1,43 @@
+/**
+* Copyright (c) Acroquest Technology Co, Ltd. All Rights Reserved.
+* Please read the associated COPYRIGHTS file for more details.
+*
+* THE SOFTWARE IS PROVIDED BY Acroquest Technolog Co., Ltd.,
+* WITHOUT WARRANTY OF ANY KIND, EXPRESS OR IMPLIED, INCLUDING
+* BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+* FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT.
+* IN NO EVENT SHALL THE AUTHORS OR COPYRIGHT HOLDER BE LIABLE FOR ANY
+* CLAIM, DAMAGES SUFFERED BY LICENSEE AS A RESULT OF USING, MODIFYING
+* OR DISTRIBUTING THIS SOFTWARE OR ITS DERIVATIVES.
+*/
+package acromusashi.kafka.log.producer;
+
+/**
+ * {@link MultiFileTailer}が読み込んだ行を処理するハンドラ<br>
+ * <br>
+ * 複数のワーカースレッドから呼び出されるため、スレッドセーフに実装すること。
+ * 1ファイルの1回の読込の間は同一スレッドから呼び出され、{@link #handleLine(TailedFile, byte[], int, int)}の後に
+ * {@link #endBatch(TailedFile)}が呼び出される。
+ *
+ * @author kimura
+ */
+public interface LineHandler
+{
+    /**
+     * 読み込んだ1行を処理する。
+     *
+     * @param file 読込元のファイル
+     * @param buffer 行を格納したbyte配列(呼び出し後に再利用されるため、保持しないこと)
+     * @param start 行の開始位置
+     * @param end 行の終了位置(改行を含まない)
+     */
+    void handleLine(TailedFile file, byte[] buffer, int start, int end);
+
+    /**
+     * 1ファイルの1回の読込の終了時に呼び出される。処理待ちの行を確定させる。<br>
+     * {@link MultiFileTailer}では、ファイルが存在せず読み込めなかった場合も呼び出される。
+     *
+     * @param file 読込元のファイル。{@link TailedFile#getCommittedOffset()}までの行を処理済みである
+     */
+    void endBatch(TailedFile file);
+}
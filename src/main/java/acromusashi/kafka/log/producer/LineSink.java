@@ -0,0 +1,30 @@
+/**
+* Copyright (c) Acroquest Technology Co, Ltd. All Rights Reserved.
+* Please read the associated COPYRIGHTS file for more details.
+*
+* THE SOFTWARE IS PROVIDED BY Acroquest Technolog Co., Ltd.,
+* WITHOUT WARRANTY OF ANY KIND, EXPRESS OR IMPLIED, INCLUDING
+* BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+* FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT.
+* IN NO EVENT SHALL THE AUTHORS OR COPYRIGHT HOLDER BE LIABLE FOR ANY
+* CLAIM, DAMAGES SUFFERED BY LICENSEE AS A RESULT OF USING, MODIFYING
+* OR DISTRIBUTING THIS SOFTWARE OR ITS DERIVATIVES.
+*/
+package acromusashi.kafka.log.producer;
+
+/**
+ * {@link LineFramer}が区切った行を受け取るハンドラ
+ *
+ * @author kimura
+ */
+public interface LineSink
+{
+    /**
+     * 区切った1行を処理する。
+     *
+     * @param buffer 行を格納したbyte配列(呼び出し後に再利用されるため、保持しないこと)
+     * @param start 行の開始位置
+     * @param end 行の終了位置(改行を含まない)
+     */
+    void handleLine(byte[] buffer, int start, int end);
+}
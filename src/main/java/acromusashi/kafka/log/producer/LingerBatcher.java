@@ -0,0 +1,265 @@
+/**
+* Copyright (c) Acroquest Technology Co, Ltd. All Rights Reserved.
+* Please read the associated COPYRIGHTS file for more details.
+*
+* THE SOFTWARE IS PROVIDED BY Acroquest Technolog Co., Ltd.,
+* WITHOUT WARRANTY OF ANY KIND, EXPRESS OR IMPLIED, INCLUDING
+* BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+* FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT.
+* IN NO EVENT SHALL THE AUTHORS OR COPYRIGHT HOLDER BE LIABLE FOR ANY
+* CLAIM, DAMAGES SUFFERED BY LICENSEE AS A RESULT OF USING, MODIFYING
+* OR DISTRIBUTING THIS SOFTWARE OR ITS DERIVATIVES.
+*/
+package acromusashi.kafka.log.producer;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.locks.ReentrantLock;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * 区切った行をまとめ、行数・サイズ・待機時間のいずれかの上限に達した時点で{@link LogPipeline}に渡すクラス<br>
+ * <br>
+ * 行数またはサイズの上限に達したまとまりは、読込段のスレッドが読み込んだ範囲の処理を終えた時点
+ * ({@link #endChunk(CheckpointMark)})で渡す。
+ * 読込段のスレッドが次の読込を待つ間に最初の行から待機時間が経過したまとまりは、{@link LingerTimer}のスレッドが渡す。
+ * 閑散時も行が待機時間以上滞留せず、繁忙時は上限までまとめて送信する。<br>
+ * パイプラインへの受け渡しはロックで排他する。タイマーのスレッドはロックを取得できない場合、
+ * またはキューが満杯の場合は待たずに次の周期で再試行する。
+ *
+ * @author kimura
+ */
+public class LingerBatcher implements LineSink, LingerTarget
+{
+    /** ロガー */
+    private static final Logger   logger = LoggerFactory.getLogger(LingerBatcher.class);
+
+    /** 名称 */
+    private final String          name;
+
+    /** 渡し先のパイプライン */
+    private final LogPipeline     pipeline;
+
+    /** まとまりの最大行数 */
+    private final int             maxMessages;
+
+    /** まとまりの最大サイズ(byte) */
+    private final int             maxBytes;
+
+    /** まとまりの最大待機時間(ナノ秒) */
+    private final long            lingerNanos;
+
+    /** 統計 */
+    private final BatchStatistics statistics;
+
+    /** パイプラインへの受け渡しを排他するロック */
+    private final ReentrantLock   lock   = new ReentrantLock();
+
+    /** 上限に達し、渡す順番を待つまとまり */
+    private final List<LineBatch> ready  = new ArrayList<>();
+
+    /** 行を追加中のまとまり */
+    private LineBatch             current;
+
+    /**
+     * 以下のパラメタを指定してインスタンスを生成する。
+     *
+     * @param name 名称
+     * @param pipeline 渡し先のパイプライン
+     * @param maxMessages まとまりの最大行数
+     * @param maxBytes まとまりの最大サイズ(byte)
+     * @param lingerMillis まとまりの最大待機時間(ミリ秒)。0の場合は読み込んだ範囲ごとに渡す
+     * @param statistics 統計
+     */
+    public LingerBatcher(String name, LogPipeline pipeline, int maxMessages, int maxBytes,
+            long lingerMillis, BatchStatistics statistics)
+    {
+        this.name = name;
+        this.pipeline = pipeline;
+        this.maxMessages = Math.max(1, maxMessages);
+        this.maxBytes = Math.max(1, maxBytes);
+        this.lingerNanos = TimeUnit.MILLISECONDS.toNanos(lingerMillis);
+        this.statistics = statistics;
+        this.current = newBatch();
+    }
+
+    /**
+     * {@inheritDoc}<br>
+     * 行数またはサイズの上限に達した場合は、まとまりを渡す順番待ちにする。
+     */
+    @Override
+    public void handleLine(byte[] buffer, int start, int end)
+    {
+        this.lock.lock();
+        try
+        {
+            this.current.add(buffer, start, end);
+            if (this.current.getLineCount() >= this.maxMessages)
+            {
+                enqueueCurrent(BatchStatistics.FLUSH_MESSAGES);
+            }
+            else if (this.current.getByteLength() >= this.maxBytes)
+            {
+                enqueueCurrent(BatchStatistics.FLUSH_BYTES);
+            }
+        }
+        finally
+        {
+            this.lock.unlock();
+        }
+    }
+
+    /**
+     * 読み込んだ範囲の処理の終了時に、送信済み位置を記録し、順番待ちのまとまりをパイプラインに渡す。
+     * キューが満杯の場合は空くまで待つ。
+     *
+     * @param checkpointMark 読み込んだ範囲の行を全て送信した場合の送信済み位置。記録しない場合はnull
+     * @throws IOException 変換段・送信段で例外が発生していた場合、または待機中に割り込まれた場合
+     */
+    public void endChunk(CheckpointMark checkpointMark) throws IOException
+    {
+        this.lock.lock();
+        try
+        {
+            // 送信済み位置は、読み込んだ範囲の最後の行を含むまとまりの送信完了時に記録する
+            if (this.current.isEmpty() == false)
+            {
+                this.current.setCheckpointMark(checkpointMark);
+            }
+            else if (this.ready.isEmpty() == false)
+            {
+                this.ready.get(this.ready.size() - 1).setCheckpointMark(checkpointMark);
+            }
+
+            if (this.lingerNanos == 0L && this.current.isEmpty() == false)
+            {
+                enqueueCurrent(BatchStatistics.FLUSH_LINGER);
+            }
+            submitReady();
+        }
+        finally
+        {
+            this.lock.unlock();
+        }
+    }
+
+    /**
+     * 入力の終了時に、追加中のまとまりを含む全てのまとまりをパイプラインに渡す。
+     *
+     * @throws IOException 変換段・送信段で例外が発生していた場合、または待機中に割り込まれた場合
+     */
+    public void flush() throws IOException
+    {
+        this.lock.lock();
+        try
+        {
+            if (this.current.isEmpty() == false)
+            {
+                enqueueCurrent(BatchStatistics.FLUSH_END);
+            }
+            submitReady();
+        }
+        finally
+        {
+            this.lock.unlock();
+        }
+    }
+
+    /**
+     * {@inheritDoc}<br>
+     * 最初の行から待機時間が経過したまとまりを、待たずにパイプラインに渡す。
+     * 読込段のスレッドが受け渡し中の場合、順番待ちのまとまりがある場合、またはキューが満杯の場合は何もしない。
+     */
+    @Override
+    public boolean flushIfLingered(long nowNanos)
+    {
+        if (this.lock.tryLock() == false)
+        {
+            return false;
+        }
+
+        try
+        {
+            if (this.current.isEmpty() || this.ready.isEmpty() == false
+                    || nowNanos - this.current.getFirstLineNanos() < this.lingerNanos)
+            {
+                return false;
+            }
+
+            if (this.pipeline.trySubmit(this.current) == false)
+            {
+                return false;
+            }
+            this.statistics.recordFlush(BatchStatistics.FLUSH_LINGER, this.current.getLineCount());
+            this.current = newBatch();
+            return true;
+        }
+        catch (IOException ex)
+        {
+            // パイプラインの失敗は、読込段のスレッドが次の受け渡し時に検知する
+            logger.debug("Linger flush skipped. : name=" + this.name, ex);
+            return false;
+        }
+        finally
+        {
+            this.lock.unlock();
+        }
+    }
+
+    /**
+     * 追加中のまとまりを渡す順番待ちにし、新しいまとまりを生成する。ロックを取得して呼び出すこと。
+     *
+     * @param reason 契機
+     */
+    private void enqueueCurrent(int reason)
+    {
+        this.statistics.recordFlush(reason, this.current.getLineCount());
+        this.ready.add(this.current);
+        this.current = newBatch();
+    }
+
+    /**
+     * 順番待ちのまとまりを、順にパイプラインに渡す。ロックを取得して呼び出すこと。
+     *
+     * @throws IOException 変換段・送信段で例外が発生していた場合、または待機中に割り込まれた場合
+     */
+    private void submitReady() throws IOException
+    {
+        for (LineBatch batch : this.ready)
+        {
+            this.pipeline.submit(batch);
+        }
+        this.ready.clear();
+    }
+
+    /**
+     * 行を追加するまとまりを生成する。
+     *
+     * @return 行のまとまり
+     */
+    private LineBatch newBatch()
+    {
+        return new LineBatch(Math.min(this.maxBytes, 65536), Math.min(this.maxMessages, 1024));
+    }
+
+    /**
+     * @return 統計
+     */
+    public BatchStatistics getStatistics()
+    {
+        return this.statistics;
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public String toString()
+    {
+        return this.name + " : " + this.statistics;
+    }
+}
@@ -0,0 +1,32 @@
+/**
+* Copyright (c) Acroquest Technology Co, Ltd. All Rights Reserved.
+* Please read the associated COPYRIGHTS file for more details.
+*
+* THE SOFTWARE IS PROVIDED BY Acroquest Technolog Co., Ltd.,
+* WITHOUT WARRANTY OF ANY KIND, EXPRESS OR IMPLIED, INCLUDING
+* BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+* FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT.
+* IN NO EVENT SHALL THE AUTHORS OR COPYRIGHT HOLDER BE LIABLE FOR ANY
+* CLAIM, DAMAGES SUFFERED BY LICENSEE AS A RESULT OF USING, MODIFYING
+* OR DISTRIBUTING THIS SOFTWARE OR ITS DERIVATIVES.
+*/
+package acromusashi.kafka.log.producer;
+
+/**
+ * {@link LingerTimer}が待機時間を監視する対象<br>
+ * <br>
+ * タイマーのスレッドから周期ごとに呼び出されるため、送信の完了やキューの空きを待たずに戻ること。
+ * {@link #toString()}は統計の出力に使用する。
+ *
+ * @author kimura
+ */
+public interface LingerTarget
+{
+    /**
+     * 最初の行から待機時間が経過したまとまりを、送信に回す。
+     *
+     * @param nowNanos 現在時刻(System.nanoTime())
+     * @return まとまりを送信に回した場合true
+     */
+    boolean flushIfLingered(long nowNanos);
+}
@@ -0,0 +1,171 @@
+/**
+* Copyright (c) Acroquest Technology Co, Ltd. All Rights Reserved.
+* Please read the associated COPYRIGHTS file for more details.
+*
+* THE SOFTWARE IS PROVIDED BY Acroquest Technolog Co., Ltd.,
+* WITHOUT WARRANTY OF ANY KIND, EXPRESS OR IMPLIED, INCLUDING
+* BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+* FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT.
+* IN NO EVENT SHALL THE AUTHORS OR COPYRIGHT HOLDER BE LIABLE FOR ANY
+* CLAIM, DAMAGES SUFFERED BY LICENSEE AS A RESULT OF USING, MODIFYING
+* OR DISTRIBUTING THIS SOFTWARE OR ITS DERIVATIVES.
+*/
+package acromusashi.kafka.log.producer;
+
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * 複数の{@link LingerTarget}の待機時間を1つのスレッドで監視するタイマー<br>
+ * <br>
+ * 周期ごとに登録された全てのまとめ処理を確認し、待機時間が経過したまとまりを送信に回す。
+ * 単一ファイルの追尾({@link LingerBatcher})と複数ファイルの追尾({@link MultiFileTailExecutor})で共有し、
+ * 追尾するファイルの数によらずスレッドは1つとする。<br>
+ * 統計の出力間隔ごとに、登録されたまとめ処理の統計をログに出力する。
+ *
+ * @author kimura
+ */
+public final class LingerTimer
+{
+    /** デフォルトの確認周期(ミリ秒) */
+    public static final long          DEFAULT_TICK_INTERVAL   = 5L;
+
+    /** デフォルトの統計の出力間隔(ミリ秒) */
+    public static final long          DEFAULT_REPORT_INTERVAL = 60000L;
+
+    /** ロガー */
+    private static final Logger       logger                  = LoggerFactory.getLogger(LingerTimer.class);
+
+    /** 共有のタイマー */
+    private static LingerTimer        shared;
+
+    /** 確認周期(ミリ秒) */
+    private final long                tickIntervalMillis;
+
+    /** 統計の出力間隔(ナノ秒)。0の場合は出力しない */
+    private final long                reportIntervalNanos;
+
+    /** 登録されたまとめ処理 */
+    private final List<LingerTarget>  targets                 = new CopyOnWriteArrayList<>();
+
+    /** 次に統計を出力する時刻(System.nanoTime()) */
+    private long                      nextReportNanos;
+
+    /** 確認を行うExecutor。開始前はnull */
+    private ScheduledExecutorService  executor;
+
+    /**
+     * 以下のパラメタを指定してインスタンスを生成する。
+     *
+     * @param tickIntervalMillis 確認周期(ミリ秒)
+     * @param reportIntervalMillis 統計の出力間隔(ミリ秒)。0の場合は出力しない
+     */
+    public LingerTimer(long tickIntervalMillis, long reportIntervalMillis)
+    {
+        this.tickIntervalMillis = Math.max(1L, tickIntervalMillis);
+        this.reportIntervalNanos = TimeUnit.MILLISECONDS.toNanos(reportIntervalMillis);
+    }
+
+    /**
+     * 全てのまとめ処理で共有するタイマーを取得する。
+     *
+     * @return 共有のタイマー
+     */
+    public static synchronized LingerTimer getShared()
+    {
+        if (shared == null)
+        {
+            shared = new LingerTimer(DEFAULT_TICK_INTERVAL, DEFAULT_REPORT_INTERVAL);
+        }
+        return shared;
+    }
+
+    /**
+     * まとめ処理を登録する。初回の登録時に確認を開始する。
+     *
+     * @param target まとめ処理
+     */
+    public synchronized void register(LingerTarget target)
+    {
+        this.targets.add(target);
+        if (this.executor != null)
+        {
+            return;
+        }
+
+        this.nextReportNanos = System.nanoTime() + this.reportIntervalNanos;
+        this.executor = Executors.newSingleThreadScheduledExecutor(new ThreadFactory() {
+            @Override
+            public Thread newThread(Runnable runnable)
+            {
+                Thread thread = new Thread(runnable, "LingerTimer");
+                thread.setDaemon(true);
+                return thread;
+            }
+        });
+        this.executor.scheduleWithFixedDelay(new Runnable() {
+            @Override
+            public void run()
+            {
+                tick();
+            }
+        }, this.tickIntervalMillis, this.tickIntervalMillis, TimeUnit.MILLISECONDS);
+    }
+
+    /**
+     * まとめ処理の登録を解除する。
+     *
+     * @param target まとめ処理
+     */
+    public void unregister(LingerTarget target)
+    {
+        this.targets.remove(target);
+    }
+
+    /**
+     * 登録された全てのまとめ処理を確認し、統計の出力時刻を過ぎている場合は統計を出力する。
+     */
+    void tick()
+    {
+        long now = System.nanoTime();
+        for (LingerTarget target : this.targets)
+        {
+            try
+            {
+                target.flushIfLingered(now);
+            }
+            catch (RuntimeException ex)
+            {
+                logger.warn("Linger flush failed. : " + target, ex);
+            }
+        }
+
+        if (this.reportIntervalNanos > 0L && now - this.nextReportNanos >= 0L)
+        {
+            this.nextReportNanos = now + this.reportIntervalNanos;
+            for (LingerTarget target : this.targets)
+            {
+                logger.info("Batch statistics. : " + target);
+            }
+        }
+    }
+
+    /**
+     * 確認を停止する。
+     */
+    public synchronized void close()
+    {
+        if (this.executor != null)
+        {
+            this.executor.shutdownNow();
+            this.executor = null;
+        }
+    }
+}
@@ -15,6 +15,7 @@ package acromusashi.kafka.log.producer;
 import java.io.IOException;
 import java.net.InetAddress;
 import java.net.UnknownHostException;
+import java.util.List;
 import java.util.Map;
 import java.util.concurrent.ExecutorService;
 import java.util.concurrent.Executors;
@@ -32,7 +33,11 @@ import org.apache.commons.cli.PosixParser;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
+import acromusashi.kafka.log.producer.util.ApacheLogParseUtil;
+import acromusashi.kafka.log.producer.util.CompiledLogFormat;
+import acromusashi.kafka.log.producer.util.LogParserType;
 import acromusashi.kafka.log.producer.util.ProducerConfigConverter;
+import acromusashi.kafka.log.producer.util.TailMode;
 import acromusashi.kafka.log.producer.util.YamlReadUtil;
 
 /**
@@ -43,7 +48,55 @@ import acromusashi.kafka.log.producer.util.YamlReadUtil;
 public class LinuxApacheLogProducer
 {
     /** Logger */
-    private static final Logger logger = LoggerFactory.getLogger(LinuxApacheLogProducer.class);
+    private static final Logger logger                    = LoggerFactory.getLogger(LinuxApacheLogProducer.class);
+
+    /** JVM内で追尾する際のデフォルトのポーリング間隔(ミリ秒) */
+    private static final long   DEFAULT_POLL_INTERVAL     = 1000L;
+
+    /** メモリマップする窓のデフォルトのサイズ(MB) */
+    private static final long   DEFAULT_MAP_WINDOW_MB     = 64L;
+
+    /** 複数ファイルを追尾する際のデフォルトのワーカー数 */
+    private static final long   DEFAULT_WORKERS           = 4L;
+
+    /** 複数ファイルを追尾する際の、1ファイルの1回の読込で読み込むデフォルトの最大サイズ(KB) */
+    private static final long   DEFAULT_READ_BUDGET_KB    = 1024L;
+
+    /** 複数ファイルを追尾する際のデフォルトのglobの再走査間隔(ミリ秒) */
+    private static final long   DEFAULT_RESCAN_INTERVAL   = 10000L;
+
+    /** デフォルトの最大行長(KB) */
+    private static final long   DEFAULT_MAX_LINE_KB       = 1024L;
+
+    /** ローテート済みのログファイルを送信する際のデフォルトのワーカー数 */
+    private static final long   DEFAULT_BACKFILL_WORKERS  = 2L;
+
+    /** ローテート済みのログファイルを送信する際のデフォルトの1秒あたりの最大行数 */
+    private static final long   DEFAULT_BACKFILL_RATE     = 10000L;
+
+    /** ローテート済みのログファイルを範囲に分割して送信するデフォルトのファイルサイズの閾値(MB) */
+    private static final long   DEFAULT_BACKFILL_SPLIT_MB = 256L;
+
+    /** ローテート済みのログファイルの送信に失敗した場合のデフォルトの再試行までの間隔(ミリ秒) */
+    private static final long   DEFAULT_BACKFILL_RETRY    = 1000L;
+
+    /** ローテート済みのログファイルの送信に失敗した場合のデフォルトの連続した再試行の上限回数 */
+    private static final long   DEFAULT_BACKFILL_RETRIES  = 10L;
+
+    /** デフォルトのパイプラインに滞留する行の合計サイズの上限(MB) */
+    private static final long   DEFAULT_PIPELINE_MAX_MB   = 32L;
+
+    /** デフォルトのまとまりの最大行数 */
+    private static final long   DEFAULT_BATCH_MESSAGES    = 500L;
+
+    /** デフォルトのまとまりの最大サイズ(KB) */
+    private static final long   DEFAULT_BATCH_KB          = 1024L;
+
+    /** デフォルトのまとまりの最大待機時間(ミリ秒) */
+    private static final long   DEFAULT_BATCH_LINGER      = 100L;
+
+    /** デフォルトの送信中のまとまりの数の上限 */
+    private static final long   DEFAULT_MAX_IN_FLIGHT     = 1L;
 
     /**
      * パラメータを指定せずにインスタンスを生成する。
@@ -126,9 +179,24 @@ public class LinuxApacheLogProducer
         String tailCommand = configMap.get("tail.command").toString();
         String tailPath = configMap.get("tail.path").toString();
         String tailCommandStr = tailCommand + " " + tailPath;
+        TailMode tailMode = TailMode.fromConfigName(configMap.get("tail.mode"));
         String kafkaTopic = configMap.get("kafka.topic").toString();
-        String apacheLogFormat = configMap.get("apachelog.format").toString();
+        List<String> apacheLogFormats = ApacheLogParseUtil.getFormatList(configMap.get("apachelog.format"));
+        // ログフォーマットは設定読込時に一度だけコンパイルし、以後は使いまわす
+        LogParserType parserType = LogParserType.fromConfigName(configMap.get("apachelog.parser"));
+        List<String> fields = ApacheLogParseUtil.getFieldList(configMap.get("json.fields"));
+        List<CompiledLogFormat> logFormats = ApacheLogParseUtil.getCompiledLogFormats(
+                apacheLogFormats, parserType, fields);
+        for (CompiledLogFormat logFormat : logFormats)
+        {
+            if (parserType == LogParserType.TOKENIZER && logFormat.isTokenizerEnabled() == false)
+            {
+                logger.warn("Tokenizer does not support the format. Use regex. : format=" + logFormat);
+            }
+        }
         String jsonDateFormat = configMap.get("jsondate.format").toString();
+        boolean typedFields = Boolean.parseBoolean(String.valueOf(configMap.get("json.typed.fields")));
+        boolean epochMillisTime = Boolean.parseBoolean(String.valueOf(configMap.get("json.time.epochmillis")));
 
         String hostname = "defaultHost";
 
@@ -143,18 +211,188 @@ public class LinuxApacheLogProducer
 
         ProducerConfig producerConfig = ProducerConfigConverter.convertToProducerConfig(configMap);
 
-        logger.info("Producer starting. Command=" + tailCommandStr);
+        List<String> backfillPaths = YamlReadUtil.getStringList(configMap, "backfill.paths");
+        if (backfillPaths.isEmpty() == false)
+        {
+            startBackfill(configMap, backfillPaths, kafkaTopic, logFormats, jsonDateFormat,
+                    hostname, typedFields, epochMillisTime, producerConfig);
+        }
+
+        List<String> tailPaths = YamlReadUtil.getStringList(configMap, "tail.paths");
+        if (tailPaths.isEmpty() == false)
+        {
+            startMultiFileTail(configMap, tailPaths, kafkaTopic, logFormats, jsonDateFormat,
+                    hostname, typedFields, epochMillisTime, producerConfig);
+            return;
+        }
+
+        logger.info("Producer starting. Mode=" + tailMode.getConfigName() + ", Command="
+                + tailCommandStr + ", Format=" + logFormats);
 
         ExecutorService executorService = Executors.newSingleThreadExecutor();
-        LinuxLogTailExecutor executor = new LinuxLogTailExecutor(tailCommandStr, kafkaTopic,
-                apacheLogFormat, jsonDateFormat, hostname);
+        final LinuxLogTailExecutor executor = new LinuxLogTailExecutor(tailCommandStr,
+                kafkaTopic, logFormats, jsonDateFormat, hostname, typedFields, epochMillisTime);
+        if (tailMode != TailMode.COMMAND)
+        {
+            long pollIntervalMillis = YamlReadUtil.getLong(configMap, "tail.poll.interval",
+                    DEFAULT_POLL_INTERVAL);
+            long mapWindowSize = 0L;
+            if (tailMode == TailMode.MMAP)
+            {
+                mapWindowSize = YamlReadUtil.getLong(configMap, "tail.mmap.window",
+                        DEFAULT_MAP_WINDOW_MB) * 1024L * 1024L;
+            }
+            executor.setFileTail(tailPath, pollIntervalMillis, mapWindowSize);
+            executor.setCheckpointStore(CheckpointStore.createCheckpointStore(configMap));
+        }
+        executor.setMaxLineLength(getMaxLineLength(configMap));
+        executor.setPipelineQueueSize((int) YamlReadUtil.getLong(configMap, "tail.pipeline.queue",
+                LogPipeline.DEFAULT_QUEUE_CAPACITY));
+        int parseWorkerCount = (int) YamlReadUtil.getLong(configMap, "tail.parse.workers", 0L);
+        if (parseWorkerCount <= 0)
+        {
+            parseWorkerCount = Runtime.getRuntime().availableProcessors();
+        }
+        executor.setParseWorkerCount(parseWorkerCount);
+        executor.setPipelineMaxBytes(YamlReadUtil.getLong(configMap, "tail.pipeline.max.bytes",
+                DEFAULT_PIPELINE_MAX_MB) * 1024L * 1024L);
+        executor.setBatching((int) YamlReadUtil.getLong(configMap, "tail.batch.max.messages",
+                DEFAULT_BATCH_MESSAGES), (int) (YamlReadUtil.getLong(configMap,
+                "tail.batch.max.bytes", DEFAULT_BATCH_KB) * 1024L), YamlReadUtil.getLong(
+                configMap, "tail.batch.linger", DEFAULT_BATCH_LINGER));
+        executor.setMaxInFlight((int) YamlReadUtil.getLong(configMap, "tail.send.inflight",
+                DEFAULT_MAX_IN_FLIGHT));
+        SpillQueue spillQueue = SpillQueue.createSpillQueue(configMap);
+        if (spillQueue != null)
+        {
+            executor.setSpillQueue(spillQueue, YamlReadUtil.getLong(configMap,
+                    "spill.retry.interval", SpillingMessageSink.DEFAULT_RETRY_INTERVAL));
+        }
         executor.initialize(producerConfig);
+        Runtime.getRuntime().addShutdownHook(new Thread("LinuxLogTailExecutorShutdown") {
+            @Override
+            public void run()
+            {
+                executor.close();
+            }
+        });
 
         executorService.execute(executor);
 
         logger.info("Producer started");
     }
 
+    /**
+     * globで指定した複数のログファイルの追尾を開始する。
+     * 
+     * @param configMap 設定値格納Map
+     * @param tailPaths 追尾するファイルのglobのリスト
+     * @param kafkaTopic 送信する際のトピック
+     * @param logFormats コンパイル済みのapacheのログのフォーマットのリスト
+     * @param jsonDateFormat jsonで送る際の時刻の形式
+     * @param hostname Producerが動作するホスト
+     * @param typedFields 数値のフィールドを数値型で送る場合true
+     * @param epochMillisTime 時刻をエポックミリ秒で送る場合true
+     * @param producerConfig KafkaProducerConfig
+     */
+    private void startMultiFileTail(Map<String, Object> configMap, List<String> tailPaths,
+            String kafkaTopic, List<CompiledLogFormat> logFormats, String jsonDateFormat,
+            String hostname, boolean typedFields, boolean epochMillisTime,
+            ProducerConfig producerConfig)
+    {
+        int workerCount = (int) YamlReadUtil.getLong(configMap, "tail.workers", DEFAULT_WORKERS);
+        long readBudget = YamlReadUtil.getLong(configMap, "tail.read.budget",
+                DEFAULT_READ_BUDGET_KB) * 1024L;
+        long pollIntervalMillis = YamlReadUtil.getLong(configMap, "tail.poll.interval",
+                DEFAULT_POLL_INTERVAL);
+        long rescanIntervalMillis = YamlReadUtil.getLong(configMap, "tail.rescan.interval",
+                DEFAULT_RESCAN_INTERVAL);
+
+        logger.info("Producer starting. Paths=" + tailPaths + ", Workers=" + workerCount
+                + ", Format=" + logFormats);
+
+        MultiFileTailExecutor executor = new MultiFileTailExecutor(tailPaths, kafkaTopic,
+                logFormats, jsonDateFormat, hostname, typedFields, epochMillisTime, workerCount,
+                readBudget, pollIntervalMillis, rescanIntervalMillis);
+        executor.setCheckpointStore(CheckpointStore.createCheckpointStore(configMap));
+        executor.setMaxLineLength(getMaxLineLength(configMap));
+        executor.setBatching((int) YamlReadUtil.getLong(configMap, "tail.batch.max.messages",
+                DEFAULT_BATCH_MESSAGES), (int) (YamlReadUtil.getLong(configMap,
+                "tail.batch.max.bytes", DEFAULT_BATCH_KB) * 1024L), YamlReadUtil.getLong(
+                configMap, "tail.batch.linger", DEFAULT_BATCH_LINGER));
+        executor.initialize(producerConfig);
+
+        ExecutorService executorService = Executors.newSingleThreadExecutor();
+        executorService.execute(executor);
+
+        logger.info("Producer started");
+    }
+
+    /**
+     * ローテート済みのログファイルの送信を、追尾とは別のスレッドで開始する。
+     * 
+     * @param configMap 設定値格納Map
+     * @param backfillPaths 送信するファイルのglobのリスト
+     * @param kafkaTopic 送信する際のトピック
+     * @param logFormats コンパイル済みのapacheのログのフォーマットのリスト
+     * @param jsonDateFormat jsonで送る際の時刻の形式
+     * @param hostname Producerが動作するホスト
+     * @param typedFields 数値のフィールドを数値型で送る場合true
+     * @param epochMillisTime 時刻をエポックミリ秒で送る場合true
+     * @param producerConfig KafkaProducerConfig
+     */
+    private void startBackfill(Map<String, Object> configMap, List<String> backfillPaths,
+            String kafkaTopic, List<CompiledLogFormat> logFormats, String jsonDateFormat,
+            String hostname, boolean typedFields, boolean epochMillisTime,
+            ProducerConfig producerConfig)
+    {
+        int workerCount = (int) YamlReadUtil.getLong(configMap, "backfill.workers",
+                DEFAULT_BACKFILL_WORKERS);
+        long maxLinesPerSecond = YamlReadUtil.getLong(configMap, "backfill.rate",
+                DEFAULT_BACKFILL_RATE);
+
+        long splitSize = YamlReadUtil.getLong(configMap, "backfill.split.size",
+                DEFAULT_BACKFILL_SPLIT_MB) * 1024L * 1024L;
+        int parallelism = (int) YamlReadUtil.getLong(configMap, "backfill.parallelism", 0L);
+        if (parallelism <= 0)
+        {
+            parallelism = Runtime.getRuntime().availableProcessors();
+        }
+        long retryInterval = YamlReadUtil.getLong(configMap, "backfill.retry.interval",
+                DEFAULT_BACKFILL_RETRY);
+        int maxRetries = (int) YamlReadUtil.getLong(configMap, "backfill.retry.max",
+                DEFAULT_BACKFILL_RETRIES);
+
+        logger.info("Backfill starting. Paths=" + backfillPaths + ", Workers=" + workerCount
+                + ", Rate=" + maxLinesPerSecond + ", SplitSize=" + splitSize + ", Parallelism="
+                + parallelism);
+
+        BackfillExecutor executor = new BackfillExecutor(backfillPaths, kafkaTopic, logFormats,
+                jsonDateFormat, hostname, typedFields, epochMillisTime, workerCount,
+                maxLinesPerSecond);
+        executor.setMaxLineLength(getMaxLineLength(configMap));
+        executor.setSplit(splitSize, parallelism);
+        executor.setRetry(retryInterval, maxRetries);
+        executor.initialize(producerConfig);
+
+        ExecutorService executorService = Executors.newSingleThreadExecutor();
+        executorService.execute(executor);
+        executorService.shutdown();
+    }
+
+    /**
+     * 設定値から最大行長を取得する。
+     * 
+     * @param configMap 設定値格納Map
+     * @return 最大行長(byte)
+     */
+    private static int getMaxLineLength(Map<String, Object> configMap)
+    {
+        long maxLineLength = YamlReadUtil.getLong(configMap, "tail.max.line.length",
+                DEFAULT_MAX_LINE_KB) * 1024L;
+        return (int) Math.min(Integer.MAX_VALUE - 8, maxLineLength);
+    }
+
     /**
      * コマンドライン解析用のオプションを生成
      * 
@@ -12,9 +12,19 @@
 */
 package acromusashi.kafka.log.producer;
 
-import java.io.BufferedReader;
-import java.io.InputStreamReader;
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InterruptedIOException;
+import java.nio.charset.Charset;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.Collections;
 import java.util.List;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
 
 import kafka.javaapi.producer.Producer;
 import kafka.producer.KeyedMessage;
@@ -24,7 +34,11 @@ import org.apache.commons.io.IOUtils;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
+import acromusashi.kafka.log.producer.util.CompiledLogFormat;
+import acromusashi.kafka.log.producer.util.JsonLogSerializer;
 import acromusashi.kafka.log.producer.util.KeyedMessageConverter;
+import acromusashi.kafka.log.producer.util.LogFormatSelector;
+import acromusashi.kafka.log.producer.util.LogRecord;
 
 import com.fasterxml.jackson.databind.ObjectMapper;
 import com.google.common.collect.Lists;
@@ -34,16 +48,37 @@ import com.google.common.collect.Lists;
  * 
  * @author hiroki
  */
-public class LinuxLogTailExecutor implements Runnable
+public class LinuxLogTailExecutor implements Runnable, Closeable
 {
     /** ロガー */
     private static final Logger                             logger                = LoggerFactory.getLogger(LinuxLogTailExecutor.class);
 
-    /** デフォルトの最大送信サイズ */
-    private static final int                                DEFAULT_MAX_SEND_SIZE = 100;
+    /** デフォルトの最大送信サイズ(まとまりの最大行数) */
+    private static final int                                DEFAULT_MAX_SEND_SIZE = 500;
 
-    /** KafkaのProducer */
-    private kafka.javaapi.producer.Producer<String, String> producer;
+    /** producerで一度にsendできる最大量 */
+    private static final int                                MAX_SEND_SIZE_LIMIT   = 32767;
+
+    /** デフォルトのまとまりの最大サイズ(byte) */
+    private static final int                                DEFAULT_BATCH_BYTES   = 1024 * 1024;
+
+    /** デフォルトのまとまりの最大待機時間(ミリ秒) */
+    private static final long                               DEFAULT_LINGER        = 100L;
+
+    /** tailの出力を読み込む際のデフォルトのバッファサイズ */
+    private static final int                                DEFAULT_READ_SIZE     = 65536;
+
+    /** JVM内で追尾する際のデフォルトのポーリング間隔(ミリ秒) */
+    private static final long                               DEFAULT_POLL_INTERVAL = 1000L;
+
+    /** デフォルトの送信中のまとまりの数の上限 */
+    private static final int                                DEFAULT_MAX_IN_FLIGHT = 1;
+
+    /** 停止時に送信中のProducerの返却を待つ時間(ミリ秒) */
+    private static final long                               CLOSE_TIMEOUT         = 5000L;
+
+    /** KafkaのProducer。送信中のまとまりごとに1つ使用する */
+    private BlockingQueue<Producer<String, String>>         producers;
 
     /** 実行するコマンド(tail -F) */
     private String                                          tailCommandStr;
@@ -51,52 +86,259 @@ public class LinuxLogTailExecutor implements Runnable
     /** 送信する際にKafkaの入れておく場所の名前 */
     private String                                          topic;
 
-    /** apacheのログフォーマット */
-    private String                                          apacheLogFormat;
+    /** コンパイル済みのapacheのログフォーマットの選択 */
+    private LogFormatSelector                               selector;
 
     /** jsonで送る際の時刻の形式 */
     private String                                          jsonDateFormatStr;
 
+    /** フォーマットごとのjsonへの変換を行うシリアライザ */
+    private JsonLogSerializer[]                             serializers;
+
+    /** フォーマットごとのパース結果の格納先(変換段のワーカーごとに生成し、1行ごとに再利用する) */
+    private final ThreadLocal<LogRecord[]>                  records;
+
     /** Jacksonを用いた変換マッパーオブジェクト */
     protected transient ObjectMapper                        objectMapper;
 
     /** producerで一度にsendする最大量(32767を超えるとsendに失敗しエラーが発生する) */
     private int                                             maxSendSize           = DEFAULT_MAX_SEND_SIZE;
 
+    /** まとまりの最大サイズ(byte) */
+    private int                                             maxBatchBytes         = DEFAULT_BATCH_BYTES;
+
+    /** まとまりの最大待機時間(ミリ秒) */
+    private long                                            lingerMillis          = DEFAULT_LINGER;
+
+    /** まとまりの待機時間を監視するタイマー */
+    private LingerTimer                                     lingerTimer           = LingerTimer.getShared();
+
+    /** まとまりのサイズと、読込から送信完了までの時間の統計 */
+    private final BatchStatistics                           batchStatistics       = new BatchStatistics();
+
     /** LogAgentが配置されたホスト名 */
     private String                                          host                  = "defaultHost";
 
     /** エンコード */
-    private String                                          encoding              = "UTF-8";
+    private Charset                                         charset               = Charset.forName("UTF-8");
+
+    /** JVM内で追尾するファイルのパス。nullの場合はコマンドを実行して追尾する */
+    private String                                          tailPath;
+
+    /** JVM内で追尾する際のポーリング間隔(ミリ秒) */
+    private long                                            pollIntervalMillis    = DEFAULT_POLL_INTERVAL;
+
+    /** JVM内で追尾する際にメモリマップする窓のサイズ。0の場合はメモリマップしない */
+    private long                                            mapWindowSize;
+
+    /** JVM内でファイルを追尾するストリーム(読込位置を保持するため、再実行時も使い続ける) */
+    private FileTailInputStream                             fileTailStream;
+
+    /** 送信済み位置の保存先。nullの場合は保存しない */
+    private CheckpointStore                                 checkpointStore;
+
+    /** フィンガープリントの計算に使用する、読込中のファイルの先頭 */
+    private final byte[]                                    headBuffer            = new byte[CheckpointStore.FINGERPRINT_SIZE];
+
+    /** headBufferに読み込んだサイズ */
+    private int                                             headLength;
+
+    /** headBufferを読み込んだファイルの識別子 */
+    private Object                                          headFileKey;
+
+    /** 最大行長(byte)。超える行は切り詰める */
+    private int                                             maxLineLength         = LineFramer.DEFAULT_MAX_LINE_LENGTH;
+
+    /** 最大行長を超えたため切り詰めた行数 */
+    private final AtomicLong                                truncatedCount        = new AtomicLong();
+
+    /** 段の間のキューの容量(行のまとまりの数) */
+    private int                                             pipelineQueueSize     = LogPipeline.DEFAULT_QUEUE_CAPACITY;
+
+    /** 変換段のワーカー数 */
+    private int                                             parseWorkerCount      = 1;
+
+    /** パイプラインに滞留する行の合計サイズの上限(byte)。0の場合は制限しない */
+    private long                                            pipelineMaxBytes;
+
+    /** 実行中のパイプライン。実行していない場合はnull */
+    private volatile LogPipeline                            pipeline;
+
+    /** 行のまとまりをKafka用メッセージに変換するコンバータ(変換段のスレッドで実行する) */
+    private final BatchConverter                            batchConverter;
+
+    /** メッセージのまとまりを送信するセンダー(送信段のスレッドで実行する) */
+    private final BatchSender                               batchSender;
+
+    /** Kafkaに直接送信する送信先 */
+    private final MessageSink                               producerSink;
+
+    /** メッセージの送信先。退避キューを設定した場合は退避付きの送信先 */
+    private MessageSink                                     messageSink;
+
+    /** 送信失敗時の退避キュー。退避しない場合はnull */
+    private SpillQueue                                      spillQueue;
+
+    /** 退避キューの再送間隔(ミリ秒) */
+    private long                                            spillRetryInterval    = SpillingMessageSink.DEFAULT_RETRY_INTERVAL;
+
+    /** 送信中のまとまりの数の上限 */
+    private int                                             maxInFlight           = DEFAULT_MAX_IN_FLIGHT;
+
+    /** メッセージのまとまりを非同期に送信する送信先 */
+    private InFlightMessageSender                           asyncSender;
+
+    /** 実行中のパイプラインで送信したまとまりの完了を整列するトラッカー */
+    private volatile CompletionTracker                      completionTracker;
 
     /**
      * 以下のパラメタを指定するコンストラクタ
      * 
      * @param tailCommandStr 実行するコマンド
      * @param topic 送信する際のトピック
-     * @param apacheLogFormat apacheのログのフォーマット
+     * @param logFormat コンパイル済みのapacheのログのフォーマット
      * @param jsonDateFormat jsonで送る際の時刻の形式
      * @param hostName Producerが動作するホスト
      */
-    public LinuxLogTailExecutor(String tailCommandStr, String topic, String apacheLogFormat,
+    public LinuxLogTailExecutor(String tailCommandStr, String topic, CompiledLogFormat logFormat,
             String jsonDateFormat, String hostName)
+    {
+        this(tailCommandStr, topic, Collections.singletonList(logFormat), jsonDateFormat, hostName,
+                false, false);
+    }
+
+    /**
+     * 以下のパラメタを指定するコンストラクタ
+     * 
+     * @param tailCommandStr 実行するコマンド
+     * @param topic 送信する際のトピック
+     * @param logFormats コンパイル済みのapacheのログのフォーマットのリスト(優先順)
+     * @param jsonDateFormat jsonで送る際の時刻の形式
+     * @param hostName Producerが動作するホスト
+     * @param typedFields 数値のフィールドを数値型で送る場合true
+     * @param epochMillisTime 時刻をエポックミリ秒で送る場合true
+     */
+    public LinuxLogTailExecutor(String tailCommandStr, String topic,
+            List<CompiledLogFormat> logFormats, String jsonDateFormat, String hostName,
+            boolean typedFields, boolean epochMillisTime)
     {
         this.tailCommandStr = tailCommandStr;
         this.topic = topic;
-        this.apacheLogFormat = apacheLogFormat;
+        this.selector = new LogFormatSelector(logFormats);
         this.jsonDateFormatStr = jsonDateFormat;
         this.host = hostName;
+        this.serializers = JsonLogSerializer.create(this.selector, hostName, jsonDateFormat,
+                typedFields, epochMillisTime);
+        this.records = new ThreadLocal<LogRecord[]>() {
+            @Override
+            protected LogRecord[] initialValue()
+            {
+                return LinuxLogTailExecutor.this.selector.newRecords();
+            }
+        };
+
+        this.batchConverter = new BatchConverter() {
+            @Override
+            public List<KeyedMessage<String, String>> convert(LineBatch batch)
+            {
+                return convertBatch(batch);
+            }
+        };
+        this.batchSender = new BatchSender() {
+            @Override
+            public void send(MessageBatch batch)
+            {
+                sendBatch(batch);
+            }
+        };
+        this.producerSink = new MessageSink() {
+            @Override
+            public void send(List<KeyedMessage<String, String>> messages)
+            {
+                sendMessages(messages);
+            }
+        };
+        this.messageSink = this.producerSink;
     }
 
     /**
-     * KafkaProducer用のConfigオブジェクトを指定し、KafkaProducerを初期化する。
+     * KafkaProducer用のConfigオブジェクトを指定し、KafkaProducerを初期化する。<br>
+     * 初期化済みの場合は、以前に生成した送信スレッドとKafkaProducerを閉じてから初期化する。
      * 
      * @param config KafkaProducerConfig
      */
     public void initialize(ProducerConfig config)
     {
+        close();
+
         this.objectMapper = new ObjectMapper();
-        this.producer = new Producer<>(config);
+        // Producerは送信を排他するため、並行に送信できるよう送信中のまとまりの数の上限と同数を生成する
+        this.producers = new ArrayBlockingQueue<>(this.maxInFlight);
+        for (int index = 0; index < this.maxInFlight; index++)
+        {
+            this.producers.add(new Producer<String, String>(config));
+        }
+
+        if (this.spillQueue != null)
+        {
+            SpillingMessageSink spillingSink = new SpillingMessageSink(this.producerSink,
+                    this.spillQueue, this.spillRetryInterval);
+            spillingSink.start();
+            this.messageSink = spillingSink;
+        }
+        this.asyncSender = new InFlightMessageSender("LinuxLogTailExecutor", this.messageSink,
+                this.maxInFlight);
+    }
+
+    /**
+     * {@inheritDoc}<br>
+     * 送信スレッドと退避キューの再送を停止し、KafkaProducerを閉じる。
+     * 送信中のKafkaProducerは、一定時間送信の完了を待ってから閉じる。退避キューとチェックポイントは閉じない。
+     */
+    @Override
+    public void close()
+    {
+        if (this.asyncSender != null)
+        {
+            this.asyncSender.close();
+            this.asyncSender = null;
+        }
+
+        if (this.messageSink instanceof SpillingMessageSink)
+        {
+            ((SpillingMessageSink) this.messageSink).close();
+        }
+        this.messageSink = this.producerSink;
+
+        BlockingQueue<Producer<String, String>> pool = this.producers;
+        if (pool == null)
+        {
+            return;
+        }
+
+        int producerCount = pool.size() + pool.remainingCapacity();
+        long deadline = System.currentTimeMillis() + CLOSE_TIMEOUT;
+        for (int index = 0; index < producerCount; index++)
+        {
+            Producer<String, String> producer = null;
+            try
+            {
+                producer = pool.poll(Math.max(0L, deadline - System.currentTimeMillis()),
+                        TimeUnit.MILLISECONDS);
+            }
+            catch (InterruptedException ex)
+            {
+                Thread.currentThread().interrupt();
+            }
+
+            if (producer == null)
+            {
+                logger.warn("Producer is still sending. Skip closing. : remaining="
+                        + (producerCount - index));
+                return;
+            }
+            producer.close();
+        }
     }
 
     /**
@@ -113,43 +355,185 @@ public class LinuxLogTailExecutor implements Runnable
     }
 
     /**
-     * ログのTailを行い、結果をKafkaBrokerに対して送信する。
+     * JVM内でファイルを追尾するよう設定する。設定しない場合はコマンドを実行して追尾する。
+     * 
+     * @param tailPath 追尾するファイルのパス
+     * @param pollIntervalMillis ポーリング間隔(ミリ秒)
+     */
+    public void setFileTail(String tailPath, long pollIntervalMillis)
+    {
+        setFileTail(tailPath, pollIntervalMillis, 0L);
+    }
+
+    /**
+     * JVM内でファイルを追尾するよう設定する。設定しない場合はコマンドを実行して追尾する。
+     * 
+     * @param tailPath 追尾するファイルのパス
+     * @param pollIntervalMillis ポーリング間隔(ミリ秒)
+     * @param mapWindowSize メモリマップする窓のサイズ。0の場合はメモリマップしない
+     */
+    public void setFileTail(String tailPath, long pollIntervalMillis, long mapWindowSize)
+    {
+        this.tailPath = tailPath;
+        this.pollIntervalMillis = pollIntervalMillis;
+        this.mapWindowSize = mapWindowSize;
+    }
+
+    /**
+     * 送信済み位置の保存先を設定する。JVM内でファイルを追尾する場合のみ使用する。<br>
+     * 保存先に送信済み位置がある場合は、その位置から読込を再開する。
+     * 
+     * @param checkpointStore 送信済み位置の保存先
+     */
+    public void setCheckpointStore(CheckpointStore checkpointStore)
+    {
+        this.checkpointStore = checkpointStore;
+    }
+
+    /**
+     * 送信失敗時の退避キューを設定する。{@link #initialize(ProducerConfig)}の前に設定すること。<br>
+     * 設定した場合、Kafkaへの送信に失敗したメッセージは退避キューに退避し、Kafkaの復旧後に退避した順に再送する。
+     * 
+     * @param spillQueue 退避キュー
+     * @param retryIntervalMillis 再送間隔(ミリ秒)
+     */
+    public void setSpillQueue(SpillQueue spillQueue, long retryIntervalMillis)
+    {
+        this.spillQueue = spillQueue;
+        this.spillRetryInterval = retryIntervalMillis;
+    }
+
+    /**
+     * 送信中のまとまりの数の上限を設定する。{@link #initialize(ProducerConfig)}の前に設定すること。<br>
+     * 上限まではKafkaの応答を待たずに次のまとまりを送信し、上限に達した場合は前段の読込・変換を待たせる。
+     * 1の場合は読込順に送信する。2以上の場合はまとまりの間の読込順を保たず、
+     * Kafkaへの到着順は読込順と一致しない場合がある。
+     * 
+     * @param maxInFlight 送信中のまとまりの数の上限
+     */
+    public void setMaxInFlight(int maxInFlight)
+    {
+        this.maxInFlight = Math.max(1, maxInFlight);
+    }
+
+    /**
+     * 最大行長を設定する。超える行は最大行長までに切り詰めて送信する。
+     * 
+     * @param maxLineLength 最大行長(byte)
+     */
+    public void setMaxLineLength(int maxLineLength)
+    {
+        this.maxLineLength = maxLineLength;
+    }
+
+    /**
+     * 行をまとめて送信する条件を設定する。行数・サイズ・待機時間のいずれかの上限に達した時点で送信する。
+     * 
+     * @param maxMessages まとまりの最大行数(32767以下)
+     * @param maxBytes まとまりの最大サイズ(byte)
+     * @param lingerMillis 最初の行を読み込んでから送信するまでの最大待機時間(ミリ秒)。0の場合は読み込むごとに送信する
+     */
+    public void setBatching(int maxMessages, int maxBytes, long lingerMillis)
+    {
+        this.maxSendSize = Math.max(1, Math.min(MAX_SEND_SIZE_LIMIT, maxMessages));
+        this.maxBatchBytes = maxBytes;
+        this.lingerMillis = lingerMillis;
+    }
+
+    /**
+     * まとまりの待機時間を監視するタイマーを設定する。設定しない場合は全ての送信元で共有するタイマーを使用する。
+     * 
+     * @param lingerTimer タイマー
+     */
+    public void setLingerTimer(LingerTimer lingerTimer)
+    {
+        this.lingerTimer = lingerTimer;
+    }
+
+    /**
+     * まとまりのサイズと、読込から送信完了までの時間の統計を取得する。
+     * 
+     * @return 統計
+     */
+    public BatchStatistics getBatchStatistics()
+    {
+        return this.batchStatistics;
+    }
+
+    /**
+     * 読込・変換・送信の段の間のキューの容量を設定する。
+     * 
+     * @param pipelineQueueSize 段の間のキューの容量(行のまとまりの数)
+     */
+    public void setPipelineQueueSize(int pipelineQueueSize)
+    {
+        this.pipelineQueueSize = pipelineQueueSize;
+    }
+
+    /**
+     * パイプラインに滞留する行の合計サイズの上限を設定する。超える場合は読込を待たせる。<br>
+     * キューの容量はまとまりの数のため、ワーカー数が多い場合や、まとまりが大きい場合のメモリ使用量を制限するために使用する。
+     * 
+     * @param pipelineMaxBytes 行の合計サイズの上限(byte)。0の場合は制限しない
+     */
+    public void setPipelineMaxBytes(long pipelineMaxBytes)
+    {
+        this.pipelineMaxBytes = pipelineMaxBytes;
+    }
+
+    /**
+     * 変換段のワーカー数を設定する。2以上の場合は複数の行のまとまりを並行して変換し、読み込んだ順に送信段に渡す。
+     * Kafkaへの到着順が読込順となるかは{@link #setMaxInFlight(int)}による。
+     * 
+     * @param parseWorkerCount 変換段のワーカー数
+     */
+    public void setParseWorkerCount(int parseWorkerCount)
+    {
+        this.parseWorkerCount = parseWorkerCount;
+    }
+
+    /**
+     * 実行中のパイプラインを取得する。段ごとのキューの滞留数の監視に使用する。
+     * 
+     * @return 実行中のパイプライン。実行していない場合はnull
+     */
+    public LogPipeline getPipeline()
+    {
+        return this.pipeline;
+    }
+
+    /**
+     * 最大行長を超えたため切り詰めた行数を取得する。
+     * 
+     * @return 切り詰めた行数
+     */
+    public long getTruncatedCount()
+    {
+        return this.truncatedCount.get();
+    }
+
+    /**
+     * ログのTailを行い、結果をKafkaBrokerに対して送信する。<br>
+     * tailの出力はbyte列のまま改行で区切り、行単位でKafka用メッセージに変換する。
      */
     protected void sendTailedLog()
     {
+        if (this.tailPath != null)
+        {
+            sendFileTailedLog();
+            return;
+        }
+
         String[] tailCommandArgs = this.tailCommandStr.split("\\s+");
 
-        BufferedReader tailReader = null;
+        InputStream tailStream = null;
         Process tailProcess = null;
 
         try
         {
             tailProcess = new ProcessBuilder(tailCommandArgs).start();
-            tailReader = new BufferedReader(new InputStreamReader(tailProcess.getInputStream(),
-                    this.encoding));
-
-            String tailedLine = null;
-            List<String> tailedLineList = Lists.newArrayList();
-            int count = 0;
-
-            while ((tailedLine = tailReader.readLine()) != null)
-            {
-                tailedLineList.add(tailedLine);
-                count++;
-
-                if (count >= this.maxSendSize)
-                {
-                    List<KeyedMessage<String, String>> messageList = getKeyedMessage(tailedLineList);
-                    tailedLineList.clear();
-                    this.producer.send(messageList);
-                    count = 0;
-                }
-
-            }
-
-            List<KeyedMessage<String, String>> messageList = getKeyedMessage(tailedLineList);
-            tailedLineList.clear();
-            this.producer.send(messageList);
+            tailStream = tailProcess.getInputStream();
+            sendStream(tailStream);
         }
         catch (Exception e)
         {
@@ -161,9 +545,9 @@ public class LinuxLogTailExecutor implements Runnable
         }
         finally
         {
-            if (tailReader != null)
+            if (tailStream != null)
             {
-                IOUtils.closeQuietly(tailReader);
+                IOUtils.closeQuietly(tailStream);
             }
             if (tailProcess != null)
             {
@@ -181,32 +565,358 @@ public class LinuxLogTailExecutor implements Runnable
     }
 
     /**
-     * 送信するためのkeyedMessageListを作成する。
+     * JVM内でファイルを追尾し、結果をKafkaBrokerに対して送信する。<br>
+     * 失敗した場合は、送信が完了した位置までストリームの読込位置を戻してから再実行する。
+     * 読込バッファに残っていた行の途中や、送信を待っていた行は、再実行時に読み直して送信する。
+     */
+    protected void sendFileTailedLog()
+    {
+        if (this.fileTailStream == null)
+        {
+            this.fileTailStream = createFileTailStream();
+        }
+
+        FileTailInputStream tailStream = this.fileTailStream;
+        Object startFileKey = tailStream.getFileKey();
+        long startPosition = tailStream.getPosition();
+        // 前回のパイプラインの送信済み位置に戻さないよう、今回のパイプラインの開始まで破棄する
+        this.completionTracker = null;
+        try
+        {
+            sendStream(tailStream);
+        }
+        catch (Exception e)
+        {
+            logger.error("Failed while tailing file: " + this.tailPath, e);
+            if (Thread.currentThread().isInterrupted())
+            {
+                IOUtils.closeQuietly(tailStream);
+                this.fileTailStream = null;
+                return;
+            }
+
+            rewindToCommitted(tailStream, startFileKey, startPosition);
+            sleepBeforeRetry();
+        }
+    }
+
+    /**
+     * 失敗したパイプラインで送信が完了した位置まで、ストリームの読込位置を戻す。
+     * 送信が完了したまとまりがない場合は、パイプラインの開始位置まで戻す。<br>
+     * パイプライン開始時にファイルが存在せず開始位置が未確定だった場合は、ファイルを開いた時点の位置まで戻す。
      * 
-     * @param eachStr 実際の複数のログ
-     * @return list keyedMessageのリスト
+     * @param tailStream ファイルを追尾するストリーム
+     * @param startFileKey パイプライン開始時のファイルの識別子
+     * @param startPosition パイプライン開始時の読込位置
      */
-    protected List<KeyedMessage<String, String>> getKeyedMessage(List<String> eachStr)
+    private void rewindToCommitted(FileTailInputStream tailStream, Object startFileKey,
+            long startPosition)
     {
-        List<KeyedMessage<String, String>> list = Lists.newArrayList();
-        for (String apacheLogStr : eachStr)
+        CompletionTracker tracker = this.completionTracker;
+        CheckpointMark committed = null;
+        if (tracker != null)
         {
-            KeyedMessage<String, String> convertedMessage = null;
+            committed = tracker.getCommittedMark();
+        }
 
-            try
+        long failedPosition = tailStream.getPosition();
+        if (committed != null)
+        {
+            tailStream.rewind(committed.getFileKey(), committed.getOffset());
+        }
+        else if (startPosition >= 0)
+        {
+            tailStream.rewind(startFileKey, startPosition);
+        }
+        else if (tailStream.getOpenedPosition() >= 0)
+        {
+            // 負の位置で戻すと先頭に戻り、開く前からあった内容まで送信してしまうため、確定した開始位置に戻す
+            tailStream.rewind(null, tailStream.getOpenedPosition());
+        }
+        logger.info("Rewind to the sent position. : path=" + this.tailPath + ", from="
+                + failedPosition + ", to=" + tailStream.getPosition());
+    }
+
+    /**
+     * 設定に応じて、ファイルを追尾するストリームを生成する。
+     * 
+     * @return ファイルを追尾するストリーム
+     */
+    private FileTailInputStream createFileTailStream()
+    {
+        Path path = Paths.get(this.tailPath);
+        long startPosition = CheckpointStore.NO_CHECKPOINT;
+        if (this.checkpointStore != null)
+        {
+            startPosition = this.checkpointStore.getResumePosition(path);
+        }
+
+        if (this.mapWindowSize > 0)
+        {
+            return new MappedFileTailInputStream(path, startPosition, this.pollIntervalMillis,
+                    this.mapWindowSize);
+        }
+        return new FileTailInputStream(path, startPosition, this.pollIntervalMillis);
+    }
+
+    /**
+     * 再実行までポーリング間隔分待つ。
+     */
+    private void sleepBeforeRetry()
+    {
+        try
+        {
+            Thread.sleep(this.pollIntervalMillis);
+        }
+        catch (InterruptedException ex)
+        {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    /**
+     * ストリームから読み込んだログを改行で区切り、KafkaBrokerに対して送信する。<br>
+     * 改行が現れていない行の途中は、次回の読込に持ち越す。読込バッファは固定サイズで、最大行長を超える行は切り詰める。<br>
+     * 読込は呼び出し元のスレッドで行い、区切った行のまとまりを{@link LogPipeline}に渡して、変換・送信は段ごとのスレッドで行う。
+     * そのため、Kafkaへの送信を待つ間も読込と変換を続ける。<br>
+     * 行は{@link LingerBatcher}で、行数・サイズ・待機時間のいずれかの上限に達するまでまとめる。
+     * 
+     * @param tailStream tailの出力
+     * @throws IOException 読込失敗時、または変換・送信失敗時
+     */
+    protected void sendStream(InputStream tailStream) throws IOException
+    {
+        LineFramer framer = new LineFramer(this.maxLineLength, this.truncatedCount);
+        LogPipeline current = new LogPipeline("LinuxLogTailExecutor", this.batchConverter,
+                this.batchSender, this.pipelineQueueSize, this.parseWorkerCount);
+        current.setMaxQueuedBytes(this.pipelineMaxBytes);
+        LingerBatcher batcher = new LingerBatcher("LinuxLogTailExecutor", current,
+                this.maxSendSize, this.maxBatchBytes, this.lingerMillis, this.batchStatistics);
+        CompletionTracker tracker = new CompletionTracker(this.checkpointStore);
+        this.completionTracker = tracker;
+        this.pipeline = current;
+        current.start();
+        this.lingerTimer.register(batcher);
+
+        try
+        {
+            byte[] buffer = new byte[DEFAULT_READ_SIZE];
+            int readSize = 0;
+
+            while ((readSize = tailStream.read(buffer, 0, buffer.length)) != -1)
             {
-                convertedMessage = KeyedMessageConverter.convertToMessage(apacheLogStr, this.topic,
-                        this.host, this.apacheLogFormat, this.jsonDateFormatStr);
+                framer.frame(buffer, 0, readSize, batcher);
+
+                // 上限に達したまとまりを渡す。上限に達していないまとまりは、読込待ちの間にタイマーが渡す
+                batcher.endChunk(createCheckpointMark(tailStream, framer.getPendingLength()));
             }
-            catch (Exception ex)
+
+            framer.flush(batcher);
+            batcher.flush();
+            current.finish();
+            awaitSent(tracker);
+        }
+        finally
+        {
+            this.lingerTimer.unregister(batcher);
+            current.stop();
+            logger.info("Pipeline stopped. : " + current + ", " + this.asyncSender + ", "
+                    + this.batchStatistics + (this.spillQueue == null ? "" : ", spill=["
+                    + this.spillQueue + "]"));
+        }
+    }
+
+    /**
+     * 行のまとまりをKafka用メッセージに変換する。変換段のスレッドで実行する。
+     * 
+     * @param batch 行のまとまり
+     * @return Kafka用メッセージ
+     */
+    private List<KeyedMessage<String, String>> convertBatch(LineBatch batch)
+    {
+        List<KeyedMessage<String, String>> messageList = Lists.newArrayListWithCapacity(batch
+                .getLineCount());
+        byte[] data = batch.getData();
+        for (int index = 0; index < batch.getLineCount(); index++)
+        {
+            addKeyedMessage(messageList, data, batch.getLineStart(index), batch.getLineEnd(index));
+        }
+        return messageList;
+    }
+
+    /**
+     * 送信中の全てのまとまりの完了を待つ。
+     * 
+     * @param tracker 実行中のパイプラインのトラッカー
+     * @throws IOException 送信に失敗したまとまりがある場合、または待機中に割り込まれた場合
+     */
+    private void awaitSent(CompletionTracker tracker) throws IOException
+    {
+        try
+        {
+            this.asyncSender.flush();
+        }
+        catch (InterruptedException ex)
+        {
+            Thread.currentThread().interrupt();
+            throw new InterruptedIOException("Interrupted while waiting for send completion.");
+        }
+
+        if (tracker.getFailure() != null)
+        {
+            throw new IOException("Asynchronous send failed.", tracker.getFailure());
+        }
+    }
+
+    /**
+     * メッセージのまとまりの送信を開始する。送信段のスレッドで実行する。<br>
+     * 送信中のまとまりの数が上限に達している場合は空くまで待つ。
+     * 送信済み位置は、完了の通知時に、それより前に送信を開始したまとまりが全て完了している場合に記録する。
+     * 
+     * @param batch メッセージのまとまり
+     */
+    private void sendBatch(final MessageBatch batch)
+    {
+        final CompletionTracker tracker = this.completionTracker;
+        if (tracker.getFailure() != null)
+        {
+            // 失敗したまとまり以降は送信せず、パイプラインを停止させる
+            throw new IllegalStateException("Asynchronous send failed.", tracker.getFailure());
+        }
+
+        final CompletionTracker.PendingBatch pending = tracker.register(batch.getCheckpointMark());
+        final int messageCount = batch.getMessages().size();
+        try
+        {
+            this.asyncSender.send(batch.getMessages(), new SendCallback() {
+                @Override
+                public void onCompletion(Exception exception)
+                {
+                    tracker.complete(pending, exception);
+                    if (exception == null)
+                    {
+                        LinuxLogTailExecutor.this.batchStatistics.recordSent(batch
+                                .getFirstLineNanos());
+                    }
+                    else
+                    {
+                        logger.error("Send failed. : messages=" + messageCount, exception);
+                    }
+                }
+            });
+        }
+        catch (InterruptedException ex)
+        {
+            // パイプラインの停止時
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    /**
+     * 送信用リストのメッセージを、最大送信サイズごとに分けて送信し、送信用リストを空にする。<br>
+     * 送信には空いているProducerを1つ使用し、空いていない場合は待つ。
+     * 
+     * @param messageList 送信用リスト
+     */
+    private void sendMessages(List<KeyedMessage<String, String>> messageList)
+    {
+        BlockingQueue<Producer<String, String>> pool = this.producers;
+        Producer<String, String> producer;
+        try
+        {
+            producer = pool.take();
+        }
+        catch (InterruptedException ex)
+        {
+            Thread.currentThread().interrupt();
+            throw new IllegalStateException("Interrupted while waiting for producer.", ex);
+        }
+
+        try
+        {
+            for (int start = 0; start < messageList.size(); start += this.maxSendSize)
             {
-                logger.warn("Log convert failed. Dispose log message. Log=" + apacheLogStr, ex);
-                continue;
+                int end = Math.min(messageList.size(), start + this.maxSendSize);
+                producer.send(Lists.newArrayList(messageList.subList(start, end)));
             }
+        }
+        finally
+        {
+            pool.add(producer);
+        }
+        messageList.clear();
+    }
 
-            list.add(convertedMessage);
+    /**
+     * 送信が完了した場合の送信済み位置を、読込時点で確定させる。<br>
+     * 送信済み位置は、ストリームの読込位置から未送信のまま読込バッファに残っているサイズを除いた位置とする。
+     * 
+     * @param tailStream tailの出力
+     * @param pendingSize 読込バッファに残っている未送信のサイズ
+     * @return 送信済み位置。JVM内でファイルを追尾していない場合はnull
+     * @throws IOException ファイル先頭の読込失敗時
+     */
+    private CheckpointMark createCheckpointMark(InputStream tailStream, int pendingSize)
+            throws IOException
+    {
+        // チェックポイントを保存しない場合も、失敗時に読込位置を戻すために送信済み位置を確定させる
+        if ((tailStream instanceof FileTailInputStream) == false)
+        {
+            return null;
         }
 
-        return list;
+        FileTailInputStream fileStream = (FileTailInputStream) tailStream;
+        long offset = fileStream.getPosition() - pendingSize;
+        Object fileKey = fileStream.getFileKey();
+        if (offset < 0)
+        {
+            // ローテーション直後で、未送信分が置き換え前のファイルのものである
+            return null;
+        }
+
+        if (fileKey == null || fileKey.equals(this.headFileKey) == false
+                || (this.headLength < this.headBuffer.length && offset > this.headLength))
+        {
+            this.headLength = fileStream.readHead(this.headBuffer);
+            this.headFileKey = fileKey;
+        }
+
+        return new CheckpointMark(fileStream.getPath(), fileKey, offset, this.headBuffer,
+                this.headLength);
+    }
+
+    /**
+     * byte配列上の1行をKafka用メッセージに変換し、送信用リストに追加する。<br>
+     * 変換に失敗した行は破棄する。
+     * 
+     * @param messageList 送信用リスト
+     * @param buffer ログを格納したbyte配列
+     * @param start 行の開始位置
+     * @param end 行の終了位置(改行を含まない)
+     */
+    protected void addKeyedMessage(List<KeyedMessage<String, String>> messageList, byte[] buffer,
+            int start, int end)
+    {
+        int lineEnd = end;
+        if (lineEnd > start && buffer[lineEnd - 1] == '\r')
+        {
+            lineEnd--;
+        }
+        if (lineEnd <= start)
+        {
+            return;
+        }
+
+        try
+        {
+            messageList.add(KeyedMessageConverter.convertToMessage(buffer, start, lineEnd - start,
+                    this.charset, this.topic, this.host, this.selector, this.serializers,
+                    this.records.get()));
+        }
+        catch (Exception ex)
+        {
+            logger.warn("Log convert failed. Dispose log message. Log="
+                    + new String(buffer, start, lineEnd - start, this.charset), ex);
+        }
     }
 }
@@ -0,0 +1,572 @@
+/**
+* Copyright (c) Acroquest Technology Co, Ltd. All Rights Reserved.
+* Please read the associated COPYRIGHTS file for more details.
+*
+* THE SOFTWARE IS PROVIDED BY Acroquest Technolog Co., Ltd.,
+* WITHOUT WARRANTY OF ANY KIND, EXPRESS OR IMPLIED, INCLUDING
+* BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+* FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT.
+* IN NO EVENT SHALL THE AUTHORS OR COPYRIGHT HOLDER BE LIABLE FOR ANY
+* CLAIM, DAMAGES SUFFERED BY LICENSEE AS A RESULT OF USING, MODIFYING
+* OR DISTRIBUTING THIS SOFTWARE OR ITS DERIVATIVES.
+*/
+package acromusashi.kafka.log.producer;
+
+import java.io.BufferedInputStream;
+import java.io.EOFException;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.zip.GZIPInputStream;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import com.google.common.util.concurrent.RateLimiter;
+
+/**
+ * ローテート済みのログファイル(gzip圧縮、または非圧縮)を読み込み、行単位でハンドラに渡すクラス<br>
+ * <br>
+ * globで指定したファイルを更新日時の古い順に、ワーカー数分のファイルを並行して展開・読込する。
+ * gzip圧縮かどうかはファイル先頭のマジックナンバーで判定する。<br>
+ * 読み込んだ行は追尾時と同じ{@link LineHandler}に渡すため、パース・変換・送信の処理は追尾時と共通となる。
+ * 追尾中の送信を妨げないよう、1秒あたりの最大行数を指定した場合は全ワーカーの合計で制限する。<br>
+ * 分割サイズを指定した場合、分割サイズを超える非圧縮のファイルは{@link BulkFileIngester}で行の境界に揃えた範囲に分割し、
+ * fork/joinプールで並行して読み込む。<br>
+ * 全てのファイルを読み終えると{@link #run()}を終了する。失敗したファイルはログに出力し、残りのファイルの読込を続ける。
+ *
+ * @author kimura
+ */
+public class LogBackfiller implements Runnable
+{
+    /** ロガー */
+    private static final Logger logger             = LoggerFactory.getLogger(LogBackfiller.class);
+
+    /** 読込バッファのサイズ */
+    private static final int    READ_SIZE          = 65536;
+
+    /** gzipのマジックナンバー */
+    private static final int    GZIP_MAGIC         = 0x8b1f;
+
+    /** 送信失敗時のデフォルトの再試行までの間隔(ミリ秒) */
+    static final long           DEFAULT_RETRY      = 1000L;
+
+    /** 送信失敗時のデフォルトの連続した再試行の上限回数 */
+    static final int            DEFAULT_RETRIES    = 10;
+
+    /** 送信失敗時の再試行までの間隔の上限(ミリ秒) */
+    private static final long   MAX_RETRY_INTERVAL = 60000L;
+
+    /** 読み込むファイルのglob */
+    private final List<String>  globs;
+
+    /** 読み込んだ行を処理するハンドラ */
+    private final LineHandler   handler;
+
+    /** ワーカー数 */
+    private final int           workerCount;
+
+    /** 1秒あたりの最大行数の制限。制限しない場合はnull */
+    private final RateLimiter   rateLimiter;
+
+    /** 最大行長(byte) */
+    private int                 maxLineLength      = LineFramer.DEFAULT_MAX_LINE_LENGTH;
+
+    /** 最大行長を超えたため切り詰めた行数 */
+    private final AtomicLong    truncatedCount     = new AtomicLong();
+
+    /** 範囲に分割して読み込むファイルのサイズの閾値(byte)。0以下の場合は分割しない */
+    private long                splitSize;
+
+    /** 分割した範囲を並行して読み込む数 */
+    private int                 parallelism        = Runtime.getRuntime().availableProcessors();
+
+    /** 分割した範囲の読込に使用するfork/joinプール */
+    private ForkJoinPool        splitPool;
+
+    /** 送信失敗時の再試行までの間隔(ミリ秒)。失敗が続く場合は倍にする */
+    private long                retryInterval      = DEFAULT_RETRY;
+
+    /** 送信失敗時の連続した再試行の上限回数 */
+    private int                 maxRetries         = DEFAULT_RETRIES;
+
+    /** 読込対象のファイル数 */
+    private volatile int        fileCount;
+
+    /** 読込を終えたファイル数 */
+    private final AtomicInteger completedFileCount = new AtomicInteger();
+
+    /** 読込に失敗したファイル数 */
+    private final AtomicInteger failedFileCount    = new AtomicInteger();
+
+    /** 読み込んだ行数 */
+    private final AtomicLong    lineCount          = new AtomicLong();
+
+    /** 読み込んだサイズ(展開後) */
+    private final AtomicLong    byteCount          = new AtomicLong();
+
+    /**
+     * 以下のパラメタを指定してインスタンスを生成する。
+     *
+     * @param globs 読み込むファイルのglob(例："/var/log/httpd/access_log.*.gz")
+     * @param handler 読み込んだ行を処理するハンドラ
+     * @param workerCount ワーカー数(並行して展開するファイル数)
+     * @param maxLinesPerSecond 1秒あたりの最大行数。0以下の場合は制限しない
+     */
+    public LogBackfiller(List<String> globs, LineHandler handler, int workerCount,
+            double maxLinesPerSecond)
+    {
+        this.globs = new ArrayList<>(globs);
+        this.handler = handler;
+        this.workerCount = workerCount;
+        this.rateLimiter = maxLinesPerSecond > 0 ? RateLimiter.create(maxLinesPerSecond) : null;
+    }
+
+    /**
+     * 最大行長を設定する。超える行は最大行長までに切り詰めてハンドラに渡す。{@link #run()}の前に設定すること。
+     *
+     * @param maxLineLength 最大行長(byte)
+     */
+    public void setMaxLineLength(int maxLineLength)
+    {
+        this.maxLineLength = maxLineLength;
+    }
+
+    /**
+     * 大きな非圧縮のファイルを範囲に分割して並行して読み込むよう設定する。{@link #run()}の前に設定すること。
+     *
+     * @param splitSize 範囲に分割して読み込むファイルのサイズの閾値(byte)。0以下の場合は分割しない
+     * @param parallelism 分割した範囲を並行して読み込む数
+     */
+    public void setSplit(long splitSize, int parallelism)
+    {
+        this.splitSize = splitSize;
+        this.parallelism = parallelism;
+    }
+
+    /**
+     * ハンドラが失敗した場合の再試行を設定する。{@link #run()}の前に設定すること。<br>
+     * 失敗した場合は最後に確定させた位置から読み込み直し、連続して失敗した回数が上限を超えた場合はファイルの読込を失敗とする。
+     *
+     * @param retryInterval 再試行までの間隔(ミリ秒)。失敗が続く場合は倍にする
+     * @param maxRetries 連続した再試行の上限回数
+     */
+    public void setRetry(long retryInterval, int maxRetries)
+    {
+        this.retryInterval = retryInterval;
+        this.maxRetries = maxRetries;
+    }
+
+    /**
+     * 全てのファイルを読み込み、読み終えるまで待つ。
+     */
+    @Override
+    public void run()
+    {
+        List<Path> files = findFiles();
+        this.fileCount = files.size();
+        logger.info("Backfill starting. Files=" + files.size() + ", Workers=" + this.workerCount);
+
+        ExecutorService workers = Executors.newFixedThreadPool(this.workerCount, new ThreadFactory() {
+            private final AtomicInteger count = new AtomicInteger();
+
+            @Override
+            public Thread newThread(Runnable runnable)
+            {
+                Thread thread = new Thread(runnable, "LogBackfiller-" + this.count.incrementAndGet());
+                thread.setDaemon(true);
+                return thread;
+            }
+        });
+
+        if (this.splitSize > 0)
+        {
+            this.splitPool = new ForkJoinPool(this.parallelism);
+        }
+
+        List<Callable<Void>> tasks = new ArrayList<>();
+        for (final Path file : files)
+        {
+            tasks.add(new Callable<Void>() {
+                @Override
+                public Void call()
+                {
+                    backfill(file);
+                    return null;
+                }
+            });
+        }
+
+        try
+        {
+            workers.invokeAll(tasks);
+        }
+        catch (InterruptedException ex)
+        {
+            Thread.currentThread().interrupt();
+            logger.warn("Backfill interrupted. : " + getProgress());
+        }
+        finally
+        {
+            workers.shutdownNow();
+            if (this.splitPool != null)
+            {
+                this.splitPool.shutdownNow();
+            }
+        }
+
+        logger.info("Backfill finished. : " + getProgress());
+    }
+
+    /**
+     * globに一致するファイルを、更新日時の古い順に取得する。
+     *
+     * @return 読み込むファイル
+     */
+    private List<Path> findFiles()
+    {
+        Set<Path> found = new LinkedHashSet<>();
+        for (String glob : this.globs)
+        {
+            found.addAll(MultiFileTailer.findFiles(glob));
+        }
+
+        List<Path> files = new ArrayList<>(found);
+        Collections.sort(files, new Comparator<Path>() {
+            @Override
+            public int compare(Path path1, Path path2)
+            {
+                int result = Long.compare(lastModified(path1), lastModified(path2));
+                return result != 0 ? result : path1.compareTo(path2);
+            }
+        });
+        return files;
+    }
+
+    /**
+     * ファイルの更新日時を取得する。
+     *
+     * @param path ファイル
+     * @return 更新日時(エポックミリ秒)。取得できない場合は0
+     */
+    private static long lastModified(Path path)
+    {
+        try
+        {
+            return Files.getLastModifiedTime(path).toMillis();
+        }
+        catch (IOException ex)
+        {
+            return 0L;
+        }
+    }
+
+    /**
+     * 1ファイルを先頭から末尾まで読み込み、行単位でハンドラに渡す。<br>
+     * ハンドラが失敗した場合は、待ってから最後に確定させた位置まで読み飛ばして読み込み直す。
+     *
+     * @param path ファイル
+     */
+    private void backfill(Path path)
+    {
+        try
+        {
+            if (this.splitPool != null && Files.size(path) > this.splitSize && isGzip(path) == false)
+            {
+                backfillSplit(path);
+                return;
+            }
+        }
+        catch (IOException ex)
+        {
+            this.failedFileCount.incrementAndGet();
+            logger.error("Backfill file failed. : file=" + path, ex);
+            return;
+        }
+
+        final TailedFile file = new TailedFile(path, 0L, new LineFramer(this.maxLineLength,
+                this.truncatedCount));
+        final int[] batchLines = new int[1];
+        LineSink sink = new LineSink() {
+            @Override
+            public void handleLine(byte[] buffer, int start, int end)
+            {
+                batchLines[0]++;
+                LogBackfiller.this.handler.handleLine(file, buffer, start, end);
+            }
+        };
+
+        long fileLines = 0L;
+        long committedOffset = 0L;
+        int failures = 0;
+        while (true)
+        {
+            try (InputStream input = openStream(path))
+            {
+                skipFully(input, committedOffset);
+                byte[] buffer = new byte[READ_SIZE];
+                int readSize;
+                while ((readSize = input.read(buffer)) != -1)
+                {
+                    file.setPosition(file.getPosition() + readSize);
+                    file.getFramer().frame(buffer, 0, readSize, sink);
+                    fileLines += endBatch(file, batchLines);
+                    this.byteCount.addAndGet(file.getCommittedOffset() - committedOffset);
+                    committedOffset = file.getCommittedOffset();
+                    failures = 0;
+                }
+
+                file.getFramer().flush(sink);
+                fileLines += endBatch(file, batchLines);
+                this.byteCount.addAndGet(file.getPosition() - committedOffset);
+                this.completedFileCount.incrementAndGet();
+                logger.info("Backfill file completed. : file=" + path + ", lines=" + fileLines
+                        + ", bytes=" + file.getPosition() + ", " + getProgress());
+                return;
+            }
+            catch (RuntimeException ex)
+            {
+                failures++;
+                if (failures > this.maxRetries || awaitRetry(this.retryInterval, failures) == false)
+                {
+                    this.failedFileCount.incrementAndGet();
+                    logger.error("Backfill file failed. : file=" + path + ", lines=" + fileLines
+                            + ", position=" + committedOffset, ex);
+                    return;
+                }
+
+                logger.warn("Backfill batch failed. Retry from the last sent position. : file="
+                        + path + ", position=" + committedOffset + ", retry=" + failures, ex);
+                file.getFramer().reset();
+                file.setPosition(committedOffset);
+                batchLines[0] = 0;
+            }
+            catch (IOException ex)
+            {
+                this.failedFileCount.incrementAndGet();
+                logger.error("Backfill file failed. : file=" + path + ", lines=" + fileLines, ex);
+                return;
+            }
+        }
+    }
+
+    /**
+     * 1ファイルを行の境界に揃えた範囲に分割し、並行して読み込む。
+     *
+     * @param path ファイル
+     */
+    private void backfillSplit(Path path)
+    {
+        BulkFileIngester ingester = new BulkFileIngester(this.splitPool, this.handler,
+                this.splitSize / this.parallelism, this.rateLimiter);
+        ingester.setMaxLineLength(this.maxLineLength);
+        ingester.setRetry(this.retryInterval, this.maxRetries);
+
+        try
+        {
+            long fileLines = ingester.ingest(path);
+            this.completedFileCount.incrementAndGet();
+            logger.info("Backfill file completed. : file=" + path + ", lines=" + fileLines
+                    + ", bytes=" + ingester.getByteCount() + ", " + getProgress());
+        }
+        catch (IOException | RuntimeException ex)
+        {
+            this.failedFileCount.incrementAndGet();
+            logger.error("Backfill file failed. : file=" + path + ", lines="
+                    + ingester.getLineCount(), ex);
+        }
+        finally
+        {
+            this.lineCount.addAndGet(ingester.getLineCount());
+            this.byteCount.addAndGet(ingester.getByteCount());
+            this.truncatedCount.addAndGet(ingester.getTruncatedCount());
+        }
+    }
+
+    /**
+     * 1回の読込で渡した行を確定させ、行数の制限に応じて待つ。
+     *
+     * @param file ファイル
+     * @param batchLines 1回の読込で渡した行数(0に戻す)
+     * @return 1回の読込で渡した行数
+     */
+    private int endBatch(TailedFile file, int[] batchLines)
+    {
+        int lines = batchLines[0];
+        batchLines[0] = 0;
+        this.handler.endBatch(file);
+        this.lineCount.addAndGet(lines);
+
+        if (this.rateLimiter != null && lines > 0)
+        {
+            this.rateLimiter.acquire(lines);
+        }
+        return lines;
+    }
+
+    /**
+     * 送信失敗時の再試行まで待つ。連続して失敗した回数に応じて待つ時間を倍にする。
+     *
+     * @param retryInterval 再試行までの間隔(ミリ秒)
+     * @param failures 連続して失敗した回数
+     * @return 待ち終えた場合true。割り込まれた場合false
+     */
+    static boolean awaitRetry(long retryInterval, int failures)
+    {
+        long interval = retryInterval << Math.min(failures - 1, 16);
+        try
+        {
+            Thread.sleep(Math.min(interval, MAX_RETRY_INTERVAL));
+            return true;
+        }
+        catch (InterruptedException ex)
+        {
+            Thread.currentThread().interrupt();
+            return false;
+        }
+    }
+
+    /**
+     * ストリームを指定したサイズ分読み飛ばす。
+     *
+     * @param input ストリーム
+     * @param length 読み飛ばすサイズ
+     * @throws IOException 入出力例外発生時、または読み飛ばす前に終端に達した場合
+     */
+    private static void skipFully(InputStream input, long length) throws IOException
+    {
+        long remaining = length;
+        while (remaining > 0)
+        {
+            long skipped = input.skip(remaining);
+            if (skipped <= 0)
+            {
+                if (input.read() == -1)
+                {
+                    throw new EOFException("File shrank while retrying. : remaining=" + remaining);
+                }
+                skipped = 1;
+            }
+            remaining -= skipped;
+        }
+    }
+
+    /**
+     * ファイルを開く。gzip圧縮されている場合は展開するストリームを返す。
+     *
+     * @param path ファイル
+     * @return ファイルの内容を読み込むストリーム
+     * @throws IOException 入出力例外発生時
+     */
+    static InputStream openStream(Path path) throws IOException
+    {
+        BufferedInputStream input = new BufferedInputStream(Files.newInputStream(path), READ_SIZE);
+        try
+        {
+            input.mark(2);
+            int magic = input.read() | (input.read() << 8);
+            input.reset();
+            if (magic == GZIP_MAGIC)
+            {
+                return new GZIPInputStream(input, READ_SIZE);
+            }
+            return input;
+        }
+        catch (IOException ex)
+        {
+            input.close();
+            throw ex;
+        }
+    }
+
+    /**
+     * ファイルがgzip圧縮されているかを、先頭のマジックナンバーで判定する。
+     *
+     * @param path ファイル
+     * @return gzip圧縮されている場合true
+     * @throws IOException 入出力例外発生時
+     */
+    static boolean isGzip(Path path) throws IOException
+    {
+        try (InputStream input = Files.newInputStream(path))
+        {
+            int magic = input.read() | (input.read() << 8);
+            return magic == GZIP_MAGIC;
+        }
+    }
+
+    /**
+     * @return 進捗(読込を終えたファイル数、行数、サイズ)
+     */
+    public String getProgress()
+    {
+        return "files=" + this.completedFileCount.get() + "/" + this.fileCount + ", failed="
+                + this.failedFileCount.get() + ", lines=" + this.lineCount.get() + ", bytes="
+                + this.byteCount.get() + ", truncated=" + this.truncatedCount.get();
+    }
+
+    /**
+     * ハンドラを並行して呼び出すスレッドの最大数を取得する。
+     * ファイル単位のワーカー数に、範囲に分割して読み込む場合はその並行数を加えた数となる。
+     *
+     * @return ハンドラを並行して呼び出すスレッドの最大数
+     */
+    public int getConcurrency()
+    {
+        return this.splitSize > 0 ? this.workerCount + this.parallelism : this.workerCount;
+    }
+
+    /**
+     * @return 読込対象のファイル数
+     */
+    public int getFileCount()
+    {
+        return this.fileCount;
+    }
+
+    /**
+     * @return 読込を終えたファイル数
+     */
+    public int getCompletedFileCount()
+    {
+        return this.completedFileCount.get();
+    }
+
+    /**
+     * @return 読込に失敗したファイル数
+     */
+    public int getFailedFileCount()
+    {
+        return this.failedFileCount.get();
+    }
+
+    /**
+     * @return 読み込んだ行数
+     */
+    public long getLineCount()
+    {
+        return this.lineCount.get();
+    }
+
+    /**
+     * @return 読み込んだサイズ(展開後)
+     */
+    public long getByteCount()
+    {
+        return this.byteCount.get();
+    }
+}
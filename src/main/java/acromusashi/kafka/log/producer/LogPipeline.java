@@ -0,0 +1,707 @@
+/**
+* Copyright (c) Acroquest Technology Co, Ltd. All Rights Reserved.
+* Please read the associated COPYRIGHTS file for more details.
+*
+* THE SOFTWARE IS PROVIDED BY Acroquest Technolog Co., Ltd.,
+* WITHOUT WARRANTY OF ANY KIND, EXPRESS OR IMPLIED, INCLUDING
+* BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+* FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT.
+* IN NO EVENT SHALL THE AUTHORS OR COPYRIGHT HOLDER BE LIABLE FOR ANY
+* CLAIM, DAMAGES SUFFERED BY LICENSEE AS A RESULT OF USING, MODIFYING
+* OR DISTRIBUTING THIS SOFTWARE OR ITS DERIVATIVES.
+*/
+package acromusashi.kafka.log.producer;
+
+import java.io.IOException;
+import java.io.InterruptedIOException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicReference;
+import java.util.concurrent.locks.LockSupport;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import acromusashi.kafka.log.producer.util.SpscRingBuffer;
+
+/**
+ * 読込・変換・送信を段に分け、段ごとのスレッドで並行して処理するパイプライン<br>
+ * <br>
+ * 読込段(呼び出し元のスレッド)が{@link #submit(LineBatch)}で渡した行のまとまりを、
+ * 変換段のスレッドが{@link BatchConverter}でKafka用メッセージに変換し、送信段のスレッドが{@link BatchSender}で送信する。
+ * 段の間は容量固定の{@link SpscRingBuffer}で接続し、後段が詰まった場合は前段が空きを待つ(背圧)。
+ * そのため、送信中も読込・変換を続けられ、変換中もKafkaへの送信を続けられる。<br>
+ * 変換段は複数のワーカーで並行して処理できる。読込段はワーカーごとのキューに順番に行のまとまりを渡し、
+ * 送信段は同じ順番でワーカーごとのキューから取り出すため、変換の完了順によらず読み込んだ順に送信される。
+ * キューは全て1対1で接続するため、ワーカー数によらずロックを使用しない。<br>
+ * キューの容量はまとまりの数のため、ワーカー数とまとまりのサイズによっては滞留するメモリが大きくなる。
+ * {@link #setMaxQueuedBytes(long)}を設定した場合は、渡してから送信し終えるまでの行の合計サイズが上限を超えないよう読込段を待たせる。<br>
+ * 段ごとのキューの滞留数と、前段が空きを待った回数を取得できるため、どの段がボトルネックかを監視できる。<br>
+ * 待機するスレッドは、スピン・yieldの後は相手の段に起こされるまでparkするため、アイドル時はCPUを使用しない。<br>
+ * 変換段・送信段で例外が発生した場合はパイプラインを停止し、以後の{@link #submit(LineBatch)}、{@link #finish()}で例外を通知する。
+ *
+ * @author kimura
+ */
+public class LogPipeline
+{
+    /** デフォルトの段の間のキューの容量(行のまとまりの数) */
+    public static final int                          DEFAULT_QUEUE_CAPACITY = 64;
+
+    /** ロガー */
+    private static final Logger                      logger                 = LoggerFactory.getLogger(LogPipeline.class);
+
+    /** 待機時にスピンする回数 */
+    private static final int                         SPIN_LIMIT             = 100;
+
+    /** 待機時にスピンの後でyieldする回数 */
+    private static final int                         YIELD_LIMIT            = 200;
+
+    /** 読込の終了を示す行のまとまり */
+    private static final LineBatch                   END_OF_LINES           = new LineBatch(0, 0);
+
+    /** 読込の終了を示すメッセージのまとまり */
+    private static final MessageBatch                END_OF_MESSAGES        = new MessageBatch(null, null);
+
+    /** 行のまとまりをKafka用メッセージに変換するコンバータ */
+    private final BatchConverter                     converter;
+
+    /** メッセージのまとまりを送信するセンダー */
+    private final BatchSender                        sender;
+
+    /** 読込段から変換段のワーカーごとへのキュー */
+    private final List<SpscRingBuffer<LineBatch>>    parseQueues;
+
+    /** 変換段のワーカーごとから送信段へのキュー */
+    private final List<SpscRingBuffer<MessageBatch>> sendQueues;
+
+    /** 変換段のワーカーのスレッド */
+    private final List<Thread>                       parseThreads;
+
+    /** 送信段のスレッド */
+    private final Thread                             sendThread;
+
+    /** 変換段のワーカーごとの、入力の追加・出力の空きの通知 */
+    private final List<Signal>                       parseSignals;
+
+    /** 送信段への、入力の追加の通知 */
+    private final Signal                             sendSignal             = new Signal();
+
+    /** 読込段への、キューの空き・滞留する行の合計サイズの減少の通知 */
+    private final Signal                             submitSignal           = new Signal();
+
+    /** 変換段・送信段で発生した例外 */
+    private final AtomicReference<Throwable>         failure                = new AtomicReference<>();
+
+    /** 読込段が変換段へのキューの空きを待った回数 */
+    private final AtomicLong                         readBlockedCount       = new AtomicLong();
+
+    /** 変換段が送信段へのキューの空きを待った回数 */
+    private final AtomicLong                         parseBlockedCount      = new AtomicLong();
+
+    /** 送信したまとまりの数 */
+    private final AtomicLong                         sentBatchCount         = new AtomicLong();
+
+    /** 送信したメッセージ数 */
+    private final AtomicLong                         sentMessageCount       = new AtomicLong();
+
+    /** 次に行のまとまりを渡すワーカーの位置(読込段のみが使用する) */
+    private int                                      nextSubmitIndex;
+
+    /** 渡してから送信し終えるまでの行の合計サイズの上限(byte)。0の場合は制限しない */
+    private volatile long                            maxQueuedBytes;
+
+    /** 渡してから送信し終えるまでの行の合計サイズ(byte) */
+    private final AtomicLong                         queuedBytes            = new AtomicLong();
+
+    /**
+     * 変換段のワーカー数を1としてインスタンスを生成する。
+     *
+     * @param name スレッド名に使用する名前
+     * @param converter 行のまとまりをKafka用メッセージに変換するコンバータ
+     * @param sender メッセージのまとまりを送信するセンダー
+     * @param queueCapacity 段の間のキューの容量(行のまとまりの数)
+     */
+    public LogPipeline(String name, BatchConverter converter, BatchSender sender, int queueCapacity)
+    {
+        this(name, converter, sender, queueCapacity, 1);
+    }
+
+    /**
+     * 以下のパラメタを指定してインスタンスを生成する。
+     *
+     * @param name スレッド名に使用する名前
+     * @param converter 行のまとまりをKafka用メッセージに変換するコンバータ(ワーカー数が2以上の場合はスレッドセーフであること)
+     * @param sender メッセージのまとまりを送信するセンダー
+     * @param queueCapacity 段の間のキューの容量(ワーカーごとの行のまとまりの数)
+     * @param parseWorkerCount 変換段のワーカー数
+     */
+    public LogPipeline(String name, BatchConverter converter, BatchSender sender,
+            int queueCapacity, int parseWorkerCount)
+    {
+        if (parseWorkerCount <= 0)
+        {
+            throw new IllegalArgumentException("Parse worker count must be positive. : count="
+                    + parseWorkerCount);
+        }
+
+        this.converter = converter;
+        this.sender = sender;
+        this.parseQueues = new ArrayList<>(parseWorkerCount);
+        this.sendQueues = new ArrayList<>(parseWorkerCount);
+        this.parseThreads = new ArrayList<>(parseWorkerCount);
+        this.parseSignals = new ArrayList<>(parseWorkerCount);
+
+        for (int index = 0; index < parseWorkerCount; index++)
+        {
+            final SpscRingBuffer<LineBatch> parseQueue = new SpscRingBuffer<>(queueCapacity);
+            final SpscRingBuffer<MessageBatch> sendQueue = new SpscRingBuffer<>(queueCapacity);
+            final Signal parseSignal = new Signal();
+            Thread parseThread = new Thread(name + "-parse-" + (index + 1)) {
+                @Override
+                public void run()
+                {
+                    runParseStage(parseQueue, sendQueue, parseSignal);
+                }
+            };
+            parseThread.setDaemon(true);
+
+            this.parseQueues.add(parseQueue);
+            this.sendQueues.add(sendQueue);
+            this.parseThreads.add(parseThread);
+            this.parseSignals.add(parseSignal);
+        }
+
+        this.sendThread = new Thread(name + "-send") {
+            @Override
+            public void run()
+            {
+                runSendStage();
+            }
+        };
+        this.sendThread.setDaemon(true);
+    }
+
+    /**
+     * 変換段・送信段のスレッドを開始する。
+     */
+    public void start()
+    {
+        for (Thread parseThread : this.parseThreads)
+        {
+            parseThread.start();
+        }
+        this.sendThread.start();
+    }
+
+    /**
+     * 渡してから送信し終えるまでの行の合計サイズの上限を設定する。超える場合は{@link #submit(LineBatch)}を待たせる。<br>
+     * 上限より大きいまとまりも、滞留するまとまりがない場合は渡す。
+     *
+     * @param maxQueuedBytes 行の合計サイズの上限(byte)。0の場合は制限しない
+     */
+    public void setMaxQueuedBytes(long maxQueuedBytes)
+    {
+        this.maxQueuedBytes = maxQueuedBytes;
+    }
+
+    /**
+     * 行のまとまりを変換段に渡す。キューが満杯の場合、または滞留する行の合計サイズが上限を超える場合は空くまで待つ。<br>
+     * 読込段の1スレッドからのみ呼び出すこと。複数のスレッドから呼び出す場合は、ロック等で同時に呼び出さないようにすること。
+     *
+     * @param batch 行のまとまり
+     * @throws IOException 変換段・送信段で例外が発生していた場合、または待機中に割り込まれた場合
+     */
+    public void submit(LineBatch batch) throws IOException
+    {
+        checkFailure();
+        try
+        {
+            if (awaitQueuedBytes(batch.getByteLength()) == false)
+            {
+                checkFailure();
+            }
+
+            int index = this.nextSubmitIndex;
+            this.nextSubmitIndex = (index + 1) % this.parseQueues.size();
+            this.queuedBytes.addAndGet(batch.getByteLength());
+            if (put(this.parseQueues.get(index), batch, this.readBlockedCount,
+                    this.submitSignal) == false)
+            {
+                checkFailure();
+            }
+            this.parseSignals.get(index).wake();
+        }
+        catch (InterruptedException ex)
+        {
+            Thread.currentThread().interrupt();
+            throw new InterruptedIOException("Interrupted while submitting to pipeline.");
+        }
+    }
+
+    /**
+     * 行のまとまりを、キューが空いている場合のみ変換段に渡す。待機しない。<br>
+     * {@link #submit(LineBatch)}と合わせて、同時に1スレッドからのみ呼び出すこと(ロック等で排他すること)。
+     *
+     * @param batch 行のまとまり
+     * @return 渡した場合true、キューが満杯の場合false
+     * @throws IOException 変換段・送信段で例外が発生していた場合
+     */
+    public boolean trySubmit(LineBatch batch) throws IOException
+    {
+        checkFailure();
+        if (isOverQueuedBytes(batch.getByteLength()))
+        {
+            return false;
+        }
+
+        SpscRingBuffer<LineBatch> parseQueue = this.parseQueues.get(this.nextSubmitIndex);
+        this.queuedBytes.addAndGet(batch.getByteLength());
+        if (parseQueue.offer(batch) == false)
+        {
+            this.queuedBytes.addAndGet(-batch.getByteLength());
+            return false;
+        }
+        this.parseSignals.get(this.nextSubmitIndex).wake();
+        this.nextSubmitIndex = (this.nextSubmitIndex + 1) % this.parseQueues.size();
+        return true;
+    }
+
+    /**
+     * 渡した全ての行のまとまりを送信し終えるまで待ち、変換段・送信段のスレッドを終了する。
+     *
+     * @throws IOException 変換段・送信段で例外が発生した場合、または待機中に割り込まれた場合
+     */
+    public void finish() throws IOException
+    {
+        // 全てのワーカーに、送信段が取り出す順番で終了を渡す
+        for (int index = 0; index < this.parseQueues.size(); index++)
+        {
+            submit(END_OF_LINES);
+        }
+
+        try
+        {
+            for (Thread parseThread : this.parseThreads)
+            {
+                parseThread.join();
+            }
+            this.sendThread.join();
+        }
+        catch (InterruptedException ex)
+        {
+            Thread.currentThread().interrupt();
+            throw new InterruptedIOException("Interrupted while finishing pipeline.");
+        }
+        checkFailure();
+    }
+
+    /**
+     * 送信を待たずに変換段・送信段のスレッドを終了する。キューに残っている行のまとまりは破棄する。
+     */
+    public void stop()
+    {
+        for (Thread parseThread : this.parseThreads)
+        {
+            parseThread.interrupt();
+        }
+        this.sendThread.interrupt();
+        try
+        {
+            for (Thread parseThread : this.parseThreads)
+            {
+                parseThread.join();
+            }
+            this.sendThread.join();
+        }
+        catch (InterruptedException ex)
+        {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    /**
+     * 変換段のワーカーの処理を行う。
+     *
+     * @param parseQueue ワーカーへのキュー
+     * @param sendQueue ワーカーから送信段へのキュー
+     * @param parseSignal ワーカーへの通知
+     */
+    private void runParseStage(SpscRingBuffer<LineBatch> parseQueue,
+            SpscRingBuffer<MessageBatch> sendQueue, Signal parseSignal)
+    {
+        try
+        {
+            while (true)
+            {
+                LineBatch batch = take(parseQueue, parseSignal);
+                if (batch == null)
+                {
+                    return;
+                }
+                this.submitSignal.wake();
+                if (batch == END_OF_LINES)
+                {
+                    put(sendQueue, END_OF_MESSAGES, this.parseBlockedCount, parseSignal);
+                    this.sendSignal.wake();
+                    return;
+                }
+
+                MessageBatch converted = new MessageBatch(this.converter.convert(batch),
+                        batch.getCheckpointMark(), batch.getFirstLineNanos(),
+                        batch.getByteLength());
+                if (put(sendQueue, converted, this.parseBlockedCount, parseSignal) == false)
+                {
+                    return;
+                }
+                this.sendSignal.wake();
+            }
+        }
+        catch (InterruptedException ex)
+        {
+            // 停止された
+            return;
+        }
+        catch (RuntimeException ex)
+        {
+            fail("parse", ex);
+        }
+    }
+
+    /**
+     * 送信段の処理を行う。読込段が渡した順番でワーカーごとのキューから取り出すことで、読み込んだ順に送信する。
+     */
+    private void runSendStage()
+    {
+        try
+        {
+            int takeIndex = 0;
+            while (true)
+            {
+                MessageBatch batch = take(this.sendQueues.get(takeIndex), this.sendSignal);
+                if (batch == null)
+                {
+                    // 変換段が失敗し、取り出す順番のキューに要素が渡されない
+                    return;
+                }
+                this.parseSignals.get(takeIndex).wake();
+                takeIndex = (takeIndex + 1) % this.sendQueues.size();
+                if (batch == END_OF_MESSAGES)
+                {
+                    // 終了は全てのワーカーに連続して渡すため、以降のキューにも終了のみが残る
+                    return;
+                }
+
+                int messageCount = batch.getMessages().size();
+                this.sender.send(batch);
+                this.queuedBytes.addAndGet(-batch.getSourceByteLength());
+                this.submitSignal.wake();
+                this.sentBatchCount.incrementAndGet();
+                this.sentMessageCount.addAndGet(messageCount);
+            }
+        }
+        catch (InterruptedException ex)
+        {
+            // 停止された
+            return;
+        }
+        catch (RuntimeException ex)
+        {
+            fail("send", ex);
+        }
+    }
+
+    /**
+     * 段で発生した例外を記録する。
+     *
+     * @param stage 段の名前
+     * @param cause 発生した例外
+     */
+    private void fail(String stage, RuntimeException cause)
+    {
+        logger.error("Pipeline stage failed. : stage=" + stage + ", " + this, cause);
+        this.failure.compareAndSet(null, cause);
+
+        // 待機中の段に失敗を検知させる
+        for (Signal parseSignal : this.parseSignals)
+        {
+            parseSignal.wake();
+        }
+        this.sendSignal.wake();
+        this.submitSignal.wake();
+    }
+
+    /**
+     * 変換段・送信段で例外が発生していた場合は通知する。
+     *
+     * @throws IOException 変換段・送信段で例外が発生していた場合
+     */
+    private void checkFailure() throws IOException
+    {
+        Throwable cause = this.failure.get();
+        if (cause != null)
+        {
+            throw new IOException("Pipeline stage failed.", cause);
+        }
+    }
+
+    /**
+     * キューに要素を追加する。満杯の場合は空くまで待つ。
+     *
+     * @param queue キュー
+     * @param element 要素
+     * @param blockedCount 空きを待った回数
+     * @param signal 空きの通知
+     * @return 追加した場合true、他の段で例外が発生したため追加しなかった場合false
+     * @throws InterruptedException 待機中に割り込まれた場合
+     */
+    private <E> boolean put(SpscRingBuffer<E> queue, E element, AtomicLong blockedCount,
+            Signal signal) throws InterruptedException
+    {
+        int idleCount = 0;
+        while (queue.offer(element) == false)
+        {
+            if (idleCount == 0)
+            {
+                blockedCount.incrementAndGet();
+            }
+            if (this.failure.get() != null)
+            {
+                return false;
+            }
+            idle(idleCount++, signal);
+        }
+        return true;
+    }
+
+    /**
+     * 滞留する行の合計サイズに、指定サイズを加えると上限を超えるかを判定する。
+     *
+     * @param byteLength 加えるサイズ
+     * @return 上限を超える場合true。滞留するまとまりがない場合は常にfalse
+     */
+    private boolean isOverQueuedBytes(int byteLength)
+    {
+        long max = this.maxQueuedBytes;
+        long queued = this.queuedBytes.get();
+        return max > 0L && queued > 0L && queued + byteLength > max;
+    }
+
+    /**
+     * 滞留する行の合計サイズに、指定サイズを加えても上限を超えなくなるまで待つ。
+     *
+     * @param byteLength 加えるサイズ
+     * @return 待機を終えた場合true、他の段が失敗した場合false
+     * @throws InterruptedException 待機中に割り込まれた場合
+     */
+    private boolean awaitQueuedBytes(int byteLength) throws InterruptedException
+    {
+        int idleCount = 0;
+        while (isOverQueuedBytes(byteLength))
+        {
+            if (idleCount == 0)
+            {
+                this.readBlockedCount.incrementAndGet();
+            }
+            if (this.failure.get() != null)
+            {
+                return false;
+            }
+            idle(idleCount++, this.submitSignal);
+        }
+        return true;
+    }
+
+    /**
+     * キューから要素を取り出す。空の場合は追加されるまで待つ。<br>
+     * 待機中に他の段が失敗した場合は、失敗した段から要素が渡されないため、待機をやめる。
+     *
+     * @param queue キュー
+     * @param signal 要素の追加の通知
+     * @return 要素。他の段が失敗した場合はnull
+     * @throws InterruptedException 待機中に割り込まれた場合
+     */
+    private <E> E take(SpscRingBuffer<E> queue, Signal signal) throws InterruptedException
+    {
+        int idleCount = 0;
+        E element;
+        while ((element = queue.poll()) == null)
+        {
+            if (this.failure.get() != null)
+            {
+                return null;
+            }
+            idle(idleCount++, signal);
+        }
+        return element;
+    }
+
+    /**
+     * 待機回数に応じて、スピン・yield・parkのいずれかで待つ。<br>
+     * parkする前に通知に待機中のスレッドとして登録し、呼び出し元に待機の条件を確認し直させる。
+     * 登録済みの場合は、相手の段に起こされるまでparkする。
+     *
+     * @param idleCount 待機回数
+     * @param signal 待機の条件が変わったことの通知
+     * @throws InterruptedException 割り込まれた場合
+     */
+    private static void idle(int idleCount, Signal signal) throws InterruptedException
+    {
+        if (Thread.interrupted())
+        {
+            throw new InterruptedException();
+        }
+
+        if (idleCount < SPIN_LIMIT)
+        {
+            return;
+        }
+        if (idleCount < YIELD_LIMIT)
+        {
+            Thread.yield();
+            return;
+        }
+        if (signal.register())
+        {
+            return;
+        }
+        LockSupport.park(signal);
+    }
+
+    /**
+     * @return 読込段から変換段へのキューの滞留数(全ワーカーの合計)
+     */
+    public int getParseQueueDepth()
+    {
+        int depth = 0;
+        for (SpscRingBuffer<LineBatch> parseQueue : this.parseQueues)
+        {
+            depth += parseQueue.size();
+        }
+        return depth;
+    }
+
+    /**
+     * @return 変換段から送信段へのキューの滞留数(全ワーカーの合計)
+     */
+    public int getSendQueueDepth()
+    {
+        int depth = 0;
+        for (SpscRingBuffer<MessageBatch> sendQueue : this.sendQueues)
+        {
+            depth += sendQueue.size();
+        }
+        return depth;
+    }
+
+    /**
+     * @return 段の間のキューの容量(全ワーカーの合計)
+     */
+    public int getQueueCapacity()
+    {
+        return this.parseQueues.get(0).getCapacity() * this.parseQueues.size();
+    }
+
+    /**
+     * @return 変換段のワーカー数
+     */
+    public int getParseWorkerCount()
+    {
+        return this.parseThreads.size();
+    }
+
+    /**
+     * @return 読込段が変換段へのキューの空きを待った回数(変換段以降が詰まっている)
+     */
+    public long getReadBlockedCount()
+    {
+        return this.readBlockedCount.get();
+    }
+
+    /**
+     * @return 変換段が送信段へのキューの空きを待った回数(送信段が詰まっている)
+     */
+    public long getParseBlockedCount()
+    {
+        return this.parseBlockedCount.get();
+    }
+
+    /**
+     * @return 送信したまとまりの数
+     */
+    public long getSentBatchCount()
+    {
+        return this.sentBatchCount.get();
+    }
+
+    /**
+     * @return 送信したメッセージ数
+     */
+    public long getSentMessageCount()
+    {
+        return this.sentMessageCount.get();
+    }
+
+    /**
+     * @return 渡してから送信し終えるまでの行の合計サイズ(byte)
+     */
+    public long getQueuedBytes()
+    {
+        return this.queuedBytes.get();
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public String toString()
+    {
+        return "parseWorkers=" + getParseWorkerCount() + ", parseQueue=" + getParseQueueDepth() + "/" + getQueueCapacity() + ", sendQueue="
+                + getSendQueueDepth() + "/" + getQueueCapacity() + ", readBlocked="
+                + getReadBlockedCount() + ", parseBlocked=" + getParseBlockedCount()
+                + ", queuedBytes=" + getQueuedBytes() + ", sentBatches="
+                + getSentBatchCount() + ", sentMessages=" + getSentMessageCount();
+    }
+
+    /**
+     * 段の間で、待機中のスレッドを起こす通知<br>
+     * <br>
+     * 待機するスレッドは{@link #register()}で登録した後に待機の条件を確認し直してからparkし、
+     * 相手の段はキューの更新後に{@link #wake()}で起こす。{@link #wake()}は登録の取得と解除を不可分に行うため、
+     * キューの更新と登録の確認の順序が入れ替わらず、更新を見逃したままparkし続けることはない。
+     * 通知はまとまりごとに行うため、行ごとの負荷にはならない。
+     */
+    private static final class Signal
+    {
+        /** 待機中のスレッド */
+        private final AtomicReference<Thread> waiter = new AtomicReference<>();
+
+        /**
+         * 呼び出し元のスレッドを待機中のスレッドとして登録する。
+         *
+         * @return 新たに登録した場合true(待機の条件を確認し直すこと)、登録済みの場合false
+         */
+        boolean register()
+        {
+            Thread current = Thread.currentThread();
+            if (this.waiter.get() == current)
+            {
+                return false;
+            }
+            this.waiter.set(current);
+            return true;
+        }
+
+        /**
+         * 待機中のスレッドがある場合は登録を解除して起こす。
+         */
+        void wake()
+        {
+            Thread waiting = this.waiter.getAndSet(null);
+            if (waiting != null)
+            {
+                LockSupport.unpark(waiting);
+            }
+        }
+    }
+}
@@ -0,0 +1,213 @@
+/**
+* Copyright (c) Acroquest Technology Co, Ltd. All Rights Reserved.
+* Please read the associated COPYRIGHTS file for more details.
+*
+* THE SOFTWARE IS PROVIDED BY Acroquest Technolog Co., Ltd.,
+* WITHOUT WARRANTY OF ANY KIND, EXPRESS OR IMPLIED, INCLUDING
+* BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+* FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT.
+* IN NO EVENT SHALL THE AUTHORS OR COPYRIGHT HOLDER BE LIABLE FOR ANY
+* CLAIM, DAMAGES SUFFERED BY LICENSEE AS A RESULT OF USING, MODIFYING
+* OR DISTRIBUTING THIS SOFTWARE OR ITS DERIVATIVES.
+*/
+package acromusashi.kafka.log.producer;
+
+import java.io.IOException;
+import java.lang.reflect.Field;
+import java.lang.reflect.Method;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.channels.FileChannel.MapMode;
+import java.nio.file.Path;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * ファイルをメモリマップして読み込む{@link FileTailInputStream}<br>
+ * <br>
+ * 未読の範囲を最大で指定サイズの窓としてマップし、読込はマップからのコピーのみで行うため、
+ * 大量の未読がある場合(起動直後の追いつき等)のシステムコールとコピーを削減できる。
+ * 窓の末尾まで読み込んだ場合は、ファイルの伸長に合わせて次の窓をマップし直す。<br>
+ * 未読が1MB未満の場合は、マップし直すよりも安価なため通常の読込を行う。<br>
+ * マップした領域は本クラスの外部に公開しないため、ローテーション時や窓の切り替え時に即座に解放できる。
+ * 解放できないJVMではGCによる解放を待つ。
+ *
+ * @author kimura
+ */
+public class MappedFileTailInputStream extends FileTailInputStream
+{
+    /** ロガー */
+    private static final Logger logger        = LoggerFactory.getLogger(MappedFileTailInputStream.class);
+
+    /** マップする最小の未読サイズ(窓の最大サイズの方が小さい場合は窓の最大サイズ) */
+    private static final long   MIN_MAP_SIZE  = 1024L * 1024L;
+
+    /** マップの解放に使用するオブジェクト(sun.misc.Unsafe)。使用できない場合はnull */
+    private static final Object UNMAPPER;
+
+    /** マップの解放に使用するメソッド(sun.misc.Unsafe#invokeCleaner)。使用できない場合はnull */
+    private static final Method UNMAP_METHOD;
+
+    /** マップする窓の最大サイズ */
+    private final long          windowSize;
+
+    /** マップ中の窓 */
+    private MappedByteBuffer    window;
+
+    /** マップ中の窓の開始位置 */
+    private long                windowStart;
+
+    static
+    {
+        Object unmapper = null;
+        Method unmapMethod = null;
+        try
+        {
+            Class<?> unsafeClass = Class.forName("sun.misc.Unsafe");
+            Field unsafeField = unsafeClass.getDeclaredField("theUnsafe");
+            unsafeField.setAccessible(true);
+            unmapper = unsafeField.get(null);
+            unmapMethod = unsafeClass.getMethod("invokeCleaner", ByteBuffer.class);
+        }
+        catch (ReflectiveOperationException | RuntimeException ex)
+        {
+            // Java 8以前ではGCによる解放を待つ
+            logger.debug("Unmap is not available. Wait for GC to unmap.", ex);
+            unmapper = null;
+            unmapMethod = null;
+        }
+        UNMAPPER = unmapper;
+        UNMAP_METHOD = unmapMethod;
+    }
+
+    /**
+     * 追尾するファイルと開始位置、窓のサイズを指定してインスタンスを生成する。
+     *
+     * @param path 追尾するファイル
+     * @param fromEnd ファイルの末尾から読み込む場合true、先頭から読み込む場合false
+     * @param pollIntervalMillis ポーリング間隔(ミリ秒)
+     * @param windowSize マップする窓の最大サイズ(2GB未満)
+     */
+    public MappedFileTailInputStream(Path path, boolean fromEnd, long pollIntervalMillis,
+            long windowSize)
+    {
+        this(path, fromEnd ? -1L : 0L, pollIntervalMillis, windowSize);
+    }
+
+    /**
+     * 追尾するファイルと開始位置、窓のサイズを指定してインスタンスを生成する。
+     *
+     * @param path 追尾するファイル
+     * @param startPosition 開始位置。負の値の場合はファイルの末尾
+     * @param pollIntervalMillis ポーリング間隔(ミリ秒)
+     * @param windowSize マップする窓の最大サイズ(2GB未満)
+     */
+    public MappedFileTailInputStream(Path path, long startPosition, long pollIntervalMillis,
+            long windowSize)
+    {
+        super(path, startPosition, pollIntervalMillis);
+        if (windowSize <= 0 || windowSize > Integer.MAX_VALUE)
+        {
+            throw new IllegalArgumentException("Map window size is out of range. : size="
+                    + windowSize);
+        }
+        this.windowSize = windowSize;
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    protected int readFile(FileChannel fileChannel, long filePosition, byte[] buffer, int offset,
+            int length) throws IOException
+    {
+        long fileSize = fileChannel.size();
+        if (filePosition >= fileSize)
+        {
+            return 0;
+        }
+
+        if (isMapped(filePosition) == false)
+        {
+            releaseFile();
+            long mapSize = Math.min(this.windowSize, fileSize - filePosition);
+            if (mapSize < Math.min(MIN_MAP_SIZE, this.windowSize))
+            {
+                return super.readFile(fileChannel, filePosition, buffer, offset, length);
+            }
+            this.window = fileChannel.map(MapMode.READ_ONLY, filePosition, mapSize);
+            this.windowStart = filePosition;
+        }
+
+        // 切り詰められたファイルの末尾以降を参照しないよう、現在のサイズまでに制限する
+        int index = (int) (filePosition - this.windowStart);
+        long readable = Math.min(this.window.limit(), fileSize - this.windowStart) - index;
+        int readSize = (int) Math.min(length, readable);
+        try
+        {
+            this.window.position(index);
+            this.window.get(buffer, offset, readSize);
+        }
+        catch (InternalError ex)
+        {
+            // 参照中に切り詰められた場合はアクセス違反がInternalErrorとして通知される
+            logger.warn("Mapped file was truncated while reading. : path=" + getPath(), ex);
+            releaseFile();
+            return 0;
+        }
+        return readSize;
+    }
+
+    /**
+     * 指定位置がマップ中の窓に含まれるかを判定する。
+     *
+     * @param filePosition 読込位置
+     * @return 含まれる場合true
+     */
+    private boolean isMapped(long filePosition)
+    {
+        return this.window != null && filePosition >= this.windowStart
+                && filePosition < this.windowStart + this.window.limit();
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    protected void releaseFile()
+    {
+        if (this.window == null)
+        {
+            return;
+        }
+
+        MappedByteBuffer released = this.window;
+        this.window = null;
+        unmap(released);
+    }
+
+    /**
+     * マップを解放する。解放できない環境ではGCによる解放を待つ。<br>
+     * 解放後のマップにアクセスするとJVMが異常終了するため、呼び出し後は参照しないこと。
+     *
+     * @param buffer 解放するマップ
+     */
+    static void unmap(MappedByteBuffer buffer)
+    {
+        if (UNMAP_METHOD == null)
+        {
+            return;
+        }
+
+        try
+        {
+            UNMAP_METHOD.invoke(UNMAPPER, buffer);
+        }
+        catch (ReflectiveOperationException | RuntimeException ex)
+        {
+            logger.debug("Unmap failed. Wait for GC to unmap.", ex);
+        }
+    }
+}
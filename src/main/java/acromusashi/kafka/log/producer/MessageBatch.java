@@ -0,0 +1,110 @@
+/**
+* Copyright (c) Acroquest Technology Co, Ltd. All Rights Reserved.
+* Please read the associated COPYRIGHTS file for more details.
+*
+* THE SOFTWARE IS PROVIDED BY Acroquest Technolog Co., Ltd.,
+* WITHOUT WARRANTY OF ANY KIND, EXPRESS OR IMPLIED, INCLUDING
+* BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+* FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT.
+* IN NO EVENT SHALL THE AUTHORS OR COPYRIGHT HOLDER BE LIABLE FOR ANY
+* CLAIM, DAMAGES SUFFERED BY LICENSEE AS A RESULT OF USING, MODIFYING
+* OR DISTRIBUTING THIS SOFTWARE OR ITS DERIVATIVES.
+*/
+package acromusashi.kafka.log.producer;
+
+import java.util.List;
+
+import kafka.producer.KeyedMessage;
+
+/**
+ * パイプラインの送信段に渡す、変換済みのKafka用メッセージのまとまり
+ *
+ * @author kimura
+ */
+public final class MessageBatch
+{
+    /** Kafka用メッセージ */
+    private final List<KeyedMessage<String, String>> messages;
+
+    /** 送信が完了した場合の送信済み位置。記録しない場合はnull */
+    private final CheckpointMark                     checkpointMark;
+
+    /** 元の行のまとまりの最初の行を読み込んだ時刻(System.nanoTime())。不明な場合は0 */
+    private final long                               firstLineNanos;
+
+    /** 元の行のまとまりのサイズ(byte) */
+    private final int                                sourceByteLength;
+
+    /**
+     * 以下のパラメタを指定してインスタンスを生成する。
+     *
+     * @param messages Kafka用メッセージ
+     * @param checkpointMark 送信が完了した場合の送信済み位置。記録しない場合はnull
+     */
+    public MessageBatch(List<KeyedMessage<String, String>> messages, CheckpointMark checkpointMark)
+    {
+        this(messages, checkpointMark, 0L);
+    }
+
+    /**
+     * 以下のパラメタを指定してインスタンスを生成する。
+     *
+     * @param messages Kafka用メッセージ
+     * @param checkpointMark 送信が完了した場合の送信済み位置。記録しない場合はnull
+     * @param firstLineNanos 元の行のまとまりの最初の行を読み込んだ時刻(System.nanoTime())
+     */
+    public MessageBatch(List<KeyedMessage<String, String>> messages,
+            CheckpointMark checkpointMark, long firstLineNanos)
+    {
+        this(messages, checkpointMark, firstLineNanos, 0);
+    }
+
+    /**
+     * 以下のパラメタを指定してインスタンスを生成する。
+     *
+     * @param messages Kafka用メッセージ
+     * @param checkpointMark 送信が完了した場合の送信済み位置。記録しない場合はnull
+     * @param firstLineNanos 元の行のまとまりの最初の行を読み込んだ時刻(System.nanoTime())
+     * @param sourceByteLength 元の行のまとまりのサイズ(byte)
+     */
+    public MessageBatch(List<KeyedMessage<String, String>> messages,
+            CheckpointMark checkpointMark, long firstLineNanos, int sourceByteLength)
+    {
+        this.messages = messages;
+        this.checkpointMark = checkpointMark;
+        this.firstLineNanos = firstLineNanos;
+        this.sourceByteLength = sourceByteLength;
+    }
+
+    /**
+     * @return Kafka用メッセージ
+     */
+    public List<KeyedMessage<String, String>> getMessages()
+    {
+        return this.messages;
+    }
+
+    /**
+     * @return 送信が完了した場合の送信済み位置。記録しない場合はnull
+     */
+    public CheckpointMark getCheckpointMark()
+    {
+        return this.checkpointMark;
+    }
+
+    /**
+     * @return 元の行のまとまりの最初の行を読み込んだ時刻(System.nanoTime())。不明な場合は0
+     */
+    public long getFirstLineNanos()
+    {
+        return this.firstLineNanos;
+    }
+
+    /**
+     * @return 元の行のまとまりのサイズ(byte)
+     */
+    public int getSourceByteLength()
+    {
+        return this.sourceByteLength;
+    }
+}
@@ -0,0 +1,256 @@
+/**
+* Copyright (c) Acroquest Technology Co, Ltd. All Rights Reserved.
+* Please read the associated COPYRIGHTS file for more details.
+*
+* THE SOFTWARE IS PROVIDED BY Acroquest Technolog Co., Ltd.,
+* WITHOUT WARRANTY OF ANY KIND, EXPRESS OR IMPLIED, INCLUDING
+* BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+* FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT.
+* IN NO EVENT SHALL THE AUTHORS OR COPYRIGHT HOLDER BE LIABLE FOR ANY
+* CLAIM, DAMAGES SUFFERED BY LICENSEE AS A RESULT OF USING, MODIFYING
+* OR DISTRIBUTING THIS SOFTWARE OR ITS DERIVATIVES.
+*/
+package acromusashi.kafka.log.producer;
+
+import java.nio.charset.Charset;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+
+import kafka.javaapi.producer.Producer;
+import kafka.producer.KeyedMessage;
+import kafka.producer.ProducerConfig;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import acromusashi.kafka.log.producer.util.CompiledLogFormat;
+import acromusashi.kafka.log.producer.util.JsonLogSerializer;
+import acromusashi.kafka.log.producer.util.KeyedMessageConverter;
+import acromusashi.kafka.log.producer.util.LogFormatSelector;
+import acromusashi.kafka.log.producer.util.LogRecord;
+
+/**
+ * 読み込んだ行をメッセージに変換し、kafka producerで送信するハンドラの基底クラス<br>
+ * <br>
+ * 行の変換と送信待ちのメッセージの保持はワーカースレッドごとに行い、最大送信サイズに達した時点で送信する。
+ * KafkaProducerは送信を排他するため、並行して送信するスレッド数と同数を生成し、空いているものを使用して送信する。
+ * 1回の読込の終了時の処理({@link #endBatch(TailedFile)})はサブクラスで実装し、{@link #sendPending()}で残りを送信する。
+ *
+ * @author kimura
+ */
+public abstract class MessageLineHandler implements LineHandler
+{
+    /** ロガー */
+    private static final Logger                                   logger                = LoggerFactory.getLogger(MessageLineHandler.class);
+
+    /** デフォルトの最大送信サイズ */
+    private static final int                                      DEFAULT_MAX_SEND_SIZE = 100;
+
+    /** 送信に使用していないKafkaのProducer */
+    private BlockingQueue<Producer<String, String>>               producers;
+
+    /** 送信する際のトピック */
+    private final String                                          topic;
+
+    /** LogAgentが配置されたホスト名 */
+    private final String                                          host;
+
+    /** コンパイル済みのapacheのログフォーマットの選択 */
+    private final LogFormatSelector                               selector;
+
+    /** フォーマットごとのjsonへの変換を行うシリアライザ */
+    private final JsonLogSerializer[]                             serializers;
+
+    /** ワーカースレッドごとのパース結果の格納先 */
+    private final ThreadLocal<LogRecord[]>                        records;
+
+    /** ワーカースレッドごとの送信待ちメッセージ */
+    private final ThreadLocal<List<KeyedMessage<String, String>>> messages;
+
+    /** producerで一度にsendする最大量 */
+    private int                                                   maxSendSize           = DEFAULT_MAX_SEND_SIZE;
+
+    /** エンコード */
+    private Charset                                               charset               = Charset.forName("UTF-8");
+
+    /**
+     * 以下のパラメタを指定するコンストラクタ
+     * 
+     * @param topic 送信する際のトピック
+     * @param logFormats コンパイル済みのapacheのログのフォーマットのリスト(優先順)
+     * @param jsonDateFormat jsonで送る際の時刻の形式
+     * @param hostName Producerが動作するホスト
+     * @param typedFields 数値のフィールドを数値型で送る場合true
+     * @param epochMillisTime 時刻をエポックミリ秒で送る場合true
+     */
+    protected MessageLineHandler(String topic, List<CompiledLogFormat> logFormats,
+            String jsonDateFormat, String hostName, boolean typedFields, boolean epochMillisTime)
+    {
+        this.topic = topic;
+        this.host = hostName;
+        this.selector = new LogFormatSelector(logFormats);
+        this.serializers = JsonLogSerializer.create(this.selector, hostName, jsonDateFormat,
+                typedFields, epochMillisTime);
+        this.records = new ThreadLocal<LogRecord[]>() {
+            @Override
+            protected LogRecord[] initialValue()
+            {
+                return MessageLineHandler.this.selector.newRecords();
+            }
+        };
+        this.messages = new ThreadLocal<List<KeyedMessage<String, String>>>() {
+            @Override
+            protected List<KeyedMessage<String, String>> initialValue()
+            {
+                return new ArrayList<KeyedMessage<String, String>>();
+            }
+        };
+    }
+
+    /**
+     * KafkaProducer用のConfigオブジェクトを指定し、並行して送信するスレッド数分のKafkaProducerを初期化する。
+     * 
+     * @param config KafkaProducerConfig
+     */
+    public void initialize(ProducerConfig config)
+    {
+        int producerCount = Math.max(1, getSenderCount());
+        this.producers = new ArrayBlockingQueue<>(producerCount);
+        for (int index = 0; index < producerCount; index++)
+        {
+            this.producers.add(new Producer<String, String>(config));
+        }
+    }
+
+    /**
+     * 並行して送信するスレッドの最大数を取得する。<br>
+     * {@link #initialize(ProducerConfig)}で同数のKafkaProducerを生成する。
+     * 
+     * @return 並行して送信するスレッドの最大数
+     */
+    protected abstract int getSenderCount();
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public void handleLine(TailedFile file, byte[] buffer, int start, int end)
+    {
+        KeyedMessage<String, String> message = convert(file, buffer, start, end);
+        if (message == null)
+        {
+            return;
+        }
+
+        List<KeyedMessage<String, String>> messageList = this.messages.get();
+        messageList.add(message);
+        if (messageList.size() >= this.maxSendSize)
+        {
+            send(messageList);
+        }
+    }
+
+    /**
+     * 1行をメッセージに変換する。変換に失敗した行は破棄する。
+     * 
+     * @param file 読込元のファイル
+     * @param buffer 行を格納したbyte配列
+     * @param start 行の開始位置
+     * @param end 行の終了位置(改行を含まない)
+     * @return メッセージ。空行、または変換に失敗した場合はnull
+     */
+    protected KeyedMessage<String, String> convert(TailedFile file, byte[] buffer, int start,
+            int end)
+    {
+        if (end <= start)
+        {
+            return null;
+        }
+
+        try
+        {
+            return KeyedMessageConverter.convertToMessage(buffer, start, end - start,
+                    this.charset, this.topic, this.host, this.selector, this.serializers,
+                    this.records.get());
+        }
+        catch (Exception ex)
+        {
+            logger.warn("Log convert failed. Dispose log message. File=" + file.getPath()
+                    + ", Log=" + new String(buffer, start, end - start, this.charset), ex);
+            return null;
+        }
+    }
+
+    /**
+     * 呼び出し元のワーカースレッドの送信待ちのメッセージを送信する。
+     */
+    protected void sendPending()
+    {
+        send(this.messages.get());
+    }
+
+    /**
+     * メッセージを送信する。失敗した場合もメッセージは呼び出し元で保持したままとする。<br>
+     * 送信には空いているProducerを1つ使用し、空いていない場合は待つ。
+     * 
+     * @param messageList メッセージ
+     */
+    protected void sendMessages(List<KeyedMessage<String, String>> messageList)
+    {
+        Producer<String, String> producer;
+        try
+        {
+            producer = this.producers.take();
+        }
+        catch (InterruptedException ex)
+        {
+            Thread.currentThread().interrupt();
+            throw new IllegalStateException("Interrupted while waiting for producer.", ex);
+        }
+
+        try
+        {
+            producer.send(messageList);
+        }
+        finally
+        {
+            this.producers.add(producer);
+        }
+    }
+
+    /**
+     * 送信に使用していないKafkaProducerを全て閉じる。送信が終わった後に呼び出すこと。
+     */
+    protected void closeProducers()
+    {
+        Producer<String, String> producer;
+        while ((producer = this.producers.poll()) != null)
+        {
+            producer.close();
+        }
+    }
+
+    /**
+     * 送信待ちのメッセージを送信する。失敗した場合も送信待ちのメッセージは破棄する(読込元で読み直す)。
+     * 
+     * @param messageList 送信待ちのメッセージ
+     */
+    private void send(List<KeyedMessage<String, String>> messageList)
+    {
+        if (messageList.isEmpty())
+        {
+            return;
+        }
+
+        try
+        {
+            sendMessages(messageList);
+        }
+        finally
+        {
+            messageList.clear();
+        }
+    }
+}
@@ -0,0 +1,33 @@
+/**
+* Copyright (c) Acroquest Technology Co, Ltd. All Rights Reserved.
+* Please read the associated COPYRIGHTS file for more details.
+*
+* THE SOFTWARE IS PROVIDED BY Acroquest Technolog Co., Ltd.,
+* WITHOUT WARRANTY OF ANY KIND, EXPRESS OR IMPLIED, INCLUDING
+* BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+* FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT.
+* IN NO EVENT SHALL THE AUTHORS OR COPYRIGHT HOLDER BE LIABLE FOR ANY
+* CLAIM, DAMAGES SUFFERED BY LICENSEE AS A RESULT OF USING, MODIFYING
+* OR DISTRIBUTING THIS SOFTWARE OR ITS DERIVATIVES.
+*/
+package acromusashi.kafka.log.producer;
+
+import java.util.List;
+
+import kafka.producer.KeyedMessage;
+
+/**
+ * メッセージのまとまりを送信先(Kafka等)に送信するインタフェース
+ *
+ * @author kimura
+ */
+public interface MessageSink
+{
+    /**
+     * メッセージのまとまりを送信する。
+     *
+     * @param messages メッセージのまとまり
+     * @throws RuntimeException 送信失敗時
+     */
+    void send(List<KeyedMessage<String, String>> messages);
+}
@@ -0,0 +1,342 @@
+/**
+* Copyright (c) Acroquest Technology Co, Ltd. All Rights Reserved.
+* Please read the associated COPYRIGHTS file for more details.
+*
+* THE SOFTWARE IS PROVIDED BY Acroquest Technolog Co., Ltd.,
+* WITHOUT WARRANTY OF ANY KIND, EXPRESS OR IMPLIED, INCLUDING
+* BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+* FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT.
+* IN NO EVENT SHALL THE AUTHORS OR COPYRIGHT HOLDER BE LIABLE FOR ANY
+* CLAIM, DAMAGES SUFFERED BY LICENSEE AS A RESULT OF USING, MODIFYING
+* OR DISTRIBUTING THIS SOFTWARE OR ITS DERIVATIVES.
+*/
+package acromusashi.kafka.log.producer;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.TimeUnit;
+
+import kafka.producer.KeyedMessage;
+
+import acromusashi.kafka.log.producer.util.CompiledLogFormat;
+
+/**
+ * globで指定した複数のログファイルを{@link MultiFileTailer}で追尾し、kafka producerで送信するクラス<br>
+ * <br>
+ * 行の変換と送信は{@link MessageLineHandler}で行い、1ファイルの1回の読込ごとに残りを送信する。
+ * 送信済み位置の保存先を設定した場合は、送信完了後にファイルごとの送信済み位置を記録する。<br>
+ * 待機時間を設定した場合は、行をファイルごとにまとめ、行数・サイズ・待機時間のいずれかの上限に達した時点で送信する。
+ * 待機時間の経過は{@link LingerTimer}のスレッドが監視し、経過したファイルの読込を依頼して、ファイルを読み込むワーカーのスレッドで送信する。
+ * 送信に失敗した場合、その読込で読み込んだ行は読込元で読み直し、それ以前の読込で読み込んだ行は保持して次回に再送する。
+ *
+ * @author kimura
+ */
+public class MultiFileTailExecutor extends MessageLineHandler implements Runnable, LingerTarget
+{
+    /** ファイルの追尾 */
+    private final MultiFileTailer                       tailer;
+
+    /** ファイルごとの送信待ちのまとまり。送信待ちの行があるファイルのみ保持する */
+    private final ConcurrentMap<TailedFile, FileBatch> batches     = new ConcurrentHashMap<>();
+
+    /** まとまりのサイズと、読込から送信完了までの時間の統計 */
+    private final BatchStatistics                       statistics  = new BatchStatistics();
+
+    /** 送信済み位置の保存先。nullの場合は保存しない */
+    private CheckpointStore                             checkpointStore;
+
+    /** まとまりの最大行数 */
+    private int                                         maxMessages;
+
+    /** まとまりの最大サイズ(byte) */
+    private long                                        maxBytes;
+
+    /** まとまりの最大待機時間(ナノ秒)。0の場合は読み込むごとに送信する */
+    private long                                        lingerNanos;
+
+    /** まとまりの待機時間を監視するタイマー */
+    private LingerTimer                                 lingerTimer = LingerTimer.getShared();
+
+    /**
+     * 以下のパラメタを指定するコンストラクタ
+     * 
+     * @param tailPaths 追尾するファイルのglobのリスト
+     * @param topic 送信する際のトピック
+     * @param logFormats コンパイル済みのapacheのログのフォーマットのリスト(優先順)
+     * @param jsonDateFormat jsonで送る際の時刻の形式
+     * @param hostName Producerが動作するホスト
+     * @param typedFields 数値のフィールドを数値型で送る場合true
+     * @param epochMillisTime 時刻をエポックミリ秒で送る場合true
+     * @param workerCount ワーカー数
+     * @param readBudget 1ファイルの1回の読込で読み込む最大サイズ
+     * @param pollIntervalMillis ポーリング間隔(ミリ秒)
+     * @param rescanIntervalMillis globの再走査間隔(ミリ秒)
+     */
+    public MultiFileTailExecutor(List<String> tailPaths, String topic,
+            List<CompiledLogFormat> logFormats, String jsonDateFormat, String hostName,
+            boolean typedFields, boolean epochMillisTime, int workerCount, long readBudget,
+            long pollIntervalMillis, long rescanIntervalMillis)
+    {
+        super(topic, logFormats, jsonDateFormat, hostName, typedFields, epochMillisTime);
+        this.tailer = new MultiFileTailer(tailPaths, this, workerCount, readBudget,
+                pollIntervalMillis, rescanIntervalMillis);
+    }
+
+    /**
+     * 送信済み位置の保存先を設定する。<br>
+     * 保存先に送信済み位置があるファイルは、その位置から読込を再開する。
+     * 
+     * @param checkpointStore 送信済み位置の保存先
+     */
+    public void setCheckpointStore(CheckpointStore checkpointStore)
+    {
+        this.checkpointStore = checkpointStore;
+        this.tailer.setCheckpointStore(checkpointStore);
+    }
+
+    /**
+     * 最大行長を設定する。超える行は最大行長までに切り詰めて送信する。
+     * 
+     * @param maxLineLength 最大行長(byte)
+     */
+    public void setMaxLineLength(int maxLineLength)
+    {
+        this.tailer.setMaxLineLength(maxLineLength);
+    }
+
+    /**
+     * 行をファイルごとにまとめて送信する条件を設定する。行数・サイズ・待機時間のいずれかの上限に達した時点で送信する。
+     * 
+     * @param maxMessages まとまりの最大行数
+     * @param maxBytes まとまりの最大サイズ(byte)
+     * @param lingerMillis 最初の行を読み込んでから送信するまでの最大待機時間(ミリ秒)。0の場合は読み込むごとに送信する
+     */
+    public void setBatching(int maxMessages, int maxBytes, long lingerMillis)
+    {
+        this.maxMessages = Math.max(1, maxMessages);
+        this.maxBytes = Math.max(1, maxBytes);
+        this.lingerNanos = TimeUnit.MILLISECONDS.toNanos(lingerMillis);
+    }
+
+    /**
+     * まとまりの待機時間を監視するタイマーを設定する。設定しない場合は全ての送信元で共有するタイマーを使用する。
+     * 
+     * @param lingerTimer タイマー
+     */
+    public void setLingerTimer(LingerTimer lingerTimer)
+    {
+        this.lingerTimer = lingerTimer;
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public void run()
+    {
+        if (this.lingerNanos == 0L)
+        {
+            this.tailer.run();
+            return;
+        }
+
+        this.lingerTimer.register(this);
+        try
+        {
+            this.tailer.run();
+        }
+        finally
+        {
+            this.lingerTimer.unregister(this);
+        }
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    protected int getSenderCount()
+    {
+        return this.tailer.getWorkerCount();
+    }
+
+    /**
+     * {@inheritDoc}<br>
+     * 待機時間を設定した場合は、ファイルごとのまとまりに追加し、行数またはサイズの上限に達した時点で送信する。
+     */
+    @Override
+    public void handleLine(TailedFile file, byte[] buffer, int start, int end)
+    {
+        if (this.lingerNanos == 0L)
+        {
+            super.handleLine(file, buffer, start, end);
+            return;
+        }
+
+        KeyedMessage<String, String> message = convert(file, buffer, start, end);
+        if (message == null)
+        {
+            return;
+        }
+
+        FileBatch batch = this.batches.get(file);
+        if (batch == null)
+        {
+            batch = new FileBatch();
+            batch.firstLineNanos = System.nanoTime();
+            this.batches.put(file, batch);
+        }
+        batch.messages.add(message);
+        batch.byteLength += end - start;
+
+        if (batch.messages.size() >= this.maxMessages)
+        {
+            flush(file, batch, BatchStatistics.FLUSH_MESSAGES);
+        }
+        else if (batch.byteLength >= this.maxBytes)
+        {
+            flush(file, batch, BatchStatistics.FLUSH_BYTES);
+        }
+    }
+
+    /**
+     * {@inheritDoc}<br>
+     * 待機時間を設定した場合は、最初の行から待機時間が経過したまとまりのみ送信する。
+     * 経過していない場合は、送信済み位置を記録せずに次回以降の読込で送信する。
+     */
+    @Override
+    public void endBatch(TailedFile file)
+    {
+        if (this.lingerNanos == 0L)
+        {
+            sendPending();
+        }
+        else
+        {
+            FileBatch batch = this.batches.get(file);
+            if (batch != null)
+            {
+                if (System.nanoTime() - batch.firstLineNanos < this.lingerNanos)
+                {
+                    batch.committedCount = batch.messages.size();
+                    batch.committedBytes = batch.byteLength;
+                    return;
+                }
+                flush(file, batch, BatchStatistics.FLUSH_LINGER);
+            }
+        }
+
+        if (this.checkpointStore != null)
+        {
+            this.checkpointStore.update(file.getPath(), file.getFileKey(),
+                    file.getCommittedOffset(), file.getFingerprintLength(), file.getFingerprint());
+        }
+    }
+
+    /**
+     * {@inheritDoc}<br>
+     * 最初の行から待機時間が経過したまとまりのファイルの読込を依頼し、ワーカーのスレッドで送信させる。
+     */
+    @Override
+    public boolean flushIfLingered(long nowNanos)
+    {
+        boolean requested = false;
+        for (Map.Entry<TailedFile, FileBatch> entry : this.batches.entrySet())
+        {
+            if (nowNanos - entry.getValue().firstLineNanos >= this.lingerNanos)
+            {
+                this.tailer.requestRead(entry.getKey());
+                requested = true;
+            }
+        }
+        return requested;
+    }
+
+    /**
+     * ファイルのまとまりを送信する。ファイルを読み込むワーカーのスレッドから呼び出すこと。<br>
+     * 失敗した場合は、今回の読込で追加した行を破棄し(読込元で読み直す)、それ以前の読込で追加した行を次回の送信まで保持する。
+     * 
+     * @param file ファイル
+     * @param batch まとまり
+     * @param reason 契機
+     */
+    private void flush(TailedFile file, FileBatch batch, int reason)
+    {
+        this.statistics.recordFlush(reason, batch.messages.size());
+        try
+        {
+            sendMessages(batch.messages);
+        }
+        catch (RuntimeException ex)
+        {
+            batch.messages.subList(batch.committedCount, batch.messages.size()).clear();
+            batch.byteLength = batch.committedBytes;
+            if (batch.messages.isEmpty())
+            {
+                this.batches.remove(file);
+            }
+            else
+            {
+                // 再送は待機時間の経過後に行う
+                batch.firstLineNanos = System.nanoTime();
+            }
+            throw ex;
+        }
+
+        this.statistics.recordSent(batch.firstLineNanos);
+        this.batches.remove(file);
+    }
+
+    /**
+     * まとまりのサイズと、読込から送信完了までの時間の統計を取得する。
+     * 
+     * @return 統計
+     */
+    public BatchStatistics getBatchStatistics()
+    {
+        return this.statistics;
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public String toString()
+    {
+        return "MultiFileTailExecutor : " + this.statistics;
+    }
+
+    /**
+     * @return ファイルの追尾
+     */
+    public MultiFileTailer getTailer()
+    {
+        return this.tailer;
+    }
+
+    /**
+     * ファイルごとの送信待ちのまとまり<br>
+     * <br>
+     * ファイルを読み込むワーカーのスレッドのみが更新する。{@link LingerTimer}のスレッドは最初の行を読み込んだ時刻のみ参照する。
+     */
+    private static final class FileBatch
+    {
+        /** 送信待ちのメッセージ */
+        final List<KeyedMessage<String, String>> messages = new ArrayList<>();
+
+        /** 前回までの読込で追加したメッセージ数 */
+        int                                      committedCount;
+
+        /** 送信待ちの行の合計サイズ */
+        long                                     byteLength;
+
+        /** 前回までの読込で追加した行の合計サイズ */
+        long                                     committedBytes;
+
+        /** 最初の行を読み込んだ時刻(System.nanoTime()) */
+        volatile long                            firstLineNanos;
+    }
+}
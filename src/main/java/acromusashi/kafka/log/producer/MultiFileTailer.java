@@ -0,0 +1,876 @@
+/**
+* Copyright (c) Acroquest Technology Co, Ltd. All Rights Reserved.
+* Please read the associated COPYRIGHTS file for more details.
+*
+* THE SOFTWARE IS PROVIDED BY Acroquest Technolog Co., Ltd.,
+* WITHOUT WARRANTY OF ANY KIND, EXPRESS OR IMPLIED, INCLUDING
+* BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+* FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT.
+* IN NO EVENT SHALL THE AUTHORS OR COPYRIGHT HOLDER BE LIABLE FOR ANY
+* CLAIM, DAMAGES SUFFERED BY LICENSEE AS A RESULT OF USING, MODIFYING
+* OR DISTRIBUTING THIS SOFTWARE OR ITS DERIVATIVES.
+*/
+package acromusashi.kafka.log.producer;
+
+import static java.nio.file.StandardWatchEventKinds.ENTRY_CREATE;
+import static java.nio.file.StandardWatchEventKinds.ENTRY_MODIFY;
+import static java.nio.file.StandardWatchEventKinds.OVERFLOW;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.ClosedWatchServiceException;
+import java.nio.file.DirectoryStream;
+import java.nio.file.FileSystems;
+import java.nio.file.FileVisitOption;
+import java.nio.file.FileVisitResult;
+import java.nio.file.Files;
+import java.nio.file.NoSuchFileException;
+import java.nio.file.Path;
+import java.nio.file.PathMatcher;
+import java.nio.file.Paths;
+import java.nio.file.SimpleFileVisitor;
+import java.nio.file.StandardOpenOption;
+import java.nio.file.WatchEvent;
+import java.nio.file.WatchKey;
+import java.nio.file.WatchService;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.EnumSet;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * globで指定した複数のログファイルを、1つの監視スレッドと少数のワーカースレッドで追尾するクラス<br>
+ * <br>
+ * 監視スレッドは、一致するファイルのディレクトリを1つのWatchServiceで監視し、変更通知のあったファイルの読込をワーカーに依頼する。
+ * 読込中のファイルへの変更通知は記録し、読込の完了後に再度読込を依頼する。
+ * 通知が届かない場合に備え、変更通知の有無によらずポーリング間隔ごとに全ファイルのサイズを確認する。
+ * 新しく作成されたファイルは、再走査間隔ごとのglobの再走査で追加する。<br>
+ * ワーカーは1回の読込で1ファイルあたり最大で読込予算分のみを読み込み、未読が残る場合は待ち行列の末尾に並び直す。
+ * ファイルを開いたままにしないため、ローテーションを検知した場合は、同じディレクトリから識別子が一致する置き換え前のファイルを探し、
+ * 前回の読込以降に追記された分を読み込んでから新しいファイルに切り替える。
+ * 置き換え前のファイルが別のディレクトリへの移動、削除、圧縮等で見つからない場合、その分は読み込めない。
+ * これにより、追記の多いファイルがあっても他のファイルの読込が滞らない。<br>
+ * 読み込んだ行は{@link LineHandler}に渡す。{@link LineHandler#endBatch(TailedFile)}が失敗した場合は、
+ * その回の読込を取り消し、送信済みの位置から読み込み直す。
+ *
+ * @author kimura
+ */
+public class MultiFileTailer implements Runnable
+{
+    /** ロガー */
+    private static final Logger           logger            = LoggerFactory.getLogger(MultiFileTailer.class);
+
+    /** ワーカーの読込バッファのサイズ */
+    private static final int              READ_SIZE         = 65536;
+
+    /** globで特別な意味を持つ文字 */
+    private static final String           GLOB_CHARS        = "*?[{";
+
+    /** 追尾するファイルのglob */
+    private final List<String>            globs;
+
+    /** 読み込んだ行を処理するハンドラ */
+    private final LineHandler             handler;
+
+    /** ワーカー数 */
+    private final int                     workerCount;
+
+    /** 1ファイルの1回の読込で読み込む最大サイズ */
+    private final long                    readBudget;
+
+    /** ポーリング間隔(ミリ秒) */
+    private final long                    pollIntervalMillis;
+
+    /** globの再走査間隔(ミリ秒) */
+    private final long                    rescanIntervalMillis;
+
+    /** ワーカーごとの読込バッファ */
+    private final ThreadLocal<byte[]>     readBuffer        = new ThreadLocal<byte[]>() {
+                                                                @Override
+                                                                protected byte[] initialValue()
+                                                                {
+                                                                    return new byte[READ_SIZE];
+                                                                }
+                                                            };
+
+    /** ワーカーごとのファイル先頭の読込バッファ */
+    private final ThreadLocal<byte[]>     headBuffer        = new ThreadLocal<byte[]>() {
+                                                                @Override
+                                                                protected byte[] initialValue()
+                                                                {
+                                                                    return new byte[CheckpointStore.FINGERPRINT_SIZE];
+                                                                }
+                                                            };
+
+    /** 追尾中のファイル(監視スレッドのみが参照する) */
+    private final Map<Path, TailedFile>   files             = new HashMap<>();
+
+    /** 監視中のディレクトリ(監視スレッドのみが参照する) */
+    private final Map<WatchKey, Path>     watchedDirs       = new HashMap<>();
+
+    /** 送信済み位置の保存先。nullの場合は使用しない */
+    private CheckpointStore               checkpointStore;
+
+    /** ワーカー */
+    private ExecutorService               workers;
+
+    /** 変更通知の受信に使用するWatchService。使用できない場合はnull */
+    private WatchService                  watchService;
+
+    /** 追尾中のファイル数 */
+    private volatile int                  fileCount;
+
+    /** 停止済みか */
+    private volatile boolean              closed;
+
+    /** 最大行長(byte)。超える行は切り詰める */
+    private int                           maxLineLength     = LineFramer.DEFAULT_MAX_LINE_LENGTH;
+
+    /** 最大行長を超えたため切り詰めた行数 */
+    private final AtomicLong              truncatedCount    = new AtomicLong();
+
+    /**
+     * 以下のパラメタを指定してインスタンスを生成する。
+     *
+     * @param globs 追尾するファイルのglob(例："/var/log/httpd/*&#47;access_log")
+     * @param handler 読み込んだ行を処理するハンドラ
+     * @param workerCount ワーカー数
+     * @param readBudget 1ファイルの1回の読込で読み込む最大サイズ
+     * @param pollIntervalMillis ポーリング間隔(ミリ秒)
+     * @param rescanIntervalMillis globの再走査間隔(ミリ秒)
+     */
+    public MultiFileTailer(List<String> globs, LineHandler handler, int workerCount,
+            long readBudget, long pollIntervalMillis, long rescanIntervalMillis)
+    {
+        this.globs = new ArrayList<>(globs);
+        this.handler = handler;
+        this.workerCount = workerCount;
+        this.readBudget = readBudget;
+        this.pollIntervalMillis = pollIntervalMillis;
+        this.rescanIntervalMillis = rescanIntervalMillis;
+    }
+
+    /**
+     * 送信済み位置の保存先を設定する。<br>
+     * 起動時に送信済み位置があるファイルは、その位置から読込を再開する。
+     * また、読込時にファイル先頭のフィンガープリントを計算する。
+     *
+     * @param checkpointStore 送信済み位置の保存先
+     */
+    public void setCheckpointStore(CheckpointStore checkpointStore)
+    {
+        this.checkpointStore = checkpointStore;
+    }
+
+    /**
+     * 最大行長を設定する。超える行は最大行長までに切り詰めてハンドラに渡す。{@link #run()}の前に設定すること。
+     *
+     * @param maxLineLength 最大行長(byte)
+     */
+    public void setMaxLineLength(int maxLineLength)
+    {
+        this.maxLineLength = maxLineLength;
+    }
+
+    /**
+     * 監視を開始し、{@link #close()}されるまで監視を続ける。
+     */
+    @Override
+    public void run()
+    {
+        this.workers = Executors.newFixedThreadPool(this.workerCount, new ThreadFactory() {
+            private final AtomicInteger count = new AtomicInteger();
+
+            @Override
+            public Thread newThread(Runnable runnable)
+            {
+                Thread thread = new Thread(runnable, "MultiFileTailer-" + this.count.incrementAndGet());
+                thread.setDaemon(true);
+                return thread;
+            }
+        });
+
+        try
+        {
+            this.watchService = FileSystems.getDefault().newWatchService();
+        }
+        catch (IOException | UnsupportedOperationException ex)
+        {
+            logger.warn("WatchService is not available. Use polling.", ex);
+            this.watchService = null;
+        }
+
+        rescan(true);
+        long lastRescan = System.currentTimeMillis();
+        long lastCheck = lastRescan;
+
+        try
+        {
+            while (this.closed == false)
+            {
+                boolean rescanRequested = awaitChange();
+                // 変更通知が続けて届く間も、通知が届かなかったファイルを確認する
+                if (System.currentTimeMillis() - lastCheck >= this.pollIntervalMillis)
+                {
+                    checkAll();
+                    lastCheck = System.currentTimeMillis();
+                }
+
+                if (rescanRequested
+                        || System.currentTimeMillis() - lastRescan >= this.rescanIntervalMillis)
+                {
+                    rescan(false);
+                    lastRescan = System.currentTimeMillis();
+                }
+            }
+        }
+        catch (InterruptedException ex)
+        {
+            Thread.currentThread().interrupt();
+        }
+        finally
+        {
+            close();
+            this.workers.shutdown();
+        }
+    }
+
+    /**
+     * 監視を停止する。
+     */
+    public void close()
+    {
+        this.closed = true;
+        if (this.watchService != null)
+        {
+            try
+            {
+                this.watchService.close();
+            }
+            catch (IOException ex)
+            {
+                logger.warn("WatchService close failed.", ex);
+            }
+        }
+    }
+
+    /**
+     * 変更通知を最大でポーリング間隔分待ち、変更のあったファイルの読込を依頼する。
+     *
+     * @return 未知のファイルが作成され、globの再走査が必要な場合true
+     * @throws InterruptedException 待機中に割り込まれた場合
+     */
+    private boolean awaitChange() throws InterruptedException
+    {
+        if (this.watchService == null)
+        {
+            Thread.sleep(this.pollIntervalMillis);
+            return false;
+        }
+
+        WatchKey key;
+        try
+        {
+            key = this.watchService.poll(this.pollIntervalMillis, TimeUnit.MILLISECONDS);
+        }
+        catch (ClosedWatchServiceException ex)
+        {
+            return false;
+        }
+
+        boolean rescanRequested = false;
+        while (key != null)
+        {
+            Path dir = this.watchedDirs.get(key);
+            for (WatchEvent<?> event : key.pollEvents())
+            {
+                if (event.kind() == OVERFLOW || dir == null)
+                {
+                    checkAll();
+                    continue;
+                }
+
+                TailedFile file = this.files.get(dir.resolve((Path) event.context()));
+                if (file != null)
+                {
+                    schedule(file);
+                }
+                else if (event.kind() == ENTRY_CREATE)
+                {
+                    rescanRequested = true;
+                }
+            }
+
+            if (key.reset() == false)
+            {
+                this.watchedDirs.remove(key);
+            }
+            key = this.watchService.poll();
+        }
+        return rescanRequested;
+    }
+
+    /**
+     * 全ファイルのサイズを確認し、読込位置と異なるファイルの読込を依頼する。
+     */
+    private void checkAll()
+    {
+        for (TailedFile file : this.files.values())
+        {
+            if (file.isScheduled())
+            {
+                continue;
+            }
+
+            try
+            {
+                BasicFileAttributes attributes = Files.readAttributes(file.getPath(),
+                        BasicFileAttributes.class);
+                Object fileKey = attributes.fileKey();
+                if (attributes.size() != file.getPosition()
+                        || (fileKey != null && fileKey.equals(file.getFileKey()) == false))
+                {
+                    schedule(file);
+                }
+            }
+            catch (IOException ex)
+            {
+                // ローテーション中で存在しないファイルは、次回に確認する
+                logger.debug("File check failed. : file=" + file, ex);
+            }
+        }
+    }
+
+    /**
+     * globを走査し、追尾するファイルを更新する。<br>
+     * 2回続けて見つからなかったファイルは追尾を終了する。
+     *
+     * @param initial 起動時の走査の場合true。起動時に存在するファイルは走査時の末尾から、以降に見つかったファイルは先頭から読み込む
+     */
+    private void rescan(boolean initial)
+    {
+        Set<Path> found = new HashSet<>();
+        for (String glob : this.globs)
+        {
+            found.addAll(findFiles(glob));
+        }
+
+        for (Path path : found)
+        {
+            TailedFile file = this.files.get(path);
+            if (file != null)
+            {
+                file.setMissing(false);
+                continue;
+            }
+
+            long startPosition = initial ? sizeOf(path) : 0L;
+            if (this.checkpointStore != null)
+            {
+                long resumePosition = this.checkpointStore.getResumePosition(path);
+                if (resumePosition != CheckpointStore.NO_CHECKPOINT)
+                {
+                    startPosition = resumePosition;
+                }
+            }
+
+            file = new TailedFile(path, startPosition, new LineFramer(this.maxLineLength,
+                    this.truncatedCount));
+            this.files.put(path, file);
+            watchDirectory(path.toAbsolutePath().getParent());
+            schedule(file);
+        }
+
+        Iterator<TailedFile> iterator = this.files.values().iterator();
+        while (iterator.hasNext())
+        {
+            TailedFile file = iterator.next();
+            if (found.contains(file.getPath()) || file.isScheduled())
+            {
+                continue;
+            }
+
+            if (file.isMissing())
+            {
+                logger.info("File disappeared. Stop tailing. : file=" + file);
+                iterator.remove();
+            }
+            else
+            {
+                file.setMissing(true);
+            }
+        }
+
+        this.fileCount = this.files.size();
+        if (initial)
+        {
+            logger.info("Tailing files. : globs=" + this.globs + ", files=" + this.files.size());
+        }
+    }
+
+    /**
+     * ファイルのサイズを取得する。
+     *
+     * @param path ファイル
+     * @return サイズ。取得できない場合は0
+     */
+    private static long sizeOf(Path path)
+    {
+        try
+        {
+            return Files.size(path);
+        }
+        catch (IOException ex)
+        {
+            return 0L;
+        }
+    }
+
+    /**
+     * globに一致するファイルを取得する。globを含まないパスは、存在しなくても追尾対象とする。
+     *
+     * @param glob ファイルのglob
+     * @return 一致するファイル
+     */
+    static List<Path> findFiles(String glob)
+    {
+        int wildcard = indexOfGlobChar(glob);
+        if (wildcard < 0)
+        {
+            return Arrays.asList(Paths.get(glob));
+        }
+
+        int separator = Math.max(glob.lastIndexOf('/', wildcard), glob.lastIndexOf(File.separatorChar,
+                wildcard));
+        Path base = Paths.get(separator < 0 ? "" : (separator == 0 ? glob.substring(0, 1)
+                : glob.substring(0, separator)));
+        String relative = glob.substring(separator + 1);
+        int maxDepth = Integer.MAX_VALUE;
+        if (relative.contains("**") == false)
+        {
+            maxDepth = 1;
+            for (int index = 0; index < relative.length(); index++)
+            {
+                char c = relative.charAt(index);
+                if (c == '/' || c == File.separatorChar)
+                {
+                    maxDepth++;
+                }
+            }
+        }
+
+        final PathMatcher matcher = FileSystems.getDefault().getPathMatcher("glob:" + glob);
+        final List<Path> matched = new ArrayList<>();
+        try
+        {
+            Files.walkFileTree(base, EnumSet.noneOf(FileVisitOption.class), maxDepth,
+                    new SimpleFileVisitor<Path>() {
+                        @Override
+                        public FileVisitResult visitFile(Path file, BasicFileAttributes attributes)
+                        {
+                            if (attributes.isRegularFile() && matcher.matches(file))
+                            {
+                                matched.add(file);
+                            }
+                            return FileVisitResult.CONTINUE;
+                        }
+
+                        @Override
+                        public FileVisitResult visitFileFailed(Path file, IOException ex)
+                        {
+                            return FileVisitResult.CONTINUE;
+                        }
+                    });
+        }
+        catch (IOException ex)
+        {
+            logger.warn("Glob scan failed. : glob=" + glob, ex);
+        }
+        return matched;
+    }
+
+    /**
+     * globで特別な意味を持つ最初の文字の位置を取得する。
+     *
+     * @param glob ファイルのglob
+     * @return 位置。含まない場合は-1
+     */
+    private static int indexOfGlobChar(String glob)
+    {
+        for (int index = 0; index < glob.length(); index++)
+        {
+            if (GLOB_CHARS.indexOf(glob.charAt(index)) >= 0)
+            {
+                return index;
+            }
+        }
+        return -1;
+    }
+
+    /**
+     * ディレクトリの変更通知を受け取るよう登録する。
+     *
+     * @param dir ディレクトリ
+     */
+    private void watchDirectory(Path dir)
+    {
+        if (this.watchService == null || dir == null || this.watchedDirs.containsValue(dir))
+        {
+            return;
+        }
+
+        try
+        {
+            WatchKey key = dir.register(this.watchService, ENTRY_CREATE, ENTRY_MODIFY);
+            this.watchedDirs.put(key, dir);
+        }
+        catch (IOException | RuntimeException ex)
+        {
+            // 登録できないディレクトリのファイルは、ポーリングで確認する
+            logger.debug("Directory watch failed. Use polling. : dir=" + dir, ex);
+        }
+    }
+
+    /**
+     * ファイルの読込をワーカーに依頼する。既に依頼済みの場合は変更を記録し、読込の完了後に再度依頼させる。
+     *
+     * @param file ファイル
+     */
+    private void schedule(TailedFile file)
+    {
+        // 依頼済みの読込が完了した直後でも取りこぼさないよう、依頼の前に変更を記録する
+        file.markChanged();
+        if (file.trySchedule())
+        {
+            submit(file);
+        }
+    }
+
+    /**
+     * ファイルの読込をワーカーに依頼する。ハンドラが保持している行を、ワーカーのスレッドで確定させる場合に使用する。<br>
+     * ファイルが存在しない場合も{@link LineHandler#endBatch(TailedFile)}を呼び出す。
+     *
+     * @param file ファイル
+     */
+    void requestRead(TailedFile file)
+    {
+        if (this.closed == false)
+        {
+            schedule(file);
+        }
+    }
+
+    /**
+     * スケジュール済みのファイルの読込をワーカーに依頼する。
+     *
+     * @param file ファイル
+     */
+    private void submit(final TailedFile file)
+    {
+        try
+        {
+            this.workers.execute(new Runnable() {
+                @Override
+                public void run()
+                {
+                    drain(file);
+                }
+            });
+        }
+        catch (RejectedExecutionException ex)
+        {
+            file.unschedule();
+        }
+    }
+
+    /**
+     * ファイルを最大で読込予算分読み込む。未読が残る場合は、待ち行列の末尾に並び直す。
+     *
+     * @param file ファイル
+     */
+    void drain(TailedFile file)
+    {
+        boolean remaining = false;
+        file.clearChanged();
+        try (FileChannel channel = FileChannel.open(file.getPath(), StandardOpenOption.READ))
+        {
+            Object fileKey = Files.readAttributes(file.getPath(), BasicFileAttributes.class).fileKey();
+            long size = channel.size();
+            if (isRotated(file, fileKey))
+            {
+                logger.info("File rotated. Read the rest of the rotated file, then from head. : file="
+                        + file);
+                drainRotated(file);
+                file.reset(fileKey);
+            }
+            else if (size < file.getPosition())
+            {
+                logger.info("File truncated. Read from head. : file=" + file);
+                file.reset(fileKey);
+            }
+            else if (file.getFileKey() == null)
+            {
+                file.setFileKey(fileKey);
+            }
+
+            remaining = readLines(file, channel);
+        }
+        catch (NoSuchFileException ex)
+        {
+            // ローテーション中で存在しない場合は、作成後に読み込む
+            logger.debug("File not found. : file=" + file, ex);
+            endMissing(file);
+        }
+        catch (IOException | RuntimeException ex)
+        {
+            logger.warn("File read failed. Retry later. : file=" + file, ex);
+        }
+
+        if (remaining && this.closed == false)
+        {
+            submit(file);
+            return;
+        }
+
+        file.unschedule();
+        // 読込中に変更が通知された場合は、読込後の追記を読み込むため再度依頼する
+        if (file.isChanged() && this.closed == false)
+        {
+            schedule(file);
+        }
+    }
+
+    /**
+     * 読み込めなかったファイルについて、ハンドラが保持している行を確定させる。
+     *
+     * @param file ファイル
+     */
+    private void endMissing(TailedFile file)
+    {
+        try
+        {
+            this.handler.endBatch(file);
+        }
+        catch (RuntimeException ex)
+        {
+            logger.warn("Batch end failed. Retry later. : file=" + file, ex);
+        }
+    }
+
+    /**
+     * ファイルが別のファイルに置き換えられたかを判定する。
+     *
+     * @param file ファイル
+     * @param fileKey 現在のファイルの識別子
+     * @return 置き換えられた場合true
+     */
+    private static boolean isRotated(TailedFile file, Object fileKey)
+    {
+        return fileKey != null && file.getFileKey() != null
+                && fileKey.equals(file.getFileKey()) == false;
+    }
+
+    /**
+     * 置き換え前のファイルを同じディレクトリから識別子で探し、読込位置から末尾まで読み込む。
+     * 改行で終わっていない最終行も1行として渡す。
+     *
+     * @param file ファイル
+     * @throws IOException 読込失敗時
+     */
+    private void drainRotated(TailedFile file) throws IOException
+    {
+        Path rotated = findByFileKey(file.getPath().toAbsolutePath().getParent(),
+                file.getFileKey());
+        if (rotated == null)
+        {
+            logger.warn("Rotated file not found. Lines appended after the last read are lost. : file="
+                    + file);
+            return;
+        }
+
+        try (FileChannel channel = FileChannel.open(rotated, StandardOpenOption.READ))
+        {
+            while (readLines(file, channel))
+            {
+                // 末尾まで読み込む
+            }
+        }
+        try
+        {
+            file.getFramer().flush(createSink(file));
+            this.handler.endBatch(file);
+        }
+        catch (RuntimeException ex)
+        {
+            // 送信済みの位置から読み込み直す
+            file.getFramer().reset();
+            file.setPosition(file.getCommittedOffset());
+            throw ex;
+        }
+    }
+
+    /**
+     * ディレクトリから、識別子が一致するファイルを探す。
+     *
+     * @param dir ディレクトリ
+     * @param fileKey ファイルの識別子
+     * @return ファイル。見つからない場合はnull
+     * @throws IOException ディレクトリの読込失敗時
+     */
+    private static Path findByFileKey(Path dir, Object fileKey) throws IOException
+    {
+        try (DirectoryStream<Path> stream = Files.newDirectoryStream(dir))
+        {
+            for (Path candidate : stream)
+            {
+                try
+                {
+                    BasicFileAttributes attributes = Files.readAttributes(candidate,
+                            BasicFileAttributes.class);
+                    if (attributes.isRegularFile() && fileKey.equals(attributes.fileKey()))
+                    {
+                        return candidate;
+                    }
+                }
+                catch (IOException ex)
+                {
+                    // 走査中に削除されたファイルは対象外とする
+                    logger.debug("File check failed. : file=" + candidate, ex);
+                }
+            }
+        }
+        return null;
+    }
+
+    /**
+     * 区切った行をハンドラに渡すシンクを生成する。
+     *
+     * @param file ファイル
+     * @return シンク
+     */
+    private LineSink createSink(final TailedFile file)
+    {
+        return new LineSink() {
+            @Override
+            public void handleLine(byte[] buffer, int start, int end)
+            {
+                MultiFileTailer.this.handler.handleLine(file, buffer, start, end);
+            }
+        };
+    }
+
+    /**
+     * ファイルを最大で読込予算分読み込み、行単位でハンドラに渡す。
+     * ハンドラが失敗した場合は、読み込んだ分を取り消す。
+     *
+     * @param file ファイル
+     * @param channel ファイルのチャネル
+     * @return 読込予算を使い切り、未読が残っている可能性がある場合true
+     * @throws IOException 読込失敗時
+     */
+    private boolean readLines(TailedFile file, FileChannel channel) throws IOException
+    {
+        long committedOffset = file.getCommittedOffset();
+        LineFramer framer = file.getFramer();
+        LineSink sink = createSink(file);
+        byte[] buffer = this.readBuffer.get();
+        long budget = this.readBudget;
+        boolean remaining = true;
+
+        try
+        {
+            while (budget > 0)
+            {
+                int readLength = (int) Math.min(buffer.length, budget);
+                int readSize = channel.read(ByteBuffer.wrap(buffer, 0, readLength),
+                        file.getPosition());
+                if (readSize <= 0)
+                {
+                    remaining = false;
+                    break;
+                }
+
+                file.setPosition(file.getPosition() + readSize);
+                budget -= readSize;
+                framer.frame(buffer, 0, readSize, sink);
+            }
+
+            updateFingerprint(file, channel);
+            this.handler.endBatch(file);
+        }
+        catch (RuntimeException ex)
+        {
+            // 送信済みの位置から読み込み直す
+            framer.reset();
+            file.setPosition(committedOffset);
+            throw ex;
+        }
+        return remaining;
+    }
+
+    /**
+     * 送信済み位置の保存先を使用する場合、送信済みの範囲でファイル先頭のフィンガープリントを更新する。
+     *
+     * @param file ファイル
+     * @param channel ファイルのチャネル
+     * @throws IOException 読込失敗時
+     */
+    private void updateFingerprint(TailedFile file, FileChannel channel) throws IOException
+    {
+        long committedOffset = file.getCommittedOffset();
+        if (this.checkpointStore == null
+                || file.getFingerprintLength() >= CheckpointStore.FINGERPRINT_SIZE
+                || committedOffset <= file.getFingerprintLength())
+        {
+            return;
+        }
+
+        byte[] head = this.headBuffer.get();
+        int headLength = (int) Math.min(CheckpointStore.readHead(channel, head), committedOffset);
+        file.setFingerprint(headLength, CheckpointStore.fingerprint(head, headLength));
+    }
+
+    /**
+     * 最大行長を超えたため切り詰めた行数を取得する。
+     *
+     * @return 切り詰めた行数
+     */
+    public long getTruncatedCount()
+    {
+        return this.truncatedCount.get();
+    }
+
+    /**
+     * @return ワーカー数
+     */
+    public int getWorkerCount()
+    {
+        return this.workerCount;
+    }
+
+    /**
+     * @return 追尾中のファイル数
+     */
+    public int getFileCount()
+    {
+        return this.fileCount;
+    }
+}
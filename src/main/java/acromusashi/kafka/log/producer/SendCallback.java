@@ -0,0 +1,31 @@
+/**
+* Copyright (c) Acroquest Technology Co, Ltd. All Rights Reserved.
+* Please read the associated COPYRIGHTS file for more details.
+*
+* THE SOFTWARE IS PROVIDED BY Acroquest Technolog Co., Ltd.,
+* WITHOUT WARRANTY OF ANY KIND, EXPRESS OR IMPLIED, INCLUDING
+* BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+* FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT.
+* IN NO EVENT SHALL THE AUTHORS OR COPYRIGHT HOLDER BE LIABLE FOR ANY
+* CLAIM, DAMAGES SUFFERED BY LICENSEE AS A RESULT OF USING, MODIFYING
+* OR DISTRIBUTING THIS SOFTWARE OR ITS DERIVATIVES.
+*/
+package acromusashi.kafka.log.producer;
+
+/**
+ * 非同期に送信したメッセージのまとまりの、完了・失敗の通知を受け取るコールバック<br>
+ * <br>
+ * Kafkaの非同期Producer(org.apache.kafka.clients.producer.Callback)と同じく、
+ * 成功時は例外なし、失敗時は原因の例外を指定して1回だけ呼び出される。送信を行ったスレッドから呼び出されるため、長時間ブロックしないこと。
+ *
+ * @author kimura
+ */
+public interface SendCallback
+{
+    /**
+     * まとまりの送信が完了、または失敗したことを通知する。
+     *
+     * @param exception 失敗時の原因。成功時はnull
+     */
+    void onCompletion(Exception exception);
+}
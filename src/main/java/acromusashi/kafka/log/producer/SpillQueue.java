@@ -0,0 +1,786 @@
+/**
+* Copyright (c) Acroquest Technology Co, Ltd. All Rights Reserved.
+* Please read the associated COPYRIGHTS file for more details.
+*
+* THE SOFTWARE IS PROVIDED BY Acroquest Technolog Co., Ltd.,
+* WITHOUT WARRANTY OF ANY KIND, EXPRESS OR IMPLIED, INCLUDING
+* BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+* FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT.
+* IN NO EVENT SHALL THE AUTHORS OR COPYRIGHT HOLDER BE LIABLE FOR ANY
+* CLAIM, DAMAGES SUFFERED BY LICENSEE AS A RESULT OF USING, MODIFYING
+* OR DISTRIBUTING THIS SOFTWARE OR ITS DERIVATIVES.
+*/
+package acromusashi.kafka.log.producer;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.Closeable;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.channels.FileChannel.MapMode;
+import java.nio.charset.Charset;
+import java.nio.file.DirectoryStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Deque;
+import java.util.List;
+import java.util.Map;
+import java.util.zip.CRC32;
+
+import kafka.producer.KeyedMessage;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import acromusashi.kafka.log.producer.util.YamlReadUtil;
+
+/**
+ * Kafkaに送信できなかったメッセージのまとまりを、ローカルディスクに追記して保持するキュー<br>
+ * <br>
+ * ディレクトリ内のメモリマップしたセグメントファイルに、まとまりを1レコードとして追記する。
+ * レコードは「長さ(4byte)、CRC32(4byte)、内容」の形式で、内容と CRC を書き込んでから長さを書き込む。
+ * 取り出したレコードは長さを負の値に書き換えて送信済みとし、全て送信済みとなったセグメントは削除する。
+ * 取り出しと送信済みの記録の間に、上限を超えたために取り出したレコードのセグメントが削除される場合がある。
+ * そのため、送信済みの記録は取り出したレコードを指定して行い、削除済みの場合は何もしない。<br>
+ * 再起動時はセグメントを先頭から走査し、送信済みでない最初のレコードから取り出しを再開する。
+ * 長さが0、またはCRCが一致しないレコード(書き込み途中で停止したもの)以降は無視する。<br>
+ * 合計サイズが上限を超える場合は、古いセグメントから削除し、削除したレコード数とメッセージ数を記録する。
+ * 削除したメッセージは送信されないため、上限に達した時点で少なくとも1回の送信は保証されなくなる。
+ * 追記した順に取り出すため、送信順は保たれる。
+ *
+ * @author kimura
+ */
+public class SpillQueue implements Closeable
+{
+    /** デフォルトのセグメントのサイズ(MB) */
+    public static final long     DEFAULT_SEGMENT_SIZE_MB = 64L;
+
+    /** デフォルトの合計サイズの上限(MB) */
+    public static final long     DEFAULT_MAX_SIZE_MB     = 1024L;
+
+    /** ロガー */
+    private static final Logger  logger                  = LoggerFactory.getLogger(SpillQueue.class);
+
+    /** レコードのヘッダ(長さ、CRC32)のサイズ */
+    private static final int     HEADER_SIZE             = 8;
+
+    /** セグメントのファイル名の接頭辞 */
+    private static final String  SEGMENT_PREFIX          = "spill-";
+
+    /** セグメントのファイル名の接尾辞 */
+    private static final String  SEGMENT_SUFFIX          = ".seg";
+
+    /** メッセージの文字コード */
+    private static final Charset CHARSET                 = Charset.forName("UTF-8");
+
+    /** セグメントを格納するディレクトリ */
+    private final Path           directory;
+
+    /** セグメントのサイズ */
+    private final int            segmentSize;
+
+    /** 合計サイズの上限 */
+    private final long           maxBytes;
+
+    /** 古い順のセグメント */
+    private final Deque<Segment> segments                = new ArrayDeque<>();
+
+    /** 次に作成するセグメントの番号 */
+    private long                 nextSequence;
+
+    /** セグメントの合計サイズ */
+    private long                 totalBytes;
+
+    /** 未送信のレコード数 */
+    private long                 recordCount;
+
+    /** 上限を超えたため、または破損していたため削除したレコード数 */
+    private long                 droppedRecordCount;
+
+    /** 上限を超えたため削除したメッセージ数 */
+    private long                 droppedMessageCount;
+
+    /**
+     * 以下のパラメタを指定してインスタンスを生成する。ディレクトリに既存のセグメントがある場合は続きから取り出す。
+     *
+     * @param directory セグメントを格納するディレクトリ
+     * @param segmentSize セグメントのサイズ(byte。2GB未満)
+     * @param maxBytes 合計サイズの上限(byte)
+     * @throws IOException セグメントの読込失敗時
+     */
+    public SpillQueue(Path directory, long segmentSize, long maxBytes) throws IOException
+    {
+        this.directory = directory;
+        this.segmentSize = (int) Math.min(Integer.MAX_VALUE, segmentSize);
+        this.maxBytes = maxBytes;
+
+        Files.createDirectories(directory);
+        recover();
+    }
+
+    /**
+     * 設定値から退避キューを生成する。<br>
+     * 停止時にセグメントを閉じるため、シャットダウンフックを登録する。
+     *
+     * @param configMap 設定値格納Map
+     * @return 退避キュー。spill.pathが設定されていない場合、または読込に失敗した場合はnull
+     */
+    public static SpillQueue createSpillQueue(Map<String, Object> configMap)
+    {
+        String spillPath = YamlReadUtil.getString(configMap, "spill.path");
+        if (spillPath == null)
+        {
+            return null;
+        }
+
+        final SpillQueue queue;
+        try
+        {
+            queue = new SpillQueue(Paths.get(spillPath), YamlReadUtil.getLong(configMap,
+                    "spill.segment.size", DEFAULT_SEGMENT_SIZE_MB) * 1024L * 1024L,
+                    YamlReadUtil.getLong(configMap, "spill.max.size", DEFAULT_MAX_SIZE_MB) * 1024L * 1024L);
+        }
+        catch (IOException ex)
+        {
+            logger.error("Spill queue load failed. Spill is disabled. : path=" + spillPath, ex);
+            return null;
+        }
+
+        logger.info("Spill queue opened. : path=" + spillPath + ", " + queue);
+        Runtime.getRuntime().addShutdownHook(new Thread("SpillQueueShutdown") {
+            @Override
+            public void run()
+            {
+                queue.close();
+            }
+        });
+        return queue;
+    }
+
+    /**
+     * ディレクトリの既存のセグメントを読み込む。
+     *
+     * @throws IOException セグメントの読込失敗時
+     */
+    private void recover() throws IOException
+    {
+        List<Path> files = new ArrayList<>();
+        try (DirectoryStream<Path> stream = Files.newDirectoryStream(this.directory,
+                SEGMENT_PREFIX + "*" + SEGMENT_SUFFIX))
+        {
+            for (Path file : stream)
+            {
+                files.add(file);
+            }
+        }
+        Collections.sort(files);
+
+        for (Path file : files)
+        {
+            String name = file.getFileName().toString();
+            long sequence = Long.parseLong(name.substring(SEGMENT_PREFIX.length(), name.length()
+                    - SEGMENT_SUFFIX.length()));
+            this.nextSequence = Math.max(this.nextSequence, sequence + 1);
+
+            Segment segment = Segment.open(file, sequence);
+            this.segments.addLast(segment);
+            this.totalBytes += segment.capacity;
+            this.recordCount += segment.recordCount;
+        }
+    }
+
+    /**
+     * メッセージのまとまりを追記する。
+     *
+     * @param messages メッセージのまとまり
+     * @throws IOException 追記失敗時、または上限のためにセグメントを作成できない場合
+     */
+    public synchronized void append(List<KeyedMessage<String, String>> messages)
+            throws IOException
+    {
+        byte[] payload = encode(messages);
+        int recordSize = HEADER_SIZE + payload.length;
+
+        Segment tail = this.segments.peekLast();
+        if (tail == null || tail.capacity - tail.writePosition < recordSize)
+        {
+            tail = createSegment(recordSize);
+        }
+
+        CRC32 crc = new CRC32();
+        crc.update(payload, 0, payload.length);
+        int position = tail.writePosition;
+        MappedByteBuffer buffer = tail.buffer;
+        buffer.putInt(position + 4, (int) crc.getValue());
+        ByteBuffer content = buffer.duplicate();
+        content.position(position + HEADER_SIZE);
+        content.put(payload, 0, payload.length);
+        // 長さを最後に書き込むことで、書き込み途中のレコードを有効なレコードとして扱わない
+        buffer.putInt(position, payload.length);
+        buffer.force();
+
+        tail.writePosition += recordSize;
+        tail.recordCount++;
+        this.recordCount++;
+    }
+
+    /**
+     * 先頭のメッセージのまとまりを、取り除かずに取得する。
+     *
+     * @return 先頭のレコード。空の場合はnull
+     * @throws IOException 読込失敗時
+     */
+    public synchronized SpilledRecord peek() throws IOException
+    {
+        while (true)
+        {
+            Segment head = headSegment();
+            if (head == null)
+            {
+                return null;
+            }
+
+            int position = head.readPosition;
+            int length = head.buffer.getInt(position);
+            byte[] payload = readPayload(head.buffer, position, length);
+
+            CRC32 crc = new CRC32();
+            crc.update(payload, 0, length);
+            if ((int) crc.getValue() == head.buffer.getInt(position + 4))
+            {
+                return new SpilledRecord(decode(payload), head.sequence, position);
+            }
+
+            // 追記後に破損したレコードは送信できないため読み飛ばす
+            logger.warn("Spilled record is corrupted. Dispose. : segment=" + head.path
+                    + ", position=" + position);
+            this.droppedRecordCount++;
+            removeHead(head);
+        }
+    }
+
+    /**
+     * {@link #peek()}で取得したレコードを送信済みとして取り除く。<br>
+     * 取得後に上限を超えたためセグメントごと削除されていた場合は、何もしない。
+     * この場合、レコードは送信されているため、削除時に記録した破棄数から除く。
+     *
+     * @param record {@link #peek()}で取得したレコード
+     * @return 取り除いた場合true、削除済みだった場合false
+     */
+    public synchronized boolean remove(SpilledRecord record)
+    {
+        Segment head = headSegment();
+        if (head == null || head.sequence != record.sequence
+                || head.readPosition != record.position)
+        {
+            logger.warn("Spilled record was disposed while sending. : segment=" + record.sequence
+                    + ", position=" + record.position);
+            this.droppedRecordCount--;
+            this.droppedMessageCount -= record.messages.size();
+            return false;
+        }
+
+        removeHead(head);
+        return true;
+    }
+
+    /**
+     * 先頭のセグメントの先頭のレコードを送信済みとして取り除く。
+     *
+     * @param head 未送信のレコードがある最も古いセグメント
+     */
+    private void removeHead(Segment head)
+    {
+        int position = head.readPosition;
+        int length = head.buffer.getInt(position);
+        head.buffer.putInt(position, -length);
+        head.readPosition += HEADER_SIZE + length;
+        head.recordCount--;
+        this.recordCount--;
+
+        if (head.recordCount == 0 && head != this.segments.peekLast())
+        {
+            deleteSegment(this.segments.pollFirst());
+        }
+    }
+
+    /**
+     * 未送信のレコードがある最も古いセグメントを取得する。未送信のレコードがない古いセグメントは削除する。
+     *
+     * @return セグメント。未送信のレコードがない場合はnull
+     */
+    private Segment headSegment()
+    {
+        Segment head = this.segments.peekFirst();
+        while (head != null && head.recordCount == 0)
+        {
+            if (head == this.segments.peekLast())
+            {
+                return null;
+            }
+            deleteSegment(this.segments.pollFirst());
+            head = this.segments.peekFirst();
+        }
+        return head;
+    }
+
+    /**
+     * 新しいセグメントを作成する。合計サイズが上限を超える場合は、古いセグメントから削除する。
+     *
+     * @param recordSize 追記するレコードのサイズ
+     * @return 作成したセグメント
+     * @throws IOException 作成失敗時、または上限のために作成できない場合
+     */
+    private Segment createSegment(int recordSize) throws IOException
+    {
+        int capacity = Math.max(this.segmentSize, recordSize);
+        while (this.totalBytes + capacity > this.maxBytes && this.segments.isEmpty() == false)
+        {
+            Segment oldest = this.segments.pollFirst();
+            if (oldest.recordCount > 0)
+            {
+                long messageCount = oldest.countMessages();
+                this.droppedMessageCount += messageCount;
+                logger.error("Spill size limit exceeded. Dispose oldest records. "
+                        + "These messages are never sent. : segment=" + oldest.path + ", records="
+                        + oldest.recordCount + ", messages=" + messageCount
+                        + ", totalDroppedMessages=" + this.droppedMessageCount);
+                this.droppedRecordCount += oldest.recordCount;
+                this.recordCount -= oldest.recordCount;
+            }
+            deleteSegment(oldest);
+        }
+
+        if (this.totalBytes + capacity > this.maxBytes)
+        {
+            throw new IOException("Spill record exceeds size limit. : recordSize=" + recordSize
+                    + ", maxBytes=" + this.maxBytes);
+        }
+
+        long sequence = this.nextSequence++;
+        Path file = this.directory.resolve(String.format("%s%020d%s", SEGMENT_PREFIX, sequence,
+                SEGMENT_SUFFIX));
+        Segment segment = Segment.create(file, sequence, capacity);
+        this.segments.addLast(segment);
+        this.totalBytes += capacity;
+        return segment;
+    }
+
+    /**
+     * セグメントを閉じて削除する。
+     *
+     * @param segment セグメント
+     */
+    private void deleteSegment(Segment segment)
+    {
+        segment.close();
+        this.totalBytes -= segment.capacity;
+        try
+        {
+            Files.deleteIfExists(segment.path);
+        }
+        catch (IOException ex)
+        {
+            logger.warn("Spill segment delete failed. : segment=" + segment.path, ex);
+        }
+    }
+
+    /**
+     * レコードの内容を読み込む。
+     *
+     * @param buffer セグメントのマップ
+     * @param position レコードの位置
+     * @param length レコードの内容の長さ
+     * @return レコードの内容
+     */
+    private static byte[] readPayload(MappedByteBuffer buffer, int position, int length)
+    {
+        byte[] payload = new byte[length];
+        ByteBuffer content = buffer.duplicate();
+        content.position(position + HEADER_SIZE);
+        content.get(payload, 0, length);
+        return payload;
+    }
+
+    /**
+     * メッセージのまとまりをレコードの内容に変換する。
+     *
+     * @param messages メッセージのまとまり
+     * @return レコードの内容
+     * @throws IOException 変換失敗時
+     */
+    static byte[] encode(List<KeyedMessage<String, String>> messages) throws IOException
+    {
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        try (DataOutputStream output = new DataOutputStream(bytes))
+        {
+            output.writeInt(messages.size());
+            for (KeyedMessage<String, String> message : messages)
+            {
+                writeString(output, message.topic());
+                writeString(output, message.key());
+                writeString(output, message.message());
+            }
+        }
+        return bytes.toByteArray();
+    }
+
+    /**
+     * レコードの内容をメッセージのまとまりに変換する。
+     *
+     * @param payload レコードの内容
+     * @return メッセージのまとまり
+     * @throws IOException 変換失敗時
+     */
+    static List<KeyedMessage<String, String>> decode(byte[] payload) throws IOException
+    {
+        try (DataInputStream input = new DataInputStream(new ByteArrayInputStream(payload)))
+        {
+            int count = input.readInt();
+            List<KeyedMessage<String, String>> messages = new ArrayList<>(count);
+            for (int index = 0; index < count; index++)
+            {
+                String topic = readString(input);
+                String key = readString(input);
+                String message = readString(input);
+                messages.add(new KeyedMessage<String, String>(topic, key, message));
+            }
+            return messages;
+        }
+    }
+
+    /**
+     * 文字列を長さとUTF-8のbyte列として書き込む。nullの場合は長さを-1とする。
+     *
+     * @param output 書き込み先
+     * @param value 文字列
+     * @throws IOException 書き込み失敗時
+     */
+    private static void writeString(DataOutputStream output, String value) throws IOException
+    {
+        if (value == null)
+        {
+            output.writeInt(-1);
+            return;
+        }
+
+        byte[] bytes = value.getBytes(CHARSET);
+        output.writeInt(bytes.length);
+        output.write(bytes);
+    }
+
+    /**
+     * {@link #writeString(DataOutputStream, String)}で書き込んだ文字列を読み込む。
+     *
+     * @param input 読込元
+     * @return 文字列
+     * @throws IOException 読込失敗時
+     */
+    private static String readString(DataInputStream input) throws IOException
+    {
+        int length = input.readInt();
+        if (length < 0)
+        {
+            return null;
+        }
+
+        byte[] bytes = new byte[length];
+        input.readFully(bytes);
+        return new String(bytes, CHARSET);
+    }
+
+    /**
+     * @return 未送信のまとまりがない場合true
+     */
+    public synchronized boolean isEmpty()
+    {
+        return this.recordCount == 0;
+    }
+
+    /**
+     * @return 未送信のまとまりの数
+     */
+    public synchronized long getRecordCount()
+    {
+        return this.recordCount;
+    }
+
+    /**
+     * @return 上限を超えたため、または破損していたため削除したまとまりの数
+     */
+    public synchronized long getDroppedRecordCount()
+    {
+        return this.droppedRecordCount;
+    }
+
+    /**
+     * 上限を超えたために削除したメッセージ数を取得する。0でない場合、それらのメッセージは送信されていない。
+     *
+     * @return 上限を超えたため削除したメッセージの数
+     */
+    public synchronized long getDroppedMessageCount()
+    {
+        return this.droppedMessageCount;
+    }
+
+    /**
+     * @return セグメントの合計サイズ(ディスク使用量)
+     */
+    public synchronized long getUsedBytes()
+    {
+        return this.totalBytes;
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public synchronized void close()
+    {
+        for (Segment segment : this.segments)
+        {
+            segment.close();
+        }
+        this.segments.clear();
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public synchronized String toString()
+    {
+        return "records=" + this.recordCount + ", dropped=" + this.droppedRecordCount
+                + ", droppedMessages=" + this.droppedMessageCount
+                + ", usedBytes=" + this.totalBytes + ", maxBytes=" + this.maxBytes;
+    }
+
+    /**
+     * {@link SpillQueue#peek()}で取得したメッセージのまとまりと、そのレコードの位置
+     */
+    public static final class SpilledRecord
+    {
+        /** メッセージのまとまり */
+        final List<KeyedMessage<String, String>> messages;
+
+        /** レコードがあるセグメントの番号 */
+        final long                               sequence;
+
+        /** セグメント内のレコードの位置 */
+        final int                                position;
+
+        /**
+         * @param messages メッセージのまとまり
+         * @param sequence レコードがあるセグメントの番号
+         * @param position セグメント内のレコードの位置
+         */
+        SpilledRecord(List<KeyedMessage<String, String>> messages, long sequence, int position)
+        {
+            this.messages = messages;
+            this.sequence = sequence;
+            this.position = position;
+        }
+
+        /**
+         * @return メッセージのまとまり
+         */
+        public List<KeyedMessage<String, String>> getMessages()
+        {
+            return this.messages;
+        }
+    }
+
+    /**
+     * メモリマップしたセグメントファイル
+     */
+    private static final class Segment
+    {
+        /** セグメントファイル */
+        final Path             path;
+
+        /** セグメントの番号 */
+        final long             sequence;
+
+        /** セグメントファイルのチャネル */
+        final FileChannel      channel;
+
+        /** セグメントファイル全体のマップ */
+        final MappedByteBuffer buffer;
+
+        /** セグメントのサイズ */
+        final int              capacity;
+
+        /** 次に追記する位置 */
+        int                    writePosition;
+
+        /** 次に取り出す位置 */
+        int                    readPosition;
+
+        /** 未送信のレコード数 */
+        int                    recordCount;
+
+        /**
+         * @param path セグメントファイル
+         * @param sequence セグメントの番号
+         * @param channel セグメントファイルのチャネル
+         * @param capacity セグメントのサイズ
+         * @throws IOException マップ失敗時
+         */
+        private Segment(Path path, long sequence, FileChannel channel, int capacity)
+                throws IOException
+        {
+            this.path = path;
+            this.sequence = sequence;
+            this.channel = channel;
+            this.capacity = capacity;
+            this.buffer = channel.map(MapMode.READ_WRITE, 0L, capacity);
+        }
+
+        /**
+         * 空のセグメントを作成する。
+         *
+         * @param path セグメントファイル
+         * @param sequence セグメントの番号
+         * @param capacity セグメントのサイズ
+         * @return セグメント
+         * @throws IOException 作成失敗時
+         */
+        static Segment create(Path path, long sequence, int capacity) throws IOException
+        {
+            FileChannel channel = FileChannel.open(path, StandardOpenOption.CREATE_NEW,
+                    StandardOpenOption.READ, StandardOpenOption.WRITE);
+            try
+            {
+                return new Segment(path, sequence, channel, capacity);
+            }
+            catch (IOException ex)
+            {
+                channel.close();
+                throw ex;
+            }
+        }
+
+        /**
+         * 既存のセグメントを開き、追記位置と取り出し位置を求める。
+         *
+         * @param path セグメントファイル
+         * @param sequence セグメントの番号
+         * @return セグメント
+         * @throws IOException 読込失敗時
+         */
+        static Segment open(Path path, long sequence) throws IOException
+        {
+            FileChannel channel = FileChannel.open(path, StandardOpenOption.READ,
+                    StandardOpenOption.WRITE);
+            Segment segment;
+            try
+            {
+                segment = new Segment(path, sequence, channel, (int) Math.min(
+                        Integer.MAX_VALUE, channel.size()));
+            }
+            catch (IOException ex)
+            {
+                channel.close();
+                throw ex;
+            }
+
+            int position = 0;
+            boolean reading = true;
+            while (position + HEADER_SIZE <= segment.capacity)
+            {
+                int length = segment.buffer.getInt(position);
+                int recordLength = Math.abs(length);
+                if (length == 0 || position + HEADER_SIZE + recordLength > segment.capacity)
+                {
+                    break;
+                }
+
+                if (length > 0)
+                {
+                    if (isValid(segment.buffer, position, length) == false)
+                    {
+                        logger.warn("Spilled record is incomplete. Ignore the rest. : segment="
+                                + path + ", position=" + position);
+                        break;
+                    }
+                    if (reading)
+                    {
+                        segment.readPosition = position;
+                        reading = false;
+                    }
+                    segment.recordCount++;
+                }
+                position += HEADER_SIZE + recordLength;
+            }
+
+            segment.writePosition = position;
+            if (reading)
+            {
+                segment.readPosition = position;
+            }
+            return segment;
+        }
+
+        /**
+         * レコードの内容がCRC32と一致するかを判定する。
+         *
+         * @param buffer セグメントのマップ
+         * @param position レコードの位置
+         * @param length レコードの内容の長さ
+         * @return 一致する場合true
+         */
+        private static boolean isValid(MappedByteBuffer buffer, int position, int length)
+        {
+            CRC32 crc = new CRC32();
+            crc.update(readPayload(buffer, position, length), 0, length);
+            return (int) crc.getValue() == buffer.getInt(position + 4);
+        }
+
+        /**
+         * 未送信のレコードに含まれるメッセージ数を数える。
+         *
+         * @return メッセージ数
+         */
+        long countMessages()
+        {
+            long count = 0L;
+            int position = this.readPosition;
+            while (position + HEADER_SIZE <= this.writePosition)
+            {
+                int length = this.buffer.getInt(position);
+                if (length > 0)
+                {
+                    // レコードの内容の先頭はメッセージ数
+                    count += this.buffer.getInt(position + HEADER_SIZE);
+                }
+                position += HEADER_SIZE + Math.abs(length);
+            }
+            return count;
+        }
+
+        /**
+         * マップを解放し、チャネルを閉じる。
+         */
+        void close()
+        {
+            MappedFileTailInputStream.unmap(this.buffer);
+            try
+            {
+                this.channel.close();
+            }
+            catch (IOException ex)
+            {
+                logger.warn("Spill segment close failed. : segment=" + this.path, ex);
+            }
+        }
+    }
+}
@@ -0,0 +1,241 @@
+/**
+* Copyright (c) Acroquest Technology Co, Ltd. All Rights Reserved.
+* Please read the associated COPYRIGHTS file for more details.
+*
+* THE SOFTWARE IS PROVIDED BY Acroquest Technolog Co., Ltd.,
+* WITHOUT WARRANTY OF ANY KIND, EXPRESS OR IMPLIED, INCLUDING
+* BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+* FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT.
+* IN NO EVENT SHALL THE AUTHORS OR COPYRIGHT HOLDER BE LIABLE FOR ANY
+* CLAIM, DAMAGES SUFFERED BY LICENSEE AS A RESULT OF USING, MODIFYING
+* OR DISTRIBUTING THIS SOFTWARE OR ITS DERIVATIVES.
+*/
+package acromusashi.kafka.log.producer;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.util.List;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+import kafka.producer.KeyedMessage;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * 送信に失敗したメッセージのまとまりを退避キューに退避し、送信先の復旧後に順に再送する送信先<br>
+ * <br>
+ * 退避キューが空の場合は送信先に直接送信し、失敗した場合はまとまりを退避キューに追記する。
+ * 退避キューが空でない間は、送信順を保つため新しいまとまりも退避キューに追記する。<br>
+ * 退避キューの再送は再送間隔ごとに行い、送信に成功する間は退避キューが空になるまで続けて再送する。<br>
+ * 送信先への送信はロックを保持せずに行うため、複数のスレッドから並行して送信できる。
+ * この場合、まとまりの間の送信順は送信を呼び出した順と一致しない場合がある。
+ *
+ * @author kimura
+ */
+public class SpillingMessageSink implements MessageSink, Closeable
+{
+    /** デフォルトの再送間隔(ミリ秒) */
+    public static final long         DEFAULT_RETRY_INTERVAL = 1000L;
+
+    /** ロガー */
+    private static final Logger      logger                 = LoggerFactory.getLogger(SpillingMessageSink.class);
+
+    /** 送信先 */
+    private final MessageSink        sink;
+
+    /** 退避キュー */
+    private final SpillQueue         queue;
+
+    /** 再送間隔(ミリ秒) */
+    private final long               retryIntervalMillis;
+
+    /** 退避したまとまりの数 */
+    private final AtomicLong         spilledCount           = new AtomicLong();
+
+    /** 再送したまとまりの数 */
+    private final AtomicLong         drainedCount           = new AtomicLong();
+
+    /** 再送を1スレッドずつ行うためのロック */
+    private final Object             drainLock              = new Object();
+
+    /** 再送を行うExecutor */
+    private ScheduledExecutorService drainExecutor;
+
+    /**
+     * 以下のパラメタを指定してインスタンスを生成する。
+     *
+     * @param sink 送信先
+     * @param queue 退避キュー
+     * @param retryIntervalMillis 再送間隔(ミリ秒)
+     */
+    public SpillingMessageSink(MessageSink sink, SpillQueue queue, long retryIntervalMillis)
+    {
+        this.sink = sink;
+        this.queue = queue;
+        this.retryIntervalMillis = retryIntervalMillis;
+    }
+
+    /**
+     * 再送間隔ごとの再送を開始する。
+     */
+    public synchronized void start()
+    {
+        if (this.drainExecutor != null)
+        {
+            return;
+        }
+
+        this.drainExecutor = Executors.newSingleThreadScheduledExecutor(new ThreadFactory() {
+            @Override
+            public Thread newThread(Runnable runnable)
+            {
+                Thread thread = new Thread(runnable, "SpillDrain");
+                thread.setDaemon(true);
+                return thread;
+            }
+        });
+        this.drainExecutor.scheduleWithFixedDelay(new Runnable() {
+            @Override
+            public void run()
+            {
+                drain();
+            }
+        }, this.retryIntervalMillis, this.retryIntervalMillis, TimeUnit.MILLISECONDS);
+    }
+
+    /**
+     * {@inheritDoc}<br>
+     * 送信に失敗した場合は退避キューに退避する。
+     *
+     * @throws IllegalStateException 退避キューへの退避に失敗した場合
+     */
+    @Override
+    public void send(List<KeyedMessage<String, String>> messages)
+    {
+        if (messages.isEmpty())
+        {
+            return;
+        }
+
+        // 退避キューは自身で排他するため、送信先への送信中はロックを保持しない
+        if (this.queue.isEmpty())
+        {
+            try
+            {
+                this.sink.send(messages);
+                return;
+            }
+            catch (RuntimeException ex)
+            {
+                logger.warn("Send failed. Spill messages until the destination recovers. : messages="
+                        + messages.size(), ex);
+            }
+        }
+
+        try
+        {
+            this.queue.append(messages);
+            this.spilledCount.incrementAndGet();
+        }
+        catch (IOException ex)
+        {
+            throw new IllegalStateException("Spill failed. : messages=" + messages.size(), ex);
+        }
+    }
+
+    /**
+     * 退避キューのまとまりを、退避した順に送信先に再送する。<br>
+     * 退避キューが空になるか、送信に失敗するまで続ける。
+     *
+     * @return 再送したまとまりの数
+     */
+    public int drain()
+    {
+        // 先頭のまとまりを取り除くまで他のスレッドが同じまとまりを再送しないよう、再送は1スレッドずつ行う。
+        // 送信ではこのロックを取得しないため、再送中に送信されたまとまりは退避キューの末尾に追記される
+        synchronized (this.drainLock)
+        {
+            int drained = 0;
+            while (true)
+            {
+                SpillQueue.SpilledRecord record;
+                try
+                {
+                    record = this.queue.peek();
+                }
+                catch (IOException ex)
+                {
+                    logger.error("Spilled messages read failed.", ex);
+                    return drained;
+                }
+
+                if (record == null)
+                {
+                    if (drained > 0)
+                    {
+                        logger.info("Spilled messages drained. : batches=" + drained + ", "
+                                + this.queue);
+                    }
+                    return drained;
+                }
+
+                try
+                {
+                    this.sink.send(record.getMessages());
+                }
+                catch (RuntimeException ex)
+                {
+                    logger.debug("Resend failed. Retry later. : " + this.queue, ex);
+                    return drained;
+                }
+
+                this.queue.remove(record);
+                this.drainedCount.incrementAndGet();
+                drained++;
+            }
+        }
+    }
+
+    /**
+     * {@inheritDoc}<br>
+     * 再送を停止する。退避キューは閉じない。
+     */
+    @Override
+    public synchronized void close()
+    {
+        if (this.drainExecutor != null)
+        {
+            this.drainExecutor.shutdownNow();
+            this.drainExecutor = null;
+        }
+    }
+
+    /**
+     * @return 退避したまとまりの数
+     */
+    public long getSpilledCount()
+    {
+        return this.spilledCount.get();
+    }
+
+    /**
+     * @return 再送したまとまりの数
+     */
+    public long getDrainedCount()
+    {
+        return this.drainedCount.get();
+    }
+
+    /**
+     * @return 退避キュー
+     */
+    public SpillQueue getQueue()
+    {
+        return this.queue;
+    }
+}
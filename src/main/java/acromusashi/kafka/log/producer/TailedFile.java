@@ -0,0 +1,264 @@
+/**
+* Copyright (c) Acroquest Technology Co, Ltd. All Rights Reserved.
+* Please read the associated COPYRIGHTS file for more details.
+*
+* THE SOFTWARE IS PROVIDED BY Acroquest Technolog Co., Ltd.,
+* WITHOUT WARRANTY OF ANY KIND, EXPRESS OR IMPLIED, INCLUDING
+* BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+* FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT.
+* IN NO EVENT SHALL THE AUTHORS OR COPYRIGHT HOLDER BE LIABLE FOR ANY
+* CLAIM, DAMAGES SUFFERED BY LICENSEE AS A RESULT OF USING, MODIFYING
+* OR DISTRIBUTING THIS SOFTWARE OR ITS DERIVATIVES.
+*/
+package acromusashi.kafka.log.producer;
+
+import java.nio.file.Path;
+import java.util.concurrent.atomic.AtomicIntegerFieldUpdater;
+
+/**
+ * {@link MultiFileTailer}が追尾する1ファイルの状態<br>
+ * <br>
+ * 数千ファイルを追尾しても小さなヒープに収まるよう、ファイルを開いたままにせず、読込バッファも保持しない。
+ * 保持するのは読込位置、ファイルの識別子、改行が現れていない行の途中を持ち越す{@link LineFramer}、先頭のフィンガープリントのみとする。<br>
+ * 読込位置等は、同時に1つのワーカーのみが更新する({@link #trySchedule()}で排他する)。
+ *
+ * @author kimura
+ */
+public final class TailedFile
+{
+    /** スケジュール状態の更新に使用するアップデータ */
+    private static final AtomicIntegerFieldUpdater<TailedFile> SCHEDULED_UPDATER = AtomicIntegerFieldUpdater.newUpdater(
+                                                                                         TailedFile.class,
+                                                                                         "scheduled");
+
+    /** ファイルのパス */
+    private final Path                                         path;
+
+    /** 読込位置 */
+    private long                                               position;
+
+    /** ファイルの識別子(inode等)。取得できない環境、または未取得の場合はnull */
+    private Object                                             fileKey;
+
+    /** 読み込んだ内容を行に区切るフレーマ(改行が現れていない行の途中を持ち越す) */
+    private final LineFramer                                   framer;
+
+    /** フィンガープリントの計算に使用したファイル先頭のサイズ */
+    private int                                                fingerprintLength;
+
+    /** ファイル先頭のフィンガープリント */
+    private long                                               fingerprint;
+
+    /** ワーカーによる読込がスケジュール済みの場合1 */
+    private volatile int                                       scheduled;
+
+    /** 読込の開始後に変更が通知された場合true */
+    private volatile boolean                                   changed;
+
+    /** 最後の走査で見つからなかった場合true */
+    private boolean                                            missing;
+
+    /**
+     * ファイルのパスと開始位置を指定してインスタンスを生成する。
+     *
+     * @param path ファイルのパス
+     * @param position 開始位置
+     */
+    public TailedFile(Path path, long position)
+    {
+        this(path, position, new LineFramer());
+    }
+
+    /**
+     * ファイルのパスと開始位置、行に区切るフレーマを指定してインスタンスを生成する。
+     *
+     * @param path ファイルのパス
+     * @param position 開始位置
+     * @param framer 読み込んだ内容を行に区切るフレーマ
+     */
+    public TailedFile(Path path, long position, LineFramer framer)
+    {
+        this.path = path;
+        this.position = position;
+        this.framer = framer;
+    }
+
+    /**
+     * ワーカーによる読込をスケジュール済みにする。
+     *
+     * @return スケジュール済みでなかった場合true
+     */
+    boolean trySchedule()
+    {
+        return SCHEDULED_UPDATER.compareAndSet(this, 0, 1);
+    }
+
+    /**
+     * ワーカーによる読込がスケジュール済みかを判定する。<br>
+     * ワーカーが更新した読込位置を参照する前に呼び出すこと。
+     *
+     * @return スケジュール済みの場合true
+     */
+    boolean isScheduled()
+    {
+        return this.scheduled != 0;
+    }
+
+    /**
+     * ワーカーによる読込のスケジュールを解除する。
+     */
+    void unschedule()
+    {
+        this.scheduled = 0;
+    }
+
+    /**
+     * 変更が通知されたことを記録する。読込中に通知された変更を、読込後に読み込むために使用する。
+     */
+    void markChanged()
+    {
+        this.changed = true;
+    }
+
+    /**
+     * 変更の通知の記録を消去する。読込を開始する前に呼び出す。
+     */
+    void clearChanged()
+    {
+        this.changed = false;
+    }
+
+    /**
+     * @return 最後に{@link #clearChanged()}を呼び出した後に変更が通知された場合true
+     */
+    boolean isChanged()
+    {
+        return this.changed;
+    }
+
+    /**
+     * ファイルが置き換えられた(ローテーションされた)際に、状態を先頭からの読込に戻す。
+     *
+     * @param newFileKey 新しいファイルの識別子
+     */
+    void reset(Object newFileKey)
+    {
+        this.position = 0L;
+        this.fileKey = newFileKey;
+        this.framer.reset();
+        this.fingerprintLength = 0;
+        this.fingerprint = 0L;
+    }
+
+    /**
+     * @return 読み込んだ内容を行に区切るフレーマ
+     */
+    LineFramer getFramer()
+    {
+        return this.framer;
+    }
+
+    /**
+     * 送信済みとして扱える位置(読込位置から持ち越し分を除いた位置)を取得する。
+     *
+     * @return 送信済みとして扱える位置
+     */
+    public long getCommittedOffset()
+    {
+        return this.position - this.framer.getPendingLength();
+    }
+
+    /**
+     * @return the path
+     */
+    public Path getPath()
+    {
+        return this.path;
+    }
+
+    /**
+     * @return the position
+     */
+    public long getPosition()
+    {
+        return this.position;
+    }
+
+    /**
+     * @param position the position to set
+     */
+    void setPosition(long position)
+    {
+        this.position = position;
+    }
+
+    /**
+     * @return the fileKey
+     */
+    public Object getFileKey()
+    {
+        return this.fileKey;
+    }
+
+    /**
+     * @param fileKey the fileKey to set
+     */
+    void setFileKey(Object fileKey)
+    {
+        this.fileKey = fileKey;
+    }
+
+    /**
+     * @return the fingerprintLength
+     */
+    public int getFingerprintLength()
+    {
+        return this.fingerprintLength;
+    }
+
+    /**
+     * @return the fingerprint
+     */
+    public long getFingerprint()
+    {
+        return this.fingerprint;
+    }
+
+    /**
+     * ファイル先頭のフィンガープリントを設定する。
+     *
+     * @param fingerprintLength フィンガープリントの計算に使用したファイル先頭のサイズ
+     * @param fingerprint フィンガープリント
+     */
+    void setFingerprint(int fingerprintLength, long fingerprint)
+    {
+        this.fingerprintLength = fingerprintLength;
+        this.fingerprint = fingerprint;
+    }
+
+    /**
+     * @return the missing
+     */
+    boolean isMissing()
+    {
+        return this.missing;
+    }
+
+    /**
+     * @param missing the missing to set
+     */
+    void setMissing(boolean missing)
+    {
+        this.missing = missing;
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public String toString()
+    {
+        return "TailedFile[path=" + this.path + ", position=" + this.position + ", fileKey="
+                + this.fileKey + "]";
+    }
+}
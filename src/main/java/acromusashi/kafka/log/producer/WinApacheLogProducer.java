@@ -12,26 +12,31 @@
 */
 package acromusashi.kafka.log.producer;
 
+import static java.nio.file.StandardWatchEventKinds.ENTRY_CREATE;
+import static java.nio.file.StandardWatchEventKinds.ENTRY_DELETE;
 import static java.nio.file.StandardWatchEventKinds.ENTRY_MODIFY;
 import static java.nio.file.StandardWatchEventKinds.OVERFLOW;
 
-import java.io.ByteArrayOutputStream;
 import java.io.File;
 import java.io.IOException;
-import java.io.RandomAccessFile;
 import java.net.InetAddress;
 import java.net.UnknownHostException;
-import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.Charset;
 import java.nio.file.FileSystems;
+import java.nio.file.Files;
 import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
 import java.nio.file.WatchEvent;
 import java.nio.file.WatchKey;
 import java.nio.file.WatchService;
+import java.nio.file.attribute.BasicFileAttributes;
 import java.util.ArrayList;
-import java.util.Arrays;
 import java.util.Collections;
 import java.util.List;
 import java.util.Map;
+import java.util.concurrent.TimeUnit;
+import java.util.regex.Pattern;
 
 import javax.swing.event.EventListenerList;
 
@@ -47,12 +52,18 @@ import org.apache.commons.cli.OptionBuilder;
 import org.apache.commons.cli.Options;
 import org.apache.commons.cli.ParseException;
 import org.apache.commons.cli.PosixParser;
-import org.apache.commons.lang3.StringUtils;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
+import acromusashi.kafka.log.producer.util.ApacheLogParseUtil;
+import acromusashi.kafka.log.producer.util.CompiledLogFormat;
+import acromusashi.kafka.log.producer.util.JsonLogSerializer;
 import acromusashi.kafka.log.producer.util.KeyedMessageConverter;
+import acromusashi.kafka.log.producer.util.LogFormatSelector;
+import acromusashi.kafka.log.producer.util.LogRecord;
+import acromusashi.kafka.log.producer.util.LogParserType;
 import acromusashi.kafka.log.producer.util.ProducerConfigConverter;
+import acromusashi.kafka.log.producer.util.WatchMode;
 import acromusashi.kafka.log.producer.util.YamlReadUtil;
 
 import com.fasterxml.jackson.databind.ObjectMapper;
@@ -72,9 +83,18 @@ public class WinApacheLogProducer extends Thread
     /** デフォルトの確保サイズ */
     private static final int                                DEFAULT_ALLOCATE_SIZE = 65535;
 
+    /** デフォルトの最大行長(KB) */
+    private static final long                               DEFAULT_MAX_LINE_KB   = 1024L;
+
+    /** デフォルトの送信失敗時の再送間隔(ミリ秒) */
+    private static final long                               DEFAULT_SEND_RETRY    = 1000L;
+
     /** KafkaのProducer */
     private kafka.javaapi.producer.Producer<String, String> producer;
 
+    /** 変換したメッセージの送信先 */
+    private MessageSink                                     destination;
+
     /** 送信する際にKafkaの入れておく場所の名前 */
     private String                                          topic;
 
@@ -90,17 +110,17 @@ public class WinApacheLogProducer extends Thread
     /** LogAgentが配置されたホスト名 */
     private String                                          host;
 
-    /** ローテートして次に読み込むログファイル */
-    private List<String>                                    newFileName           = new ArrayList<String>();
-
     /** ログを収集する対象のファイル */
     private File                                            targetFile;
 
-    /** 収集するログファイルのパターン */
-    private String                                          logPattern            = "access_[0-9][0-9][0-9][0-9][0-9].*";
+    /** ログを収集する対象のファイルの識別子(inode等。取得できない環境では作成日時) */
+    private Object                                          targetFileKey;
 
-    /** apacheのログフォーマット */
-    private String                                          apacheLogFormat;
+    /** 収集するログファイルのパターン(ディレクトリの確認ごとにコンパイルしないよう保持する) */
+    private final Pattern                                   logPattern            = Pattern.compile("access_[0-9][0-9][0-9][0-9][0-9].*");
+
+    /** コンパイル済みのapacheのログフォーマットの選択 */
+    private LogFormatSelector                               selector;
 
     /** Jacksonを用いた変換マッパーオブジェクト */
     protected transient ObjectMapper                        objectMapper;
@@ -111,14 +131,67 @@ public class WinApacheLogProducer extends Thread
     /** jsonで送る際の時刻のフォーマット */
     private String                                          jsonDateFormatStr;
 
+    /** フォーマットごとのjsonへの変換を行うシリアライザ */
+    private JsonLogSerializer[]                             serializers;
+
+    /** フォーマットごとのパース結果の格納先(1行ごとに再利用する) */
+    private LogRecord[]                                     records;
+
     /** エンコード */
-    private String                                          encoding              = "UTF-8";
+    private Charset                                         charset               = Charset.forName("UTF-8");
+
+    /** 送信済み位置の保存先。nullの場合は保存しない */
+    private CheckpointStore                                 checkpointStore;
+
+    /** 送信済み位置から読込を再開済みか */
+    private boolean                                         resumed;
+
+    /** 追記分をチャンクに分けて読み込むリーダ(読込バッファを再利用する) */
+    private final ChunkedFileReader                         chunkReader;
+
+    /** 読み込んだチャンクを行単位で変換してKafkaに送信するハンドラ */
+    private final ChunkHandler                              sendHandler;
+
+    /** 読み込んだチャンクを行に区切るフレーマ(改行が現れていない行の途中を持ち越す) */
+    private LineFramer                                      lineFramer;
+
+    /** 区切った行を変換して送信待ちのメッセージに追加するハンドラ */
+    private final LineSink                                  messageSink;
+
+    /** 送信待ちのメッセージ */
+    private final List<KeyedMessage<String, String>>        messageList           = Lists.newArrayList();
+
+    /** 追記の検知方式 */
+    private WatchMode                                       watchMode             = WatchMode.AUTO;
+
+    /** サイズと更新日時で追記を検知するポーラ */
+    private AdaptivePoller                                  poller                = new AdaptivePoller();
+
+    /** 送信失敗時の再送間隔(ミリ秒) */
+    private long                                            sendRetryInterval     = DEFAULT_SEND_RETRY;
 
     /**
      * パラメータを指定せずにインスタンスを生成する。
      */
     public WinApacheLogProducer()
-    {}
+    {
+        this.chunkReader = new ChunkedFileReader(DEFAULT_ALLOCATE_SIZE);
+        this.sendHandler = new ChunkHandler() {
+            @Override
+            public int handleChunk(byte[] buffer, int offset, int length)
+            {
+                return sendChunk(buffer, offset, length);
+            }
+        };
+        this.lineFramer = new LineFramer();
+        this.messageSink = new LineSink() {
+            @Override
+            public void handleLine(byte[] buffer, int start, int end)
+            {
+                addKeyedMessage(WinApacheLogProducer.this.messageList, buffer, start, end);
+            }
+        };
+    }
 
     /**
      * プログラムエントリポイント<br/>
@@ -191,10 +264,36 @@ public class WinApacheLogProducer extends Thread
      * @param configMap 設定値格納Map
      */
     private void startTailLog(Map<String, Object> configMap)
+    {
+        configure(configMap);
+        ProducerConfig producerConfig = ProducerConfigConverter.convertToProducerConfig(configMap);
+        initialize(producerConfig);
+        start();
+    }
+
+    /**
+     * 設定値を読み込み、ログの変換と追尾の設定を行う。
+     * 
+     * @param configMap 設定値格納Map
+     */
+    void configure(Map<String, Object> configMap)
     {
         this.path = configMap.get("tail.target.dir").toString();
         this.topic = configMap.get("kafka.topic").toString();
-        this.apacheLogFormat = configMap.get("apachelog.format").toString();
+        // ログフォーマットは設定読込時に一度だけコンパイルし、以後は使いまわす
+        LogParserType parserType = LogParserType.fromConfigName(configMap.get("apachelog.parser"));
+        List<String> fields = ApacheLogParseUtil.getFieldList(configMap.get("json.fields"));
+        List<CompiledLogFormat> logFormats = ApacheLogParseUtil.getCompiledLogFormats(
+                ApacheLogParseUtil.getFormatList(configMap.get("apachelog.format")), parserType,
+                fields);
+        for (CompiledLogFormat logFormat : logFormats)
+        {
+            if (parserType == LogParserType.TOKENIZER && logFormat.isTokenizerEnabled() == false)
+            {
+                logger.warn("Tokenizer does not support the format. Use regex. : format=" + logFormat);
+            }
+        }
+        this.selector = new LogFormatSelector(logFormats);
         this.jsonDateFormatStr = configMap.get("jsondate.format").toString();
 
         this.host = "defaultHost";
@@ -208,9 +307,22 @@ public class WinApacheLogProducer extends Thread
             logger.warn("HostName resolve failed. Use default. : default=" + this.host, ex);
         }
 
-        ProducerConfig producerConfig = ProducerConfigConverter.convertToProducerConfig(configMap);
-        initialize(producerConfig);
-        start();
+        boolean typedFields = Boolean.parseBoolean(String.valueOf(configMap.get("json.typed.fields")));
+        boolean epochMillisTime = Boolean.parseBoolean(String.valueOf(configMap.get("json.time.epochmillis")));
+        this.serializers = JsonLogSerializer.create(this.selector, this.host,
+                this.jsonDateFormatStr, typedFields, epochMillisTime);
+        this.records = this.selector.newRecords();
+
+        this.checkpointStore = CheckpointStore.createCheckpointStore(configMap);
+        long maxLineLength = YamlReadUtil.getLong(configMap, "tail.max.line.length",
+                DEFAULT_MAX_LINE_KB) * 1024L;
+        this.lineFramer = new LineFramer((int) Math.min(Integer.MAX_VALUE - 8, maxLineLength));
+        this.watchMode = WatchMode.fromConfigName(configMap.get("tail.watch.mode"));
+        this.poller = new AdaptivePoller(YamlReadUtil.getLong(configMap, "tail.poll.min.interval",
+                AdaptivePoller.DEFAULT_MIN_INTERVAL), YamlReadUtil.getLong(configMap,
+                "tail.poll.max.interval", AdaptivePoller.DEFAULT_MAX_INTERVAL));
+        this.sendRetryInterval = YamlReadUtil.getLong(configMap, "send.retry.interval",
+                DEFAULT_SEND_RETRY);
     }
 
     /**
@@ -220,8 +332,25 @@ public class WinApacheLogProducer extends Thread
      */
     public void initialize(ProducerConfig config)
     {
-        this.objectMapper = new ObjectMapper();
         this.producer = new Producer<>(config);
+        initialize(new MessageSink() {
+            @Override
+            public void send(List<KeyedMessage<String, String>> messages)
+            {
+                WinApacheLogProducer.this.producer.send(messages);
+            }
+        });
+    }
+
+    /**
+     * 変換したメッセージの送信先を指定して初期化する。
+     * 
+     * @param sink 変換したメッセージの送信先
+     */
+    void initialize(MessageSink sink)
+    {
+        this.objectMapper = new ObjectMapper();
+        this.destination = sink;
     }
 
     /**
@@ -238,7 +367,10 @@ public class WinApacheLogProducer extends Thread
     }
 
     /**
-     * tailでファイルを読み込む。
+     * tailでファイルを読み込む。<br>
+     * 追記は検知方式に応じて、WatchServiceの変更通知、またはファイルのサイズと更新日時のポーリングで検知する。
+     * 自動切替方式では、変更通知を待つ間もポーリング間隔ごとにファイルを確認し、
+     * 変更通知が届かないまま追記されていることを続けて検知した場合はポーリングに切り替える。
      *
      * @param targetPath 対象のログファイル
      */
@@ -247,80 +379,86 @@ public class WinApacheLogProducer extends Thread
         try (WatchService watcher = FileSystems.getDefault().newWatchService())
         {
             Path targetDir = targetPath.toPath();
-            targetDir.register(watcher, ENTRY_MODIFY);
-            targetDir.relativize(targetPath.toPath());
-            List<String> targetFileNames = getTargetLogFiles(Lists.newArrayList(targetDir.toFile().list()));
-            Collections.sort(targetFileNames);
-            int logFileNameSize = targetFileNames.size();
-            this.targetFile = new File(targetDir + "/" + targetFileNames.get(logFileNameSize - 1));
+            targetDir.register(watcher, ENTRY_CREATE, ENTRY_DELETE, ENTRY_MODIFY);
+            List<String> targetFileNames = selectTargetFile(targetDir);
+
+            boolean polling = this.watchMode == WatchMode.POLL;
+            int silentChangeCount = 0;
+            this.poller.check(this.targetFile.toPath(), targetDir);
 
             while (true)
             {
-                WatchKey key = watcher.take();
-                for (WatchEvent<?> event : key.pollEvents())
+                if (polling)
                 {
-                    WatchEvent.Kind<?> kind = event.kind();
-                    if (kind == OVERFLOW)
+                    Thread.sleep(this.poller.getIntervalMillis());
+                    if (this.poller.check(this.targetFile.toPath(), targetDir))
                     {
-                        logger.warn("OVERFLOW");
-                        continue;
+                        // ポーリングではファイルの作成・削除を区別できないため、ディレクトリも確認する
+                        targetFileNames = processChange(targetDir, listTargetLogFiles(targetDir));
                     }
-                    byte[] tail = null;
-                    boolean noRetry = false;
-                    for (int retryCount = 0; retryCount < this.retryNum; retryCount++)
+                    continue;
+                }
+
+                WatchKey key;
+                if (this.watchMode == WatchMode.WATCH)
+                {
+                    key = watcher.take();
+                }
+                else
+                {
+                    key = watcher.poll(this.poller.getIntervalMillis(), TimeUnit.MILLISECONDS);
+                }
+
+                if (key == null)
+                {
+                    // 変更通知が届かないまま追記されていないかを確認する
+                    if (this.poller.check(this.targetFile.toPath(), targetDir))
                     {
-                        try
-                        {
-                            tail = getTail(this.targetFile);
-                            break;
-                        }
-                        catch (IOException ex)
-                        {
-                            if (retryCount == this.retryNum - 1)
-                            {
-                                noRetry = true;
-                            }
-                        }
+                        silentChangeCount++;
+                        targetFileNames = processChange(targetDir, listTargetLogFiles(targetDir));
                     }
-                    // リトライ上限に達してもログを取得できなかった場合は、ループを抜ける
-                    if (noRetry)
+                    if (silentChangeCount >= AdaptivePoller.SWITCH_THRESHOLD)
                     {
-                        break;
+                        logger.warn("Change detected without watch events. Switch to polling. : dir="
+                                + targetDir + ", poller=" + this.poller);
+                        polling = true;
                     }
-                    List<String> allFileName = getTargetLogFiles(Arrays.asList(targetDir.toFile().list()));
-                    Collections.sort(allFileName);
-                    int allFileNameSize = allFileName.size();
-                    if (tail.length > 0)
+                    continue;
+                }
+
+                silentChangeCount = 0;
+                boolean dirChanged = false;
+                for (WatchEvent<?> event : key.pollEvents())
+                {
+                    WatchEvent.Kind<?> kind = event.kind();
+                    if (kind == OVERFLOW)
                     {
-                        String inputStr = new String(tail, this.encoding);
-                        if (!allFileName.equals(targetFileNames))
-                        {
-                            this.newFileName.add(allFileName.get(allFileNameSize - 1));
-                            targetFileNames = allFileName;
-                        }
-
-                        List<String> eachStr = Arrays.asList(inputStr.split(System.getProperty("line.separator")));
-                        List<KeyedMessage<String, String>> list = getKeyedMessage(eachStr);
-                        this.producer.send(list);
+                        // 通知が失われた可能性があるため、ディレクトリを確認し直す
+                        logger.warn("OVERFLOW");
+                        dirChanged = true;
                     }
-                    else
+                    else if (kind == ENTRY_CREATE || kind == ENTRY_DELETE)
                     {
-                        if (!allFileName.equals(targetFileNames))
-                        {
-                            this.newFileName.add(allFileName.get(allFileNameSize - 1));
-                            targetFileNames = allFileName;
-                        }
-                        if (this.newFileName.size() > 0)
-                        {
-                            this.targetFile = new File(targetDir + "/" + this.newFileName.get(0));
-                            this.newFileName.remove(0);
-                            targetFileNames = allFileName;
-                        }
+                        dirChanged = true;
                     }
                 }
 
+                // ディレクトリの一覧はファイルの作成・削除時のみ取得し直し、追記のみの場合は前回の一覧を使用する
+                if (dirChanged)
+                {
+                    targetFileNames = listTargetLogFiles(targetDir);
+                }
+                // リトライ上限に達してもログを取得できなかった場合は、ループを抜ける
+                targetFileNames = processChange(targetDir, targetFileNames);
+
+                if (this.watchMode == WatchMode.AUTO)
+                {
+                    // 変更通知で処理した変更を、次回のポーリングで再度検知しないよう状態を更新する
+                    this.poller.check(this.targetFile.toPath(), targetDir);
+                }
+
                 boolean valid = key.reset();
-                if (!valid)
+                if (!valid || targetFileNames == null)
                 {
                     break;
                 }
@@ -334,105 +472,444 @@ public class WinApacheLogProducer extends Thread
     }
 
     /**
-     * 送信するためのkeyedMessageListを作成する。
-     * 
-     * @param eachStr 実際の複数のログ
-     * @return list keyedMessageのリスト
+     * 収集対象のログファイルを選択する。<br>
+     * 初回は最新のログファイルを選択する。再実行時は、読込位置が収集中のログファイルのものであるため、
+     * 収集中のログファイルが残っている間は選択し直さずに続きから読み込む。
+     *
+     * @param targetDir ログファイルがあるディレクトリ
+     * @return 収集対象のログファイル名(ファイル名の順)
+     */
+    List<String> selectTargetFile(Path targetDir)
+    {
+        List<String> targetFileNames = listTargetLogFiles(targetDir);
+        if (this.targetFile != null && targetFileNames.contains(this.targetFile.getName()))
+        {
+            return targetFileNames;
+        }
+
+        File newestFile = new File(targetDir + "/"
+                + targetFileNames.get(targetFileNames.size() - 1));
+        if (this.targetFile != null)
+        {
+            logger.warn("Log file disappeared. Switch to the newest. : from="
+                    + this.targetFile.getName() + ", to=" + newestFile.getName());
+            this.lineFramer.reset();
+            this.tailPos = 0L;
+        }
+        this.targetFile = newestFile;
+        this.targetFileKey = getFileKey(this.targetFile);
+        resumeFromCheckpoint();
+        return targetFileNames;
+    }
+
+    /**
+     * 収集対象のログファイルの追記分を送信し、ローテートされた場合は次のログファイルに切り替える。<br>
+     * Kafkaへの送信に失敗した場合は、送信済みの位置に戻した上で再送間隔分待ち、同じログファイルから送信し直す。
+     *
+     * @param targetDir ログファイルがあるディレクトリ
+     * @param targetFileNames 収集対象のログファイル名(ファイル名の順)
+     * @return 収集対象のログファイル名。リトライ上限に達してもログを取得できなかった場合はnull
+     * @throws InterruptedException 再送を待つ間に割り込まれた場合
+     */
+    List<String> processChange(Path targetDir, List<String> targetFileNames)
+            throws InterruptedException
+    {
+        while (true)
+        {
+            try
+            {
+                return sendAndSwitch(targetDir, targetFileNames);
+            }
+            catch (RuntimeException ex)
+            {
+                // 最新のログファイルを選択し直すと、読込位置と異なるログファイルを読み込むため、ここで再送する
+                logger.warn("Send failed. Retry the same file. : file=" + this.targetFile.getName()
+                        + ", position=" + this.tailPos, ex);
+                Thread.sleep(this.sendRetryInterval);
+            }
+        }
+    }
+
+    /**
+     * 収集対象のログファイルの追記分を送信し、ローテートされた場合は次のログファイルに切り替える。<br>
+     * 次のログファイル(ファイル名の順で収集対象の次のもの)がある場合は、収集対象のログファイルを末尾まで送信した直後に切り替え、
+     * 切り替えたログファイルも同様に送信する。
+     *
+     * @param targetDir ログファイルがあるディレクトリ
+     * @param targetFileNames 収集対象のログファイル名(ファイル名の順)
+     * @return 収集対象のログファイル名。リトライ上限に達してもログを取得できなかった場合はnull
      */
-    protected List<KeyedMessage<String, String>> getKeyedMessage(List<String> eachStr)
+    private List<String> sendAndSwitch(Path targetDir, List<String> targetFileNames)
     {
-        List<KeyedMessage<String, String>> list = Lists.newArrayList();
-        for (String apacheLogStr : eachStr)
+        while (true)
         {
-            if (StringUtils.isBlank(apacheLogStr))
+            for (int retryCount = 0; retryCount < this.retryNum; retryCount++)
             {
-                continue;
+                try
+                {
+                    sendTail(this.targetFile);
+                    break;
+                }
+                catch (IOException ex)
+                {
+                    if (retryCount == this.retryNum - 1)
+                    {
+                        return null;
+                    }
+                }
+            }
+
+            String nextFileName = getNextFileName(targetFileNames, this.targetFile.getName());
+            if (nextFileName == null)
+            {
+                return targetFileNames;
             }
-            
-            KeyedMessage<String, String> convertedMessage = null;
 
+            // ローテート前のファイルの改行で終わっていない最終行を送信してから切り替える。
+            // 送信に失敗した場合は、最終行を読み込み直せるよう読込位置を戻す
+            long committedPosition = getCommittedPosition();
             try
             {
-                convertedMessage = KeyedMessageConverter.convertToMessage(apacheLogStr, this.topic,
-                        this.host, this.apacheLogFormat, this.jsonDateFormatStr);
+                sendRemainder();
+            }
+            catch (RuntimeException ex)
+            {
+                this.tailPos = committedPosition;
+                throw ex;
+            }
+            logger.info("Log file rotated. Switch. : from=" + this.targetFile.getName() + ", to="
+                    + nextFileName);
+            this.targetFile = new File(targetDir + "/" + nextFileName);
+            this.targetFileKey = getFileKey(this.targetFile);
+            this.tailPos = 0L;
+        }
+    }
+
+    /**
+     * ファイル名の順で、指定したファイル名の次の収集対象のログファイル名を取得する。
+     *
+     * @param targetFileNames 収集対象のログファイル名(ファイル名の順)
+     * @param currentFileName 収集中のログファイル名
+     * @return 次のログファイル名。ない場合はnull
+     */
+    private static String getNextFileName(List<String> targetFileNames, String currentFileName)
+    {
+        for (String fileName : targetFileNames)
+        {
+            if (fileName.compareTo(currentFileName) > 0)
+            {
+                return fileName;
             }
-            catch (Exception ex)
+        }
+        return null;
+    }
+
+    /**
+     * 同名の別のファイルへの置き換えを検知するための、ファイルの識別子を取得する。<br>
+     * Windowsでは識別子(inode等)を取得できないため、作成日時で代用する。
+     *
+     * @param file ファイル
+     * @return ファイルの識別子(inode等、または作成日時)。ファイルが存在しない場合はnull
+     */
+    private static Object getFileKey(File file)
+    {
+        try
+        {
+            BasicFileAttributes attributes = Files.readAttributes(file.toPath(),
+                    BasicFileAttributes.class);
+            Object fileKey = attributes.fileKey();
+            if (fileKey == null)
             {
-                logger.warn("Log convert failed. Dispose log message. Log=" + apacheLogStr, ex);
-                continue;
+                return attributes.creationTime();
             }
+            return fileKey;
+        }
+        catch (IOException ex)
+        {
+            return null;
+        }
+    }
+
+    /**
+     * 起動後の初回のみ、収集対象のログファイルの送信済み位置から読込を再開する。
+     */
+    private void resumeFromCheckpoint()
+    {
+        if (this.checkpointStore == null || this.resumed)
+        {
+            return;
+        }
+
+        long resumePosition = this.checkpointStore.getResumePosition(this.targetFile.toPath());
+        if (resumePosition != CheckpointStore.NO_CHECKPOINT)
+        {
+            this.tailPos = resumePosition;
+            this.lineFramer.reset();
+        }
+        this.resumed = true;
+    }
+
+    /**
+     * Kafkaへの送信が完了した位置を記録する。
+     */
+    private void updateCheckpoint()
+    {
+        if (this.checkpointStore == null)
+        {
+            return;
+        }
 
-            list.add(convertedMessage);
+        try
+        {
+            Path targetPath = this.targetFile.toPath();
+            byte[] head = new byte[CheckpointStore.FINGERPRINT_SIZE];
+            int headLength = CheckpointStore.readHead(targetPath, head);
+            Object fileKey = Files.readAttributes(targetPath, BasicFileAttributes.class).fileKey();
+            this.checkpointStore.update(targetPath, fileKey, getCommittedPosition(), head,
+                    headLength);
+        }
+        catch (IOException ex)
+        {
+            logger.warn("Checkpoint update failed. : file=" + this.targetFile, ex);
         }
+    }
 
+    /**
+     * 送信するためのkeyedMessageListを作成する。<br>
+     * 読み込んだbyte列を文字列にデコードせずに改行で区切り、行単位で変換する。
+     * 
+     * @param tail 読み込んだ複数行のログ
+     * @return list keyedMessageのリスト
+     */
+    protected List<KeyedMessage<String, String>> getKeyedMessage(byte[] tail)
+    {
+        final List<KeyedMessage<String, String>> list = Lists.newArrayList();
+        LineSink sink = new LineSink() {
+            @Override
+            public void handleLine(byte[] buffer, int start, int end)
+            {
+                addKeyedMessage(list, buffer, start, end);
+            }
+        };
+
+        LineFramer framer = new LineFramer(this.lineFramer.getMaxLineLength());
+        framer.frame(tail, 0, tail.length, sink);
+        framer.flush(sink);
         return list;
     }
 
     /**
-     * ログファイルの中から、収集対象のログファイルを収集する。
+     * ログの1行を変換し、keyedMessageListに追加する。空行は追加しない。
+     * 
+     * @param list 追加先のkeyedMessageのリスト
+     * @param buffer ログを格納したbyte配列
+     * @param lineStart 行の開始位置
+     * @param lineEnd 行の終了位置(改行を含まない)
+     */
+    private void addKeyedMessage(List<KeyedMessage<String, String>> list, byte[] buffer,
+            int lineStart, int lineEnd)
+    {
+        if (isBlank(buffer, lineStart, lineEnd))
+        {
+            return;
+        }
+
+        try
+        {
+            list.add(KeyedMessageConverter.convertToMessage(buffer, lineStart, lineEnd - lineStart,
+                    this.charset, this.topic, this.host, this.selector, this.serializers,
+                    this.records));
+        }
+        catch (Exception ex)
+        {
+            logger.warn("Log convert failed. Dispose log message. Log="
+                    + new String(buffer, lineStart, lineEnd - lineStart, this.charset), ex);
+        }
+    }
+
+    /**
+     * byte配列の指定範囲が空白または制御文字のみであるかを判定する。
+     * 
+     * @param buffer byte配列
+     * @param start 開始位置
+     * @param end 終了位置(排他)
+     * @return 空白または制御文字のみの場合true
+     */
+    private static boolean isBlank(byte[] buffer, int start, int end)
+    {
+        for (int pos = start; pos < end; pos++)
+        {
+            if ((buffer[pos] & 0xFF) > ' ')
+            {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    /**
+     * ディレクトリの中から、収集対象のログファイルを収集する。
      *
-     * @param candidateFiles ログファイル
-     * @return returnLogFiles 対象のログファイル
+     * @param targetDir ログファイルがあるディレクトリ
+     * @return returnLogFiles 対象のログファイル(ファイル名の順)
      */
-    private List<String> getTargetLogFiles(List<String> candidateFiles)
+    private List<String> listTargetLogFiles(Path targetDir)
     {
-        int candidateFilesSize = candidateFiles.size();
+        String[] candidateFiles = targetDir.toFile().list();
         List<String> returnLogFiles = new ArrayList<String>();
+        if (candidateFiles == null)
+        {
+            return returnLogFiles;
+        }
 
-        for (int index = 0; index < candidateFilesSize; index++)
+        for (String candidateFileName : candidateFiles)
         {
-            String candidateFileName = candidateFiles.get(index);
-            if (candidateFileName.matches(this.logPattern))
+            if (this.logPattern.matcher(candidateFileName).matches())
             {
                 returnLogFiles.add(candidateFileName);
             }
         }
 
+        Collections.sort(returnLogFiles);
         return returnLogFiles;
     }
 
     /**
-     * ファイルに追記された分を返す。
+     * ファイルに追記された分をチャンクごとに読み込み、行単位で変換してKafkaに送信する。<br>
+     * 追記分の全体をメモリに保持せず、チャンクを送信するたびに読込位置と送信済み位置を進める。
+     * 末尾の書き込み途中の行は送信せず、次回に読み込む。<br>
+     * 同名の別のファイルに置き換えられた場合(識別子または作成日時の変化)、またはサイズが読込位置より小さくなった場合(copytruncate等)は、
+     * 持ち越している行を送信してから先頭から読み込む。
      *
      * @param file 対象のファイル
-     * @return ファイルに追記された分のbyte配列
+     * @return 送信済みとしたbyte数
      * @throws IOException エラー
      */
-    private byte[] getTail(File file) throws IOException
+    private long sendTail(File file) throws IOException
     {
-        byte[] tail = new byte[0];
-        try (RandomAccessFile random = new RandomAccessFile(file, "r"))
+        try (FileChannel channel = FileChannel.open(file.toPath(), StandardOpenOption.READ))
         {
-            if (this.tailPos < random.length())
+            long size = channel.size();
+            Object fileKey = getFileKey(file);
+            if (fileKey != null && fileKey.equals(this.targetFileKey) == false)
             {
-                random.seek(this.tailPos);
+                if (this.targetFileKey != null)
+                {
+                    logger.info("Log file replaced. Read from head. : file=" + file);
+                    sendRemainder();
+                    this.tailPos = 0L;
+                }
+                this.targetFileKey = fileKey;
+            }
+
+            if (size < this.tailPos)
+            {
+                logger.info("Log file truncated. Read from head. : file=" + file + ", size=" + size
+                        + ", position=" + this.tailPos);
+                sendRemainder();
+                this.tailPos = 0L;
+            }
 
-                tail = readToEnd(random);
+            if (this.tailPos == size)
+            {
+                return 0L;
             }
-            this.tailPos = random.length();
+
+            long startPosition = this.tailPos;
+            this.tailPos = this.chunkReader.read(channel, startPosition, size, this.sendHandler);
+            return this.tailPos - startPosition;
         }
-        return tail;
     }
 
     /**
-     * ファイルの末尾までを返す。
+     * 読み込んだチャンクを行単位で変換してKafkaに送信する。<br>
+     * 改行が現れていない行の途中は送信せずに持ち越し、次のチャンクの先頭と連結して送信する。
+     * 送信に失敗した場合は、送信済みの位置から読み込み直せるよう読込位置を戻す。
      *
-     * @param random ファイル
-     * @return ファイルの末尾までの配列
-     * @throws IOException 例外
+     * @param buffer チャンクを格納したbyte配列
+     * @param offset チャンクの開始位置
+     * @param length チャンクの長さ
+     * @return 処理したbyte数
+     */
+    private int sendChunk(byte[] buffer, int offset, int length)
+    {
+        long committedPosition = getCommittedPosition();
+        try
+        {
+            this.lineFramer.frame(buffer, offset, length, this.messageSink);
+            sendMessages();
+        }
+        catch (RuntimeException ex)
+        {
+            this.lineFramer.reset();
+            this.messageList.clear();
+            this.tailPos = committedPosition;
+            throw ex;
+        }
+
+        this.tailPos += length;
+        updateCheckpoint();
+        return length;
+    }
+
+    /**
+     * 持ち越している改行で終わっていない行を送信する。
      */
-    private byte[] readToEnd(RandomAccessFile random) throws IOException
+    private void sendRemainder()
     {
-        ByteArrayOutputStream out = new ByteArrayOutputStream();
-        ByteBuffer buffer = ByteBuffer.allocate(DEFAULT_ALLOCATE_SIZE);
+        try
+        {
+            this.lineFramer.flush(this.messageSink);
+            sendMessages();
+        }
+        finally
+        {
+            this.messageList.clear();
+        }
+    }
 
-        while ((random.getChannel().read(buffer)) != -1)
+    /**
+     * 送信待ちのメッセージを送信する。
+     */
+    private void sendMessages()
+    {
+        if (this.messageList.isEmpty())
         {
-            out.write(buffer.array());
-            buffer.clear();
+            return;
         }
 
-        return out.toByteArray();
+        this.destination.send(this.messageList);
+        this.messageList.clear();
+    }
+
+    /**
+     * 送信済みとして扱える位置(読込位置から持ち越し分を除いた位置)を取得する。
+     *
+     * @return 送信済みとして扱える位置
+     */
+    private long getCommittedPosition()
+    {
+        return this.tailPos - this.lineFramer.getPendingLength();
+    }
+
+    /**
+     * 最大行長を超えたため切り詰めた行数を取得する。
+     *
+     * @return 切り詰めた行数
+     */
+    public long getTruncatedCount()
+    {
+        return this.lineFramer.getTruncatedCount();
+    }
+
+    /**
+     * 追記を検知するポーラを取得する。ファイル情報の取得回数や検知遅延の参照に使用する。
+     *
+     * @return ポーラ
+     */
+    public AdaptivePoller getPoller()
+    {
+        return this.poller;
     }
 
     /**
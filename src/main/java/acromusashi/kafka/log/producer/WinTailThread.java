@@ -15,42 +15,72 @@ package acromusashi.kafka.log.producer;
 import static java.nio.file.StandardWatchEventKinds.ENTRY_MODIFY;
 import static java.nio.file.StandardWatchEventKinds.OVERFLOW;
 
-import java.io.ByteArrayOutputStream;
 import java.io.File;
 import java.io.IOException;
-import java.io.RandomAccessFile;
+import java.nio.channels.FileChannel;
 import java.nio.file.FileSystems;
 import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
 import java.nio.file.WatchEvent;
 import java.nio.file.WatchKey;
 import java.nio.file.WatchService;
+import java.util.Arrays;
+import java.util.concurrent.TimeUnit;
 
 import javax.swing.event.EventListenerList;
 
+import acromusashi.kafka.log.producer.util.WatchMode;
+
 /**
 * Windowsにおいてログの末尾を追尾するスレッド。<br>
 * 指定したファイルの末尾に追記が行われると、TailEventを発行する。<br>
 * TailEvent には、前回からの差分を含む。
+* 差分はチャンクサイズごとに分割し、チャンクごとにTailEventを発行する。<br>
+* 追記は検知方式に応じて、WatchServiceの変更通知、またはファイルのサイズと更新日時のポーリングで検知する。
 *
 * @author hiroki
 */
 public class WinTailThread implements Runnable
 {
     /** イベントリスナー */
-    private EventListenerList listenerList = new EventListenerList();
+    private EventListenerList       listenerList = new EventListenerList();
 
     /** 監視対象のファイル */
-    private final File        file;
+    private final File              file;
 
     /** ファイルの末尾 */
-    private long              tailPos;
+    private long                    tailPos;
+
+    /** 差分をチャンクに分けて読み込むリーダ */
+    private final ChunkedFileReader chunkReader;
+
+    /** 読み込んだチャンクをTailEventとして通知するハンドラ */
+    private final ChunkHandler      notifyHandler;
+
+    /** 追記の検知方式 */
+    private final WatchMode         watchMode;
+
+    /** サイズと更新日時で追記を検知するポーラ */
+    private final AdaptivePoller    poller;
 
     /**
-     * ファイルオブジェクトを指定してインスタンスを生成する。
+     * ファイルオブジェクトを指定してインスタンスを生成する。追記は自動切替方式で検知する。
      * 
      * @param file ファイルオブジェクト
      */
     public WinTailThread(File file)
+    {
+        this(file, WatchMode.AUTO, new AdaptivePoller());
+    }
+
+    /**
+     * ファイルオブジェクトと追記の検知方式を指定してインスタンスを生成する。
+     * 
+     * @param file ファイルオブジェクト
+     * @param watchMode 追記の検知方式
+     * @param poller サイズと更新日時で追記を検知するポーラ
+     */
+    public WinTailThread(File file, WatchMode watchMode, AdaptivePoller poller)
     {
         if (file == null)
         {
@@ -60,6 +90,18 @@ public class WinTailThread implements Runnable
         assert file.isFile();
 
         this.file = file;
+        this.watchMode = watchMode;
+        this.poller = poller;
+        this.chunkReader = new ChunkedFileReader();
+        this.notifyHandler = new ChunkHandler() {
+            @Override
+            public int handleChunk(byte[] buffer, int offset, int length)
+            {
+                byte[] tail = Arrays.copyOfRange(buffer, offset, offset + length);
+                notifyTailEvent(new WinTailEvent(WinTailThread.this, tail));
+                return length;
+            }
+        };
     }
 
     /**
@@ -76,11 +118,47 @@ public class WinTailThread implements Runnable
             parentDir.relativize(this.file.toPath());
             resetPos();
 
+            Path target = this.file.toPath();
+            boolean polling = this.watchMode == WatchMode.POLL;
+            int silentChangeCount = 0;
+            this.poller.check(target);
+
             while (true)
             {
+                if (polling)
+                {
+                    Thread.sleep(this.poller.getIntervalMillis());
+                    if (this.poller.check(target))
+                    {
+                        notifyTail();
+                    }
+                    continue;
+                }
+
                 // wait for key to be signaled
-                WatchKey key = watcher.take();
+                WatchKey key;
+                if (this.watchMode == WatchMode.WATCH)
+                {
+                    key = watcher.take();
+                }
+                else
+                {
+                    key = watcher.poll(this.poller.getIntervalMillis(), TimeUnit.MILLISECONDS);
+                }
 
+                if (key == null)
+                {
+                    // 変更通知が届かないまま追記されることが続いた場合は、以後ポーリングで検知する
+                    if (this.poller.check(target))
+                    {
+                        silentChangeCount++;
+                        notifyTail();
+                    }
+                    polling = silentChangeCount >= AdaptivePoller.SWITCH_THRESHOLD;
+                    continue;
+                }
+
+                silentChangeCount = 0;
                 for (WatchEvent<?> event : key.pollEvents())
                 {
                     WatchEvent.Kind<?> kind = event.kind();
@@ -94,17 +172,17 @@ public class WinTailThread implements Runnable
                     WatchEvent<Path> ev = (WatchEvent<Path>) event;
                     Path eventFile = ev.context();
 
-                    if (this.file.toPath().endsWith(eventFile))
+                    if (target.endsWith(eventFile))
                     {
-                        byte[] tail = getTail();
-
-                        if (tail.length != 0)
-                        {
-                            notifyTailEvent(new WinTailEvent(this, tail));
-                        }
+                        notifyTail();
                     }
                 }
 
+                if (this.watchMode == WatchMode.AUTO)
+                {
+                    this.poller.check(target);
+                }
+
                 // Reset the key -- this step is critical to receive further watch events.
                 boolean valid = key.reset();
                 if (!valid)
@@ -126,51 +204,28 @@ public class WinTailThread implements Runnable
      */
     private void resetPos() throws IOException
     {
-        try (RandomAccessFile random = new RandomAccessFile(this.file, "r"))
+        try (FileChannel channel = FileChannel.open(this.file.toPath(), StandardOpenOption.READ))
         {
-            this.tailPos = random.length();
+            this.tailPos = channel.size();
         }
     }
 
     /**
-     * 末尾のデータを取得する。
+     * 末尾のデータをチャンクごとに読み込み、TailEventとして通知する。
      * 
-     * @return 末尾のデータ
      * @throws IOException 入出力エラー発生時
      */
-    private byte[] getTail() throws IOException
+    private void notifyTail() throws IOException
     {
-        byte[] tail = new byte[0];
-        try (RandomAccessFile random = new RandomAccessFile(this.file, "r"))
+        try (FileChannel channel = FileChannel.open(this.file.toPath(), StandardOpenOption.READ))
         {
-            if (this.tailPos < random.length())
+            long size = channel.size();
+            if (this.tailPos < size)
             {
-                random.seek(this.tailPos);
-
-                tail = readToEnd(random);
+                this.chunkReader.read(channel, this.tailPos, size, this.notifyHandler);
             }
-            this.tailPos = random.length();
+            this.tailPos = size;
         }
-        return tail;
-    }
-
-    /**
-     * 指定したファイルを末尾まで読みこみ、データを取得する。
-     * 
-     * @param random 指定ファイル
-     * @return 末尾のデータ
-     * @throws IOException 入出力エラー発生時
-     */
-    private byte[] readToEnd(RandomAccessFile random) throws IOException
-    {
-        ByteArrayOutputStream out = new ByteArrayOutputStream();
-        int buf;
-        while ((buf = random.read()) != -1)
-        {
-            out.write(buf);
-        }
-
-        return out.toByteArray();
     }
 
     /**
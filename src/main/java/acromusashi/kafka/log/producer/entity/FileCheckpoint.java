@@ -0,0 +1,154 @@
+/**
+* Copyright (c) Acroquest Technology Co, Ltd. All Rights Reserved.
+* Please read the associated COPYRIGHTS file for more details.
+*
+* THE SOFTWARE IS PROVIDED BY Acroquest Technolog Co., Ltd.,
+* WITHOUT WARRANTY OF ANY KIND, EXPRESS OR IMPLIED, INCLUDING
+* BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+* FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT.
+* IN NO EVENT SHALL THE AUTHORS OR COPYRIGHT HOLDER BE LIABLE FOR ANY
+* CLAIM, DAMAGES SUFFERED BY LICENSEE AS A RESULT OF USING, MODIFYING
+* OR DISTRIBUTING THIS SOFTWARE OR ITS DERIVATIVES.
+*/
+package acromusashi.kafka.log.producer.entity;
+
+import org.apache.commons.lang3.builder.ToStringBuilder;
+import org.apache.commons.lang3.builder.ToStringStyle;
+
+/**
+ * ログファイルごとの送信済み位置を表すエンティティ
+ * 
+ * @author kimura
+ */
+public class FileCheckpoint
+{
+    /** ログファイルのパス */
+    private String path;
+
+    /** ログファイルの識別子(inode等)。取得できない環境ではnull */
+    private String fileKey;
+
+    /** Kafkaへの送信が完了した位置 */
+    private long   offset;
+
+    /** フィンガープリントの計算に使用したファイル先頭のサイズ */
+    private int    fingerprintLength;
+
+    /** ファイル先頭のフィンガープリント(CRC32) */
+    private long   fingerprint;
+
+    /**
+     * パラメータを指定せずにインスタンスを生成する。
+     */
+    public FileCheckpoint()
+    {}
+
+    /**
+     * 全ての値を指定してインスタンスを生成する。
+     * 
+     * @param path ログファイルのパス
+     * @param fileKey ログファイルの識別子
+     * @param offset 送信が完了した位置
+     * @param fingerprintLength フィンガープリントの計算に使用したファイル先頭のサイズ
+     * @param fingerprint ファイル先頭のフィンガープリント
+     */
+    public FileCheckpoint(String path, String fileKey, long offset, int fingerprintLength,
+            long fingerprint)
+    {
+        this.path = path;
+        this.fileKey = fileKey;
+        this.offset = offset;
+        this.fingerprintLength = fingerprintLength;
+        this.fingerprint = fingerprint;
+    }
+
+    /**
+     * @return the path
+     */
+    public String getPath()
+    {
+        return this.path;
+    }
+
+    /**
+     * @param path the path to set
+     */
+    public void setPath(String path)
+    {
+        this.path = path;
+    }
+
+    /**
+     * @return the fileKey
+     */
+    public String getFileKey()
+    {
+        return this.fileKey;
+    }
+
+    /**
+     * @param fileKey the fileKey to set
+     */
+    public void setFileKey(String fileKey)
+    {
+        this.fileKey = fileKey;
+    }
+
+    /**
+     * @return the offset
+     */
+    public long getOffset()
+    {
+        return this.offset;
+    }
+
+    /**
+     * @param offset the offset to set
+     */
+    public void setOffset(long offset)
+    {
+        this.offset = offset;
+    }
+
+    /**
+     * @return the fingerprintLength
+     */
+    public int getFingerprintLength()
+    {
+        return this.fingerprintLength;
+    }
+
+    /**
+     * @param fingerprintLength the fingerprintLength to set
+     */
+    public void setFingerprintLength(int fingerprintLength)
+    {
+        this.fingerprintLength = fingerprintLength;
+    }
+
+    /**
+     * @return the fingerprint
+     */
+    public long getFingerprint()
+    {
+        return this.fingerprint;
+    }
+
+    /**
+     * @param fingerprint the fingerprint to set
+     */
+    public void setFingerprint(long fingerprint)
+    {
+        this.fingerprint = fingerprint;
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public String toString()
+    {
+        String result = ToStringBuilder.reflectionToString(this, ToStringStyle.SHORT_PREFIX_STYLE);
+        return result;
+    }
+}
@@ -13,10 +13,14 @@
 package acromusashi.kafka.log.producer.util;
 
 import java.util.ArrayList;
-import java.util.HashMap;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Collections;
 import java.util.List;
 import java.util.Map;
 import java.util.Map.Entry;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
 import java.util.regex.Matcher;
 import java.util.regex.Pattern;
 
@@ -37,6 +41,21 @@ public class ApacheLogParseUtil
     /** StrfTimeのログフォーマットをキー、正規表現をvalueとしたマップ。 */
     private static final Map<String, String> REGEX_STRF_MAP;
 
+    /** Apacheのログフォーマットから個々のフォーマットを取り出すパターン */
+    private static final Pattern FORMAT_PARSE_PATTERN = Pattern.compile("((%U%q)|(%>s)|(%[a-zA-Z])|(%\\{.*?\\}[a-zA-Z]))");
+
+    /** strftime形式のフォーマット(%{???}t)を判定するパターン */
+    private static final Pattern STRF_TIME_PATTERN = Pattern.compile("%\\{.*\\}t");
+
+    /** %{???}tから???を取り出すパターン */
+    private static final Pattern STRF_PARSE_PATTERN = Pattern.compile("(%\\{)(.*)(\\}t)");
+
+    /** 正規表現中のキャプチャグループの開始(エスケープされていない「(」)を判定するパターン */
+    private static final Pattern CAPTURE_GROUP_PATTERN = Pattern.compile("(?<!\\\\)\\((?!\\?)");
+
+    /** パース方式とApacheのログフォーマットをキー、コンパイル済みフォーマットをvalueとしたキャッシュ */
+    private static final ConcurrentMap<String, CompiledLogFormat> COMPILED_FORMAT_CACHE = new ConcurrentHashMap<>();
+
     /**
      * インスタンス化を防止するためのコンストラクタ
      */
@@ -63,6 +82,7 @@ public class ApacheLogParseUtil
         REGEX_APACHE_MAP.put("%U%q", "(\\S+)");
         REGEX_APACHE_MAP.put("%m", "(\\S+)");
         REGEX_APACHE_MAP.put("%H", "(\\S+)");
+        REGEX_APACHE_MAP.put("%v", "(\\S+)");
 
         REGEX_STRF_MAP = Maps.newHashMap();
         REGEX_STRF_MAP.put("%a", "(\\S{3})");
@@ -113,36 +133,139 @@ public class ApacheLogParseUtil
      */
     public static ParsedLog getParsedLog(String log, String apacheLogFormat)
     {
-        List<String> eachApacheLogFormat = getEachApacheLogFormat(apacheLogFormat);
-        ParsedLog parsedLog = new ParsedLog(new HashMap<String, String>(), "");
-        String regex = convertLogFormat2Regex(eachApacheLogFormat, parsedLog);
+        return getCompiledLogFormat(apacheLogFormat).parse(log);
+    }
 
-        Pattern pattern = Pattern.compile(regex);
+    /**
+     * apacheのログフォーマットに対応するコンパイル済みフォーマットを取得する。<br>
+     * 一度コンパイルしたフォーマットはキャッシュし、以後は再利用する。
+     * 
+     * @param apacheLogFormat apacheのログフォーマット
+     * @return コンパイル済みフォーマット
+     */
+    public static CompiledLogFormat getCompiledLogFormat(String apacheLogFormat)
+    {
+        return getCompiledLogFormat(apacheLogFormat, LogParserType.REGEX);
+    }
 
-        //得た正規表現からmatcherを作成する。
-        Matcher matcher = pattern.matcher(log);
+    /**
+     * パース方式を指定して、apacheのログフォーマットに対応するコンパイル済みフォーマットを取得する。<br>
+     * 一度コンパイルしたフォーマットはキャッシュし、以後は再利用する。
+     * 
+     * @param apacheLogFormat apacheのログフォーマット
+     * @param parserType パース方式
+     * @return コンパイル済みフォーマット
+     */
+    public static CompiledLogFormat getCompiledLogFormat(String apacheLogFormat,
+            LogParserType parserType)
+    {
+        return getCompiledLogFormat(apacheLogFormat, parserType,
+                Collections.<String> emptyList());
+    }
 
-        List<String> eachLog = new ArrayList<String>();
-        //正規表現とマッチした場合、それぞれの正規表現にマッチした部分を取り出す。
-        if (matcher.find())
+    /**
+     * パース方式と出力するフィールドを指定して、apacheのログフォーマットに対応するコンパイル済みフォーマットを取得する。<br>
+     * 一度コンパイルしたフォーマットはキャッシュし、以後は再利用する。
+     * 
+     * @param apacheLogFormat apacheのログフォーマット
+     * @param parserType パース方式
+     * @param fields 出力するフィールドのJSONキー。空の場合は全フィールドを出力する
+     * @return コンパイル済みフォーマット
+     */
+    public static CompiledLogFormat getCompiledLogFormat(String apacheLogFormat,
+            LogParserType parserType, Collection<String> fields)
+    {
+        String cacheKey = parserType.getConfigName() + ":" + fields + ":" + apacheLogFormat;
+        CompiledLogFormat compiled = COMPILED_FORMAT_CACHE.get(cacheKey);
+        if (compiled == null)
+        {
+            compiled = CompiledLogFormat.compile(apacheLogFormat, parserType, fields);
+            CompiledLogFormat previous = COMPILED_FORMAT_CACHE.putIfAbsent(cacheKey, compiled);
+            if (previous != null)
+            {
+                compiled = previous;
+            }
+        }
+        return compiled;
+    }
+
+    /**
+     * パース方式と出力するフィールドを指定して、複数のapacheのログフォーマットに対応するコンパイル済みフォーマットを取得する。
+     * 
+     * @param apacheLogFormats apacheのログフォーマットのリスト
+     * @param parserType パース方式
+     * @param fields 出力するフィールドのJSONキー。空の場合は全フィールドを出力する
+     * @return コンパイル済みフォーマットのリスト(指定順)
+     */
+    public static List<CompiledLogFormat> getCompiledLogFormats(List<String> apacheLogFormats,
+            LogParserType parserType, Collection<String> fields)
+    {
+        List<CompiledLogFormat> compiledFormats = new ArrayList<CompiledLogFormat>();
+        for (String apacheLogFormat : apacheLogFormats)
+        {
+            compiledFormats.add(getCompiledLogFormat(apacheLogFormat, parserType, fields));
+        }
+        return compiledFormats;
+    }
+
+    /**
+     * 設定値からApacheのログフォーマットのリストを生成する。<br>
+     * 設定値は単一の文字列、またはリストで指定する。
+     * 
+     * @param formatConfig ログフォーマットの設定値
+     * @return ログフォーマットのリスト
+     */
+    public static List<String> getFormatList(Object formatConfig)
+    {
+        List<String> formats = new ArrayList<String>();
+        if (formatConfig instanceof Collection)
         {
-            int groupCount = matcher.groupCount();
-            for (int count = 1; count <= groupCount; count++)
+            for (Object format : (Collection<?>) formatConfig)
             {
-                eachLog.add(matcher.group(count));
+                formats.add(String.valueOf(format));
             }
         }
+        else
+        {
+            formats.add(String.valueOf(formatConfig));
+        }
+        return formats;
+    }
 
-        Map<String, String> returnMap = new HashMap<String, String>();
-        int logSize = eachLog.size();
-        for (int index = 0; index < logSize; index++)
+    /**
+     * 設定値から出力するフィールドのJSONキーのリストを生成する。<br>
+     * 設定値はリスト、またはカンマ区切りの文字列で指定する。未指定の場合は空のリスト(全フィールドを出力)を返す。
+     * 
+     * @param fieldsConfig 出力するフィールドの設定値
+     * @return 出力するフィールドのJSONキーのリスト
+     */
+    public static List<String> getFieldList(Object fieldsConfig)
+    {
+        List<String> fields = new ArrayList<String>();
+        if (fieldsConfig == null)
         {
-            returnMap.put(eachApacheLogFormat.get(index), eachLog.get(index));
+            return fields;
         }
 
-        parsedLog.setParsedLog(returnMap);
+        Collection<?> values;
+        if (fieldsConfig instanceof Collection)
+        {
+            values = (Collection<?>) fieldsConfig;
+        }
+        else
+        {
+            values = Arrays.asList(fieldsConfig.toString().split(","));
+        }
 
-        return parsedLog;
+        for (Object value : values)
+        {
+            String field = String.valueOf(value).trim();
+            if (field.length() > 0 && fields.contains(field) == false)
+            {
+                fields.add(field);
+            }
+        }
+        return fields;
     }
 
     /**
@@ -153,11 +276,8 @@ public class ApacheLogParseUtil
      */
     protected static List<String> getEachApacheLogFormat(String apacheLogFormat)
     {
-        String formatParseRegex = "((%U%q)|(%>s)|(%[a-zA-Z])|(%\\{.*?\\}[a-zA-Z]))";
-        Pattern formatParsePattern = Pattern.compile(formatParseRegex);
-
         //個々のフォーマットを取り出す。
-        Matcher matcher = formatParsePattern.matcher(apacheLogFormat);
+        Matcher matcher = FORMAT_PARSE_PATTERN.matcher(apacheLogFormat);
 
         List<String> eachApacheLogFormat = new ArrayList<String>();
         while (matcher.find())
@@ -176,23 +296,43 @@ public class ApacheLogParseUtil
      */
     protected static String convertLogFormat2Regex(List<String> eachApacheLogFormat,
             ParsedLog parsedLog)
+    {
+        return convertLogFormat2Regex(eachApacheLogFormat, null, parsedLog);
+    }
+
+    /**
+     * apacheのログフォーマットを正規表現に変換する。<br>
+     * 値を取り出さないフォーマットは、キャプチャしないグループに変換する。
+     * 
+     * @param eachApacheLogFormat コンフィグ
+     * @param captured 個々のフォーマットの値を取り出すか。nullの場合は全て取り出す
+     * @param parsedLog ParsedLogオブジェクト
+     * @return returnRegex 正規表現
+     */
+    protected static String convertLogFormat2Regex(List<String> eachApacheLogFormat,
+            boolean[] captured, ParsedLog parsedLog)
     {
         StringBuilder regexBuilder = new StringBuilder();
-        String strfTimeRegex = "%\\{.*\\}t";
-        Pattern strfTimePattern = Pattern.compile(strfTimeRegex);
         //個々のログフォーマットをkeyに対応する正規表現を取り出しつなげていく。
-        for (String format : eachApacheLogFormat)
+        for (int index = 0; index < eachApacheLogFormat.size(); index++)
         {
-            if (strfTimePattern.matcher(format).find())
+            String format = eachApacheLogFormat.get(index);
+            String regex;
+            if (STRF_TIME_PATTERN.matcher(format).find())
             {
                 //フォーマットがstrftimeの場合はconvertFormatTime2Regexを用いて正規表現化する。
-                regexBuilder.append(convertFormatTime2Regex(format, parsedLog) + " ");
+                regex = convertFormatTime2Regex(format, parsedLog);
             }
             else
             {
-                regexBuilder.append(REGEX_APACHE_MAP.get(format) + " ");
+                regex = REGEX_APACHE_MAP.get(format);
             }
 
+            if (captured != null && captured[index] == false && regex != null)
+            {
+                regex = CAPTURE_GROUP_PATTERN.matcher(regex).replaceAll("(?:");
+            }
+            regexBuilder.append(regex + " ");
         }
 
         String returnRegex = regexBuilder.toString();
@@ -219,9 +359,8 @@ public class ApacheLogParseUtil
 
         for (Entry<String, String> formatEntry : REGEX_STRF_MAP.entrySet())
         {
-            Pattern pattern = Pattern.compile(formatEntry.getKey());
-            Matcher match = pattern.matcher(strftime);
-            if (match.find())
+            // キーは正規表現の特殊文字を含まないため、文字列の包含判定で十分
+            if (strftime.contains(formatEntry.getKey()))
             {
                 String regex = formatEntry.getValue();
                 strftime = strftime.replace(formatEntry.getKey(), regex);
@@ -238,9 +377,7 @@ public class ApacheLogParseUtil
      */
     private static String getStrftimeFormat(String strfTime)
     {
-        String parseRegex = "(%\\{)(.*)(\\}t)";
-        Pattern strfPattern = Pattern.compile(parseRegex);
-        Matcher matcher = strfPattern.matcher(strfTime);
+        Matcher matcher = STRF_PARSE_PATTERN.matcher(strfTime);
         //フォーマットで定義されたものを、replaceで正規表現に変えていく。
         String strfTimeFormat = "";
 
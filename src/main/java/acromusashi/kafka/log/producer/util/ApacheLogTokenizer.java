@@ -0,0 +1,382 @@
+/**
+* Copyright (c) Acroquest Technology Co, Ltd. All Rights Reserved.
+* Please read the associated COPYRIGHTS file for more details.
+*
+* THE SOFTWARE IS PROVIDED BY Acroquest Technolog Co., Ltd.,
+* WITHOUT WARRANTY OF ANY KIND, EXPRESS OR IMPLIED, INCLUDING
+* BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+* FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT.
+* IN NO EVENT SHALL THE AUTHORS OR COPYRIGHT HOLDER BE LIABLE FOR ANY
+* CLAIM, DAMAGES SUFFERED BY LICENSEE AS A RESULT OF USING, MODIFYING
+* OR DISTRIBUTING THIS SOFTWARE OR ITS DERIVATIVES.
+*/
+package acromusashi.kafka.log.producer.util;
+
+import java.util.List;
+import java.util.Map;
+
+import com.google.common.collect.Maps;
+
+/**
+ * 正規表現を使用せずに、Apacheログの1行を先頭から1度だけ走査してフィールドに分割するトークナイザ<br>
+ * <br>
+ * 個々のフォーマットごとに以下の形式でフィールドを読み取る。フィールド間は空白1文字で区切られる。
+ * <ul>
+ * <li>空白区切りのトークン</li>
+ * <li>ダブルクォートで囲まれた値(バックスラッシュによるエスケープを考慮する)</li>
+ * <li>角括弧で囲まれた時刻</li>
+ * </ul>
+ * 各フィールドは{@link ApacheLogParseUtil}の正規表現と同じ条件で検証し、
+ * 条件を満たさない行は読み取り失敗として扱う。呼び出し側は失敗時に正規表現でのパースを行うこと。
+ *
+ * @author kimura
+ */
+public final class ApacheLogTokenizer
+{
+    /** 空白区切りのトークン(\S+) */
+    static final int                          FIELD_TOKEN    = 0;
+
+    /** IPアドレス([\d.]+) */
+    static final int                          FIELD_ADDRESS  = 1;
+
+    /** ステータスコード(\d{3}) */
+    static final int                          FIELD_STATUS   = 2;
+
+    /** 数値(\d+) */
+    static final int                          FIELD_NUMBER   = 3;
+
+    /** ダブルクォートで囲まれた値("(.*?)") */
+    static final int                          FIELD_QUOTED   = 4;
+
+    /** ダブルクォートで囲まれた空でない値("(.+?)") */
+    static final int                          FIELD_REQUEST  = 5;
+
+    /** 角括弧で囲まれた時刻(\[([\w:/]+\s[+\-]\d{4})\]) */
+    static final int                          FIELD_TIME     = 6;
+
+    /** Apacheのログフォーマットをキー、フィールド種別をvalueとしたマップ */
+    private static final Map<String, Integer> FIELD_KIND_MAP;
+
+    /** 個々のフォーマットに対応するフィールド種別 */
+    private final int[]                       fieldKinds;
+
+    /**
+     * クラス生成時にマッピング定義を生成する。
+     */
+    static
+    {
+        // ApacheLogParseUtilの正規表現定義と対応させること
+        FIELD_KIND_MAP = Maps.newHashMap();
+        FIELD_KIND_MAP.put("%h", FIELD_ADDRESS);
+        FIELD_KIND_MAP.put("%l", FIELD_TOKEN);
+        FIELD_KIND_MAP.put("%u", FIELD_TOKEN);
+        FIELD_KIND_MAP.put("%t", FIELD_TIME);
+        FIELD_KIND_MAP.put("%r", FIELD_REQUEST);
+        FIELD_KIND_MAP.put("%>s", FIELD_STATUS);
+        FIELD_KIND_MAP.put("%b", FIELD_TOKEN);
+        FIELD_KIND_MAP.put("%{Referer}i", FIELD_QUOTED);
+        FIELD_KIND_MAP.put("%{User-Agent}i", FIELD_QUOTED);
+        FIELD_KIND_MAP.put("%D", FIELD_NUMBER);
+        FIELD_KIND_MAP.put("%T", FIELD_NUMBER);
+        FIELD_KIND_MAP.put("%U%q", FIELD_TOKEN);
+        FIELD_KIND_MAP.put("%m", FIELD_TOKEN);
+        FIELD_KIND_MAP.put("%H", FIELD_TOKEN);
+        FIELD_KIND_MAP.put("%v", FIELD_TOKEN);
+    }
+
+    /**
+     * フィールド種別を指定してインスタンスを生成する。
+     *
+     * @param fieldKinds フィールド種別
+     */
+    private ApacheLogTokenizer(int[] fieldKinds)
+    {
+        this.fieldKinds = fieldKinds;
+    }
+
+    /**
+     * 個々のフォーマットからトークナイザを生成する。<br>
+     * トークナイザで扱えないフォーマット(strftime形式の時刻等)を含む場合はnullを返す。
+     *
+     * @param directives 個々のフォーマット
+     * @return トークナイザ。扱えないフォーマットを含む場合はnull
+     */
+    public static ApacheLogTokenizer create(List<String> directives)
+    {
+        if (directives.isEmpty())
+        {
+            return null;
+        }
+
+        int[] fieldKinds = new int[directives.size()];
+        for (int index = 0; index < fieldKinds.length; index++)
+        {
+            Integer kind = FIELD_KIND_MAP.get(directives.get(index));
+            if (kind == null)
+            {
+                return null;
+            }
+            fieldKinds[index] = kind;
+        }
+
+        return new ApacheLogTokenizer(fieldKinds);
+    }
+
+    /**
+     * 個々のフォーマットに対応するフィールド種別を取得する。
+     *
+     * @param directive 個々のフォーマット
+     * @return フィールド種別。トークナイザで扱えないフォーマットの場合はnull
+     */
+    static Integer getFieldKind(String directive)
+    {
+        return FIELD_KIND_MAP.get(directive);
+    }
+
+    /**
+     * フィールド数を取得する。
+     *
+     * @return フィールド数
+     */
+    public int getFieldCount()
+    {
+        return this.fieldKinds.length;
+    }
+
+    /**
+     * ログの1行をフィールドに分割する。<br>
+     * i番目のフィールドの開始位置をbounds[2 * i]に、終了位置(排他)をbounds[2 * i + 1]に格納する。
+     *
+     * @param line ログの1行
+     * @param bounds フィールド境界の格納先(フィールド数 * 2 以上の長さ)
+     * @return 分割に成功した場合true、正規表現でのパースが必要な場合false
+     */
+    public boolean tokenize(CharSequence line, int[] bounds)
+    {
+        int length = line.length();
+        int pos = 0;
+
+        for (int index = 0; index < this.fieldKinds.length; index++)
+        {
+            if (index > 0)
+            {
+                // フィールド間の区切りは空白1文字
+                if (pos >= length || line.charAt(pos) != ' ')
+                {
+                    return false;
+                }
+                pos++;
+            }
+
+            int start;
+            int end;
+
+            switch (this.fieldKinds[index])
+            {
+                case FIELD_QUOTED:
+                case FIELD_REQUEST:
+                    if (pos >= length || line.charAt(pos) != '"')
+                    {
+                        return false;
+                    }
+                    start = pos + 1;
+                    end = findClosingQuote(line, start, length);
+                    if (end < 0)
+                    {
+                        return false;
+                    }
+                    if (this.fieldKinds[index] == FIELD_REQUEST && end == start)
+                    {
+                        return false;
+                    }
+                    pos = end + 1;
+                    break;
+                case FIELD_TIME:
+                    if (pos >= length || line.charAt(pos) != '[')
+                    {
+                        return false;
+                    }
+                    start = pos + 1;
+                    end = start;
+                    while (end < length && line.charAt(end) != ']')
+                    {
+                        end++;
+                    }
+                    if (end >= length || isValidTime(line, start, end) == false)
+                    {
+                        return false;
+                    }
+                    pos = end + 1;
+                    break;
+                default:
+                    start = pos;
+                    end = pos;
+                    while (end < length && isWhitespace(line.charAt(end)) == false)
+                    {
+                        end++;
+                    }
+                    if (end == start || isValidToken(this.fieldKinds[index], line, start, end) == false)
+                    {
+                        return false;
+                    }
+                    pos = end;
+                    break;
+            }
+
+            bounds[2 * index] = start;
+            bounds[2 * index + 1] = end;
+        }
+
+        return true;
+    }
+
+    /**
+     * エスケープされていない閉じクォートの位置を探す。
+     *
+     * @param line ログの1行
+     * @param from 探索開始位置
+     * @param length 行の長さ
+     * @return 閉じクォートの位置。見つからない場合は-1
+     */
+    private static int findClosingQuote(CharSequence line, int from, int length)
+    {
+        int pos = from;
+        while (pos < length)
+        {
+            char c = line.charAt(pos);
+            if (c == '\\')
+            {
+                // エスケープされた文字は読み飛ばす
+                pos += 2;
+            }
+            else if (c == '"')
+            {
+                return pos;
+            }
+            else
+            {
+                pos++;
+            }
+        }
+        return -1;
+    }
+
+    /**
+     * 空白区切りのトークンがフィールド種別の条件を満たすかを判定する。
+     *
+     * @param kind フィールド種別
+     * @param line ログの1行
+     * @param start 開始位置
+     * @param end 終了位置(排他)
+     * @return 条件を満たす場合true
+     */
+    private static boolean isValidToken(int kind, CharSequence line, int start, int end)
+    {
+        switch (kind)
+        {
+            case FIELD_ADDRESS:
+                for (int pos = start; pos < end; pos++)
+                {
+                    char c = line.charAt(pos);
+                    if (c != '.' && isDigit(c) == false)
+                    {
+                        return false;
+                    }
+                }
+                return true;
+            case FIELD_STATUS:
+                return end - start == 3 && isDigits(line, start, end);
+            case FIELD_NUMBER:
+                return isDigits(line, start, end);
+            default:
+                return true;
+        }
+    }
+
+    /**
+     * 角括弧内の時刻が「[\w:/]+\s[+\-]\d{4}」の形式であるかを判定する。
+     *
+     * @param line ログの1行
+     * @param start 開始位置
+     * @param end 終了位置(排他)
+     * @return 条件を満たす場合true
+     */
+    private static boolean isValidTime(CharSequence line, int start, int end)
+    {
+        int zoneStart = end - 5;
+        if (zoneStart - 1 <= start)
+        {
+            return false;
+        }
+
+        char sign = line.charAt(zoneStart);
+        if ((sign != '+' && sign != '-') || isDigits(line, zoneStart + 1, end) == false
+                || isWhitespace(line.charAt(zoneStart - 1)) == false)
+        {
+            return false;
+        }
+
+        for (int pos = start; pos < zoneStart - 1; pos++)
+        {
+            char c = line.charAt(pos);
+            if (c != ':' && c != '/' && isWordChar(c) == false)
+            {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    /**
+     * 指定範囲がすべて数字であるかを判定する。
+     *
+     * @param line ログの1行
+     * @param start 開始位置
+     * @param end 終了位置(排他)
+     * @return すべて数字の場合true
+     */
+    private static boolean isDigits(CharSequence line, int start, int end)
+    {
+        for (int pos = start; pos < end; pos++)
+        {
+            if (isDigit(line.charAt(pos)) == false)
+            {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    /**
+     * 正規表現の\dに相当する文字であるかを判定する。
+     *
+     * @param c 文字
+     * @return 数字の場合true
+     */
+    static boolean isDigit(int c)
+    {
+        return c >= '0' && c <= '9';
+    }
+
+    /**
+     * 正規表現の\wに相当する文字であるかを判定する。
+     *
+     * @param c 文字
+     * @return 英数字またはアンダースコアの場合true
+     */
+    static boolean isWordChar(int c)
+    {
+        return isDigit(c) || (c >= 'a' && c <= 'z') || (c >= 'A' && c <= 'Z') || c == '_';
+    }
+
+    /**
+     * 正規表現の\sに相当する文字であるかを判定する。
+     *
+     * @param c 文字
+     * @return 空白文字の場合true
+     */
+    static boolean isWhitespace(int c)
+    {
+        return c == ' ' || c == '\t' || c == '\n' || c == 0x0B || c == '\f' || c == '\r';
+    }
+}
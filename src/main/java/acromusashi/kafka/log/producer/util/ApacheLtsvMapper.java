@@ -22,6 +22,9 @@ import java.util.Map;
  */
 public class ApacheLtsvMapper
 {
+    /** 時刻のキー */
+    public static final String               TIME_KEY = "time";
+
     /** Apacheのログフォーマットをキー、名前をvalueとしたマップ。 */
     private static final Map<String, String> NAME_MAP;
 
@@ -51,6 +54,7 @@ public class ApacheLtsvMapper
         NAME_MAP.put("%U%q", "uri");
         NAME_MAP.put("%m", "method");
         NAME_MAP.put("%H", "protocol");
+        NAME_MAP.put("%v", "vhost");
     }
 
     /**
@@ -63,4 +67,21 @@ public class ApacheLtsvMapper
     {
         return NAME_MAP.get(apacheFomat);
     }
+
+    /**
+     * ApacheLogFormat中の文字列をJSONのキーに変換する。<br>
+     * 対応するキーがないもの(strftime形式の時刻)と時刻は、共通の時刻のキー(time)とする。
+     * 
+     * @param apacheFomat ApacheLogFormat中の文字列
+     * @return JSONのキー
+     */
+    public static String convertApacheFormatToJsonKey(String apacheFomat)
+    {
+        String jsonKey = NAME_MAP.get(apacheFomat);
+        if (jsonKey == null || jsonKey.equals(""))
+        {
+            return TIME_KEY;
+        }
+        return jsonKey;
+    }
 }
@@ -0,0 +1,418 @@
+/**
+* Copyright (c) Acroquest Technology Co, Ltd. All Rights Reserved.
+* Please read the associated COPYRIGHTS file for more details.
+*
+* THE SOFTWARE IS PROVIDED BY Acroquest Technolog Co., Ltd.,
+* WITHOUT WARRANTY OF ANY KIND, EXPRESS OR IMPLIED, INCLUDING
+* BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+* FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT.
+* IN NO EVENT SHALL THE AUTHORS OR COPYRIGHT HOLDER BE LIABLE FOR ANY
+* CLAIM, DAMAGES SUFFERED BY LICENSEE AS A RESULT OF USING, MODIFYING
+* OR DISTRIBUTING THIS SOFTWARE OR ITS DERIVATIVES.
+*/
+package acromusashi.kafka.log.producer.util;
+
+import java.util.Map;
+import java.util.TimeZone;
+
+import com.google.common.collect.Maps;
+
+/**
+ * Apacheの標準の時刻形式(dd/MMM/yyyy:HH:mm:ss Z)の読み取りと、ISO-8601形式での書き出しを行うユーティリティクラス<br>
+ * <br>
+ * 固定位置の数字と月の略称を直接読み取り、月初日の通算日数のテーブルからエポックミリ秒を求める。
+ * Calendar、Date、例外を使用しないため、DateFormatを用いた変換よりも高速に動作する。<br>
+ * 形式に一致しない値、DateFormatの寛容な解釈(月の日数を超える日付等)が必要な値、1600年より前の値は読み取り失敗とする。
+ * 呼び出し側は失敗時にDateFormatを用いた変換を行うこと。
+ *
+ * @author kimura
+ */
+public final class ApacheTimestampCodec
+{
+    /** 本クラスで読み取り可能な入力時刻フォーマット(DateFormat形式) */
+    public static final String              APACHE_PATTERN  = "dd/MMM/yyyy:HH:mm:ss Z";
+
+    /** 読み取り失敗を示す値 */
+    public static final long                INVALID         = Long.MIN_VALUE;
+
+    /** 書き出し形式：ミリ秒を出力する */
+    private static final int                LAYOUT_MILLIS   = 1;
+
+    /** 書き出し形式：タイムゾーンを「+09:00」形式で出力する */
+    private static final int                LAYOUT_XXX_ZONE = 2;
+
+    /** 月初日の通算日数をテーブルで保持する最初の年 */
+    private static final int                TABLE_FIRST_YEAR = 1970;
+
+    /** 月初日の通算日数をテーブルで保持する最後の年 */
+    private static final int                TABLE_LAST_YEAR = 2099;
+
+    /** 扱う最小の年(これより前はDateFormatがユリウス暦で扱うため対象外とする) */
+    private static final int                MIN_YEAR        = 1600;
+
+    /** 扱う最大の年(4桁で表せる年) */
+    private static final int                MAX_YEAR        = 9999;
+
+    /** 1日のミリ秒数 */
+    private static final long               MILLIS_PER_DAY  = 86400000L;
+
+    /** 入力時刻の長さ */
+    private static final int                APACHE_LENGTH   = 26;
+
+    /** Key:出力時刻フォーマット、Value:書き出し形式 格納Map */
+    private static final Map<String, Integer> ISO_LAYOUT_MAP;
+
+    /** 1970年1月1日からの、各年各月の月初日までの日数 */
+    private static final int[]              MONTH_DAY_BASE;
+
+    /** 各月の日数(平年) */
+    private static final int[]              DAYS_IN_MONTH   = {31, 28, 31, 30, 31, 30, 31, 31, 30, 31, 30, 31};
+
+    /**
+     * インスタンス化を防止するためのコンストラクタ
+     */
+    private ApacheTimestampCodec()
+    {}
+
+    /**
+     * クラス生成時にマッピング定義と日数のテーブルを生成する。
+     */
+    static
+    {
+        ISO_LAYOUT_MAP = Maps.newHashMap();
+        ISO_LAYOUT_MAP.put("yyyy-MM-dd'T'HH:mm:ss.SSSZ", LAYOUT_MILLIS);
+        ISO_LAYOUT_MAP.put("yyyy-MM-dd'T'HH:mm:ssZ", 0);
+        ISO_LAYOUT_MAP.put("yyyy-MM-dd'T'HH:mm:ss.SSSXXX", LAYOUT_MILLIS | LAYOUT_XXX_ZONE);
+        ISO_LAYOUT_MAP.put("yyyy-MM-dd'T'HH:mm:ssXXX", LAYOUT_XXX_ZONE);
+
+        int years = TABLE_LAST_YEAR - TABLE_FIRST_YEAR + 1;
+        MONTH_DAY_BASE = new int[years * 12];
+        for (int year = TABLE_FIRST_YEAR; year <= TABLE_LAST_YEAR; year++)
+        {
+            for (int month = 1; month <= 12; month++)
+            {
+                MONTH_DAY_BASE[(year - TABLE_FIRST_YEAR) * 12 + month - 1] = (int) daysFromCivil(
+                        year, month, 1);
+            }
+        }
+    }
+
+    /**
+     * 出力時刻フォーマットに対応する書き出し形式を取得する。
+     *
+     * @param outputPattern 出力時刻フォーマット(DateFormat形式)
+     * @return 書き出し形式。本クラスで書き出せないフォーマットの場合は-1
+     */
+    public static int getIsoLayout(String outputPattern)
+    {
+        Integer layout = ISO_LAYOUT_MAP.get(outputPattern);
+        if (layout == null)
+        {
+            return -1;
+        }
+        return layout;
+    }
+
+    /**
+     * Apacheの標準の時刻形式の文字列をエポックミリ秒に変換する。
+     *
+     * @param source 時刻を含む文字列
+     * @param start 開始位置
+     * @param end 終了位置(排他)
+     * @return エポックミリ秒。読み取れない場合は{@link #INVALID}
+     */
+    public static long parseApacheTime(CharSequence source, int start, int end)
+    {
+        if (end - start != APACHE_LENGTH || source.charAt(start + 2) != '/'
+                || source.charAt(start + 6) != '/' || source.charAt(start + 11) != ':'
+                || source.charAt(start + 14) != ':' || source.charAt(start + 17) != ':'
+                || source.charAt(start + 20) != ' ')
+        {
+            return INVALID;
+        }
+
+        int day = readDigits(source, start, 2);
+        int month = readMonth(source, start + 3);
+        int year = readDigits(source, start + 7, 4);
+        int hour = readDigits(source, start + 12, 2);
+        int minute = readDigits(source, start + 15, 2);
+        int second = readDigits(source, start + 18, 2);
+        int zoneHour = readDigits(source, start + 22, 2);
+        int zoneMinute = readDigits(source, start + 24, 2);
+        char sign = source.charAt(start + 21);
+
+        if ((day | month | year | hour | minute | second | zoneHour | zoneMinute) < 0
+                || (sign != '+' && sign != '-') || day == 0 || day > daysInMonth(year, month)
+                || hour > 23 || minute > 59 || second > 59 || zoneMinute > 59
+                || year < MIN_YEAR)
+        {
+            return INVALID;
+        }
+
+        long days = getMonthDayBase(year, month) + day - 1;
+        long zoneSeconds = zoneHour * 3600L + zoneMinute * 60L;
+        if (sign == '-')
+        {
+            zoneSeconds = -zoneSeconds;
+        }
+
+        return (days * 86400L + hour * 3600L + minute * 60L + second - zoneSeconds) * 1000L;
+    }
+
+    /**
+     * エポックミリ秒をISO-8601形式でバッファに追加する。
+     *
+     * @param builder 追加先バッファ
+     * @param epochMillis エポックミリ秒
+     * @param timeZone 出力時のタイムゾーン
+     * @param layout 書き出し形式({@link #getIsoLayout(String)}で取得したもの)
+     * @return 追加した場合true、4桁の年で表せない等、書き出せない場合false
+     */
+    public static boolean appendIso(StringBuilder builder, long epochMillis, TimeZone timeZone,
+            int layout)
+    {
+        int offsetMillis = timeZone.getOffset(epochMillis);
+        long localMillis = epochMillis + offsetMillis;
+        if (offsetMillis % 60000 != 0)
+        {
+            // 秒単位のオフセット(地方平均時)はDateFormatの出力に合わせられないため扱わない
+            return false;
+        }
+
+        long days = localMillis / MILLIS_PER_DAY;
+        if (localMillis < 0 && days * MILLIS_PER_DAY != localMillis)
+        {
+            days--;
+        }
+        int millisOfDay = (int) (localMillis - days * MILLIS_PER_DAY);
+
+        // 通算日数から年月日を求める
+        long shifted = days + 719468;
+        long era = (shifted >= 0 ? shifted : shifted - 146096) / 146097;
+        int dayOfEra = (int) (shifted - era * 146097);
+        int yearOfEra = (dayOfEra - dayOfEra / 1460 + dayOfEra / 36524 - dayOfEra / 146096) / 365;
+        int dayOfYear = dayOfEra - (365 * yearOfEra + yearOfEra / 4 - yearOfEra / 100);
+        int monthIndex = (5 * dayOfYear + 2) / 153;
+        int day = dayOfYear - (153 * monthIndex + 2) / 5 + 1;
+        int month = monthIndex < 10 ? monthIndex + 3 : monthIndex - 9;
+        long year = yearOfEra + era * 400 + (month <= 2 ? 1 : 0);
+
+        if (year < MIN_YEAR || year > MAX_YEAR)
+        {
+            return false;
+        }
+
+        appendPadded(builder, (int) year, 4);
+        builder.append('-');
+        appendPadded(builder, month, 2);
+        builder.append('-');
+        appendPadded(builder, day, 2);
+        builder.append('T');
+        appendPadded(builder, millisOfDay / 3600000, 2);
+        builder.append(':');
+        appendPadded(builder, millisOfDay / 60000 % 60, 2);
+        builder.append(':');
+        appendPadded(builder, millisOfDay / 1000 % 60, 2);
+        if ((layout & LAYOUT_MILLIS) != 0)
+        {
+            builder.append('.');
+            appendPadded(builder, millisOfDay % 1000, 3);
+        }
+
+        appendZone(builder, offsetMillis, (layout & LAYOUT_XXX_ZONE) != 0);
+        return true;
+    }
+
+    /**
+     * タイムゾーンのオフセットをバッファに追加する。
+     *
+     * @param builder 追加先バッファ
+     * @param offsetMillis オフセット(ミリ秒)
+     * @param xxxZone 「+09:00」形式(UTCは「Z」)で出力する場合true、「+0900」形式で出力する場合false
+     */
+    private static void appendZone(StringBuilder builder, int offsetMillis, boolean xxxZone)
+    {
+        if (xxxZone && offsetMillis == 0)
+        {
+            builder.append('Z');
+            return;
+        }
+
+        int offsetMinutes = offsetMillis / 60000;
+        if (offsetMinutes < 0)
+        {
+            builder.append('-');
+            offsetMinutes = -offsetMinutes;
+        }
+        else
+        {
+            builder.append('+');
+        }
+
+        appendPadded(builder, offsetMinutes / 60, 2);
+        if (xxxZone)
+        {
+            builder.append(':');
+        }
+        appendPadded(builder, offsetMinutes % 60, 2);
+    }
+
+    /**
+     * 数値を指定桁数になるよう0埋めしてバッファに追加する。
+     *
+     * @param builder 追加先バッファ
+     * @param value 数値(0以上)
+     * @param width 桁数
+     */
+    private static void appendPadded(StringBuilder builder, int value, int width)
+    {
+        int divisor = 1;
+        for (int digit = 1; digit < width; digit++)
+        {
+            divisor *= 10;
+        }
+
+        int remain = value;
+        for (; divisor > 0; divisor /= 10)
+        {
+            builder.append((char) ('0' + remain / divisor % 10));
+        }
+    }
+
+    /**
+     * 指定位置から指定桁数の数字を読み取る。
+     *
+     * @param source 文字列
+     * @param start 開始位置
+     * @param width 桁数
+     * @return 数値。数字以外を含む場合は-1
+     */
+    private static int readDigits(CharSequence source, int start, int width)
+    {
+        int value = 0;
+        for (int pos = start; pos < start + width; pos++)
+        {
+            char c = source.charAt(pos);
+            if (c < '0' || c > '9')
+            {
+                return -1;
+            }
+            value = value * 10 + (c - '0');
+        }
+        return value;
+    }
+
+    /**
+     * 指定位置から月の略称(英語)を読み取る。
+     *
+     * @param source 文字列
+     * @param start 開始位置
+     * @return 月(1～12)。月の略称でない場合は-1
+     */
+    private static int readMonth(CharSequence source, int start)
+    {
+        char first = source.charAt(start);
+        char second = source.charAt(start + 1);
+        char third = source.charAt(start + 2);
+
+        switch (first)
+        {
+            case 'J':
+                if (second == 'a' && third == 'n')
+                {
+                    return 1;
+                }
+                if (second == 'u' && third == 'n')
+                {
+                    return 6;
+                }
+                if (second == 'u' && third == 'l')
+                {
+                    return 7;
+                }
+                return -1;
+            case 'F':
+                return (second == 'e' && third == 'b') ? 2 : -1;
+            case 'M':
+                if (second == 'a' && third == 'r')
+                {
+                    return 3;
+                }
+                if (second == 'a' && third == 'y')
+                {
+                    return 5;
+                }
+                return -1;
+            case 'A':
+                if (second == 'p' && third == 'r')
+                {
+                    return 4;
+                }
+                if (second == 'u' && third == 'g')
+                {
+                    return 8;
+                }
+                return -1;
+            case 'S':
+                return (second == 'e' && third == 'p') ? 9 : -1;
+            case 'O':
+                return (second == 'c' && third == 't') ? 10 : -1;
+            case 'N':
+                return (second == 'o' && third == 'v') ? 11 : -1;
+            case 'D':
+                return (second == 'e' && third == 'c') ? 12 : -1;
+            default:
+                return -1;
+        }
+    }
+
+    /**
+     * 月の日数を取得する。
+     *
+     * @param year 年
+     * @param month 月(1～12)
+     * @return 日数
+     */
+    private static int daysInMonth(int year, int month)
+    {
+        if (month == 2 && (year % 4 == 0 && (year % 100 != 0 || year % 400 == 0)))
+        {
+            return 29;
+        }
+        return DAYS_IN_MONTH[month - 1];
+    }
+
+    /**
+     * 1970年1月1日から月初日までの日数を取得する。テーブルの範囲外の年は計算で求める。
+     *
+     * @param year 年
+     * @param month 月(1～12)
+     * @return 日数
+     */
+    private static long getMonthDayBase(int year, int month)
+    {
+        if (year >= TABLE_FIRST_YEAR && year <= TABLE_LAST_YEAR)
+        {
+            return MONTH_DAY_BASE[(year - TABLE_FIRST_YEAR) * 12 + month - 1];
+        }
+        return daysFromCivil(year, month, 1);
+    }
+
+    /**
+     * 年月日から1970年1月1日からの日数を求める(先発グレゴリオ暦)。
+     *
+     * @param year 年
+     * @param month 月(1～12)
+     * @param day 日
+     * @return 日数
+     */
+    private static long daysFromCivil(int year, int month, int day)
+    {
+        long shiftedYear = month <= 2 ? year - 1 : year;
+        long era = (shiftedYear >= 0 ? shiftedYear : shiftedYear - 399) / 400;
+        long yearOfEra = shiftedYear - era * 400;
+        long dayOfYear = (153 * (month + (month > 2 ? -3 : 9)) + 2) / 5 + day - 1;
+        long dayOfEra = yearOfEra * 365 + yearOfEra / 4 - yearOfEra / 100 + dayOfYear;
+        return era * 146097 + dayOfEra - 719468;
+    }
+}
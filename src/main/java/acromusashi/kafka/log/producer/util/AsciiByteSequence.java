@@ -0,0 +1,160 @@
+/**
+* Copyright (c) Acroquest Technology Co, Ltd. All Rights Reserved.
+* Please read the associated COPYRIGHTS file for more details.
+*
+* THE SOFTWARE IS PROVIDED BY Acroquest Technolog Co., Ltd.,
+* WITHOUT WARRANTY OF ANY KIND, EXPRESS OR IMPLIED, INCLUDING
+* BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+* FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT.
+* IN NO EVENT SHALL THE AUTHORS OR COPYRIGHT HOLDER BE LIABLE FOR ANY
+* CLAIM, DAMAGES SUFFERED BY LICENSEE AS A RESULT OF USING, MODIFYING
+* OR DISTRIBUTING THIS SOFTWARE OR ITS DERIVATIVES.
+*/
+package acromusashi.kafka.log.producer.util;
+
+import java.nio.charset.Charset;
+
+/**
+ * byte配列の一部を、デコードせずに1byte=1文字として参照するCharSequence<br>
+ * ASCII互換の文字コード(UTF-8等)では区切り文字となるASCII文字がマルチバイト文字の一部に現れないため、
+ * 本クラス上で求めたフィールドの境界はそのままbyte配列上の境界として使用できる。<br>
+ * 文字列が必要な場合は{@link #decode(int, int)}で必要な範囲のみをデコードする。<br>
+ * {@link #wrap(byte[], int, int, Charset)}で参照範囲を差し替えることで、1行ごとに生成せず再利用できる。
+ *
+ * @author kimura
+ */
+public final class AsciiByteSequence implements CharSequence
+{
+    /** 参照するbyte配列 */
+    private byte[]  buffer;
+
+    /** 開始位置 */
+    private int     offset;
+
+    /** 長さ */
+    private int     length;
+
+    /** デコード時に使用する文字コード */
+    private Charset charset;
+
+    /**
+     * 参照範囲を持たないインスタンスを生成する。{@link #wrap(byte[], int, int, Charset)}で参照範囲を設定して使用する。
+     */
+    public AsciiByteSequence()
+    {
+        this(new byte[0], 0, 0, Charset.forName("UTF-8"));
+    }
+
+    /**
+     * 参照範囲と文字コードを指定してインスタンスを生成する。
+     *
+     * @param buffer 参照するbyte配列
+     * @param offset 開始位置
+     * @param length 長さ
+     * @param charset デコード時に使用する文字コード
+     */
+    public AsciiByteSequence(byte[] buffer, int offset, int length, Charset charset)
+    {
+        this.buffer = buffer;
+        this.offset = offset;
+        this.length = length;
+        this.charset = charset;
+    }
+
+    /**
+     * 参照範囲と文字コードを差し替える。
+     *
+     * @param buffer 参照するbyte配列
+     * @param offset 開始位置
+     * @param length 長さ
+     * @param charset デコード時に使用する文字コード
+     * @return 本インスタンス
+     */
+    public AsciiByteSequence wrap(byte[] buffer, int offset, int length, Charset charset)
+    {
+        this.buffer = buffer;
+        this.offset = offset;
+        this.length = length;
+        this.charset = charset;
+        return this;
+    }
+
+    /**
+     * 指定範囲にASCII以外のbyteが含まれるかを判定する。
+     *
+     * @param start 開始位置
+     * @param end 終了位置(排他)
+     * @return ASCII以外のbyteが含まれる場合true
+     */
+    public boolean containsNonAscii(int start, int end)
+    {
+        for (int index = this.offset + start; index < this.offset + end; index++)
+        {
+            if (this.buffer[index] < 0)
+            {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    /**
+     * byte列上で直接区切り文字を探索してよい文字コードであるかを判定する。
+     *
+     * @param charset 文字コード
+     * @return ASCII文字がマルチバイト文字の一部に現れない文字コードの場合true
+     */
+    public static boolean isAsciiCompatible(Charset charset)
+    {
+        String name = charset.name();
+        return "UTF-8".equals(name) || "US-ASCII".equals(name) || "ISO-8859-1".equals(name);
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public int length()
+    {
+        return this.length;
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public char charAt(int index)
+    {
+        return (char) (this.buffer[this.offset + index] & 0xFF);
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public CharSequence subSequence(int start, int end)
+    {
+        return new AsciiByteSequence(this.buffer, this.offset + start, end - start, this.charset);
+    }
+
+    /**
+     * 指定範囲をデコードして文字列を生成する。
+     *
+     * @param start 開始位置
+     * @param end 終了位置(排他)
+     * @return デコードした文字列
+     */
+    public String decode(int start, int end)
+    {
+        return new String(this.buffer, this.offset + start, end - start, this.charset);
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public String toString()
+    {
+        return decode(0, this.length);
+    }
+}
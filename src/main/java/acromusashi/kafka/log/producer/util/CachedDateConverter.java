@@ -0,0 +1,243 @@
+/**
+* Copyright (c) Acroquest Technology Co, Ltd. All Rights Reserved.
+* Please read the associated COPYRIGHTS file for more details.
+*
+* THE SOFTWARE IS PROVIDED BY Acroquest Technolog Co., Ltd.,
+* WITHOUT WARRANTY OF ANY KIND, EXPRESS OR IMPLIED, INCLUDING
+* BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+* FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT.
+* IN NO EVENT SHALL THE AUTHORS OR COPYRIGHT HOLDER BE LIABLE FOR ANY
+* CLAIM, DAMAGES SUFFERED BY LICENSEE AS A RESULT OF USING, MODIFYING
+* OR DISTRIBUTING THIS SOFTWARE OR ITS DERIVATIVES.
+*/
+package acromusashi.kafka.log.producer.util;
+
+import java.text.DateFormat;
+import java.text.ParseException;
+import java.text.SimpleDateFormat;
+import java.util.Date;
+import java.util.Locale;
+import java.util.TimeZone;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+
+/**
+ * 入力時刻フォーマットと出力時刻フォーマットの組に対する時刻変換を行い、変換結果をキャッシュするクラス<br>
+ * Apacheログの時刻は秒単位のため、同じ時刻文字列が連続して出現する。
+ * 一度変換した時刻文字列は変換結果を保持し、2回目以降はキャッシュの参照のみで変換結果を返す。<br>
+ * DateFormatはスレッドセーフでないため、スレッドごとに生成したものを再利用する。<br>
+ * 入力時刻フォーマットがApacheの標準形式の場合は、DateFormatを用いずに{@link ApacheTimestampCodec}で読み取り、
+ * 出力時刻フォーマットがISO-8601形式の場合は同様に直接書き出す。読み取れない値はDateFormatを用いて変換する。
+ *
+ * @author kimura
+ */
+public final class CachedDateConverter
+{
+    /** キャッシュする時刻文字列の最大数 */
+    private static final int                      MAX_CACHED_TIMES = 1024;
+
+    /** 入力時刻フォーマット(DateFormat形式) */
+    private final String                          inputPattern;
+
+    /** 出力時刻フォーマット(DateFormat形式) */
+    private final String                          outputPattern;
+
+    /** Key:入力時刻文字列、Value:変換後の時刻文字列 格納Map */
+    private final ConcurrentMap<String, String>   convertedCache   = new ConcurrentHashMap<>();
+
+    /** Key:入力時刻文字列、Value:エポックミリ秒 格納Map */
+    private final ConcurrentMap<String, Long>     epochCache       = new ConcurrentHashMap<>();
+
+    /** 入力時刻を{@link ApacheTimestampCodec}で読み取るか */
+    private final boolean                         fastInput;
+
+    /** ISO-8601形式の書き出し形式。DateFormatで書き出す場合は-1 */
+    private final int                             isoLayout;
+
+    /** 出力時のタイムゾーン */
+    private final TimeZone                        outputZone;
+
+    /** スレッドごとの入力用DateFormat */
+    private final ThreadLocal<DateFormat>         inputFormat;
+
+    /** スレッドごとの出力用DateFormat */
+    private final ThreadLocal<DateFormat>         outputFormat;
+
+    /**
+     * 入力時刻フォーマットと出力時刻フォーマットを指定してインスタンスを生成する。
+     *
+     * @param inputPattern 入力時刻フォーマット(DateFormat形式)
+     * @param outputPattern 出力時刻フォーマット(DateFormat形式)
+     */
+    public CachedDateConverter(final String inputPattern, final String outputPattern)
+    {
+        this.inputPattern = inputPattern;
+        this.outputPattern = outputPattern;
+
+        // 不正なフォーマットは生成時に検出する
+        new SimpleDateFormat(inputPattern, Locale.ENGLISH);
+        new SimpleDateFormat(outputPattern);
+
+        this.fastInput = ApacheTimestampCodec.APACHE_PATTERN.equals(inputPattern);
+        this.isoLayout = ApacheTimestampCodec.getIsoLayout(outputPattern);
+        // SimpleDateFormatと同様に、生成時のデフォルトのタイムゾーンで出力する
+        this.outputZone = TimeZone.getDefault();
+
+        this.inputFormat = new ThreadLocal<DateFormat>() {
+            @Override
+            protected DateFormat initialValue()
+            {
+                return new SimpleDateFormat(inputPattern, Locale.ENGLISH);
+            }
+        };
+        this.outputFormat = new ThreadLocal<DateFormat>() {
+            @Override
+            protected DateFormat initialValue()
+            {
+                return new SimpleDateFormat(outputPattern);
+            }
+        };
+    }
+
+    /**
+     * 入力時刻フォーマット形式の時刻文字列を、出力時刻フォーマット形式に変換する。
+     *
+     * @param timeStr 入力時刻フォーマット形式の時刻文字列
+     * @return 出力時刻フォーマット形式の時刻文字列
+     * @throws ParseException パース失敗時
+     */
+    public String convert(String timeStr) throws ParseException
+    {
+        String converted = this.convertedCache.get(timeStr);
+        if (converted != null)
+        {
+            return converted;
+        }
+
+        long parsed = ApacheTimestampCodec.INVALID;
+        if (this.fastInput)
+        {
+            parsed = ApacheTimestampCodec.parseApacheTime(timeStr, 0, timeStr.length());
+        }
+
+        StringBuilder builder = new StringBuilder(32);
+        if (parsed != ApacheTimestampCodec.INVALID && this.isoLayout >= 0
+                && ApacheTimestampCodec.appendIso(builder, parsed, this.outputZone, this.isoLayout))
+        {
+            converted = builder.toString();
+        }
+        else
+        {
+            Date logDate;
+            if (parsed != ApacheTimestampCodec.INVALID)
+            {
+                logDate = new Date(parsed);
+            }
+            else
+            {
+                logDate = this.inputFormat.get().parse(timeStr);
+            }
+            converted = this.outputFormat.get().format(logDate);
+        }
+
+        // 古い時刻は再出現しないため、上限に達した場合はまとめて破棄する
+        if (this.convertedCache.size() >= MAX_CACHED_TIMES)
+        {
+            this.convertedCache.clear();
+        }
+        this.convertedCache.put(timeStr, converted);
+
+        return converted;
+    }
+
+    /**
+     * 入力時刻フォーマット形式の時刻文字列を、エポックミリ秒に変換する。
+     *
+     * @param timeStr 入力時刻フォーマット形式の時刻文字列
+     * @return エポックミリ秒
+     * @throws ParseException パース失敗時
+     */
+    public long toEpochMillis(String timeStr) throws ParseException
+    {
+        Long epochMillis = this.epochCache.get(timeStr);
+        if (epochMillis != null)
+        {
+            return epochMillis;
+        }
+
+        long parsed = ApacheTimestampCodec.INVALID;
+        if (this.fastInput)
+        {
+            parsed = ApacheTimestampCodec.parseApacheTime(timeStr, 0, timeStr.length());
+        }
+        if (parsed == ApacheTimestampCodec.INVALID)
+        {
+            parsed = this.inputFormat.get().parse(timeStr).getTime();
+        }
+
+        if (this.epochCache.size() >= MAX_CACHED_TIMES)
+        {
+            this.epochCache.clear();
+        }
+        this.epochCache.put(timeStr, parsed);
+
+        return parsed;
+    }
+
+    /**
+     * 文字列の指定範囲の時刻を、DateFormatとキャッシュを用いずに変換してバッファに追加する。<br>
+     * 入力時刻フォーマットがApacheの標準形式であり、出力がエポックミリ秒またはISO-8601形式の場合のみ変換する。
+     * 変換できない場合はバッファを変更せずにfalseを返すため、呼び出し側は{@link #convert(String)}等で変換すること。
+     *
+     * @param builder 追加先バッファ
+     * @param source 時刻を含む文字列
+     * @param start 開始位置
+     * @param end 終了位置(排他)
+     * @param epochMillis エポックミリ秒で追加する場合true、出力時刻フォーマット形式で追加する場合false
+     * @return 追加した場合true
+     */
+    public boolean appendFast(StringBuilder builder, CharSequence source, int start, int end,
+            boolean epochMillis)
+    {
+        if (this.fastInput == false || (epochMillis == false && this.isoLayout < 0))
+        {
+            return false;
+        }
+
+        long parsed = ApacheTimestampCodec.parseApacheTime(source, start, end);
+        if (parsed == ApacheTimestampCodec.INVALID)
+        {
+            return false;
+        }
+
+        if (epochMillis)
+        {
+            builder.append(parsed);
+            return true;
+        }
+
+        int mark = builder.length();
+        if (ApacheTimestampCodec.appendIso(builder, parsed, this.outputZone, this.isoLayout) == false)
+        {
+            builder.setLength(mark);
+            return false;
+        }
+        return true;
+    }
+
+    /**
+     * @return the inputPattern
+     */
+    public String getInputPattern()
+    {
+        return this.inputPattern;
+    }
+
+    /**
+     * @return the outputPattern
+     */
+    public String getOutputPattern()
+    {
+        return this.outputPattern;
+    }
+}
@@ -0,0 +1,471 @@
+/**
+* Copyright (c) Acroquest Technology Co, Ltd. All Rights Reserved.
+* Please read the associated COPYRIGHTS file for more details.
+*
+* THE SOFTWARE IS PROVIDED BY Acroquest Technolog Co., Ltd.,
+* WITHOUT WARRANTY OF ANY KIND, EXPRESS OR IMPLIED, INCLUDING
+* BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+* FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT.
+* IN NO EVENT SHALL THE AUTHORS OR COPYRIGHT HOLDER BE LIABLE FOR ANY
+* CLAIM, DAMAGES SUFFERED BY LICENSEE AS A RESULT OF USING, MODIFYING
+* OR DISTRIBUTING THIS SOFTWARE OR ITS DERIVATIVES.
+*/
+package acromusashi.kafka.log.producer.util;
+
+import java.nio.charset.Charset;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+import acromusashi.kafka.log.producer.entity.ParsedLog;
+
+/**
+ * ApacheのLogFormatを一度だけ解析し、パースに必要な情報を保持するクラス<br>
+ * 正規表現のコンパイル、個々のフォーマットの抽出、strftimeフォーマットの取得を生成時に済ませておき、
+ * ログ1行ごとのパースではコンパイル済みのパターンを再利用する。<br>
+ * パース方式にトークナイザが指定された場合はトークナイザでパースし、扱えない行のみ正規表現でパースする。<br>
+ * 出力するフィールドが指定された場合は、指定されたフィールドの値のみを取り出す。
+ * 正規表現では指定されていないフィールドをキャプチャしないグループとし、トークナイザでは境界の探索のみを行う。<br>
+ * フォールバック件数とスレッドごとのmatcher以外は不変であるため、複数スレッドから共有して使用可能。<br>
+ * パース結果は{@link LogRecord}に文字列を生成せずに格納でき、1行ごとのオブジェクト生成を抑えられる。
+ *
+ * @author kimura
+ */
+public final class CompiledLogFormat
+{
+    /** apacheのログフォーマット */
+    private final String             apacheLogFormat;
+
+    /** 個々のフォーマット(ログ上の出現順) */
+    private final List<String>       directives;
+
+    /** 出力するフィールドのJSONキー。空の場合は全フィールドを出力する */
+    private final List<String>       fields;
+
+    /** 個々のフォーマットの値を取り出すか */
+    private final boolean[]          projected;
+
+    /** 正規表現のキャプチャグループに対応するフォーマットの位置(グループの出現順) */
+    private final int[]              capturedIndexes;
+
+    /** 時刻を出力するか */
+    private final boolean            timeProjected;
+
+    /** ログフォーマットから生成した正規表現 */
+    private final String             regex;
+
+    /** コンパイル済みの正規表現パターン */
+    private final Pattern            pattern;
+
+    /** スレッドごとに再利用するmatcher */
+    private final ThreadLocal<Matcher> matcher;
+
+    /** strftimeのフォーマット */
+    private final String             strftimeFormat;
+
+    /** パース方式 */
+    private final LogParserType      parserType;
+
+    /** トークナイザ。正規表現方式の場合、またはトークナイザで扱えないフォーマットの場合はnull */
+    private final ApacheLogTokenizer tokenizer;
+
+    /** トークナイザで扱えず正規表現でパースした行数 */
+    private final AtomicLong         fallbackCount = new AtomicLong();
+
+    /**
+     * 各値を指定してインスタンスを生成する。
+     *
+     * @param apacheLogFormat apacheのログフォーマット
+     * @param directives 個々のフォーマット
+     * @param fields 出力するフィールドのJSONキー
+     * @param projected 個々のフォーマットの値を取り出すか
+     * @param regex 正規表現
+     * @param strftimeFormat strftimeのフォーマット
+     * @param parserType パース方式
+     */
+    private CompiledLogFormat(String apacheLogFormat, List<String> directives,
+            List<String> fields, boolean[] projected, String regex, String strftimeFormat,
+            LogParserType parserType)
+    {
+        this.apacheLogFormat = apacheLogFormat;
+        this.directives = Collections.unmodifiableList(directives);
+        this.fields = Collections.unmodifiableList(fields);
+        this.projected = projected;
+
+        List<Integer> captured = new ArrayList<Integer>();
+        boolean hasTime = false;
+        for (int index = 0; index < directives.size(); index++)
+        {
+            if (projected[index])
+            {
+                captured.add(index);
+                hasTime = hasTime
+                        || ApacheLtsvMapper.TIME_KEY.equals(ApacheLtsvMapper.convertApacheFormatToJsonKey(directives.get(index)));
+            }
+        }
+        this.capturedIndexes = new int[captured.size()];
+        for (int index = 0; index < this.capturedIndexes.length; index++)
+        {
+            this.capturedIndexes[index] = captured.get(index);
+        }
+        this.timeProjected = hasTime;
+
+        this.regex = regex;
+        this.pattern = Pattern.compile(regex);
+        this.matcher = new ThreadLocal<Matcher>() {
+            @Override
+            protected Matcher initialValue()
+            {
+                return CompiledLogFormat.this.pattern.matcher("");
+            }
+        };
+        this.strftimeFormat = strftimeFormat;
+        this.parserType = parserType;
+
+        if (parserType == LogParserType.TOKENIZER)
+        {
+            this.tokenizer = ApacheLogTokenizer.create(directives);
+        }
+        else
+        {
+            this.tokenizer = null;
+        }
+    }
+
+    /**
+     * apacheのログフォーマットを正規表現方式でコンパイルする。
+     *
+     * @param apacheLogFormat apacheのログフォーマット
+     * @return コンパイル済みフォーマット
+     */
+    public static CompiledLogFormat compile(String apacheLogFormat)
+    {
+        return compile(apacheLogFormat, LogParserType.REGEX);
+    }
+
+    /**
+     * パース方式を指定してapacheのログフォーマットをコンパイルする。
+     *
+     * @param apacheLogFormat apacheのログフォーマット
+     * @param parserType パース方式
+     * @return コンパイル済みフォーマット
+     */
+    public static CompiledLogFormat compile(String apacheLogFormat, LogParserType parserType)
+    {
+        return compile(apacheLogFormat, parserType, Collections.<String> emptyList());
+    }
+
+    /**
+     * パース方式と出力するフィールドを指定してapacheのログフォーマットをコンパイルする。
+     *
+     * @param apacheLogFormat apacheのログフォーマット
+     * @param parserType パース方式
+     * @param fields 出力するフィールドのJSONキー。空の場合は全フィールドを出力する
+     * @return コンパイル済みフォーマット
+     */
+    public static CompiledLogFormat compile(String apacheLogFormat, LogParserType parserType,
+            Collection<String> fields)
+    {
+        List<String> directives = ApacheLogParseUtil.getEachApacheLogFormat(apacheLogFormat);
+
+        boolean[] projected = new boolean[directives.size()];
+        for (int index = 0; index < directives.size(); index++)
+        {
+            projected[index] = fields.isEmpty()
+                    || fields.contains(ApacheLtsvMapper.convertApacheFormatToJsonKey(directives.get(index)));
+        }
+
+        // 正規表現変換時にstrftimeのフォーマットが設定されるため、受け取り用のParsedLogを渡す
+        ParsedLog formatHolder = new ParsedLog(new HashMap<String, String>(), "");
+        String regex = ApacheLogParseUtil.convertLogFormat2Regex(directives, projected,
+                formatHolder);
+
+        return new CompiledLogFormat(apacheLogFormat, directives, new ArrayList<String>(fields),
+                projected, regex, formatHolder.getStrftimeFormat(), parserType);
+    }
+
+    /**
+     * 本フォーマットのパース結果を格納するレコードを生成する。
+     *
+     * @return レコード
+     */
+    public LogRecord newRecord()
+    {
+        return new LogRecord(this.directives.size(), this.strftimeFormat);
+    }
+
+    /**
+     * Apacheのログをparseする。
+     *
+     * @param log Apacheのログ
+     * @return ログをparseしたもの
+     */
+    public ParsedLog parse(String log)
+    {
+        LogRecord record = newRecord();
+        parse(log, record);
+        return record.toParsedLog(this.directives);
+    }
+
+    /**
+     * byte配列上のApacheのログをparseする。
+     *
+     * @param buffer ログを格納したbyte配列
+     * @param offset ログの開始位置
+     * @param length ログの長さ
+     * @param charset ログの文字コード
+     * @return ログをparseしたもの
+     */
+    public ParsedLog parse(byte[] buffer, int offset, int length, Charset charset)
+    {
+        LogRecord record = newRecord();
+        parse(buffer, offset, length, charset, record);
+        return record.toParsedLog(this.directives);
+    }
+
+    /**
+     * Apacheのログをparseし、結果をレコードに格納する。<br>
+     * 値は文字列を生成せずに、ログ上の範囲としてレコードに格納する。
+     *
+     * @param log Apacheのログ
+     * @param record 格納先のレコード
+     * @return フォーマットに一致した場合true
+     */
+    public boolean parse(CharSequence log, LogRecord record)
+    {
+        record.reset(log);
+        if (this.tokenizer != null)
+        {
+            if (this.tokenizer.tokenize(log, record.getBounds()))
+            {
+                clearUnprojected(record);
+                return true;
+            }
+
+            // トークナイザで扱えない行は正規表現でパースする
+            this.fallbackCount.incrementAndGet();
+            record.reset(log);
+        }
+
+        return parseByRegex(log, record);
+    }
+
+    /**
+     * byte配列上のApacheのログをparseし、結果をレコードに格納する。<br>
+     * トークナイザが有効かつASCII互換の文字コードの場合は、デコードせずにbyte配列上でフィールドの境界を求める。
+     * それ以外の場合は行全体をデコードしてからparseする。
+     *
+     * @param buffer ログを格納したbyte配列
+     * @param offset ログの開始位置
+     * @param length ログの長さ
+     * @param charset ログの文字コード
+     * @param record 格納先のレコード
+     * @return フォーマットに一致した場合true
+     */
+    public boolean parse(byte[] buffer, int offset, int length, Charset charset, LogRecord record)
+    {
+        if (this.tokenizer != null && AsciiByteSequence.isAsciiCompatible(charset))
+        {
+            AsciiByteSequence line = record.reset(buffer, offset, length, charset);
+            if (this.tokenizer.tokenize(line, record.getBounds()))
+            {
+                clearUnprojected(record);
+                return true;
+            }
+
+            // トークナイザで扱えない行は正規表現でパースする
+            this.fallbackCount.incrementAndGet();
+            String decoded = line.toString();
+            record.reset(decoded);
+            return parseByRegex(decoded, record);
+        }
+
+        return parse(new String(buffer, offset, length, charset), record);
+    }
+
+    /**
+     * 正規表現を用いてApacheのログをparseする。
+     *
+     * @param log Apacheのログ
+     * @return ログをparseしたもの
+     */
+    public ParsedLog parseByRegex(String log)
+    {
+        LogRecord record = newRecord();
+        record.reset(log);
+        parseByRegex(log, record);
+        return record.toParsedLog(this.directives);
+    }
+
+    /**
+     * 正規表現を用いてApacheのログをparseし、結果をレコードに格納する。
+     *
+     * @param log Apacheのログ
+     * @param record 格納先のレコード(初期化済みであること)
+     * @return 正規表現とマッチした場合true
+     */
+    private boolean parseByRegex(CharSequence log, LogRecord record)
+    {
+        //スレッドごとのmatcherを再利用する。
+        Matcher matcher = this.matcher.get().reset(log);
+
+        //正規表現とマッチした場合、それぞれの正規表現にマッチした部分を取り出す。
+        if (matcher.find() == false)
+        {
+            return false;
+        }
+
+        int groupCount = matcher.groupCount();
+        for (int count = 1; count <= groupCount; count++)
+        {
+            int index = this.capturedIndexes[count - 1];
+            if (matcher.start(count) < 0)
+            {
+                record.setNull(index);
+            }
+            else
+            {
+                record.set(index, matcher.start(count), matcher.end(count));
+            }
+        }
+        return true;
+    }
+
+    /**
+     * 出力対象外のフィールドを値なしの状態にする。
+     *
+     * @param record レコード
+     */
+    private void clearUnprojected(LogRecord record)
+    {
+        if (this.capturedIndexes.length == this.projected.length)
+        {
+            return;
+        }
+
+        for (int index = 0; index < this.projected.length; index++)
+        {
+            if (this.projected[index] == false)
+            {
+                record.clear(index);
+            }
+        }
+    }
+
+    /**
+     * @return the apacheLogFormat
+     */
+    public String getApacheLogFormat()
+    {
+        return this.apacheLogFormat;
+    }
+
+    /**
+     * @return the directives
+     */
+    public List<String> getDirectives()
+    {
+        return this.directives;
+    }
+
+    /**
+     * @return the fields
+     */
+    public List<String> getFields()
+    {
+        return this.fields;
+    }
+
+    /**
+     * 指定した位置のフォーマットの値を取り出すかを判定する。
+     *
+     * @param index フォーマットの位置
+     * @return 値を取り出す場合true
+     */
+    public boolean isProjected(int index)
+    {
+        return this.projected[index];
+    }
+
+    /**
+     * 時刻を出力するかを判定する。
+     *
+     * @return 時刻を出力する場合true
+     */
+    public boolean isTimeProjected()
+    {
+        return this.timeProjected;
+    }
+
+    /**
+     * @return the regex
+     */
+    public String getRegex()
+    {
+        return this.regex;
+    }
+
+    /**
+     * @return the pattern
+     */
+    public Pattern getPattern()
+    {
+        return this.pattern;
+    }
+
+    /**
+     * @return the strftimeFormat
+     */
+    public String getStrftimeFormat()
+    {
+        return this.strftimeFormat;
+    }
+
+    /**
+     * @return the parserType
+     */
+    public LogParserType getParserType()
+    {
+        return this.parserType;
+    }
+
+    /**
+     * トークナイザでパース可能なフォーマットであるかを判定する。
+     *
+     * @return トークナイザでパースする場合true
+     */
+    public boolean isTokenizerEnabled()
+    {
+        return this.tokenizer != null;
+    }
+
+    /**
+     * トークナイザで扱えず正規表現でパースした行数を取得する。
+     *
+     * @return 正規表現でパースした行数
+     */
+    public long getFallbackCount()
+    {
+        return this.fallbackCount.get();
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public String toString()
+    {
+        String fieldsStr = "";
+        if (this.fields.isEmpty() == false)
+        {
+            fieldsStr = ", fields=" + this.fields;
+        }
+        return "CompiledLogFormat[" + this.parserType.getConfigName() + ", "
+                + this.apacheLogFormat + fieldsStr + "]";
+    }
+}
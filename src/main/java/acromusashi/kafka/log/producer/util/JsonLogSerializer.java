@@ -0,0 +1,618 @@
+/**
+* Copyright (c) Acroquest Technology Co, Ltd. All Rights Reserved.
+* Please read the associated COPYRIGHTS file for more details.
+*
+* THE SOFTWARE IS PROVIDED BY Acroquest Technolog Co., Ltd.,
+* WITHOUT WARRANTY OF ANY KIND, EXPRESS OR IMPLIED, INCLUDING
+* BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+* FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT.
+* IN NO EVENT SHALL THE AUTHORS OR COPYRIGHT HOLDER BE LIABLE FOR ANY
+* CLAIM, DAMAGES SUFFERED BY LICENSEE AS A RESULT OF USING, MODIFYING
+* OR DISTRIBUTING THIS SOFTWARE OR ITS DERIVATIVES.
+*/
+package acromusashi.kafka.log.producer.util;
+
+import java.text.ParseException;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+import acromusashi.kafka.log.producer.entity.ParsedLog;
+
+import com.google.common.collect.ImmutableSet;
+
+/**
+ * パースしたApacheログを、中間のMapを経由せずにJSON文字列へ書き出すシリアライザ<br>
+ * <br>
+ * JSONのキーと、固定値であるhostnameの部分はフォーマットごとに一度だけエスケープ済みの文字列として生成し、
+ * ログ1行ごとには値のエスケープのみを行う。フィールドはログフォーマット上の出現順に出力し、最後にhostnameを出力する。<br>
+ * 値のエスケープはJacksonのデフォルト設定(ObjectMapper#writeValueAsString)と同一の規則で行う。<br>
+ * 型付き出力が指定された場合は、数値のフィールド(status、size、reqtime、reqtime_microsec)を数値として出力し、
+ * sizeの「-」はnullとして出力する。エポックミリ秒出力が指定された場合は、timeをエポックミリ秒の数値として出力する。<br>
+ * 出力するフィールドが指定されたフォーマットでは、指定されたフィールドとhostnameのみを出力する。<br>
+ * {@link LogRecord}に格納したパース結果からは、フィールドごとの文字列を生成せずに書き出す。<br>
+ * 書き出し先のバッファはスレッドごとに再利用する。
+ *
+ * @author kimura
+ */
+public final class JsonLogSerializer
+{
+    /** 時刻のJSONキー */
+    private static final String                    TIME_KEY     = ApacheLtsvMapper.TIME_KEY;
+
+    /** 16進数の文字 */
+    private static final char[]                    HEX_CHARS    = "0123456789ABCDEF".toCharArray();
+
+    /** バッファの初期サイズ */
+    private static final int                       INITIAL_SIZE = 512;
+
+    /** 数値として出力するフォーマット */
+    private static final Set<String>               NUMERIC_DIRECTIVES = ImmutableSet.of("%>s", "%b", "%D", "%T");
+
+    /** 「-」をnullとして出力するフォーマット */
+    private static final String                    SIZE_DIRECTIVE = "%b";
+
+    /** long型でオーバーフローせずに扱える最大桁数 */
+    private static final int                       MAX_LONG_DIGITS = 18;
+
+    /** コンパイル済みのApacheLogフォーマット */
+    private final CompiledLogFormat                logFormat;
+
+    /** 個々のフォーマット */
+    private final String[]                         directives;
+
+    /** 個々のフォーマットに対応するエスケープ済みのキー部分(「"key":」)。出力しない場合はnull */
+    private final String[]                         keyFragments;
+
+    /** 個々のフォーマットが時刻であるか */
+    private final boolean[]                        timeFields;
+
+    /** 個々のフォーマットを数値として出力するか */
+    private final boolean[]                        numericFields;
+
+    /** 個々のフォーマットの「-」をnullとして出力するか */
+    private final boolean[]                        nullableFields;
+
+    /** 時刻をエポックミリ秒として出力するか */
+    private final boolean                          epochMillisTime;
+
+    /** エスケープ済みのhostname部分(「"hostname":"host"」) */
+    private final String                           hostnameFragment;
+
+    /** Kafka用メッセージに設定する日付フォーマット */
+    private final String                           jsonDateFormatStr;
+
+    /** 時刻変換オブジェクト。時刻フィールドがない場合、または事前に生成できなかった場合はnull */
+    private final CachedDateConverter              dateConverter;
+
+    /** スレッドごとの書き出し用の状態 */
+    private final ThreadLocal<SerializeContext>    context      = new ThreadLocal<SerializeContext>() {
+                                                                    @Override
+                                                                    protected SerializeContext initialValue()
+                                                                    {
+                                                                        return new SerializeContext();
+                                                                    }
+                                                                };
+
+    /**
+     * フォーマット、ホスト名、日付フォーマットを指定してインスタンスを生成する。
+     *
+     * @param logFormat コンパイル済みのApacheLogフォーマット
+     * @param host 送信元ホスト
+     * @param jsonDateFormatStr Kafka用メッセージに設定する日付フォーマット
+     */
+    public JsonLogSerializer(CompiledLogFormat logFormat, String host, String jsonDateFormatStr)
+    {
+        this(logFormat, host, jsonDateFormatStr, false, false);
+    }
+
+    /**
+     * フォーマット、ホスト名、日付フォーマット、出力形式を指定してインスタンスを生成する。
+     *
+     * @param logFormat コンパイル済みのApacheLogフォーマット
+     * @param host 送信元ホスト
+     * @param jsonDateFormatStr Kafka用メッセージに設定する日付フォーマット
+     * @param typedFields 数値のフィールドを数値として出力する場合true
+     * @param epochMillisTime 時刻をエポックミリ秒として出力する場合true
+     */
+    public JsonLogSerializer(CompiledLogFormat logFormat, String host, String jsonDateFormatStr,
+            boolean typedFields, boolean epochMillisTime)
+    {
+        this.logFormat = logFormat;
+        this.jsonDateFormatStr = jsonDateFormatStr;
+        this.epochMillisTime = epochMillisTime;
+
+        List<String> directiveList = logFormat.getDirectives();
+        int fieldCount = directiveList.size();
+        this.directives = directiveList.toArray(new String[fieldCount]);
+        this.keyFragments = new String[fieldCount];
+        this.timeFields = new boolean[fieldCount];
+        this.numericFields = new boolean[fieldCount];
+        this.nullableFields = new boolean[fieldCount];
+
+        boolean hasTime = false;
+        for (int index = 0; index < fieldCount; index++)
+        {
+            // 出力対象外のフィールドはキーを生成せず、時刻の変換も行わない
+            if (logFormat.isProjected(index) == false)
+            {
+                continue;
+            }
+
+            //jsonKeyがない場合はstrttimeの形式、timeの場合は、共通の時刻のフォーマットに変換する。
+            String jsonKey = ApacheLtsvMapper.convertApacheFormatToJsonKey(this.directives[index]);
+            if (jsonKey.equals(TIME_KEY))
+            {
+                this.timeFields[index] = true;
+                hasTime = true;
+            }
+
+            // Mapに格納していた従来の変換と同様に、同一キーは後に出現したものを優先する
+            for (int prev = 0; prev < index; prev++)
+            {
+                if (this.keyFragments[prev] != null
+                        && this.keyFragments[prev].equals(createKeyFragment(jsonKey)))
+                {
+                    this.keyFragments[prev] = null;
+                }
+            }
+            this.keyFragments[index] = createKeyFragment(jsonKey);
+
+            if (typedFields && NUMERIC_DIRECTIVES.contains(this.directives[index]))
+            {
+                this.numericFields[index] = true;
+                this.nullableFields[index] = SIZE_DIRECTIVE.equals(this.directives[index]);
+            }
+        }
+
+        StringBuilder hostBuilder = new StringBuilder(createKeyFragment("hostname"));
+        appendValue(hostBuilder, host);
+        this.hostnameFragment = hostBuilder.toString();
+
+        CachedDateConverter converter = null;
+        if (hasTime)
+        {
+            try
+            {
+                converter = StrftimeFormatMapper.getDateConverter(logFormat.getStrftimeFormat(),
+                        jsonDateFormatStr);
+            }
+            catch (IllegalArgumentException ex)
+            {
+                // 変換できないフォーマットの場合は、従来通り1行ごとの変換時にエラーとする
+                converter = null;
+            }
+        }
+        this.dateConverter = converter;
+    }
+
+    /**
+     * フォーマット選択に含まれるフォーマットごとにシリアライザを生成する。
+     *
+     * @param selector フォーマット選択
+     * @param host 送信元ホスト
+     * @param jsonDateFormatStr Kafka用メッセージに設定する日付フォーマット
+     * @param typedFields 数値のフィールドを数値として出力する場合true
+     * @param epochMillisTime 時刻をエポックミリ秒として出力する場合true
+     * @return フォーマットと同じ順のシリアライザ
+     */
+    public static JsonLogSerializer[] create(LogFormatSelector selector, String host,
+            String jsonDateFormatStr, boolean typedFields, boolean epochMillisTime)
+    {
+        JsonLogSerializer[] serializers = new JsonLogSerializer[selector.getFormatCount()];
+        for (int index = 0; index < serializers.length; index++)
+        {
+            serializers[index] = new JsonLogSerializer(selector.getFormat(index), host,
+                    jsonDateFormatStr, typedFields, epochMillisTime);
+        }
+        return serializers;
+    }
+
+    /**
+     * パースしたApacheログをJSON文字列に変換する。
+     *
+     * @param parsedLog パースしたApacheログ
+     * @return JSON文字列
+     * @throws ParseException 時刻の変換失敗時
+     */
+    public String serialize(ParsedLog parsedLog) throws ParseException
+    {
+        Map<String, String> parsedMap = parsedLog.getParsedLog();
+        StringBuilder builder = this.context.get().builder;
+        builder.setLength(0);
+        builder.append('{');
+
+        for (int index = 0; index < this.directives.length; index++)
+        {
+            if (this.keyFragments[index] == null || parsedMap.containsKey(this.directives[index]) == false)
+            {
+                continue;
+            }
+
+            String value = parsedMap.get(this.directives[index]);
+            builder.append(this.keyFragments[index]);
+
+            if (this.timeFields[index])
+            {
+                appendTime(builder, value, parsedLog.getStrftimeFormat());
+            }
+            else if (this.numericFields[index])
+            {
+                appendNumericValue(builder, value, this.nullableFields[index]);
+            }
+            else
+            {
+                appendValue(builder, value);
+            }
+            builder.append(',');
+        }
+
+        builder.append(this.hostnameFragment);
+        builder.append('}');
+        return builder.toString();
+    }
+
+    /**
+     * レコードに格納したApacheログをJSON文字列に変換する。<br>
+     * 値はレコードが参照するログの1行から直接エスケープして書き出すため、フィールドごとの文字列は生成しない。
+     *
+     * @param record パース結果を格納したレコード
+     * @return JSON文字列
+     * @throws ParseException 時刻の変換失敗時
+     */
+    public String serialize(LogRecord record) throws ParseException
+    {
+        SerializeContext context = this.context.get();
+        StringBuilder builder = context.builder;
+        builder.setLength(0);
+        builder.append('{');
+
+        CharSequence source = record.getSource();
+        for (int index = 0; index < this.directives.length; index++)
+        {
+            if (this.keyFragments[index] == null || record.isPresent(index) == false)
+            {
+                continue;
+            }
+
+            builder.append(this.keyFragments[index]);
+
+            if (this.timeFields[index])
+            {
+                if (record.isNull(index) || appendFastTime(builder, record, index) == false)
+                {
+                    appendTime(builder, context.getTimeString(record, index),
+                            record.getStrftimeFormat());
+                }
+            }
+            else if (record.isNull(index))
+            {
+                builder.append("null");
+            }
+            else if (this.numericFields[index])
+            {
+                appendNumericValue(builder, source, record.getStart(index), record.getEnd(index),
+                        this.nullableFields[index]);
+            }
+            else
+            {
+                appendValue(builder, source, record.getStart(index), record.getEnd(index));
+            }
+            builder.append(',');
+        }
+
+        builder.append(this.hostnameFragment);
+        builder.append('}');
+        return builder.toString();
+    }
+
+    /**
+     * レコードの時刻を、DateFormatを用いずに変換してバッファに追加する。
+     *
+     * @param builder 追加先バッファ
+     * @param record レコード
+     * @param index 時刻のフィールドの位置
+     * @return 追加した場合true、変換できずバッファを変更しなかった場合false
+     */
+    private boolean appendFastTime(StringBuilder builder, LogRecord record, int index)
+    {
+        if (this.dateConverter == null)
+        {
+            return false;
+        }
+
+        CharSequence source = record.getSource();
+        if (this.epochMillisTime)
+        {
+            return this.dateConverter.appendFast(builder, source, record.getStart(index),
+                    record.getEnd(index), true);
+        }
+
+        int mark = builder.length();
+        builder.append('"');
+        if (this.dateConverter.appendFast(builder, source, record.getStart(index),
+                record.getEnd(index), false))
+        {
+            builder.append('"');
+            return true;
+        }
+        builder.setLength(mark);
+        return false;
+    }
+
+    /**
+     * 時刻を日付フォーマットに従って変換、またはエポックミリ秒に変換してバッファに追加する。
+     *
+     * @param builder 追加先バッファ
+     * @param timeStr 時刻文字列
+     * @param strftimeFormat strftimeのフォーマット
+     * @throws ParseException 時刻の変換失敗時
+     */
+    private void appendTime(StringBuilder builder, String timeStr, String strftimeFormat)
+            throws ParseException
+    {
+        CachedDateConverter converter = this.dateConverter;
+        if (converter == null)
+        {
+            converter = StrftimeFormatMapper.getDateConverter(strftimeFormat,
+                    this.jsonDateFormatStr);
+        }
+
+        if (this.epochMillisTime)
+        {
+            builder.append(converter.toEpochMillis(timeStr));
+        }
+        else
+        {
+            appendValue(builder, converter.convert(timeStr));
+        }
+    }
+
+    /**
+     * 数値のフィールドを数値としてバッファに追加する。<br>
+     * 数値として解釈できない値は、nullとして扱うフィールドの「-」であればnullを、それ以外は文字列を追加する。
+     *
+     * @param builder 追加先バッファ
+     * @param value 値
+     * @param nullable 「-」をnullとして扱う場合true
+     */
+    static void appendNumericValue(StringBuilder builder, CharSequence value, boolean nullable)
+    {
+        if (value == null)
+        {
+            builder.append("null");
+            return;
+        }
+
+        appendNumericValue(builder, value, 0, value.length(), nullable);
+    }
+
+    /**
+     * 文字列の指定範囲の値を数値としてバッファに追加する。<br>
+     * 数値として解釈できない値は、nullとして扱うフィールドの「-」であればnullを、それ以外は文字列を追加する。
+     *
+     * @param builder 追加先バッファ
+     * @param source 値を含む文字列
+     * @param start 開始位置
+     * @param end 終了位置(排他)
+     * @param nullable 「-」をnullとして扱う場合true
+     */
+    static void appendNumericValue(StringBuilder builder, CharSequence source, int start,
+            int end, boolean nullable)
+    {
+        if (appendNumber(builder, source, start, end))
+        {
+            return;
+        }
+
+        if (nullable && end - start == 1 && source.charAt(start) == '-')
+        {
+            builder.append("null");
+            return;
+        }
+
+        appendValue(builder, source, start, end);
+    }
+
+    /**
+     * 数字のみで構成された値を、部分文字列や数値オブジェクトを生成せずに数値としてバッファに追加する。
+     *
+     * @param builder 追加先バッファ
+     * @param source 値を含む文字列
+     * @param start 開始位置
+     * @param end 終了位置(排他)
+     * @return 数値として追加した場合true、数値として解釈できない場合false
+     */
+    private static boolean appendNumber(StringBuilder builder, CharSequence source, int start,
+            int end)
+    {
+        int length = end - start;
+        if (length == 0 || length > MAX_LONG_DIGITS)
+        {
+            return false;
+        }
+
+        long number = 0;
+        for (int index = start; index < end; index++)
+        {
+            char c = source.charAt(index);
+            if (c < '0' || c > '9')
+            {
+                return false;
+            }
+            number = number * 10 + (c - '0');
+        }
+
+        builder.append(number);
+        return true;
+    }
+
+    /**
+     * エスケープ済みのキー部分(「"key":」)を生成する。
+     *
+     * @param key キー
+     * @return エスケープ済みのキー部分
+     */
+    private static String createKeyFragment(String key)
+    {
+        StringBuilder builder = new StringBuilder();
+        appendValue(builder, key);
+        builder.append(':');
+        return builder.toString();
+    }
+
+    /**
+     * 値をJSON文字列としてエスケープしてバッファに追加する。nullの場合はnullリテラルを追加する。
+     *
+     * @param builder 追加先バッファ
+     * @param value 値
+     */
+    static void appendValue(StringBuilder builder, CharSequence value)
+    {
+        if (value == null)
+        {
+            builder.append("null");
+            return;
+        }
+
+        appendEscaped(builder, value, 0, value.length());
+    }
+
+    /**
+     * 文字列の指定範囲の値をJSON文字列としてエスケープしてバッファに追加する。<br>
+     * byte配列を参照する文字列の場合、ASCII以外の文字を含む範囲のみデコードする。
+     *
+     * @param builder 追加先バッファ
+     * @param source 値を含む文字列
+     * @param start 開始位置
+     * @param end 終了位置(排他)
+     */
+    static void appendValue(StringBuilder builder, CharSequence source, int start, int end)
+    {
+        if (source instanceof AsciiByteSequence)
+        {
+            AsciiByteSequence byteSource = (AsciiByteSequence) source;
+            if (byteSource.containsNonAscii(start, end))
+            {
+                String decoded = byteSource.decode(start, end);
+                appendEscaped(builder, decoded, 0, decoded.length());
+                return;
+            }
+        }
+
+        appendEscaped(builder, source, start, end);
+    }
+
+    /**
+     * 文字列の指定範囲をJSON文字列としてエスケープしてバッファに追加する。
+     *
+     * @param builder 追加先バッファ
+     * @param source 値を含む文字列
+     * @param start 開始位置
+     * @param end 終了位置(排他)
+     */
+    private static void appendEscaped(StringBuilder builder, CharSequence source, int start,
+            int end)
+    {
+        builder.append('"');
+        for (int index = start; index < end; index++)
+        {
+            char c = source.charAt(index);
+            if (c >= 0x20 && c != '"' && c != '\\')
+            {
+                builder.append(c);
+                continue;
+            }
+
+            switch (c)
+            {
+                case '"':
+                    builder.append("\\\"");
+                    break;
+                case '\\':
+                    builder.append("\\\\");
+                    break;
+                case '\b':
+                    builder.append("\\b");
+                    break;
+                case '\t':
+                    builder.append("\\t");
+                    break;
+                case '\n':
+                    builder.append("\\n");
+                    break;
+                case '\f':
+                    builder.append("\\f");
+                    break;
+                case '\r':
+                    builder.append("\\r");
+                    break;
+                default:
+                    builder.append("\\u00").append(HEX_CHARS[c >> 4]).append(HEX_CHARS[c & 0xF]);
+                    break;
+            }
+        }
+        builder.append('"');
+    }
+
+    /**
+     * @return the logFormat
+     */
+    public CompiledLogFormat getLogFormat()
+    {
+        return this.logFormat;
+    }
+
+    /**
+     * スレッドごとの書き出し用の状態
+     */
+    private static final class SerializeContext
+    {
+        /** 書き出し先バッファ */
+        final StringBuilder builder = new StringBuilder(INITIAL_SIZE);
+
+        /** 直前に変換した時刻文字列 */
+        String              lastTime;
+
+        /**
+         * レコードの時刻の値を文字列として取得する。<br>
+         * Apacheログの時刻は秒単位で同じ値が連続するため、直前と同じ値の場合は直前の文字列を再利用する。
+         *
+         * @param record レコード
+         * @param index 時刻のフィールドの位置
+         * @return 時刻文字列
+         */
+        String getTimeString(LogRecord record, int index)
+        {
+            if (record.isNull(index))
+            {
+                return null;
+            }
+
+            CharSequence source = record.getSource();
+            int start = record.getStart(index);
+            int length = record.getEnd(index) - start;
+            String last = this.lastTime;
+            if (last != null && last.length() == length)
+            {
+                boolean same = true;
+                for (int pos = 0; pos < length; pos++)
+                {
+                    if (last.charAt(pos) != source.charAt(start + pos))
+                    {
+                        same = false;
+                        break;
+                    }
+                }
+
+                if (same)
+                {
+                    return last;
+                }
+            }
+
+            this.lastTime = record.getValue(index);
+            return this.lastTime;
+        }
+    }
+}
@@ -12,6 +12,7 @@
 */
 package acromusashi.kafka.log.producer.util;
 
+import java.nio.charset.Charset;
 import java.util.Map;
 import java.util.Map.Entry;
 
@@ -28,6 +29,9 @@ import com.google.common.collect.Maps;
  */
 public class KeyedMessageConverter
 {
+    /** Jacksonを用いた変換マッパーオブジェクト(設定変更しないためスレッド間で共有可能) */
+    private static final ObjectMapper OBJECT_MAPPER = new ObjectMapper();
+
     /**
      * インスタンス化を防止するためのコンストラクタ
      */
@@ -48,8 +52,111 @@ public class KeyedMessageConverter
     public static KeyedMessage<String, String> convertToMessage(String apacheLogStr, String topic,
             String host, String apacheLogFormat, String jsonDateFormatStr) throws Exception
     {
-        ParsedLog parsedLogObj = ApacheLogParseUtil.getParsedLog(apacheLogStr, apacheLogFormat);
+        return convertToMessage(apacheLogStr, topic, host,
+                ApacheLogParseUtil.getCompiledLogFormat(apacheLogFormat), jsonDateFormatStr);
+    }
+
+    /**
+     * コンパイル済みのApacheLogフォーマットを用いて、ApacheLogの1行の内容をKafka用メッセージに変換する。
+     * 
+     * @param apacheLogStr ApacheLogの1行
+     * @param topic 送信Topic
+     * @param host 送信元ホスト
+     * @param logFormat コンパイル済みApacheLogフォーマット
+     * @param jsonDateFormatStr Kafka用メッセージに設定する日付フォーマット
+     * @return Kafka用メッセージ
+     * @throws Exception 変換失敗時
+     */
+    public static KeyedMessage<String, String> convertToMessage(String apacheLogStr, String topic,
+            String host, CompiledLogFormat logFormat, String jsonDateFormatStr) throws Exception
+    {
+        ParsedLog parsedLogObj = logFormat.parse(apacheLogStr);
+        return convertParsedLog(parsedLogObj, topic, host, jsonDateFormatStr);
+    }
+
+    /**
+     * byte配列上のApacheLogの1行の内容を、行全体を文字列にデコードせずにKafka用メッセージに変換する。<br>
+     * JSONへの変換にはフォーマットごとに生成したシリアライザを使用する。
+     * 
+     * @param buffer ApacheLogを格納したbyte配列
+     * @param offset ApacheLogの1行の開始位置
+     * @param length ApacheLogの1行の長さ
+     * @param charset ApacheLogの文字コード
+     * @param topic 送信Topic
+     * @param host 送信元ホスト
+     * @param serializer JSONシリアライザ
+     * @return Kafka用メッセージ
+     * @throws Exception 変換失敗時
+     */
+    public static KeyedMessage<String, String> convertToMessage(byte[] buffer, int offset,
+            int length, Charset charset, String topic, String host, JsonLogSerializer serializer)
+            throws Exception
+    {
+        return convertToMessage(buffer, offset, length, charset, topic, host, serializer,
+                serializer.getLogFormat().newRecord());
+    }
+
+    /**
+     * byte配列上のApacheLogの1行の内容を、再利用するレコードを用いてKafka用メッセージに変換する。<br>
+     * パース結果はレコードにログ上の範囲として格納し、JSONへの書き出しまでフィールドごとの文字列を生成しない。
+     * 
+     * @param buffer ApacheLogを格納したbyte配列
+     * @param offset ApacheLogの1行の開始位置
+     * @param length ApacheLogの1行の長さ
+     * @param charset ApacheLogの文字コード
+     * @param topic 送信Topic
+     * @param host 送信元ホスト
+     * @param serializer JSONシリアライザ
+     * @param record パース結果の格納先レコード(呼び出しスレッド専用のもの)
+     * @return Kafka用メッセージ
+     * @throws Exception 変換失敗時
+     */
+    public static KeyedMessage<String, String> convertToMessage(byte[] buffer, int offset,
+            int length, Charset charset, String topic, String host, JsonLogSerializer serializer,
+            LogRecord record) throws Exception
+    {
+        serializer.getLogFormat().parse(buffer, offset, length, charset, record);
+        String jsonLog = serializer.serialize(record);
+        return new KeyedMessage<String, String>(topic, host, jsonLog);
+    }
 
+    /**
+     * byte配列上のApacheLogの1行の内容を、一致するフォーマットを選択してKafka用メッセージに変換する。
+     * 
+     * @param buffer ApacheLogを格納したbyte配列
+     * @param offset ApacheLogの1行の開始位置
+     * @param length ApacheLogの1行の長さ
+     * @param charset ApacheLogの文字コード
+     * @param topic 送信Topic
+     * @param host 送信元ホスト
+     * @param selector フォーマット選択
+     * @param serializers フォーマットごとのJSONシリアライザ
+     * @param records フォーマットごとのパース結果の格納先レコード(呼び出しスレッド専用のもの)
+     * @return Kafka用メッセージ
+     * @throws Exception 変換失敗時
+     */
+    public static KeyedMessage<String, String> convertToMessage(byte[] buffer, int offset,
+            int length, Charset charset, String topic, String host, LogFormatSelector selector,
+            JsonLogSerializer[] serializers, LogRecord[] records) throws Exception
+    {
+        int formatIndex = selector.parse(buffer, offset, length, charset, records);
+        String jsonLog = serializers[formatIndex].serialize(records[formatIndex]);
+        return new KeyedMessage<String, String>(topic, host, jsonLog);
+    }
+
+    /**
+     * パース済みのApacheLogをKafka用メッセージに変換する。
+     * 
+     * @param parsedLogObj パース済みのApacheLog
+     * @param topic 送信Topic
+     * @param host 送信元ホスト
+     * @param jsonDateFormatStr Kafka用メッセージに設定する日付フォーマット
+     * @return Kafka用メッセージ
+     * @throws Exception 変換失敗時
+     */
+    private static KeyedMessage<String, String> convertParsedLog(ParsedLog parsedLogObj,
+            String topic, String host, String jsonDateFormatStr) throws Exception
+    {
         Map<String, String> parsedLog = parsedLogObj.getParsedLog();
         Map<String, String> jsonMapLog = Maps.newHashMap();
         String strfTimeFormat = parsedLogObj.getStrftimeFormat();
@@ -75,8 +182,7 @@ public class KeyedMessageConverter
         // hostnameを追加
         jsonMapLog.put("hostname", host);
 
-        ObjectMapper mapper = new ObjectMapper();
-        String jsonLog = mapper.writeValueAsString(jsonMapLog);
+        String jsonLog = OBJECT_MAPPER.writeValueAsString(jsonMapLog);
 
         KeyedMessage<String, String> result = new KeyedMessage<String, String>(topic, host, jsonLog);
         return result;
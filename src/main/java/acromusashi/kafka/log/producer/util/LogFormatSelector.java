@@ -0,0 +1,404 @@
+/**
+* Copyright (c) Acroquest Technology Co, Ltd. All Rights Reserved.
+* Please read the associated COPYRIGHTS file for more details.
+*
+* THE SOFTWARE IS PROVIDED BY Acroquest Technolog Co., Ltd.,
+* WITHOUT WARRANTY OF ANY KIND, EXPRESS OR IMPLIED, INCLUDING
+* BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+* FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT.
+* IN NO EVENT SHALL THE AUTHORS OR COPYRIGHT HOLDER BE LIABLE FOR ANY
+* CLAIM, DAMAGES SUFFERED BY LICENSEE AS A RESULT OF USING, MODIFYING
+* OR DISTRIBUTING THIS SOFTWARE OR ITS DERIVATIVES.
+*/
+package acromusashi.kafka.log.producer.util;
+
+import java.nio.charset.Charset;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * 複数のApacheのログフォーマットから、ログの1行に一致するフォーマットを選択してパースするクラス<br>
+ * <br>
+ * 全てのフォーマットでパースを試すのではなく、行の形(先頭文字の種別、フィールド数、ダブルクォートで囲まれたフィールドの位置)を
+ * 1回の走査で求め、形が一致するフォーマットでのみパースを行う。<br>
+ * 直前に一致したフォーマットを最初に試すため、同じフォーマットの行が続く通常時は形の判定1回とパース1回で済む。<br>
+ * どのフォーマットにも一致しない行は、先頭のフォーマットでパースする(単一フォーマット指定時と同じ動作)。
+ *
+ * @author kimura
+ */
+public final class LogFormatSelector
+{
+    /** 行の形を判定しないことを示す値 */
+    private static final long                     NO_SHAPE        = -1L;
+
+    /** 行の形で扱う最大フィールド数 */
+    private static final int                      MAX_SHAPE_UNITS = 56;
+
+    /** フィールド数を格納するビット位置 */
+    private static final int                      UNIT_SHIFT      = 56;
+
+    /** 先頭文字の制約なし */
+    private static final int                      FIRST_ANY       = 0;
+
+    /** 先頭文字が数字 */
+    private static final int                      FIRST_DIGIT     = 1;
+
+    /** 先頭文字がダブルクォート */
+    private static final int                      FIRST_QUOTE     = 2;
+
+    /** 先頭文字が角括弧 */
+    private static final int                      FIRST_BRACKET   = 3;
+
+    /** コンパイル済みフォーマット */
+    private final CompiledLogFormat[]             formats;
+
+    /** 個々のフォーマットに一致する行の形。判定しない場合はNO_SHAPE */
+    private final long[]                          shapes;
+
+    /** 個々のフォーマットに一致する行の先頭文字の種別 */
+    private final int[]                           firstKinds;
+
+    /** 行の形の判定に使用するスレッドごとのCharSequence */
+    private final ThreadLocal<AsciiByteSequence>  byteSequence    = new ThreadLocal<AsciiByteSequence>() {
+                                                                      @Override
+                                                                      protected AsciiByteSequence initialValue()
+                                                                      {
+                                                                          return new AsciiByteSequence();
+                                                                      }
+                                                                  };
+
+    /** 直前に一致したフォーマットの位置 */
+    private volatile int                          lastIndex;
+
+    /** どのフォーマットにも一致しなかった行数 */
+    private final AtomicLong                      unmatchedCount  = new AtomicLong();
+
+    /**
+     * コンパイル済みフォーマットのリストを指定してインスタンスを生成する。
+     *
+     * @param formats コンパイル済みフォーマットのリスト(優先順)
+     */
+    public LogFormatSelector(List<CompiledLogFormat> formats)
+    {
+        if (formats.isEmpty())
+        {
+            throw new IllegalArgumentException("At least one log format is required.");
+        }
+
+        this.formats = formats.toArray(new CompiledLogFormat[formats.size()]);
+        this.shapes = new long[this.formats.length];
+        this.firstKinds = new int[this.formats.length];
+
+        for (int index = 0; index < this.formats.length; index++)
+        {
+            List<String> directives = this.formats[index].getDirectives();
+            this.shapes[index] = createFormatShape(directives);
+            this.firstKinds[index] = getFirstKind(directives);
+        }
+    }
+
+    /**
+     * 単一のコンパイル済みフォーマットを指定してインスタンスを生成する。
+     *
+     * @param format コンパイル済みフォーマット
+     */
+    public LogFormatSelector(CompiledLogFormat format)
+    {
+        this(Collections.singletonList(format));
+    }
+
+    /**
+     * 個々のフォーマットから、一致する行の形を生成する。
+     *
+     * @param directives 個々のフォーマット
+     * @return 行の形。トークナイザで扱えないフォーマットを含む場合はNO_SHAPE
+     */
+    private static long createFormatShape(List<String> directives)
+    {
+        if (directives.isEmpty() || directives.size() > MAX_SHAPE_UNITS)
+        {
+            return NO_SHAPE;
+        }
+
+        long quotedMask = 0L;
+        for (int index = 0; index < directives.size(); index++)
+        {
+            Integer kind = ApacheLogTokenizer.getFieldKind(directives.get(index));
+            if (kind == null)
+            {
+                return NO_SHAPE;
+            }
+
+            if (kind == ApacheLogTokenizer.FIELD_QUOTED || kind == ApacheLogTokenizer.FIELD_REQUEST)
+            {
+                quotedMask |= 1L << index;
+            }
+        }
+
+        return ((long) directives.size() << UNIT_SHIFT) | quotedMask;
+    }
+
+    /**
+     * 先頭のフォーマットから、一致する行の先頭文字の種別を取得する。
+     *
+     * @param directives 個々のフォーマット
+     * @return 先頭文字の種別
+     */
+    private static int getFirstKind(List<String> directives)
+    {
+        if (directives.isEmpty())
+        {
+            return FIRST_ANY;
+        }
+
+        Integer kind = ApacheLogTokenizer.getFieldKind(directives.get(0));
+        if (kind == null)
+        {
+            return FIRST_ANY;
+        }
+
+        switch (kind)
+        {
+            case ApacheLogTokenizer.FIELD_ADDRESS:
+            case ApacheLogTokenizer.FIELD_STATUS:
+            case ApacheLogTokenizer.FIELD_NUMBER:
+                return FIRST_DIGIT;
+            case ApacheLogTokenizer.FIELD_QUOTED:
+            case ApacheLogTokenizer.FIELD_REQUEST:
+                return FIRST_QUOTE;
+            case ApacheLogTokenizer.FIELD_TIME:
+                return FIRST_BRACKET;
+            default:
+                return FIRST_ANY;
+        }
+    }
+
+    /**
+     * ログの1行の形を求める。<br>
+     * 空白で区切られたフィールド数を上位8bitに、ダブルクォートで始まるフィールドの位置を下位56bitに格納する。
+     * ダブルクォートと角括弧の内側の空白は区切りとして扱わない。
+     *
+     * @param line ログの1行
+     * @return 行の形
+     */
+    static long getLineShape(CharSequence line)
+    {
+        int length = line.length();
+        int units = 1;
+        long quotedMask = 0L;
+        boolean unitStart = true;
+        int pos = 0;
+
+        while (pos < length)
+        {
+            char c = line.charAt(pos);
+            if (unitStart && c == '"')
+            {
+                if (units <= MAX_SHAPE_UNITS)
+                {
+                    quotedMask |= 1L << (units - 1);
+                }
+                pos++;
+                while (pos < length && line.charAt(pos) != '"')
+                {
+                    // エスケープされた文字は読み飛ばす
+                    pos += (line.charAt(pos) == '\\') ? 2 : 1;
+                }
+                pos++;
+                unitStart = false;
+                continue;
+            }
+
+            if (unitStart && c == '[')
+            {
+                while (pos < length && line.charAt(pos) != ']')
+                {
+                    pos++;
+                }
+                pos++;
+                unitStart = false;
+                continue;
+            }
+
+            if (c == ' ')
+            {
+                units++;
+                unitStart = true;
+            }
+            else
+            {
+                unitStart = false;
+            }
+            pos++;
+        }
+
+        if (units > MAX_SHAPE_UNITS)
+        {
+            return NO_SHAPE;
+        }
+        return ((long) units << UNIT_SHIFT) | quotedMask;
+    }
+
+    /**
+     * 行の形と先頭文字が、指定位置のフォーマットに一致し得るかを判定する。
+     *
+     * @param index フォーマットの位置
+     * @param line ログの1行
+     * @param lineShape 行の形
+     * @return 一致し得る場合true
+     */
+    private boolean isCandidate(int index, CharSequence line, long lineShape)
+    {
+        long formatShape = this.shapes[index];
+        if (formatShape == NO_SHAPE)
+        {
+            return true;
+        }
+        if (formatShape != lineShape || line.length() == 0)
+        {
+            return false;
+        }
+
+        char first = line.charAt(0);
+        switch (this.firstKinds[index])
+        {
+            case FIRST_DIGIT:
+                return ApacheLogTokenizer.isDigit(first);
+            case FIRST_QUOTE:
+                return first == '"';
+            case FIRST_BRACKET:
+                return first == '[';
+            default:
+                return true;
+        }
+    }
+
+    /**
+     * ログの1行に一致するフォーマットでパースし、結果を対応する位置のレコードに格納する。
+     *
+     * @param line ログの1行
+     * @param records フォーマットごとの格納先レコード({@link #newRecords()}で生成したもの)
+     * @return パースに使用したフォーマットの位置
+     */
+    public int parse(CharSequence line, LogRecord[] records)
+    {
+        if (this.formats.length == 1)
+        {
+            this.formats[0].parse(line, records[0]);
+            return 0;
+        }
+
+        long lineShape = getLineShape(line);
+        int last = this.lastIndex;
+        if (isCandidate(last, line, lineShape) && this.formats[last].parse(line, records[last]))
+        {
+            return last;
+        }
+
+        for (int index = 0; index < this.formats.length; index++)
+        {
+            if (index != last && isCandidate(index, line, lineShape)
+                    && this.formats[index].parse(line, records[index]))
+            {
+                this.lastIndex = index;
+                return index;
+            }
+        }
+
+        // どのフォーマットにも一致しない行は、単一フォーマット指定時と同様に先頭のフォーマットでパースする
+        this.unmatchedCount.incrementAndGet();
+        this.formats[0].parse(line, records[0]);
+        return 0;
+    }
+
+    /**
+     * byte配列上のログの1行に一致するフォーマットでパースし、結果を対応する位置のレコードに格納する。
+     *
+     * @param buffer ログを格納したbyte配列
+     * @param offset ログの開始位置
+     * @param length ログの長さ
+     * @param charset ログの文字コード
+     * @param records フォーマットごとの格納先レコード({@link #newRecords()}で生成したもの)
+     * @return パースに使用したフォーマットの位置
+     */
+    public int parse(byte[] buffer, int offset, int length, Charset charset, LogRecord[] records)
+    {
+        if (this.formats.length == 1)
+        {
+            this.formats[0].parse(buffer, offset, length, charset, records[0]);
+            return 0;
+        }
+
+        if (AsciiByteSequence.isAsciiCompatible(charset) == false)
+        {
+            return parse(new String(buffer, offset, length, charset), records);
+        }
+
+        AsciiByteSequence line = this.byteSequence.get().wrap(buffer, offset, length, charset);
+        long lineShape = getLineShape(line);
+        int last = this.lastIndex;
+        if (isCandidate(last, line, lineShape)
+                && this.formats[last].parse(buffer, offset, length, charset, records[last]))
+        {
+            return last;
+        }
+
+        for (int index = 0; index < this.formats.length; index++)
+        {
+            if (index != last && isCandidate(index, line, lineShape)
+                    && this.formats[index].parse(buffer, offset, length, charset, records[index]))
+            {
+                this.lastIndex = index;
+                return index;
+            }
+        }
+
+        // どのフォーマットにも一致しない行は、単一フォーマット指定時と同様に先頭のフォーマットでパースする
+        this.unmatchedCount.incrementAndGet();
+        this.formats[0].parse(buffer, offset, length, charset, records[0]);
+        return 0;
+    }
+
+    /**
+     * フォーマットごとの格納先レコードを生成する。
+     *
+     * @return フォーマットと同じ順のレコード
+     */
+    public LogRecord[] newRecords()
+    {
+        LogRecord[] records = new LogRecord[this.formats.length];
+        for (int index = 0; index < records.length; index++)
+        {
+            records[index] = this.formats[index].newRecord();
+        }
+        return records;
+    }
+
+    /**
+     * @param index フォーマットの位置
+     * @return コンパイル済みフォーマット
+     */
+    public CompiledLogFormat getFormat(int index)
+    {
+        return this.formats[index];
+    }
+
+    /**
+     * @return フォーマット数
+     */
+    public int getFormatCount()
+    {
+        return this.formats.length;
+    }
+
+    /**
+     * どのフォーマットにも一致しなかった行数を取得する。
+     *
+     * @return 一致しなかった行数
+     */
+    public long getUnmatchedCount()
+    {
+        return this.unmatchedCount.get();
+    }
+}
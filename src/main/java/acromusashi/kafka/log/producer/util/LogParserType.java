@@ -0,0 +1,73 @@
+/**
+* Copyright (c) Acroquest Technology Co, Ltd. All Rights Reserved.
+* Please read the associated COPYRIGHTS file for more details.
+*
+* THE SOFTWARE IS PROVIDED BY Acroquest Technolog Co., Ltd.,
+* WITHOUT WARRANTY OF ANY KIND, EXPRESS OR IMPLIED, INCLUDING
+* BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+* FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT.
+* IN NO EVENT SHALL THE AUTHORS OR COPYRIGHT HOLDER BE LIABLE FOR ANY
+* CLAIM, DAMAGES SUFFERED BY LICENSEE AS A RESULT OF USING, MODIFYING
+* OR DISTRIBUTING THIS SOFTWARE OR ITS DERIVATIVES.
+*/
+package acromusashi.kafka.log.producer.util;
+
+/**
+ * Apacheログのパース方式
+ *
+ * @author kimura
+ */
+public enum LogParserType
+{
+    /** 正規表現を用いてパースする。 */
+    REGEX("regex"),
+
+    /** 状態遷移によるトークナイザを用いてパースする。扱えない行は正規表現でパースする。 */
+    TOKENIZER("tokenizer");
+
+    /** 設定ファイル上の名称 */
+    private final String configName;
+
+    /**
+     * 設定ファイル上の名称を指定してインスタンスを生成する。
+     *
+     * @param configName 設定ファイル上の名称
+     */
+    private LogParserType(String configName)
+    {
+        this.configName = configName;
+    }
+
+    /**
+     * 設定ファイル上の名称から対応するパース方式を取得する。<br>
+     * 名称が指定されていない場合は正規表現方式を返す。
+     *
+     * @param configName 設定ファイル上の名称
+     * @return パース方式
+     */
+    public static LogParserType fromConfigName(Object configName)
+    {
+        if (configName == null)
+        {
+            return REGEX;
+        }
+
+        for (LogParserType type : values())
+        {
+            if (type.configName.equalsIgnoreCase(configName.toString().trim()))
+            {
+                return type;
+            }
+        }
+
+        throw new IllegalArgumentException("Unknown apachelog.parser : " + configName);
+    }
+
+    /**
+     * @return the configName
+     */
+    public String getConfigName()
+    {
+        return this.configName;
+    }
+}
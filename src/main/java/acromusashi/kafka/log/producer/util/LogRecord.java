@@ -0,0 +1,242 @@
+/**
+* Copyright (c) Acroquest Technology Co, Ltd. All Rights Reserved.
+* Please read the associated COPYRIGHTS file for more details.
+*
+* THE SOFTWARE IS PROVIDED BY Acroquest Technolog Co., Ltd.,
+* WITHOUT WARRANTY OF ANY KIND, EXPRESS OR IMPLIED, INCLUDING
+* BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+* FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT.
+* IN NO EVENT SHALL THE AUTHORS OR COPYRIGHT HOLDER BE LIABLE FOR ANY
+* CLAIM, DAMAGES SUFFERED BY LICENSEE AS A RESULT OF USING, MODIFYING
+* OR DISTRIBUTING THIS SOFTWARE OR ITS DERIVATIVES.
+*/
+package acromusashi.kafka.log.producer.util;
+
+import java.nio.charset.Charset;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import acromusashi.kafka.log.producer.entity.ParsedLog;
+
+/**
+ * パースしたApacheログの1行を保持する、再利用可能なレコード<br>
+ * <br>
+ * フィールドの位置はコンパイル済みフォーマットの個々のフォーマットの位置と一致し、
+ * 値は文字列を生成せずにログの1行上の開始位置・終了位置として保持する。<br>
+ * 1行ごとに{@link #reset(CharSequence)}で初期化して再利用するため、スレッド間で共有せず、スレッドごとに生成すること。
+ *
+ * @author kimura
+ */
+public final class LogRecord
+{
+    /** 値が存在しないことを示す開始位置 */
+    private static final int        ABSENT     = -2;
+
+    /** 値がnullであることを示す開始位置 */
+    private static final int        NULL_VALUE = -1;
+
+    /** フィールド数 */
+    private final int               fieldCount;
+
+    /** フィールド境界。i番目のフィールドの開始位置を[2 * i]、終了位置(排他)を[2 * i + 1]に格納する */
+    private final int[]             bounds;
+
+    /** strftimeのフォーマット */
+    private final String            strftimeFormat;
+
+    /** byte配列上のログを参照する際に再利用するCharSequence */
+    private final AsciiByteSequence byteSequence = new AsciiByteSequence();
+
+    /** ログの1行 */
+    private CharSequence            source;
+
+    /**
+     * フィールド数とstrftimeのフォーマットを指定してインスタンスを生成する。
+     *
+     * @param fieldCount フィールド数
+     * @param strftimeFormat strftimeのフォーマット
+     */
+    public LogRecord(int fieldCount, String strftimeFormat)
+    {
+        this.fieldCount = fieldCount;
+        this.bounds = new int[fieldCount * 2];
+        this.strftimeFormat = strftimeFormat;
+        reset("");
+    }
+
+    /**
+     * ログの1行を設定し、全てのフィールドを値なしの状態に初期化する。
+     *
+     * @param line ログの1行
+     */
+    public void reset(CharSequence line)
+    {
+        this.source = line;
+        for (int index = 0; index < this.fieldCount; index++)
+        {
+            clear(index);
+        }
+    }
+
+    /**
+     * byte配列上のログの1行を設定し、全てのフィールドを値なしの状態に初期化する。
+     *
+     * @param buffer ログを格納したbyte配列
+     * @param offset ログの開始位置
+     * @param length ログの長さ
+     * @param charset ログの文字コード
+     * @return byte配列上のログを参照するCharSequence
+     */
+    AsciiByteSequence reset(byte[] buffer, int offset, int length, Charset charset)
+    {
+        reset(this.byteSequence.wrap(buffer, offset, length, charset));
+        return this.byteSequence;
+    }
+
+    /**
+     * フィールドの値の範囲を設定する。
+     *
+     * @param index フィールドの位置
+     * @param start 開始位置
+     * @param end 終了位置(排他)
+     */
+    void set(int index, int start, int end)
+    {
+        this.bounds[2 * index] = start;
+        this.bounds[2 * index + 1] = end;
+    }
+
+    /**
+     * フィールドの値をnullに設定する。
+     *
+     * @param index フィールドの位置
+     */
+    void setNull(int index)
+    {
+        set(index, NULL_VALUE, NULL_VALUE);
+    }
+
+    /**
+     * フィールドを値なしの状態にする。
+     *
+     * @param index フィールドの位置
+     */
+    void clear(int index)
+    {
+        set(index, ABSENT, ABSENT);
+    }
+
+    /**
+     * トークナイザの出力先としてフィールド境界の配列を取得する。
+     *
+     * @return フィールド境界
+     */
+    int[] getBounds()
+    {
+        return this.bounds;
+    }
+
+    /**
+     * フィールドに値(nullを含む)が設定されているかを判定する。
+     *
+     * @param index フィールドの位置
+     * @return 値が設定されている場合true
+     */
+    public boolean isPresent(int index)
+    {
+        return this.bounds[2 * index] != ABSENT;
+    }
+
+    /**
+     * フィールドの値がnullであるかを判定する。
+     *
+     * @param index フィールドの位置
+     * @return 値がnullの場合true
+     */
+    public boolean isNull(int index)
+    {
+        return this.bounds[2 * index] == NULL_VALUE;
+    }
+
+    /**
+     * @param index フィールドの位置
+     * @return フィールドの開始位置
+     */
+    public int getStart(int index)
+    {
+        return this.bounds[2 * index];
+    }
+
+    /**
+     * @param index フィールドの位置
+     * @return フィールドの終了位置(排他)
+     */
+    public int getEnd(int index)
+    {
+        return this.bounds[2 * index + 1];
+    }
+
+    /**
+     * フィールドの値を文字列として取得する。呼び出しごとに文字列を生成する。
+     *
+     * @param index フィールドの位置
+     * @return フィールドの値。値なし、またはnullの場合はnull
+     */
+    public String getValue(int index)
+    {
+        if (isPresent(index) == false || isNull(index))
+        {
+            return null;
+        }
+
+        if (this.source == this.byteSequence)
+        {
+            return this.byteSequence.decode(getStart(index), getEnd(index));
+        }
+        return this.source.subSequence(getStart(index), getEnd(index)).toString();
+    }
+
+    /**
+     * 値が設定されたフィールドを、個々のフォーマットをキーとしたParsedLogに変換する。
+     *
+     * @param directives 個々のフォーマット
+     * @return ParsedLog
+     */
+    public ParsedLog toParsedLog(List<String> directives)
+    {
+        Map<String, String> parsedMap = new HashMap<String, String>();
+        for (int index = 0; index < this.fieldCount; index++)
+        {
+            if (isPresent(index))
+            {
+                parsedMap.put(directives.get(index), getValue(index));
+            }
+        }
+        return new ParsedLog(parsedMap, this.strftimeFormat);
+    }
+
+    /**
+     * @return the fieldCount
+     */
+    public int getFieldCount()
+    {
+        return this.fieldCount;
+    }
+
+    /**
+     * @return the source
+     */
+    public CharSequence getSource()
+    {
+        return this.source;
+    }
+
+    /**
+     * @return the strftimeFormat
+     */
+    public String getStrftimeFormat()
+    {
+        return this.strftimeFormat;
+    }
+}
@@ -0,0 +1,143 @@
+/**
+* Copyright (c) Acroquest Technology Co, Ltd. All Rights Reserved.
+* Please read the associated COPYRIGHTS file for more details.
+*
+* THE SOFTWARE IS PROVIDED BY Acroquest Technolog Co., Ltd.,
+* WITHOUT WARRANTY OF ANY KIND, EXPRESS OR IMPLIED, INCLUDING
+* BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+* FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT.
+* IN NO EVENT SHALL THE AUTHORS OR COPYRIGHT HOLDER BE LIABLE FOR ANY
+* CLAIM, DAMAGES SUFFERED BY LICENSEE AS A RESULT OF USING, MODIFYING
+* OR DISTRIBUTING THIS SOFTWARE OR ITS DERIVATIVES.
+*/
+package acromusashi.kafka.log.producer.util;
+
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicReferenceArray;
+
+/**
+ * 1つのスレッドが追加し、1つのスレッドが取り出す、容量固定のロックフリーのリングバッファ<br>
+ * <br>
+ * 追加位置と取り出し位置をそれぞれ1つのスレッドのみが更新するため、ロックやCASを使用せず、
+ * 位置の更新は順序付き書き込み(lazySet)のみで行う。相手側の位置は読み込んだ値をキャッシュし、
+ * バッファが満杯(空)に見える場合のみ読み直すため、通常時は相手側のキャッシュラインを参照しない。<br>
+ * {@link #offer(Object)}は追加側の1スレッドから、{@link #poll()}は取り出し側の1スレッドからのみ呼び出すこと。
+ * {@link #size()}はどのスレッドからも呼び出せる(監視用の近似値)。
+ *
+ * @author kimura
+ * @param <E> 要素の型
+ */
+public final class SpscRingBuffer<E>
+{
+    /** 要素 */
+    private final AtomicReferenceArray<E> elements;
+
+    /** 位置から要素の添字を求めるマスク */
+    private final int                     mask;
+
+    /** 次に追加する位置 */
+    private final AtomicLong              tail       = new AtomicLong();
+
+    /** 次に取り出す位置 */
+    private final AtomicLong              head       = new AtomicLong();
+
+    /** 追加側がキャッシュした取り出し位置 */
+    private long                          cachedHead;
+
+    /** 取り出し側がキャッシュした追加位置 */
+    private long                          cachedTail;
+
+    /**
+     * 容量を指定してインスタンスを生成する。容量は2のべき乗に切り上げる。
+     *
+     * @param capacity 容量
+     */
+    public SpscRingBuffer(int capacity)
+    {
+        if (capacity <= 0 || capacity > (1 << 30))
+        {
+            throw new IllegalArgumentException("Capacity must be between 1 and 2^30. : capacity="
+                    + capacity);
+        }
+
+        int size = Integer.highestOneBit(capacity);
+        if (size < capacity)
+        {
+            size <<= 1;
+        }
+        this.elements = new AtomicReferenceArray<>(size);
+        this.mask = size - 1;
+    }
+
+    /**
+     * 要素を追加する。追加側の1スレッドからのみ呼び出すこと。
+     *
+     * @param element 要素(nullは不可)
+     * @return 追加した場合true、満杯の場合false
+     */
+    public boolean offer(E element)
+    {
+        if (element == null)
+        {
+            throw new NullPointerException("element");
+        }
+
+        long currentTail = this.tail.get();
+        if (currentTail - this.cachedHead >= this.elements.length())
+        {
+            this.cachedHead = this.head.get();
+            if (currentTail - this.cachedHead >= this.elements.length())
+            {
+                return false;
+            }
+        }
+
+        this.elements.lazySet((int) currentTail & this.mask, element);
+        this.tail.lazySet(currentTail + 1);
+        return true;
+    }
+
+    /**
+     * 要素を取り出す。取り出し側の1スレッドからのみ呼び出すこと。
+     *
+     * @return 要素。空の場合はnull
+     */
+    public E poll()
+    {
+        long currentHead = this.head.get();
+        if (currentHead >= this.cachedTail)
+        {
+            this.cachedTail = this.tail.get();
+            if (currentHead >= this.cachedTail)
+            {
+                return null;
+            }
+        }
+
+        int index = (int) currentHead & this.mask;
+        E element = this.elements.get(index);
+        this.elements.lazySet(index, null);
+        this.head.lazySet(currentHead + 1);
+        return element;
+    }
+
+    /**
+     * 格納している要素数を取得する。監視用の近似値。
+     *
+     * @return 要素数
+     */
+    public int size()
+    {
+        long currentHead = this.head.get();
+        long currentTail = this.tail.get();
+        return (int) Math.max(0L, Math.min(this.elements.length(), currentTail - currentHead));
+    }
+
+    /**
+     * @return 容量
+     */
+    public int getCapacity()
+    {
+        return this.elements.length();
+    }
+}
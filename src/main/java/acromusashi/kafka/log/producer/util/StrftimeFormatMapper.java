@@ -15,9 +15,10 @@ package acromusashi.kafka.log.producer.util;
 import java.text.DateFormat;
 import java.text.ParseException;
 import java.text.SimpleDateFormat;
-import java.util.Date;
 import java.util.Locale;
 import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
 
 import org.apache.commons.lang3.StringUtils;
 
@@ -36,6 +37,9 @@ public class StrftimeFormatMapper
     /** Key:Strftime、Value:Strftimeに対応するDateFromat用文字列 格納Map */
     private static final Map<String, String> FORMAT_MAPPING;
 
+    /** Key:STRFTimeフォーマットと出力時刻フォーマットの組、Value:時刻変換オブジェクト 格納Map */
+    private static final ConcurrentMap<String, CachedDateConverter> CONVERTER_CACHE = new ConcurrentHashMap<>();
+
     /**
      * インスタンス化を防止するためのコンストラクタ
      */
@@ -97,27 +101,46 @@ public class StrftimeFormatMapper
     public static String convertStftToDateStr(String timeStr, String strfFormatStr,
             String outputFormatStr) throws ParseException
     {
-        DateFormat strfFormat;
+        return getDateConverter(strfFormatStr, outputFormatStr).convert(timeStr);
+    }
+
+    /**
+     * STRFTimeフォーマットと出力時刻フォーマットの組に対応する時刻変換オブジェクトを取得する。<br>
+     * 時刻変換オブジェクトはフォーマットの組ごとに一度だけ生成し、以後は再利用する。
+     * 
+     * @param strfFormatStr STRFTimeフォーマット
+     * @param outputFormatStr 出力時刻フォーマット
+     * @return 時刻変換オブジェクト
+     */
+    public static CachedDateConverter getDateConverter(String strfFormatStr, String outputFormatStr)
+    {
+        String cacheKey = strfFormatStr + "\u0000" + outputFormatStr;
+        CachedDateConverter converter = CONVERTER_CACHE.get(cacheKey);
+        if (converter != null)
+        {
+            return converter;
+        }
+
+        String inputPattern;
 
         // STRFTimeフォーマットが指定されていない場合はApacheのデフォルト形式を使用
         if (StringUtils.isEmpty(strfFormatStr) == true)
         {
-            strfFormat = new SimpleDateFormat(DEFAULT_STRFTIME, Locale.ENGLISH);
-
+            inputPattern = DEFAULT_STRFTIME;
         }
         else
         {
-            // STRFTimeフォーマットからDateFormatオブジェクトに変換する。
-            strfFormat = StrftimeFormatMapper.convertStftToDateFormat(strfFormatStr);
+            // STRFTimeフォーマットからDateFormat形式の文字列に変換する。
+            inputPattern = convertStrfToDateFormatStr(strfFormatStr);
         }
 
-        // STRFTimeフォーマットに対応したDateFormatを用いてDate形式に変換
-        Date logDate = strfFormat.parse(timeStr);
-
-        // 出力時刻フォーマット形式の時刻に変換する
-        DateFormat outputDateFormat = new SimpleDateFormat(outputFormatStr);
-        String returnDate = outputDateFormat.format(logDate);
-        return returnDate;
+        converter = new CachedDateConverter(inputPattern, outputFormatStr);
+        CachedDateConverter previous = CONVERTER_CACHE.putIfAbsent(cacheKey, converter);
+        if (previous != null)
+        {
+            converter = previous;
+        }
+        return converter;
     }
 
     /**
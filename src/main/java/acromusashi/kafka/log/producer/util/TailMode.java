@@ -0,0 +1,76 @@
+/**
+* Copyright (c) Acroquest Technology Co, Ltd. All Rights Reserved.
+* Please read the associated COPYRIGHTS file for more details.
+*
+* THE SOFTWARE IS PROVIDED BY Acroquest Technolog Co., Ltd.,
+* WITHOUT WARRANTY OF ANY KIND, EXPRESS OR IMPLIED, INCLUDING
+* BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+* FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT.
+* IN NO EVENT SHALL THE AUTHORS OR COPYRIGHT HOLDER BE LIABLE FOR ANY
+* CLAIM, DAMAGES SUFFERED BY LICENSEE AS A RESULT OF USING, MODIFYING
+* OR DISTRIBUTING THIS SOFTWARE OR ITS DERIVATIVES.
+*/
+package acromusashi.kafka.log.producer.util;
+
+/**
+ * ログの追尾方式
+ *
+ * @author kimura
+ */
+public enum TailMode
+{
+    /** tail.commandに指定したコマンドを実行し、その出力を読み込む。 */
+    COMMAND("command"),
+
+    /** JVM内でFileChannelを用いてファイルを追尾する。 */
+    NIO("nio"),
+
+    /** JVM内でファイルをメモリマップして追尾する。未読が多い場合の読込を高速化する。 */
+    MMAP("mmap");
+
+    /** 設定ファイル上の名称 */
+    private final String configName;
+
+    /**
+     * 設定ファイル上の名称を指定してインスタンスを生成する。
+     *
+     * @param configName 設定ファイル上の名称
+     */
+    private TailMode(String configName)
+    {
+        this.configName = configName;
+    }
+
+    /**
+     * 設定ファイル上の名称から対応する追尾方式を取得する。<br>
+     * 名称が指定されていない場合はコマンド方式を返す。
+     *
+     * @param configName 設定ファイル上の名称
+     * @return 追尾方式
+     */
+    public static TailMode fromConfigName(Object configName)
+    {
+        if (configName == null)
+        {
+            return COMMAND;
+        }
+
+        for (TailMode mode : values())
+        {
+            if (mode.configName.equalsIgnoreCase(configName.toString().trim()))
+            {
+                return mode;
+            }
+        }
+
+        throw new IllegalArgumentException("Unknown tail.mode : " + configName);
+    }
+
+    /**
+     * @return the configName
+     */
+    public String getConfigName()
+    {
+        return this.configName;
+    }
+}
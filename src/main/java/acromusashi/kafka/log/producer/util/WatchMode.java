@@ -0,0 +1,76 @@
+/**
+* Copyright (c) Acroquest Technology Co, Ltd. All Rights Reserved.
+* Please read the associated COPYRIGHTS file for more details.
+*
+* THE SOFTWARE IS PROVIDED BY Acroquest Technolog Co., Ltd.,
+* WITHOUT WARRANTY OF ANY KIND, EXPRESS OR IMPLIED, INCLUDING
+* BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+* FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT.
+* IN NO EVENT SHALL THE AUTHORS OR COPYRIGHT HOLDER BE LIABLE FOR ANY
+* CLAIM, DAMAGES SUFFERED BY LICENSEE AS A RESULT OF USING, MODIFYING
+* OR DISTRIBUTING THIS SOFTWARE OR ITS DERIVATIVES.
+*/
+package acromusashi.kafka.log.producer.util;
+
+/**
+ * ファイルへの追記の検知方式
+ *
+ * @author kimura
+ */
+public enum WatchMode
+{
+    /** WatchServiceの変更通知のみで検知する。 */
+    WATCH("watch"),
+
+    /** ファイルのサイズと更新日時を定期的に確認して検知する。変更通知が届かないファイルシステム(NFS等)向け。 */
+    POLL("poll"),
+
+    /** 変更通知で検知し、通知が届かないまま追記されていることを検知した場合はポーリングに切り替える。 */
+    AUTO("auto");
+
+    /** 設定ファイル上の名称 */
+    private final String configName;
+
+    /**
+     * 設定ファイル上の名称を指定してインスタンスを生成する。
+     *
+     * @param configName 設定ファイル上の名称
+     */
+    private WatchMode(String configName)
+    {
+        this.configName = configName;
+    }
+
+    /**
+     * 設定ファイル上の名称から対応する検知方式を取得する。<br>
+     * 名称が指定されていない場合は自動切替方式を返す。
+     *
+     * @param configName 設定ファイル上の名称
+     * @return 検知方式
+     */
+    public static WatchMode fromConfigName(Object configName)
+    {
+        if (configName == null)
+        {
+            return AUTO;
+        }
+
+        for (WatchMode mode : values())
+        {
+            if (mode.configName.equalsIgnoreCase(configName.toString().trim()))
+            {
+                return mode;
+            }
+        }
+
+        throw new IllegalArgumentException("Unknown tail.watch.mode : " + configName);
+    }
+
+    /**
+     * @return the configName
+     */
+    public String getConfigName()
+    {
+        return this.configName;
+    }
+}
@@ -17,6 +17,10 @@ import java.io.FileInputStream;
 import java.io.IOException;
 import java.io.InputStream;
 import java.io.InputStreamReader;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.List;
 import java.util.Map;
 
 import org.apache.commons.io.IOUtils;
@@ -71,4 +75,68 @@ public class YamlReadUtil
 
         return configObject;
     }
+
+    /**
+     * 設定値を数値として取得する。
+     * 
+     * @param configMap 設定値格納Map
+     * @param key 設定キー
+     * @param defaultValue 設定されていない場合の値
+     * @return 設定値
+     */
+    public static long getLong(Map<String, Object> configMap, String key, long defaultValue)
+    {
+        Object value = configMap.get(key);
+        if (value == null || value.toString().trim().isEmpty())
+        {
+            return defaultValue;
+        }
+        return Long.parseLong(value.toString().trim());
+    }
+
+    /**
+     * 設定値を文字列として取得する。
+     * 
+     * @param configMap 設定値格納Map
+     * @param key 設定キー
+     * @return 設定値。設定されていない場合、または空文字の場合はnull
+     */
+    public static String getString(Map<String, Object> configMap, String key)
+    {
+        Object value = configMap.get(key);
+        if (value == null || value.toString().trim().isEmpty())
+        {
+            return null;
+        }
+        return value.toString().trim();
+    }
+
+    /**
+     * 設定値を文字列のリストとして取得する。設定値がリストでない場合は、1要素のリストとする。
+     * 
+     * @param configMap 設定値格納Map
+     * @param key 設定キー
+     * @return 設定値のリスト。空文字の要素は含まない
+     */
+    public static List<String> getStringList(Map<String, Object> configMap, String key)
+    {
+        Object value = configMap.get(key);
+        List<String> result = new ArrayList<String>();
+        if (value == null)
+        {
+            return result;
+        }
+
+        Collection<?> values = (value instanceof Collection) ? (Collection<?>) value
+                : Collections.singletonList(value);
+        for (Object element : values)
+        {
+            String text = String.valueOf(element).trim();
+            if (text.length() > 0)
+            {
+                result.add(text);
+            }
+        }
+        return result;
+    }
 }
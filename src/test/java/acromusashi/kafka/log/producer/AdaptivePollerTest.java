@@ -0,0 +1,126 @@
+/**
+* Copyright (c) Acroquest Technology Co, Ltd. All Rights Reserved.
+* Please read the associated COPYRIGHTS file for more details.
+*
+* THE SOFTWARE IS PROVIDED BY Acroquest Technolog Co., Ltd.,
+* WITHOUT WARRANTY OF ANY KIND, EXPRESS OR IMPLIED, INCLUDING
+* BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+* FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT.
+* IN NO EVENT SHALL THE AUTHORS OR COPYRIGHT HOLDER BE LIABLE FOR ANY
+* CLAIM, DAMAGES SUFFERED BY LICENSEE AS A RESULT OF USING, MODIFYING
+* OR DISTRIBUTING THIS SOFTWARE OR ITS DERIVATIVES.
+*/
+package acromusashi.kafka.log.producer;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import java.io.IOException;
+import java.nio.charset.Charset;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+/**
+ * AdaptivePollerクラスのテストコード
+ *
+ * @author kimura
+ */
+public class AdaptivePollerTest
+{
+    /** ログの文字コード */
+    private static final Charset CHARSET = Charset.forName("UTF-8");
+
+    /** 一時ディレクトリ */
+    @Rule
+    public TemporaryFolder       folder  = new TemporaryFolder();
+
+    /**
+     * 変更がない間はポーリング間隔を延ばし、変更を検知すると最小間隔に戻すことを確認する。
+     *
+     * @target {@link AdaptivePoller#check(Path...)}
+     * @test ポーリング間隔が倍々に延び、最大間隔で止まり、追記の検知で最小間隔に戻ること。
+     *    condition:: 最小100ミリ秒、最大400ミリ秒とし、変更のないファイルを4回確認した後、追記して確認する。
+     *    result:: 間隔が200、400、400ミリ秒となり、追記の検知で100ミリ秒に戻り、取得回数と検知回数が記録されること。
+     */
+    @Test
+    public void testCheck_バックオフ()
+    {
+        try
+        {
+            // 準備
+            Path logPath = this.folder.getRoot().toPath().resolve("access_log");
+            Files.write(logPath, "line1\n".getBytes(CHARSET));
+            AdaptivePoller target = new AdaptivePoller(100L, 400L);
+
+            // 実施
+            boolean actualFirst = target.check(logPath);
+            boolean actualIdle = target.check(logPath);
+            long actualInterval1 = target.getIntervalMillis();
+            target.check(logPath);
+            long actualInterval2 = target.getIntervalMillis();
+            target.check(logPath);
+            long actualInterval3 = target.getIntervalMillis();
+            Files.write(logPath, "line2\n".getBytes(CHARSET), StandardOpenOption.APPEND);
+            boolean actualChanged = target.check(logPath);
+            long actualInterval4 = target.getIntervalMillis();
+
+            // 検証
+            assertTrue(actualFirst);
+            assertFalse(actualIdle);
+            assertEquals(200L, actualInterval1);
+            assertEquals(400L, actualInterval2);
+            assertEquals(400L, actualInterval3);
+            assertTrue(actualChanged);
+            assertEquals(100L, actualInterval4);
+            assertEquals(5L, target.getStatCount());
+            assertEquals(1L, target.getDetectionCount());
+        }
+        catch (IOException ex)
+        {
+            throw new AssertionError(ex);
+        }
+    }
+
+    /**
+     * 複数のファイルのいずれかの変更を検知することを確認する。
+     *
+     * @target {@link AdaptivePoller#check(Path...)}
+     * @test ファイルの作成(ディレクトリの変更)と、ファイルの削除を検知すること。
+     *    condition:: ファイルとディレクトリを確認した後、ディレクトリに別のファイルを作成する。その後、ファイルを削除する。
+     *    result:: いずれも変更ありとなること。
+     */
+    @Test
+    public void testCheck_複数ファイル()
+    {
+        try
+        {
+            // 準備
+            Path root = this.folder.getRoot().toPath();
+            Path logPath = root.resolve("access_log");
+            Files.write(logPath, "line1\n".getBytes(CHARSET));
+            AdaptivePoller target = new AdaptivePoller();
+            target.check(logPath, root);
+
+            // 実施
+            Files.write(root.resolve("access_log.1"), "line1\n".getBytes(CHARSET));
+            root.toFile().setLastModified(System.currentTimeMillis() + 2000L);
+            boolean actualCreated = target.check(logPath, root);
+            Files.delete(logPath);
+            boolean actualDeleted = target.check(logPath, root);
+
+            // 検証
+            assertTrue(actualCreated);
+            assertTrue(actualDeleted);
+        }
+        catch (IOException ex)
+        {
+            throw new AssertionError(ex);
+        }
+    }
+}
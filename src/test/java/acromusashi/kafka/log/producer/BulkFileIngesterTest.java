@@ -0,0 +1,175 @@
+/**
+* Copyright (c) Acroquest Technology Co, Ltd. All Rights Reserved.
+* Please read the associated COPYRIGHTS file for more details.
+*
+* THE SOFTWARE IS PROVIDED BY Acroquest Technolog Co., Ltd.,
+* WITHOUT WARRANTY OF ANY KIND, EXPRESS OR IMPLIED, INCLUDING
+* BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+* FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT.
+* IN NO EVENT SHALL THE AUTHORS OR COPYRIGHT HOLDER BE LIABLE FOR ANY
+* CLAIM, DAMAGES SUFFERED BY LICENSEE AS A RESULT OF USING, MODIFYING
+* OR DISTRIBUTING THIS SOFTWARE OR ITS DERIVATIVES.
+*/
+package acromusashi.kafka.log.producer;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import java.io.IOException;
+import java.nio.channels.FileChannel;
+import java.nio.charset.Charset;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.IdentityHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ForkJoinPool;
+
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+/**
+ * BulkFileIngesterクラスのテストコード
+ *
+ * @author kimura
+ */
+public class BulkFileIngesterTest
+{
+    /** ログの文字コード */
+    private static final Charset CHARSET = Charset.forName("UTF-8");
+
+    /** 一時ディレクトリ */
+    @Rule
+    public TemporaryFolder       folder  = new TemporaryFolder();
+
+    /**
+     * ファイルを範囲に分割して読み込んでも、行が欠落・分断されず、範囲内の順序が保たれることを確認する。
+     *
+     * @target {@link BulkFileIngester#ingest(Path)}
+     * @test 全ての行が1回ずつ、範囲内では元の順序でハンドラに渡されること。
+     *    condition:: 長さの異なる20000行(最終行は改行なし)のファイルを、範囲サイズ4096byte、並行数4で読み込む。
+     *    result:: 複数の範囲に分割され、範囲ごとの行は連続した昇順となり、全範囲を合わせると全ての行となること。
+     */
+    @Test
+    public void testIngest_範囲分割()
+    {
+        ForkJoinPool pool = new ForkJoinPool(4);
+        try
+        {
+            // 準備
+            Path path = this.folder.getRoot().toPath().resolve("access_log");
+            StringBuilder content = new StringBuilder();
+            int lineNum = 20000;
+            for (int index = 0; index < lineNum; index++)
+            {
+                content.append(index).append(' ');
+                for (int pad = 0; pad < index % 37; pad++)
+                {
+                    content.append('x');
+                }
+                content.append(index % 5 == 0 ? "\r\n" : "\n");
+            }
+            content.setLength(content.length() - 1);
+            Files.write(path, content.toString().getBytes(CHARSET));
+
+            RangeCollector collector = new RangeCollector();
+            BulkFileIngester target = new BulkFileIngester(pool, collector, 4096L, null);
+
+            // 実施
+            long actual = target.ingest(path);
+
+            // 検証
+            assertEquals(lineNum, actual);
+            assertEquals(lineNum, target.getLineCount());
+            assertEquals(Files.size(path), target.getByteCount());
+            assertTrue(collector.ranges.size() > 1);
+
+            boolean[] found = new boolean[lineNum];
+            for (List<Integer> range : collector.ranges.values())
+            {
+                for (int index = 0; index < range.size(); index++)
+                {
+                    if (index > 0)
+                    {
+                        assertEquals(range.get(index - 1) + 1, (int) range.get(index));
+                    }
+                    found[range.get(index)] = true;
+                }
+            }
+            for (int index = 0; index < lineNum; index++)
+            {
+                assertTrue("line " + index, found[index]);
+            }
+        }
+        catch (IOException ex)
+        {
+            throw new AssertionError(ex);
+        }
+        finally
+        {
+            pool.shutdownNow();
+        }
+    }
+
+    /**
+     * 分割位置が次の改行の直後に揃えられることを確認する。
+     *
+     * @target {@link BulkFileIngester#alignToLine(FileChannel, long, long)}
+     * @test 改行の直後の位置が返されること。
+     *    condition:: 行の途中、改行の直後、改行のない末尾の各位置から探索する。
+     *    result:: 次の改行の直後の位置、改行の直後の位置の次の改行の直後、終了位置が返されること。
+     */
+    @Test
+    public void testAlignToLine_改行位置()
+    {
+        try
+        {
+            // 準備
+            Path path = this.folder.getRoot().toPath().resolve("access_log");
+            Files.write(path, "abc\ndef\nghi".getBytes(CHARSET));
+
+            try (FileChannel channel = FileChannel.open(path, StandardOpenOption.READ))
+            {
+                // 実施・検証
+                assertEquals(4L, BulkFileIngester.alignToLine(channel, 1L, 11L));
+                assertEquals(8L, BulkFileIngester.alignToLine(channel, 4L, 11L));
+                assertEquals(11L, BulkFileIngester.alignToLine(channel, 8L, 11L));
+            }
+        }
+        catch (IOException ex)
+        {
+            throw new AssertionError(ex);
+        }
+    }
+
+    /**
+     * 渡された行を範囲ごとに収集するハンドラ
+     */
+    private static class RangeCollector implements LineHandler
+    {
+        /** 範囲ごとに収集した行番号 */
+        final Map<TailedFile, List<Integer>> ranges = new IdentityHashMap<>();
+
+        @Override
+        public synchronized void handleLine(TailedFile file, byte[] buffer, int start, int end)
+        {
+            String line = new String(buffer, start, end - start, CHARSET);
+            List<Integer> range = this.ranges.get(file);
+            if (range == null)
+            {
+                range = new ArrayList<>();
+                this.ranges.put(file, range);
+            }
+            range.add(Integer.valueOf(line.substring(0, line.indexOf(' '))));
+        }
+
+        @Override
+        public void endBatch(TailedFile file)
+        {
+            // 確定させる行はない
+        }
+    }
+}
@@ -0,0 +1,132 @@
+/**
+* Copyright (c) Acroquest Technology Co, Ltd. All Rights Reserved.
+* Please read the associated COPYRIGHTS file for more details.
+*
+* THE SOFTWARE IS PROVIDED BY Acroquest Technolog Co., Ltd.,
+* WITHOUT WARRANTY OF ANY KIND, EXPRESS OR IMPLIED, INCLUDING
+* BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+* FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT.
+* IN NO EVENT SHALL THE AUTHORS OR COPYRIGHT HOLDER BE LIABLE FOR ANY
+* CLAIM, DAMAGES SUFFERED BY LICENSEE AS A RESULT OF USING, MODIFYING
+* OR DISTRIBUTING THIS SOFTWARE OR ITS DERIVATIVES.
+*/
+package acromusashi.kafka.log.producer;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import java.io.IOException;
+import java.nio.charset.Charset;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.attribute.BasicFileAttributes;
+
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+/**
+ * CheckpointStoreクラスのテストコード
+ *
+ * @author kimura
+ */
+public class CheckpointStoreTest
+{
+    /** ログの文字コード */
+    private static final Charset CHARSET = Charset.forName("UTF-8");
+
+    /** 一時ディレクトリ */
+    @Rule
+    public TemporaryFolder       folder  = new TemporaryFolder();
+
+    /**
+     * 保存した送信済み位置から、再起動後に読込を再開できることを確認する。
+     *
+     * @target {@link CheckpointStore#getResumePosition(Path)}
+     * @test 保存した送信済み位置が再開位置となること。
+     *    condition:: 送信済み位置を記録して保存し、別のインスタンスで読み込む。
+     *    result:: 記録した位置が再開位置となり、記録していないファイルはチェックポイントなしとなること。
+     */
+    @Test
+    public void testGetResumePosition_再起動()
+    {
+        try
+        {
+            // 準備
+            Path root = this.folder.getRoot().toPath();
+            Path logPath = root.resolve("access_log");
+            Path storePath = root.resolve("checkpoint.json");
+            Files.write(logPath, "line1\nline2\n".getBytes(CHARSET));
+            CheckpointStore before = new CheckpointStore(storePath, 1000L);
+            update(before, logPath, 6L);
+            before.close();
+
+            // 実施
+            CheckpointStore target = new CheckpointStore(storePath, 1000L);
+            long actual = target.getResumePosition(logPath);
+            long actualOther = target.getResumePosition(root.resolve("error_log"));
+
+            // 検証
+            assertTrue(Files.exists(storePath));
+            assertEquals(6L, actual);
+            assertEquals(CheckpointStore.NO_CHECKPOINT, actualOther);
+        }
+        catch (IOException ex)
+        {
+            throw new AssertionError(ex);
+        }
+    }
+
+    /**
+     * 送信済み位置の記録後にファイルが置き換えられた場合、先頭から読み込むことを確認する。
+     *
+     * @target {@link CheckpointStore#getResumePosition(Path)}
+     * @test 置き換えられたファイルは先頭が再開位置となること。
+     *    condition:: 送信済み位置を記録した後、先頭の内容が異なるファイルに置き換える。また、送信済み位置より小さいファイルに置き換える。
+     *    result:: いずれも再開位置が0となること。
+     */
+    @Test
+    public void testGetResumePosition_置き換え()
+    {
+        try
+        {
+            // 準備
+            Path root = this.folder.getRoot().toPath();
+            Path logPath = root.resolve("access_log");
+            Files.write(logPath, "line1\nline2\n".getBytes(CHARSET));
+            CheckpointStore target = new CheckpointStore(root.resolve("checkpoint.json"), 1000L);
+            update(target, logPath, 12L);
+
+            // 実施
+            Files.delete(logPath);
+            Files.write(logPath, "other\nline2\n".getBytes(CHARSET));
+            long actualReplaced = target.getResumePosition(logPath);
+            Files.write(logPath, "line1\n".getBytes(CHARSET));
+            long actualTruncated = target.getResumePosition(logPath);
+
+            // 検証
+            assertEquals(0L, actualReplaced);
+            assertEquals(0L, actualTruncated);
+        }
+        catch (IOException ex)
+        {
+            throw new AssertionError(ex);
+        }
+    }
+
+    /**
+     * ログファイルの送信済み位置を記録する。
+     *
+     * @param store 保存先
+     * @param logPath ログファイル
+     * @param offset 送信済み位置
+     * @throws IOException 読込失敗時
+     */
+    private static void update(CheckpointStore store, Path logPath, long offset) throws IOException
+    {
+        byte[] head = new byte[CheckpointStore.FINGERPRINT_SIZE];
+        int headLength = CheckpointStore.readHead(logPath, head);
+        Object fileKey = Files.readAttributes(logPath, BasicFileAttributes.class).fileKey();
+        store.update(logPath, fileKey, offset, head, headLength);
+    }
+}
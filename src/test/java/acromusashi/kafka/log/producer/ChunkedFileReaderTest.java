@@ -0,0 +1,133 @@
+/**
+* Copyright (c) Acroquest Technology Co, Ltd. All Rights Reserved.
+* Please read the associated COPYRIGHTS file for more details.
+*
+* THE SOFTWARE IS PROVIDED BY Acroquest Technolog Co., Ltd.,
+* WITHOUT WARRANTY OF ANY KIND, EXPRESS OR IMPLIED, INCLUDING
+* BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+* FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT.
+* IN NO EVENT SHALL THE AUTHORS OR COPYRIGHT HOLDER BE LIABLE FOR ANY
+* CLAIM, DAMAGES SUFFERED BY LICENSEE AS A RESULT OF USING, MODIFYING
+* OR DISTRIBUTING THIS SOFTWARE OR ITS DERIVATIVES.
+*/
+package acromusashi.kafka.log.producer;
+
+import static org.junit.Assert.assertEquals;
+
+import java.io.IOException;
+import java.nio.channels.FileChannel;
+import java.nio.charset.Charset;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.List;
+
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+/**
+ * ChunkedFileReaderクラスのテストコード
+ *
+ * @author kimura
+ */
+public class ChunkedFileReaderTest
+{
+    /** ログの文字コード */
+    private static final Charset CHARSET = Charset.forName("UTF-8");
+
+    /** 一時ディレクトリ */
+    @Rule
+    public TemporaryFolder       folder  = new TemporaryFolder();
+
+    /**
+     * チャンクサイズを超えるファイルを、行を分断せずに読み込めることを確認する。
+     *
+     * @target {@link ChunkedFileReader#read(FileChannel, long, long, ChunkHandler)}
+     * @test 処理しなかった末尾のbyte列が次のチャンクに含まれること。
+     *    condition:: チャンクサイズの数倍のファイルを、最後の改行までを処理するハンドラで読み込む。最終行は改行なしとする。
+     *    result:: 全ての行が分断されずに渡され、チャンクはチャンクサイズ以下であり、改行なしの最終行の手前が読込終了位置となること。
+     */
+    @Test
+    public void testRead_チャンク分割()
+    {
+        try
+        {
+            // 準備
+            Path logPath = this.folder.getRoot().toPath().resolve("access_log");
+            StringBuilder content = new StringBuilder();
+            for (int index = 0; index < 100; index++)
+            {
+                content.append("line").append(index).append('\n');
+            }
+            int completeLength = content.length();
+            content.append("partial");
+            Files.write(logPath, content.toString().getBytes(CHARSET));
+            ChunkedFileReader target = new ChunkedFileReader(16);
+            LineCollector collector = new LineCollector(16);
+
+            // 実施
+            long actual;
+            try (FileChannel channel = FileChannel.open(logPath, StandardOpenOption.READ))
+            {
+                actual = target.read(channel, 0L, channel.size(), collector);
+            }
+
+            // 検証
+            assertEquals(completeLength, actual);
+            assertEquals(100, collector.lines.size());
+            assertEquals("line0", collector.lines.get(0));
+            assertEquals("line99", collector.lines.get(99));
+            assertEquals(16, collector.maxChunkLength);
+        }
+        catch (IOException ex)
+        {
+            throw new AssertionError(ex);
+        }
+    }
+
+    /**
+     * 読み込んだチャンクの最後の改行までを行として収集するハンドラ
+     */
+    private static class LineCollector implements ChunkHandler
+    {
+        /** 収集した行 */
+        List<String>      lines = new ArrayList<>();
+
+        /** 渡されたチャンクの最大長 */
+        int               maxChunkLength;
+
+        /** チャンクサイズ */
+        private final int chunkSize;
+
+        /**
+         * @param chunkSize チャンクサイズ
+         */
+        LineCollector(int chunkSize)
+        {
+            this.chunkSize = chunkSize;
+        }
+
+        @Override
+        public int handleChunk(byte[] buffer, int offset, int length)
+        {
+            this.maxChunkLength = Math.max(this.maxChunkLength, length);
+            if (length > this.chunkSize)
+            {
+                throw new AssertionError("Chunk too large. : length=" + length);
+            }
+
+            int lineStart = offset;
+            for (int pos = offset; pos < offset + length; pos++)
+            {
+                if (buffer[pos] == '\n')
+                {
+                    this.lines.add(new String(buffer, lineStart, pos - lineStart, CHARSET));
+                    lineStart = pos + 1;
+                }
+            }
+            return lineStart - offset;
+        }
+    }
+}
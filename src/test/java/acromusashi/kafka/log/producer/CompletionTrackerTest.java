@@ -0,0 +1,143 @@
+/**
+* Copyright (c) Acroquest Technology Co, Ltd. All Rights Reserved.
+* Please read the associated COPYRIGHTS file for more details.
+*
+* THE SOFTWARE IS PROVIDED BY Acroquest Technolog Co., Ltd.,
+* WITHOUT WARRANTY OF ANY KIND, EXPRESS OR IMPLIED, INCLUDING
+* BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+* FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT.
+* IN NO EVENT SHALL THE AUTHORS OR COPYRIGHT HOLDER BE LIABLE FOR ANY
+* CLAIM, DAMAGES SUFFERED BY LICENSEE AS A RESULT OF USING, MODIFYING
+* OR DISTRIBUTING THIS SOFTWARE OR ITS DERIVATIVES.
+*/
+package acromusashi.kafka.log.producer;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertSame;
+
+import java.io.IOException;
+import java.nio.charset.Charset;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.attribute.BasicFileAttributes;
+
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+/**
+ * CompletionTrackerクラスのテストコード
+ *
+ * @author kimura
+ */
+public class CompletionTrackerTest
+{
+    /** ログの文字コード */
+    private static final Charset CHARSET = Charset.forName("UTF-8");
+
+    /** 一時ディレクトリ */
+    @Rule
+    public TemporaryFolder       folder  = new TemporaryFolder();
+
+    /**
+     * 送信開始順と異なる順に完了した場合、先頭から連続して完了した位置のみを記録することを確認する。
+     *
+     * @target {@link CompletionTracker#complete(CompletionTracker.PendingBatch, Exception)}
+     * @test 前のまとまりが完了するまで、後のまとまりの送信済み位置が記録されないこと。
+     *    condition:: 3つのまとまりを登録し、3番目、1番目、2番目の順に完了させる。
+     *    result:: 3番目の完了時は記録されず、1番目の完了時に1番目の位置、2番目の完了時に3番目の位置が記録されること。
+     */
+    @Test
+    public void testComplete_順序()
+    {
+        try
+        {
+            // 準備
+            Path root = this.folder.getRoot().toPath();
+            Path logPath = root.resolve("access_log");
+            Files.write(logPath, "line1\nline2\nline3\n".getBytes(CHARSET));
+            CheckpointStore store = new CheckpointStore(root.resolve("checkpoint.json"), 1000L);
+            CompletionTracker target = new CompletionTracker(store);
+            CompletionTracker.PendingBatch first = target.register(createMark(logPath, 6L));
+            CompletionTracker.PendingBatch second = target.register(createMark(logPath, 12L));
+            CompletionTracker.PendingBatch third = target.register(createMark(logPath, 18L));
+
+            // 実施
+            target.complete(third, null);
+            long afterThird = store.getResumePosition(logPath);
+            target.complete(first, null);
+            long afterFirst = store.getResumePosition(logPath);
+            target.complete(second, null);
+            long afterSecond = store.getResumePosition(logPath);
+
+            // 検証
+            assertEquals(CheckpointStore.NO_CHECKPOINT, afterThird);
+            assertEquals(6L, afterFirst);
+            assertEquals(18L, afterSecond);
+            assertEquals(18L, target.getCommittedMark().getOffset());
+            assertEquals(0, target.getPendingCount());
+            assertNull(target.getFailure());
+            store.close();
+        }
+        catch (IOException ex)
+        {
+            throw new AssertionError(ex);
+        }
+    }
+
+    /**
+     * 失敗したまとまりがある場合、以降の送信済み位置を記録しないことを確認する。
+     *
+     * @target {@link CompletionTracker#complete(CompletionTracker.PendingBatch, Exception)}
+     * @test 失敗の原因が保持され、失敗したまとまり以降の位置が記録されないこと。
+     *    condition:: 2つのまとまりを登録し、1番目を失敗させた後、2番目を完了させる。
+     *    result:: 送信済み位置が記録されず、1番目の失敗の原因が保持されること。
+     */
+    @Test
+    public void testComplete_失敗()
+    {
+        try
+        {
+            // 準備
+            Path root = this.folder.getRoot().toPath();
+            Path logPath = root.resolve("access_log");
+            Files.write(logPath, "line1\nline2\n".getBytes(CHARSET));
+            CheckpointStore store = new CheckpointStore(root.resolve("checkpoint.json"), 1000L);
+            CompletionTracker target = new CompletionTracker(store);
+            CompletionTracker.PendingBatch first = target.register(createMark(logPath, 6L));
+            CompletionTracker.PendingBatch second = target.register(createMark(logPath, 12L));
+            Exception cause = new IllegalStateException("Broker is down.");
+
+            // 実施
+            target.complete(first, cause);
+            target.complete(second, null);
+
+            // 検証
+            assertEquals(CheckpointStore.NO_CHECKPOINT, store.getResumePosition(logPath));
+            assertNull(target.getCommittedMark());
+            assertSame(cause, target.getFailure());
+            store.close();
+        }
+        catch (IOException ex)
+        {
+            throw new AssertionError(ex);
+        }
+    }
+
+    /**
+     * ログファイルの指定位置の送信済み位置を生成する。
+     *
+     * @param logPath ログファイル
+     * @param offset 送信済み位置
+     * @return 送信済み位置
+     * @throws IOException 読込失敗時
+     */
+    private static CheckpointMark createMark(Path logPath, long offset) throws IOException
+    {
+        byte[] head = new byte[CheckpointStore.FINGERPRINT_SIZE];
+        int headLength = CheckpointStore.readHead(logPath, head);
+        Object fileKey = Files.readAttributes(logPath, BasicFileAttributes.class).fileKey();
+        return new CheckpointMark(logPath, fileKey, offset, head, headLength);
+    }
+}
@@ -0,0 +1,259 @@
+/**
+* Copyright (c) Acroquest Technology Co, Ltd. All Rights Reserved.
+* Please read the associated COPYRIGHTS file for more details.
+*
+* THE SOFTWARE IS PROVIDED BY Acroquest Technolog Co., Ltd.,
+* WITHOUT WARRANTY OF ANY KIND, EXPRESS OR IMPLIED, INCLUDING
+* BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+* FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT.
+* IN NO EVENT SHALL THE AUTHORS OR COPYRIGHT HOLDER BE LIABLE FOR ANY
+* CLAIM, DAMAGES SUFFERED BY LICENSEE AS A RESULT OF USING, MODIFYING
+* OR DISTRIBUTING THIS SOFTWARE OR ITS DERIVATIVES.
+*/
+package acromusashi.kafka.log.producer;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.charset.Charset;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.AuxCounters;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.runner.Runner;
+import org.openjdk.jmh.runner.RunnerException;
+import org.openjdk.jmh.runner.options.Options;
+import org.openjdk.jmh.runner.options.OptionsBuilder;
+
+/**
+ * 追記済みのログファイルを読み終えるまでの時間とCPU時間を、tailコマンドを実行する方式、
+ * FileTailInputStreamを用いる方式、MappedFileTailInputStreamを用いる方式で比較するベンチマーク<br>
+ * 1回の実行でログファイル全体を読み込み、改行数を数える。
+ * CPU時間は/proc/self/statから子プロセス分を含めて取得し、計測回数分の合計をcpuMillisとして出力する(Linuxのみ)。<br>
+ * <br>
+ * 実行方法：mvn test-compile 後、本クラスのmainメソッドを実行する。
+ *
+ * @author kimura
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.SingleShotTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 5)
+@Measurement(iterations = 10)
+@Fork(1)
+public class FileTailBenchmark
+{
+    /** ログの行数 */
+    private static final int    LINE_COUNT      = 500000;
+
+    /** 読込サイズ(LinuxLogTailExecutorと同じ) */
+    private static final int    READ_SIZE       = 65536;
+
+    /** メモリマップする窓のサイズ */
+    private static final long   MAP_WINDOW_SIZE = 64L * 1024L * 1024L;
+
+    /** /proc/self/statのクロック刻みの周期(ミリ秒)。一般的なLinuxのUSER_HZ=100とする */
+    private static final long   TICK_MILLIS     = 10L;
+
+    /** ログの1行 */
+    private static final String LOG_LINE        = "127.0.0.1 - - [30/Aug/2013:14:44:00 +0900] \"GET /index.html HTTP/1.1\" 200 2326 1234 0\n";
+
+    /** ログファイル */
+    private Path                logPath;
+
+    /** ログファイルのサイズ */
+    private long                logSize;
+
+    /** 読込用バッファ */
+    private byte[]              buffer;
+
+    /**
+     * CPU時間を出力するカウンタ
+     */
+    @State(Scope.Thread)
+    @AuxCounters(AuxCounters.Type.EVENTS)
+    public static class CpuCounter
+    {
+        /** 消費したCPU時間(ミリ秒) */
+        public long cpuMillis;
+    }
+
+    /**
+     * ログファイルを生成する。
+     *
+     * @throws IOException 生成失敗時
+     */
+    @Setup(Level.Trial)
+    public void setUp() throws IOException
+    {
+        this.logPath = Files.createTempFile("access_log", ".bench");
+        byte[] line = LOG_LINE.getBytes(Charset.forName("UTF-8"));
+        try (OutputStream output = Files.newOutputStream(this.logPath))
+        {
+            for (int index = 0; index < LINE_COUNT; index++)
+            {
+                output.write(line);
+            }
+        }
+        this.logSize = Files.size(this.logPath);
+        this.buffer = new byte[READ_SIZE];
+    }
+
+    /**
+     * ログファイルを削除する。
+     *
+     * @throws IOException 削除失敗時
+     */
+    @TearDown(Level.Trial)
+    public void tearDown() throws IOException
+    {
+        Files.deleteIfExists(this.logPath);
+    }
+
+    /**
+     * tailコマンドを実行し、その出力を読み込む方式。
+     *
+     * @param counter CPU時間のカウンタ
+     * @return 改行数
+     * @throws Exception 実行失敗時
+     */
+    @Benchmark
+    public long subprocess(CpuCounter counter) throws Exception
+    {
+        long cpuStart = readCpuMillis();
+        Process process = new ProcessBuilder("tail", "-n", "+1", this.logPath.toString()).start();
+        long lines = 0;
+        try (InputStream stream = process.getInputStream())
+        {
+            lines = countLines(stream, Long.MAX_VALUE);
+        }
+        process.waitFor();
+        counter.cpuMillis += readCpuMillis() - cpuStart;
+        return lines;
+    }
+
+    /**
+     * FileTailInputStreamでファイルを読み込む方式。
+     *
+     * @param counter CPU時間のカウンタ
+     * @return 改行数
+     * @throws IOException 読込失敗時
+     */
+    @Benchmark
+    public long fileChannel(CpuCounter counter) throws IOException
+    {
+        long cpuStart = readCpuMillis();
+        long lines = 0;
+        try (InputStream stream = new FileTailInputStream(this.logPath, false, 1000L))
+        {
+            lines = countLines(stream, this.logSize);
+        }
+        counter.cpuMillis += readCpuMillis() - cpuStart;
+        return lines;
+    }
+
+    /**
+     * MappedFileTailInputStreamでファイルを読み込む方式。
+     *
+     * @param counter CPU時間のカウンタ
+     * @return 改行数
+     * @throws IOException 読込失敗時
+     */
+    @Benchmark
+    public long mappedFile(CpuCounter counter) throws IOException
+    {
+        long cpuStart = readCpuMillis();
+        long lines = 0;
+        try (InputStream stream = new MappedFileTailInputStream(this.logPath, false, 1000L,
+                MAP_WINDOW_SIZE))
+        {
+            lines = countLines(stream, this.logSize);
+        }
+        counter.cpuMillis += readCpuMillis() - cpuStart;
+        return lines;
+    }
+
+    /**
+     * ストリームの終端、または指定サイズまで読み込み、改行数を数える。
+     *
+     * @param stream ストリーム
+     * @param size 読み込むサイズ
+     * @return 改行数
+     * @throws IOException 読込失敗時
+     */
+    private long countLines(InputStream stream, long size) throws IOException
+    {
+        long lines = 0;
+        long total = 0;
+        int readSize = 0;
+        while (total < size && (readSize = stream.read(this.buffer, 0, this.buffer.length)) != -1)
+        {
+            for (int pos = 0; pos < readSize; pos++)
+            {
+                if (this.buffer[pos] == '\n')
+                {
+                    lines++;
+                }
+            }
+            total += readSize;
+        }
+        return lines;
+    }
+
+    /**
+     * 自プロセスと終了した子プロセスの消費CPU時間(ユーザ+システム)を取得する。
+     *
+     * @return 消費CPU時間(ミリ秒)。取得できない場合は0
+     */
+    private static long readCpuMillis()
+    {
+        File stat = new File("/proc/self/stat");
+        if (stat.exists() == false)
+        {
+            return 0L;
+        }
+
+        try
+        {
+            String content = new String(Files.readAllBytes(stat.toPath()), "US-ASCII");
+            // コマンド名に空白を含む場合があるため、')'以降を区切る(utime、stime、cutime、cstimeは14～17番目)
+            String[] values = content.substring(content.lastIndexOf(')') + 2).split(" ");
+            long ticks = 0L;
+            for (int index = 11; index <= 14; index++)
+            {
+                ticks += Long.parseLong(values[index]);
+            }
+            return ticks * TICK_MILLIS;
+        }
+        catch (IOException ex)
+        {
+            return 0L;
+        }
+    }
+
+    /**
+     * ベンチマークを実行する。
+     *
+     * @param args 起動引数
+     * @throws RunnerException ベンチマーク実行失敗時
+     */
+    public static void main(String... args) throws RunnerException
+    {
+        Options options = new OptionsBuilder().include(FileTailBenchmark.class.getSimpleName()).build();
+        new Runner(options).run();
+    }
+}
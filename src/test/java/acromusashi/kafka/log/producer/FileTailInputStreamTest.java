@@ -0,0 +1,301 @@
+/**
+* Copyright (c) Acroquest Technology Co, Ltd. All Rights Reserved.
+* Please read the associated COPYRIGHTS file for more details.
+*
+* THE SOFTWARE IS PROVIDED BY Acroquest Technolog Co., Ltd.,
+* WITHOUT WARRANTY OF ANY KIND, EXPRESS OR IMPLIED, INCLUDING
+* BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+* FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT.
+* IN NO EVENT SHALL THE AUTHORS OR COPYRIGHT HOLDER BE LIABLE FOR ANY
+* CLAIM, DAMAGES SUFFERED BY LICENSEE AS A RESULT OF USING, MODIFYING
+* OR DISTRIBUTING THIS SOFTWARE OR ITS DERIVATIVES.
+*/
+package acromusashi.kafka.log.producer;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.charset.Charset;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+/**
+ * FileTailInputStreamクラスのテストコード
+ *
+ * @author kimura
+ */
+public class FileTailInputStreamTest
+{
+    /** ログの文字コード */
+    private static final Charset CHARSET = Charset.forName("UTF-8");
+
+    /** 一時ディレクトリ */
+    @Rule
+    public TemporaryFolder       folder  = new TemporaryFolder();
+
+    /**
+     * 末尾から追尾を開始し、追記された内容のみを読み込めることを確認する。
+     *
+     * @target {@link FileTailInputStream#read(byte[], int, int)}
+     * @test 追記された内容のみ読み込めること。
+     *    condition:: 既存の内容があるファイルを末尾から追尾し、2回追記する。
+     *    result:: 既存の内容は読み込まず、追記した内容が順に読み込まれ、読込位置がファイルサイズと一致すること。
+     */
+    @Test
+    public void testRead_追記()
+    {
+        // 準備
+        Path path = this.folder.getRoot().toPath().resolve("access_log");
+        append(path, "old line\n");
+
+        try (FileTailInputStream target = new FileTailInputStream(path, true, 50L))
+        {
+            assertEquals(0, target.available());
+
+            // 実施
+            append(path, "line1\n");
+            String actual1 = readFully(target, 6);
+            append(path, "line2\nline3\n");
+            String actual2 = readFully(target, 12);
+
+            // 検証
+            assertEquals("line1\n", actual1);
+            assertEquals("line2\nline3\n", actual2);
+            assertEquals(Files.size(path), target.getPosition());
+        }
+        catch (IOException ex)
+        {
+            throw new AssertionError(ex);
+        }
+    }
+
+    /**
+     * 読込位置を戻した場合、戻した位置から読み直せることを確認する。
+     *
+     * @target {@link FileTailInputStream#rewind(Object, long)}
+     * @test 同じファイルの位置を指定した場合はその位置から、異なるファイルを指定した場合は先頭から読み直すこと。
+     *    condition:: 2行読み込んだ後に1行目の末尾に戻し、その後、異なるファイルの識別子を指定して戻す。
+     *    result:: 2行目が再度読み込まれ、その後ファイルの先頭から読み込まれること。
+     */
+    @Test
+    public void testRewind_読み直し()
+    {
+        // 準備
+        Path path = this.folder.getRoot().toPath().resolve("access_log");
+        append(path, "line1\nline2\n");
+
+        try (FileTailInputStream target = new FileTailInputStream(path, 0L, 50L))
+        {
+            readFully(target, 12);
+
+            // 実施
+            boolean sameFile = target.rewind(target.getFileKey(), 6L);
+            String actual1 = readFully(target, 6);
+            boolean otherFile = target.rewind(new Object(), 6L);
+            String actual2 = readFully(target, 12);
+
+            // 検証
+            assertTrue(sameFile);
+            assertEquals("line2\n", actual1);
+            assertFalse(otherFile);
+            assertEquals("line1\nline2\n", actual2);
+        }
+        catch (IOException ex)
+        {
+            throw new AssertionError(ex);
+        }
+    }
+
+    /**
+     * 末尾から追尾を開始した時点でファイルが存在しない場合、ファイルを開いた時点の位置まで戻せることを確認する。
+     *
+     * @target {@link FileTailInputStream#getOpenedPosition()}
+     * @test ファイルを開いた時点の位置が取得でき、その位置に戻すと作成前からあった内容は読み込まれないこと。
+     *    condition:: 存在しないファイルを末尾から追尾し、既存の内容があるファイルを配置した後に追記する。
+     *                その後、ファイルを開いた時点の位置に戻して読み直す。
+     *    result:: 開く前は-1、開いた後は既存の内容のサイズが取得でき、追記した内容のみが再度読み込まれること。
+     */
+    @Test
+    public void testGetOpenedPosition_作成前()
+    {
+        // 準備
+        Path path = this.folder.getRoot().toPath().resolve("access_log");
+        Path prepared = this.folder.getRoot().toPath().resolve("prepared_log");
+        append(prepared, "old line\n");
+        ExecutorService executor = Executors.newSingleThreadExecutor();
+
+        try (final FileTailInputStream target = new FileTailInputStream(path, true, 50L))
+        {
+            long beforeOpen = target.getOpenedPosition();
+            Future<String> reading = executor.submit(new Callable<String>() {
+                @Override
+                public String call() throws IOException
+                {
+                    return readFully(target, 6);
+                }
+            });
+            Files.move(prepared, path, StandardCopyOption.ATOMIC_MOVE);
+            Thread.sleep(300L);
+            append(path, "line1\n");
+            String actual1 = reading.get(5L, TimeUnit.SECONDS);
+
+            // 実施
+            long openedPosition = target.getOpenedPosition();
+            target.rewind(null, openedPosition);
+            String actual2 = readFully(target, 6);
+
+            // 検証
+            assertEquals(-1L, beforeOpen);
+            assertEquals("line1\n", actual1);
+            assertEquals(9L, openedPosition);
+            assertEquals("line1\n", actual2);
+        }
+        catch (IOException | InterruptedException | ExecutionException | TimeoutException ex)
+        {
+            throw new AssertionError(ex);
+        }
+        finally
+        {
+            executor.shutdownNow();
+        }
+    }
+
+    /**
+     * ファイルがローテーションされた場合、新しいファイルを先頭から読み込めることを確認する。
+     *
+     * @target {@link FileTailInputStream#read(byte[], int, int)}
+     * @test ローテーション前後の内容を読み込めること。
+     *    condition:: 追尾中のファイルを移動して同名のファイルを作成する。その後、同名のファイルを切り詰める。
+     *    result:: 移動前のファイルの残りと、新しいファイルの内容が順に読み込まれること。切り詰め後は先頭から読み込まれること。
+     */
+    @Test
+    public void testRead_ローテーション()
+    {
+        // 準備
+        File root = this.folder.getRoot();
+        Path path = root.toPath().resolve("access_log");
+        append(path, "");
+
+        try (FileTailInputStream target = new FileTailInputStream(path, false, 50L))
+        {
+            append(path, "before\n");
+            String before = readFully(target, 7);
+
+            // 実施
+            append(path, "rest\n");
+            Files.move(path, root.toPath().resolve("access_log.1"));
+            append(path, "after\n");
+            String rotated = readFully(target, 11);
+
+            Files.write(path, "new\n".getBytes(CHARSET), StandardOpenOption.TRUNCATE_EXISTING);
+            String truncated = readFully(target, 4);
+
+            // 検証
+            assertEquals("before\n", before);
+            assertEquals("rest\nafter\n", rotated);
+            assertEquals("new\n", truncated);
+        }
+        catch (IOException ex)
+        {
+            throw new AssertionError(ex);
+        }
+    }
+
+    /**
+     * メモリマップして読み込む場合に、窓を切り替えながら読み込めることを確認する。
+     *
+     * @target {@link MappedFileTailInputStream#read(byte[], int, int)}
+     * @test 窓の境界をまたいで読み込めること。ローテーション後も読み込めること。
+     *    condition:: 窓のサイズを8byteとし、窓より大きい内容を追記してから読み込む。その後ローテーションする。
+     *    result:: 追記した内容が全て順に読み込まれ、ローテーション後は新しいファイルの内容が読み込まれること。
+     */
+    @Test
+    public void testRead_メモリマップ()
+    {
+        // 準備
+        File root = this.folder.getRoot();
+        Path path = root.toPath().resolve("access_log");
+        append(path, "skipped\n");
+
+        try (FileTailInputStream target = new MappedFileTailInputStream(path, true, 50L, 8L))
+        {
+            // 実施
+            append(path, "line1 mapped\nline2 mapped\n");
+            String actual1 = readFully(target, 26);
+            append(path, "line3\n");
+            String actual2 = readFully(target, 6);
+            Files.move(path, root.toPath().resolve("access_log.1"));
+            append(path, "rotated line\n");
+            String actual3 = readFully(target, 13);
+
+            // 検証
+            assertEquals("line1 mapped\nline2 mapped\n", actual1);
+            assertEquals("line3\n", actual2);
+            assertEquals("rotated line\n", actual3);
+        }
+        catch (IOException ex)
+        {
+            throw new AssertionError(ex);
+        }
+    }
+
+    /**
+     * ファイルに内容を追記する。
+     *
+     * @param path ファイル
+     * @param text 追記する内容
+     */
+    private static void append(Path path, String text)
+    {
+        try
+        {
+            Files.write(path, text.getBytes(CHARSET), StandardOpenOption.CREATE,
+                    StandardOpenOption.APPEND);
+        }
+        catch (IOException ex)
+        {
+            throw new AssertionError(ex);
+        }
+    }
+
+    /**
+     * 指定サイズを読み込むまで読み込む。
+     *
+     * @param stream ストリーム
+     * @param size 読み込むサイズ
+     * @return 読み込んだ内容
+     * @throws IOException 読込失敗時
+     */
+    private static String readFully(InputStream stream, int size) throws IOException
+    {
+        byte[] buffer = new byte[size];
+        int filled = 0;
+        while (filled < size)
+        {
+            int readSize = stream.read(buffer, filled, size - filled);
+            if (readSize < 0)
+            {
+                break;
+            }
+            filled += readSize;
+        }
+        return new String(buffer, 0, filled, CHARSET);
+    }
+}
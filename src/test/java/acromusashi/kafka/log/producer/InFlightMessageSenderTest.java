@@ -0,0 +1,175 @@
+/**
+* Copyright (c) Acroquest Technology Co, Ltd. All Rights Reserved.
+* Please read the associated COPYRIGHTS file for more details.
+*
+* THE SOFTWARE IS PROVIDED BY Acroquest Technolog Co., Ltd.,
+* WITHOUT WARRANTY OF ANY KIND, EXPRESS OR IMPLIED, INCLUDING
+* BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+* FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT.
+* IN NO EVENT SHALL THE AUTHORS OR COPYRIGHT HOLDER BE LIABLE FOR ANY
+* CLAIM, DAMAGES SUFFERED BY LICENSEE AS A RESULT OF USING, MODIFYING
+* OR DISTRIBUTING THIS SOFTWARE OR ITS DERIVATIVES.
+*/
+package acromusashi.kafka.log.producer;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+
+import kafka.producer.KeyedMessage;
+
+import org.junit.Test;
+
+/**
+ * InFlightMessageSenderクラスのテストコード
+ *
+ * @author kimura
+ */
+public class InFlightMessageSenderTest
+{
+    /**
+     * 送信中のまとまりの数が上限に達した場合、空くまで送信を待たせることを確認する。
+     *
+     * @target {@link InFlightMessageSender#send(List, SendCallback)}
+     * @test 上限を超える送信が待たされ、全てのまとまりの完了がコールバックに通知されること。
+     *    condition:: 上限2で、送信先を待機させたまま別スレッドから3つのまとまりを送信し、その後送信先を再開させる。
+     *    result:: 送信中の数が2で止まって待った回数が記録され、再開後に3つの完了が失敗なしで通知されること。
+     */
+    @Test
+    public void testSend_上限()
+    {
+        // 準備
+        final CountDownLatch release = new CountDownLatch(1);
+        final InFlightMessageSender target = new InFlightMessageSender("test", new MessageSink() {
+            @Override
+            public void send(List<KeyedMessage<String, String>> messages)
+            {
+                try
+                {
+                    release.await();
+                }
+                catch (InterruptedException ex)
+                {
+                    Thread.currentThread().interrupt();
+                }
+            }
+        }, 2);
+        final List<Exception> results = Collections.synchronizedList(new ArrayList<Exception>());
+        final SendCallback callback = new SendCallback() {
+            @Override
+            public void onCompletion(Exception exception)
+            {
+                results.add(exception);
+            }
+        };
+        Thread sender = new Thread() {
+            @Override
+            public void run()
+            {
+                try
+                {
+                    for (int index = 0; index < 3; index++)
+                    {
+                        target.send(SpillQueueTest.createMessages("batch" + index, 1), callback);
+                    }
+                }
+                catch (InterruptedException ex)
+                {
+                    Thread.currentThread().interrupt();
+                }
+            }
+        };
+
+        try
+        {
+            // 実施
+            sender.start();
+            long deadline = System.currentTimeMillis() + 5000L;
+            while (target.getBlockedCount() == 0 && System.currentTimeMillis() < deadline)
+            {
+                Thread.sleep(10L);
+            }
+            int inFlight = target.getInFlightCount();
+            release.countDown();
+            sender.join(5000L);
+            target.flush();
+
+            // 検証
+            assertEquals(2, inFlight);
+            assertEquals(1L, target.getBlockedCount());
+            assertEquals(3, results.size());
+            for (Exception result : results)
+            {
+                assertNull(result);
+            }
+            assertEquals(3L, target.getCompletedCount());
+            assertEquals(0, target.getInFlightCount());
+        }
+        catch (InterruptedException ex)
+        {
+            throw new AssertionError(ex);
+        }
+        finally
+        {
+            target.close();
+        }
+    }
+
+    /**
+     * 送信先が失敗した場合、失敗の原因をコールバックに通知することを確認する。
+     *
+     * @target {@link InFlightMessageSender#send(List, SendCallback)}
+     * @test 送信先の例外がコールバックに通知され、送信中の数が戻ること。
+     *    condition:: 常に例外を投げる送信先に1つのまとまりを送信する。
+     *    result:: 送信先の例外がコールバックに通知され、失敗数1が記録されること。
+     */
+    @Test
+    public void testSend_失敗()
+    {
+        // 準備
+        final IllegalStateException cause = new IllegalStateException("Broker is down.");
+        InFlightMessageSender target = new InFlightMessageSender("test", new MessageSink() {
+            @Override
+            public void send(List<KeyedMessage<String, String>> messages)
+            {
+                throw cause;
+            }
+        }, 2);
+        final CountDownLatch completed = new CountDownLatch(1);
+        final Exception[] result = new Exception[1];
+
+        try
+        {
+            // 実施
+            target.send(SpillQueueTest.createMessages("batch", 1), new SendCallback() {
+                @Override
+                public void onCompletion(Exception exception)
+                {
+                    result[0] = exception;
+                    completed.countDown();
+                }
+            });
+            assertTrue(completed.await(5000L, TimeUnit.MILLISECONDS));
+            target.flush();
+
+            // 検証
+            assertEquals(cause, result[0]);
+            assertEquals(1L, target.getFailedCount());
+            assertEquals(0, target.getInFlightCount());
+        }
+        catch (InterruptedException ex)
+        {
+            throw new AssertionError(ex);
+        }
+        finally
+        {
+            target.close();
+        }
+    }
+}
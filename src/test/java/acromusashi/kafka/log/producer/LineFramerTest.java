@@ -0,0 +1,110 @@
+/**
+* Copyright (c) Acroquest Technology Co, Ltd. All Rights Reserved.
+* Please read the associated COPYRIGHTS file for more details.
+*
+* THE SOFTWARE IS PROVIDED BY Acroquest Technolog Co., Ltd.,
+* WITHOUT WARRANTY OF ANY KIND, EXPRESS OR IMPLIED, INCLUDING
+* BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+* FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT.
+* IN NO EVENT SHALL THE AUTHORS OR COPYRIGHT HOLDER BE LIABLE FOR ANY
+* CLAIM, DAMAGES SUFFERED BY LICENSEE AS A RESULT OF USING, MODIFYING
+* OR DISTRIBUTING THIS SOFTWARE OR ITS DERIVATIVES.
+*/
+package acromusashi.kafka.log.producer;
+
+import static org.junit.Assert.assertEquals;
+
+import java.nio.charset.Charset;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+import org.junit.Test;
+
+/**
+ * LineFramerクラスのテストコード
+ *
+ * @author kimura
+ */
+public class LineFramerTest
+{
+    /** ログの文字コード */
+    private static final Charset CHARSET = Charset.forName("UTF-8");
+
+    /**
+     * チャンクの境界で分かれた行を、連結して渡すことを確認する。
+     *
+     * @target {@link LineFramer#frame(byte[], int, int, LineSink)}
+     * @test 行の途中と\r\nの境界がチャンクをまたいでも、1行として渡されること。
+     *    condition:: \r\n区切りのログを、行の途中と\rの直後で分割して順に渡す。
+     *    result:: 分割前と同じ行が渡され、最後の改行なしの行は持ち越されること。
+     */
+    @Test
+    public void testFrame_持ち越し()
+    {
+        // 準備
+        LineFramer target = new LineFramer(64);
+        LineCollector collector = new LineCollector();
+        byte[] chunk1 = "line1\r\nli".getBytes(CHARSET);
+        byte[] chunk2 = "ne2\r".getBytes(CHARSET);
+        byte[] chunk3 = "\nline3\nlin".getBytes(CHARSET);
+
+        // 実施
+        target.frame(chunk1, 0, chunk1.length, collector);
+        target.frame(chunk2, 0, chunk2.length, collector);
+        target.frame(chunk3, 0, chunk3.length, collector);
+        int actualPending = target.getPendingLength();
+        target.flush(collector);
+
+        // 検証
+        assertEquals(Arrays.asList("line1", "line2", "line3", "lin"), collector.lines);
+        assertEquals(3, actualPending);
+        assertEquals(0, target.getPendingLength());
+        assertEquals(0L, target.getTruncatedCount());
+    }
+
+    /**
+     * 最大行長を超える行を切り詰めることを確認する。
+     *
+     * @target {@link LineFramer#frame(byte[], int, int, LineSink)}
+     * @test 最大行長を超える行が切り詰められ、切り詰めた行数が数えられること。
+     *    condition:: 最大行長を8byteとし、チャンク内で完結する長い行と、複数のチャンクにまたがる長い行を渡す。
+     *    result:: いずれも先頭8byteのみ渡され、残りは読み捨てられ、切り詰めた行数が2となること。
+     */
+    @Test
+    public void testFrame_最大行長()
+    {
+        // 準備
+        LineFramer target = new LineFramer(8);
+        LineCollector collector = new LineCollector();
+        byte[] chunk1 = "0123456789AB\nshort\n01234".getBytes(CHARSET);
+        byte[] chunk2 = "56789".getBytes(CHARSET);
+        byte[] chunk3 = "ABCDEF\nnext\n".getBytes(CHARSET);
+
+        // 実施
+        target.frame(chunk1, 0, chunk1.length, collector);
+        target.frame(chunk2, 0, chunk2.length, collector);
+        int actualPending = target.getPendingLength();
+        target.frame(chunk3, 0, chunk3.length, collector);
+
+        // 検証
+        assertEquals(Arrays.asList("01234567", "short", "01234567", "next"), collector.lines);
+        assertEquals(0, actualPending);
+        assertEquals(2L, target.getTruncatedCount());
+    }
+
+    /**
+     * 渡された行を収集するハンドラ
+     */
+    private static class LineCollector implements LineSink
+    {
+        /** 収集した行 */
+        List<String> lines = new ArrayList<>();
+
+        @Override
+        public void handleLine(byte[] buffer, int start, int end)
+        {
+            this.lines.add(new String(buffer, start, end - start, CHARSET));
+        }
+    }
+}
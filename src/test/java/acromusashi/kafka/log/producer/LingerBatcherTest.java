@@ -0,0 +1,175 @@
+/**
+* Copyright (c) Acroquest Technology Co, Ltd. All Rights Reserved.
+* Please read the associated COPYRIGHTS file for more details.
+*
+* THE SOFTWARE IS PROVIDED BY Acroquest Technolog Co., Ltd.,
+* WITHOUT WARRANTY OF ANY KIND, EXPRESS OR IMPLIED, INCLUDING
+* BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+* FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT.
+* IN NO EVENT SHALL THE AUTHORS OR COPYRIGHT HOLDER BE LIABLE FOR ANY
+* CLAIM, DAMAGES SUFFERED BY LICENSEE AS A RESULT OF USING, MODIFYING
+* OR DISTRIBUTING THIS SOFTWARE OR ITS DERIVATIVES.
+*/
+package acromusashi.kafka.log.producer;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import java.io.IOException;
+import java.nio.charset.Charset;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
+import org.junit.Test;
+
+/**
+ * LingerBatcherクラスのテストコード
+ *
+ * @author kimura
+ */
+public class LingerBatcherTest
+{
+    /** ログの文字コード */
+    private static final Charset CHARSET = Charset.forName("UTF-8");
+
+    /**
+     * 行数とサイズの上限に達したまとまりを渡すことを確認する。
+     *
+     * @target {@link LingerBatcher#endChunk(CheckpointMark)}
+     * @test 上限ごとにまとまりが区切られ、契機ごとの件数が記録されること。
+     *    condition:: 最大10行、最大40byteで、4byteの行を25行、続けて20byteの行を4行追加し、入力を終了する。
+     *    result:: 10行、10行、6行、2行、1行のまとまりが順に送信され、行数の上限2件、サイズの上限2件、終了1件が記録されること。
+     */
+    @Test
+    public void testEndChunk_上限()
+    {
+        // 準備
+        final List<Integer> sizes = Collections.synchronizedList(new ArrayList<Integer>());
+        BatchStatistics statistics = new BatchStatistics();
+        LogPipeline pipeline = createPipeline(sizes, statistics);
+        LingerBatcher target = new LingerBatcher("test", pipeline, 10, 40, 60000L, statistics);
+        pipeline.start();
+
+        try
+        {
+            // 実施
+            for (int index = 0; index < 25; index++)
+            {
+                addLine(target, String.format("%04d", index));
+            }
+            target.endChunk(null);
+            for (int index = 0; index < 4; index++)
+            {
+                addLine(target, String.format("%020d", index));
+            }
+            target.endChunk(null);
+            target.flush();
+            pipeline.finish();
+        }
+        catch (IOException ex)
+        {
+            throw new AssertionError(ex);
+        }
+        finally
+        {
+            pipeline.stop();
+        }
+
+        // 検証
+        assertEquals(5, sizes.size());
+        assertEquals(Integer.valueOf(10), sizes.get(0));
+        assertEquals(Integer.valueOf(10), sizes.get(1));
+        assertEquals(Integer.valueOf(6), sizes.get(2));
+        assertEquals(Integer.valueOf(2), sizes.get(3));
+        assertEquals(Integer.valueOf(1), sizes.get(4));
+        assertEquals(2L, statistics.getFlushCount(BatchStatistics.FLUSH_MESSAGES));
+        assertEquals(2L, statistics.getFlushCount(BatchStatistics.FLUSH_BYTES));
+        assertEquals(1L, statistics.getFlushCount(BatchStatistics.FLUSH_END));
+        assertEquals(15L, statistics.getSizePercentile(100.0));
+    }
+
+    /**
+     * 上限に達していないまとまりを、待機時間の経過後にタイマーが渡すことを確認する。
+     *
+     * @target {@link LingerBatcher#flushIfLingered(long)}
+     * @test 入力が途絶えても、待機時間の経過後にまとまりが送信されること。
+     *    condition:: 最大待機時間50ミリ秒で3行を追加し、入力を終了せずにタイマーの確認を待つ。
+     *    result:: 3行のまとまりが送信され、待機時間の上限1件と、50ミリ秒以上の送信完了までの時間が記録されること。
+     */
+    @Test
+    public void testFlushIfLingered_待機時間経過()
+    {
+        // 準備
+        final List<Integer> sizes = Collections.synchronizedList(new ArrayList<Integer>());
+        BatchStatistics statistics = new BatchStatistics();
+        LogPipeline pipeline = createPipeline(sizes, statistics);
+        LingerBatcher target = new LingerBatcher("test", pipeline, 100, 65536, 50L, statistics);
+        LingerTimer timer = new LingerTimer(1L, 0L);
+        pipeline.start();
+        timer.register(target);
+
+        try
+        {
+            // 実施
+            for (int index = 0; index < 3; index++)
+            {
+                addLine(target, String.valueOf(index));
+            }
+            target.endChunk(null);
+            assertTrue(sizes.isEmpty());
+            long deadline = System.currentTimeMillis() + 5000L;
+            while (sizes.isEmpty() && System.currentTimeMillis() < deadline)
+            {
+                Thread.sleep(10L);
+            }
+        }
+        catch (IOException | InterruptedException ex)
+        {
+            throw new AssertionError(ex);
+        }
+        finally
+        {
+            timer.close();
+            pipeline.stop();
+        }
+
+        // 検証
+        assertEquals(1, sizes.size());
+        assertEquals(Integer.valueOf(3), sizes.get(0));
+        assertEquals(1L, statistics.getFlushCount(BatchStatistics.FLUSH_LINGER));
+        assertTrue(statistics.getLatencyPercentile(100.0) >= 50000L);
+    }
+
+    /**
+     * 送信したまとまりの行数を記録するパイプラインを生成する。
+     *
+     * @param sizes 送信したまとまりの行数の格納先
+     * @param statistics 送信完了を記録する統計
+     * @return パイプライン
+     */
+    private static LogPipeline createPipeline(final List<Integer> sizes,
+            final BatchStatistics statistics)
+    {
+        return new LogPipeline("test", new LogPipelineTest.TextConverter(), new BatchSender() {
+            @Override
+            public void send(MessageBatch batch)
+            {
+                sizes.add(batch.getMessages().size());
+                statistics.recordSent(batch.getFirstLineNanos());
+            }
+        }, 4);
+    }
+
+    /**
+     * 1行を追加する。
+     *
+     * @param target 追加先
+     * @param line 行
+     */
+    private static void addLine(LingerBatcher target, String line)
+    {
+        byte[] bytes = line.getBytes(CHARSET);
+        target.handleLine(bytes, 0, bytes.length);
+    }
+}
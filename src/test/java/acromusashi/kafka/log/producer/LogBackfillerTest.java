@@ -0,0 +1,226 @@
+/**
+* Copyright (c) Acroquest Technology Co, Ltd. All Rights Reserved.
+* Please read the associated COPYRIGHTS file for more details.
+*
+* THE SOFTWARE IS PROVIDED BY Acroquest Technolog Co., Ltd.,
+* WITHOUT WARRANTY OF ANY KIND, EXPRESS OR IMPLIED, INCLUDING
+* BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+* FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT.
+* IN NO EVENT SHALL THE AUTHORS OR COPYRIGHT HOLDER BE LIABLE FOR ANY
+* CLAIM, DAMAGES SUFFERED BY LICENSEE AS A RESULT OF USING, MODIFYING
+* OR DISTRIBUTING THIS SOFTWARE OR ITS DERIVATIVES.
+*/
+package acromusashi.kafka.log.producer;
+
+import static org.junit.Assert.assertEquals;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.charset.Charset;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.zip.GZIPOutputStream;
+
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+/**
+ * LogBackfillerクラスのテストコード
+ *
+ * @author kimura
+ */
+public class LogBackfillerTest
+{
+    /** ログの文字コード */
+    private static final Charset CHARSET = Charset.forName("UTF-8");
+
+    /** 一時ディレクトリ */
+    @Rule
+    public TemporaryFolder       folder  = new TemporaryFolder();
+
+    /**
+     * gzip圧縮したファイルと非圧縮のファイルを、並行して読み込めることを確認する。
+     *
+     * @target {@link LogBackfiller#run()}
+     * @test globに一致する全てのファイルの全ての行がハンドラに渡されること。
+     *    condition:: gzip圧縮したファイル(複数メンバー、最終行は改行なし)と非圧縮のファイルを、ワーカー数2で読み込む。
+     *    result:: 全ての行が渡され、glob対象外のファイルは読み込まれず、進捗が記録されること。
+     */
+    @Test
+    public void testRun_gzip()
+    {
+        try
+        {
+            // 準備
+            Path root = this.folder.getRoot().toPath();
+            StringBuilder expectedContent = new StringBuilder();
+            List<String> expected = new ArrayList<>();
+            for (int index = 0; index < 5000; index++)
+            {
+                expected.add("gzip" + index);
+            }
+            Path gzipPath = root.resolve("access_log.2.gz");
+            try (OutputStream output = new GZIPOutputStream(Files.newOutputStream(gzipPath)))
+            {
+                for (String line : expected.subList(0, 2500))
+                {
+                    expectedContent.append(line).append('\n');
+                }
+                output.write(expectedContent.toString().getBytes(CHARSET));
+            }
+            // 複数メンバーのgzip(ローテート時に追記圧縮されたもの)
+            try (OutputStream output = new GZIPOutputStream(Files.newOutputStream(gzipPath,
+                    StandardOpenOption.APPEND)))
+            {
+                StringBuilder content = new StringBuilder();
+                for (String line : expected.subList(2500, 5000))
+                {
+                    content.append(line).append('\n');
+                }
+                content.setLength(content.length() - 1);
+                output.write(content.toString().getBytes(CHARSET));
+            }
+            Files.write(root.resolve("access_log.1"), "plain1\r\nplain2\n".getBytes(CHARSET));
+            Files.write(root.resolve("error_log.1"), "error\n".getBytes(CHARSET));
+            expected.add("plain1");
+            expected.add("plain2");
+
+            LineCollector collector = new LineCollector();
+            LogBackfiller target = new LogBackfiller(Arrays.asList(root + "/access_log.*"),
+                    collector, 2, 0);
+
+            // 実施
+            target.run();
+
+            // 検証
+            List<String> actual = new ArrayList<>(collector.lines);
+            Collections.sort(actual);
+            Collections.sort(expected);
+            assertEquals(expected, actual);
+            assertEquals(2, target.getFileCount());
+            assertEquals(2, target.getCompletedFileCount());
+            assertEquals(0, target.getFailedFileCount());
+            assertEquals(5002L, target.getLineCount());
+        }
+        catch (IOException ex)
+        {
+            throw new AssertionError(ex);
+        }
+    }
+
+    /**
+     * 送信に失敗した場合に、最後に確定させた位置から読み込み直せることを確認する。
+     *
+     * @target {@link LogBackfiller#run()}
+     * @test 失敗した読込の行を読み込み直し、ファイルの読込を失敗としないこと。
+     *    condition:: 複数回の読込に分かれるファイルを、2回目と3回目の確定が失敗するハンドラで読み込む。
+     *    result:: 全ての行が重複・欠落なく確定され、ファイルの読込が完了すること。
+     */
+    @Test
+    public void testRun_送信失敗()
+    {
+        try
+        {
+            // 準備
+            Path root = this.folder.getRoot().toPath();
+            List<String> expected = new ArrayList<>();
+            StringBuilder content = new StringBuilder();
+            for (int index = 0; index < 20000; index++)
+            {
+                expected.add("line" + index);
+                content.append("line").append(index).append('\n');
+            }
+            Files.write(root.resolve("access_log.1"), content.toString().getBytes(CHARSET));
+
+            FailingCollector collector = new FailingCollector(2, 3);
+            LogBackfiller target = new LogBackfiller(Arrays.asList(root + "/access_log.*"),
+                    collector, 1, 0);
+            target.setRetry(10L, 3);
+
+            // 実施
+            target.run();
+
+            // 検証
+            assertEquals(expected, collector.lines);
+            assertEquals(1, target.getCompletedFileCount());
+            assertEquals(0, target.getFailedFileCount());
+            assertEquals(20000L, target.getLineCount());
+        }
+        catch (IOException ex)
+        {
+            throw new AssertionError(ex);
+        }
+    }
+
+    /**
+     * 渡された行を収集するハンドラ
+     */
+    private static class LineCollector implements LineHandler
+    {
+        /** 収集した行 */
+        final List<String> lines = Collections.synchronizedList(new ArrayList<String>());
+
+        @Override
+        public void handleLine(TailedFile file, byte[] buffer, int start, int end)
+        {
+            this.lines.add(new String(buffer, start, end - start, CHARSET));
+        }
+
+        @Override
+        public void endBatch(TailedFile file)
+        {
+            // 確定させる行はない
+        }
+    }
+
+    /**
+     * 確定時に渡された行を収集し、指定した回の確定を失敗させるハンドラ
+     */
+    private static class FailingCollector implements LineHandler
+    {
+        /** 確定した行 */
+        final List<String>          lines   = new ArrayList<>();
+
+        /** 確定待ちの行 */
+        private final List<String>  pending = new ArrayList<>();
+
+        /** 失敗させる確定の回(1始まり) */
+        private final List<Integer> failAt;
+
+        /** 確定の回数 */
+        private int                 count;
+
+        /**
+         * @param failAt 失敗させる確定の回(1始まり)
+         */
+        FailingCollector(Integer... failAt)
+        {
+            this.failAt = Arrays.asList(failAt);
+        }
+
+        @Override
+        public void handleLine(TailedFile file, byte[] buffer, int start, int end)
+        {
+            this.pending.add(new String(buffer, start, end - start, CHARSET));
+        }
+
+        @Override
+        public void endBatch(TailedFile file)
+        {
+            this.count++;
+            if (this.failAt.contains(this.count))
+            {
+                this.pending.clear();
+                throw new IllegalStateException("Send failed. : count=" + this.count);
+            }
+            this.lines.addAll(this.pending);
+            this.pending.clear();
+        }
+    }
+}
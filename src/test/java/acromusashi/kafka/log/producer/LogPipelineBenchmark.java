@@ -0,0 +1,220 @@
+/**
+* Copyright (c) Acroquest Technology Co, Ltd. All Rights Reserved.
+* Please read the associated COPYRIGHTS file for more details.
+*
+* THE SOFTWARE IS PROVIDED BY Acroquest Technolog Co., Ltd.,
+* WITHOUT WARRANTY OF ANY KIND, EXPRESS OR IMPLIED, INCLUDING
+* BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+* FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT.
+* IN NO EVENT SHALL THE AUTHORS OR COPYRIGHT HOLDER BE LIABLE FOR ANY
+* CLAIM, DAMAGES SUFFERED BY LICENSEE AS A RESULT OF USING, MODIFYING
+* OR DISTRIBUTING THIS SOFTWARE OR ITS DERIVATIVES.
+*/
+package acromusashi.kafka.log.producer;
+
+import java.io.IOException;
+import java.nio.charset.Charset;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+import kafka.producer.KeyedMessage;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OperationsPerInvocation;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.runner.Runner;
+import org.openjdk.jmh.runner.RunnerException;
+import org.openjdk.jmh.runner.options.Options;
+import org.openjdk.jmh.runner.options.OptionsBuilder;
+
+import acromusashi.kafka.log.producer.util.ApacheLogParseUtil;
+import acromusashi.kafka.log.producer.util.CompiledLogFormat;
+import acromusashi.kafka.log.producer.util.JsonLogSerializer;
+import acromusashi.kafka.log.producer.util.KeyedMessageConverter;
+import acromusashi.kafka.log.producer.util.LogFormatSelector;
+import acromusashi.kafka.log.producer.util.LogParserType;
+import acromusashi.kafka.log.producer.util.LogRecord;
+
+/**
+ * LogPipelineの変換段のワーカー数ごとのスループット(lines/sec)を比較するベンチマーク<br>
+ * 読込済みの行のまとまりをパイプラインに渡し、パース・JSON変換を行い、送信段では件数のみを数える。
+ * ワーカー数がCPUコア数以下の範囲では、ワーカー数に応じてスループットが向上する。<br>
+ * <br>
+ * 実行方法：mvn test-compile 後、本クラスのmainメソッドを実行する。
+ *
+ * @author kimura
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class LogPipelineBenchmark
+{
+    /** 1回の実行で渡す行のまとまりの数 */
+    private static final int                   BATCH_COUNT    = 200;
+
+    /** 行のまとまりごとの行数 */
+    private static final int                   BATCH_LINES    = 100;
+
+    /** 1回の実行で渡す行数 */
+    private static final int                   LINES_PER_CALL = BATCH_COUNT * BATCH_LINES;
+
+    /** ベンチマークに使用するログフォーマット */
+    private static final String                LOG_FORMAT     = "%h %l %u %t \"%r\" %>s %b \"%{Referer}i\" \"%{User-Agent}i\" %D %T";
+
+    /** ベンチマークに使用するログ */
+    private static final String                LOG            = "192.168.0.1 - - [30/Aug/2013:14:44:00 +0900] \"GET /index.html?id=1234 HTTP/1.1\" 200 5120 "
+                                                                      + "\"http://example.com/top.html\" \"Mozilla/5.0 (Windows NT 6.1; WOW64) AppleWebKit/537.36\" 500 0";
+
+    /** 日付フォーマット */
+    private static final String                DATE_FORMAT    = "yyyy-MM-dd'T'HH:mm:ss.SSSZ";
+
+    /** ログの文字コード */
+    private static final Charset               CHARSET        = Charset.forName("UTF-8");
+
+    /** 変換段のワーカー数 */
+    @Param({"1", "2", "4", "8"})
+    public int                                 workers;
+
+    /** 読込済みの行のまとまり */
+    private List<LineBatch>                    batches;
+
+    /** コンパイル済みのフォーマットの選択 */
+    private LogFormatSelector                  selector;
+
+    /** フォーマットごとのシリアライザ */
+    private JsonLogSerializer[]                serializers;
+
+    /** ワーカーごとのパース結果の格納先 */
+    private ThreadLocal<LogRecord[]>           records;
+
+    /** 送信したメッセージ数 */
+    private final AtomicLong                   sentCount      = new AtomicLong();
+
+    /**
+     * 行のまとまりとコンバータを生成する。
+     */
+    @Setup
+    public void setUp()
+    {
+        List<CompiledLogFormat> formats = ApacheLogParseUtil.getCompiledLogFormats(
+                Collections.singletonList(LOG_FORMAT), LogParserType.TOKENIZER,
+                Collections.<String> emptyList());
+        this.selector = new LogFormatSelector(formats);
+        this.serializers = JsonLogSerializer.create(this.selector, "host01", DATE_FORMAT, false,
+                false);
+        this.records = new ThreadLocal<LogRecord[]>() {
+            @Override
+            protected LogRecord[] initialValue()
+            {
+                return LogPipelineBenchmark.this.selector.newRecords();
+            }
+        };
+
+        byte[] line = LOG.getBytes(CHARSET);
+        this.batches = new ArrayList<>(BATCH_COUNT);
+        for (int batchIndex = 0; batchIndex < BATCH_COUNT; batchIndex++)
+        {
+            LineBatch batch = new LineBatch(line.length * BATCH_LINES, BATCH_LINES);
+            for (int index = 0; index < BATCH_LINES; index++)
+            {
+                batch.add(line, 0, line.length);
+            }
+            this.batches.add(batch);
+        }
+    }
+
+    /**
+     * 行のまとまりをパイプラインに渡し、全て送信し終えるまで待つ。
+     *
+     * @return 送信したメッセージ数
+     * @throws IOException パイプラインの処理失敗時
+     */
+    @Benchmark
+    @OperationsPerInvocation(LINES_PER_CALL)
+    public long pipeline() throws IOException
+    {
+        LogPipeline target = new LogPipeline("bench", new BatchConverter() {
+            @Override
+            public List<KeyedMessage<String, String>> convert(LineBatch batch)
+            {
+                return convertBatch(batch);
+            }
+        }, new BatchSender() {
+            @Override
+            public void send(MessageBatch batch)
+            {
+                LogPipelineBenchmark.this.sentCount.addAndGet(batch.getMessages().size());
+            }
+        }, LogPipeline.DEFAULT_QUEUE_CAPACITY, this.workers);
+
+        target.start();
+        try
+        {
+            for (LineBatch batch : this.batches)
+            {
+                target.submit(batch);
+            }
+            target.finish();
+        }
+        finally
+        {
+            target.stop();
+        }
+        return this.sentCount.get();
+    }
+
+    /**
+     * 行のまとまりをKafka用メッセージに変換する。
+     *
+     * @param batch 行のまとまり
+     * @return Kafka用メッセージ
+     */
+    private List<KeyedMessage<String, String>> convertBatch(LineBatch batch)
+    {
+        List<KeyedMessage<String, String>> messages = new ArrayList<>(batch.getLineCount());
+        LogRecord[] workerRecords = this.records.get();
+        for (int index = 0; index < batch.getLineCount(); index++)
+        {
+            int start = batch.getLineStart(index);
+            try
+            {
+                messages.add(KeyedMessageConverter.convertToMessage(batch.getData(), start,
+                        batch.getLineEnd(index) - start, CHARSET, "topic", "host01",
+                        this.selector, this.serializers, workerRecords));
+            }
+            catch (Exception ex)
+            {
+                throw new IllegalStateException(ex);
+            }
+        }
+        return messages;
+    }
+
+    /**
+     * ベンチマークを実行する。
+     *
+     * @param args 起動引数
+     * @throws RunnerException ベンチマーク実行失敗時
+     */
+    public static void main(String... args) throws RunnerException
+    {
+        Options options = new OptionsBuilder().include(LogPipelineBenchmark.class.getSimpleName())
+                .build();
+        new Runner(options).run();
+    }
+}
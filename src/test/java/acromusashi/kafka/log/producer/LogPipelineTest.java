@@ -0,0 +1,466 @@
+/**
+* Copyright (c) Acroquest Technology Co, Ltd. All Rights Reserved.
+* Please read the associated COPYRIGHTS file for more details.
+*
+* THE SOFTWARE IS PROVIDED BY Acroquest Technolog Co., Ltd.,
+* WITHOUT WARRANTY OF ANY KIND, EXPRESS OR IMPLIED, INCLUDING
+* BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+* FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT.
+* IN NO EVENT SHALL THE AUTHORS OR COPYRIGHT HOLDER BE LIABLE FOR ANY
+* CLAIM, DAMAGES SUFFERED BY LICENSEE AS A RESULT OF USING, MODIFYING
+* OR DISTRIBUTING THIS SOFTWARE OR ITS DERIVATIVES.
+*/
+package acromusashi.kafka.log.producer;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+import java.io.IOException;
+import java.nio.charset.Charset;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+
+import kafka.producer.KeyedMessage;
+
+import org.junit.Test;
+
+/**
+ * LogPipelineクラスのテストコード
+ *
+ * @author kimura
+ */
+public class LogPipelineTest
+{
+    /** ログの文字コード */
+    private static final Charset CHARSET = Charset.forName("UTF-8");
+
+    /**
+     * 渡した行が、渡した順に変換・送信されることを確認する。
+     *
+     * @target {@link LogPipeline#finish()}
+     * @test 全ての行が渡した順に送信され、送信が遅い間は前段が空きを待つこと。
+     *    condition:: キューの容量2で、10行ずつの200のまとまりを渡し、送信側は200ミリ秒経過するまで待機させる。
+     *    result:: 2000行が順に送信され、読込段が空きを待った回数が記録されること。
+     */
+    @Test
+    public void testFinish_順序()
+    {
+        // 準備
+        final CountDownLatch release = new CountDownLatch(1);
+        final List<String> sent = Collections.synchronizedList(new ArrayList<String>());
+        LogPipeline target = new LogPipeline("test", new TextConverter(), new BatchSender() {
+            @Override
+            public void send(MessageBatch batch)
+            {
+                awaitQuietly(release);
+                for (KeyedMessage<String, String> message : batch.getMessages())
+                {
+                    sent.add(message.message());
+                }
+            }
+        }, 2);
+        target.start();
+        new Thread() {
+            @Override
+            public void run()
+            {
+                sleepQuietly(200L);
+                release.countDown();
+            }
+        }.start();
+
+        try
+        {
+            // 実施
+            for (int batchIndex = 0; batchIndex < 200; batchIndex++)
+            {
+                target.submit(createBatch(batchIndex * 10, 10));
+            }
+            target.finish();
+        }
+        catch (IOException ex)
+        {
+            throw new AssertionError(ex);
+        }
+        finally
+        {
+            target.stop();
+        }
+
+        // 検証
+        assertEquals(2000, sent.size());
+        for (int index = 0; index < 2000; index++)
+        {
+            assertEquals(String.valueOf(index), sent.get(index));
+        }
+        assertEquals(200L, target.getSentBatchCount());
+        assertEquals(2000L, target.getSentMessageCount());
+        assertTrue(target.getReadBlockedCount() > 0);
+        assertEquals(0, target.getParseQueueDepth());
+        assertEquals(0, target.getSendQueueDepth());
+    }
+
+    /**
+     * 変換段のワーカーが複数の場合も、渡した順に送信されることを確認する。
+     *
+     * @target {@link LogPipeline#finish()}
+     * @test 変換の完了順によらず、全ての行が渡した順に送信されること。
+     *    condition:: ワーカー数4で、まとまりごとに変換時間が異なるコンバータを指定し、5行ずつの100のまとまりを渡す。
+     *    result:: 500行が順に送信されること。
+     */
+    @Test
+    public void testFinish_複数ワーカー()
+    {
+        // 準備
+        final List<String> sent = Collections.synchronizedList(new ArrayList<String>());
+        BatchConverter slowConverter = new TextConverter() {
+            @Override
+            public List<KeyedMessage<String, String>> convert(LineBatch batch)
+            {
+                List<KeyedMessage<String, String>> messages = super.convert(batch);
+                // 先に渡したまとまりほど変換に時間がかかる場合がある
+                int first = Integer.parseInt(messages.get(0).message());
+                sleepQuietly((first / 5) % 4 == 0 ? 3L : 0L);
+                return messages;
+            }
+        };
+        LogPipeline target = new LogPipeline("test", slowConverter, new BatchSender() {
+            @Override
+            public void send(MessageBatch batch)
+            {
+                for (KeyedMessage<String, String> message : batch.getMessages())
+                {
+                    sent.add(message.message());
+                }
+            }
+        }, 2, 4);
+        target.start();
+
+        try
+        {
+            // 実施
+            for (int batchIndex = 0; batchIndex < 100; batchIndex++)
+            {
+                target.submit(createBatch(batchIndex * 5, 5));
+            }
+            target.finish();
+        }
+        catch (IOException ex)
+        {
+            throw new AssertionError(ex);
+        }
+        finally
+        {
+            target.stop();
+        }
+
+        // 検証
+        assertEquals(4, target.getParseWorkerCount());
+        assertEquals(500, sent.size());
+        for (int index = 0; index < 500; index++)
+        {
+            assertEquals(String.valueOf(index), sent.get(index));
+        }
+    }
+
+    /**
+     * 送信段で例外が発生した場合、読込段に通知されることを確認する。
+     *
+     * @target {@link LogPipeline#submit(LineBatch)}
+     * @test 送信段の例外が、以後の行の受け渡しでIOExceptionとして通知されること。
+     *    condition:: 送信時に必ず例外を発生させるセンダーを指定し、行のまとまりを渡し続ける。
+     *    result:: IOExceptionが発生し、原因が送信段の例外であること。
+     */
+    @Test
+    public void testSubmit_送信失敗()
+    {
+        // 準備
+        final IllegalStateException sendFailure = new IllegalStateException("broker down");
+        LogPipeline target = new LogPipeline("test", new TextConverter(), new BatchSender() {
+            @Override
+            public void send(MessageBatch batch)
+            {
+                throw sendFailure;
+            }
+        }, 2);
+        target.start();
+
+        try
+        {
+            // 実施
+            for (int batchIndex = 0; batchIndex < 100000; batchIndex++)
+            {
+                target.submit(createBatch(batchIndex, 1));
+            }
+            fail("IOException is expected.");
+        }
+        catch (IOException ex)
+        {
+            // 検証
+            assertEquals(sendFailure, ex.getCause());
+        }
+        finally
+        {
+            target.stop();
+        }
+    }
+
+    /**
+     * 滞留する行の合計サイズが上限を超えないよう、読込段を待たせることを確認する。
+     *
+     * @target {@link LogPipeline#submit(LineBatch)}
+     * @test キューに空きがあっても、滞留する行の合計サイズが上限を超えないこと。
+     *    condition:: 上限10byte、キューの容量64で、4byteのまとまりを50渡し、送信側は200ミリ秒経過するまで待機させる。
+     *    result:: 送信時点の滞留サイズが常に上限以下で、読込段が待った回数が記録され、全ての行が送信されること。
+     */
+    @Test
+    public void testSubmit_サイズ上限()
+    {
+        // 準備
+        final CountDownLatch release = new CountDownLatch(1);
+        final List<Long> queuedBytes = Collections.synchronizedList(new ArrayList<Long>());
+        final LogPipeline[] holder = new LogPipeline[1];
+        LogPipeline target = new LogPipeline("test", new TextConverter(), new BatchSender() {
+            @Override
+            public void send(MessageBatch batch)
+            {
+                awaitQuietly(release);
+                queuedBytes.add(holder[0].getQueuedBytes());
+            }
+        }, 64, 2);
+        holder[0] = target;
+        target.setMaxQueuedBytes(10L);
+        target.start();
+        new Thread() {
+            @Override
+            public void run()
+            {
+                sleepQuietly(200L);
+                release.countDown();
+            }
+        }.start();
+
+        try
+        {
+            // 実施
+            for (int batchIndex = 0; batchIndex < 50; batchIndex++)
+            {
+                target.submit(createBatch(1000 + batchIndex, 1));
+            }
+            target.finish();
+        }
+        catch (IOException ex)
+        {
+            throw new AssertionError(ex);
+        }
+        finally
+        {
+            target.stop();
+        }
+
+        // 検証
+        assertEquals(50, queuedBytes.size());
+        for (Long queued : queuedBytes)
+        {
+            assertTrue(queued <= 10L);
+        }
+        assertTrue(target.getReadBlockedCount() > 0);
+        assertEquals(0L, target.getQueuedBytes());
+    }
+
+    /**
+     * 変換段のワーカーが失敗した場合、終了待ちが停止せずに失敗を通知することを確認する。
+     *
+     * @target {@link LogPipeline#finish()}
+     * @test 送信段が失敗したワーカーのキューを待ち続けず、変換段の例外が通知されること。
+     *    condition:: ワーカー2で4つのまとまりを渡して終了を渡した後に、4つ目のまとまりの変換を失敗させる。
+     *    result:: 終了待ちが完了し、変換段の例外を原因とするIOExceptionが発生すること。
+     */
+    @Test(timeout = 10000L)
+    public void testFinish_変換失敗()
+    {
+        // 準備
+        final CountDownLatch release = new CountDownLatch(1);
+        final IllegalStateException convertFailure = new IllegalStateException("parse error");
+        LogPipeline target = new LogPipeline("test", new TextConverter() {
+            @Override
+            public List<KeyedMessage<String, String>> convert(LineBatch batch)
+            {
+                if (batch.getLineCount() == 1 && "3".equals(new String(batch.getData(), 0,
+                        batch.getByteLength(), CHARSET)))
+                {
+                    awaitQuietly(release);
+                    throw convertFailure;
+                }
+                return super.convert(batch);
+            }
+        }, new BatchSender() {
+            @Override
+            public void send(MessageBatch batch)
+            {
+                // 送信しない
+            }
+        }, 8, 2);
+        target.start();
+        new Thread() {
+            @Override
+            public void run()
+            {
+                sleepQuietly(200L);
+                release.countDown();
+            }
+        }.start();
+
+        try
+        {
+            // 実施
+            for (int batchIndex = 0; batchIndex < 4; batchIndex++)
+            {
+                target.submit(createBatch(batchIndex, 1));
+            }
+            target.finish();
+            fail("IOException is expected.");
+        }
+        catch (IOException ex)
+        {
+            // 検証
+            assertEquals(convertFailure, ex.getCause());
+        }
+        finally
+        {
+            target.stop();
+        }
+    }
+
+    /**
+     * アイドル時の変換段・送信段のスレッドが、時間指定なしでparkし、行を渡すと起こされることを確認する。
+     *
+     * @target {@link LogPipeline#submit(LineBatch)}
+     * @test アイドル時は起こされるまで待機し、行を渡すと送信されること。
+     *    condition:: ワーカー数2で開始して200ミリ秒待った後、10行のまとまりを3つ渡す。
+     *    result:: 待機中の全ての段のスレッドの状態がWAITINGであり、30行が順に送信されること。
+     */
+    @Test
+    public void testSubmit_アイドル()
+    {
+        // 準備
+        final List<String> sent = Collections.synchronizedList(new ArrayList<String>());
+        LogPipeline target = new LogPipeline("idle", new TextConverter(), new BatchSender() {
+            @Override
+            public void send(MessageBatch batch)
+            {
+                for (KeyedMessage<String, String> message : batch.getMessages())
+                {
+                    sent.add(message.message());
+                }
+            }
+        }, 4, 2);
+        target.start();
+        sleepQuietly(200L);
+
+        try
+        {
+            // 実施
+            List<Thread.State> states = new ArrayList<>();
+            for (Thread thread : Thread.getAllStackTraces().keySet())
+            {
+                if (thread.getName().startsWith("idle-"))
+                {
+                    states.add(thread.getState());
+                }
+            }
+            for (int batchIndex = 0; batchIndex < 3; batchIndex++)
+            {
+                target.submit(createBatch(batchIndex * 10, 10));
+            }
+            target.finish();
+
+            // 検証
+            assertEquals(Collections.nCopies(3, Thread.State.WAITING), states);
+            assertEquals(30, sent.size());
+            assertEquals("29", sent.get(29));
+        }
+        catch (IOException ex)
+        {
+            throw new AssertionError(ex);
+        }
+        finally
+        {
+            target.stop();
+        }
+    }
+
+    /**
+     * 連番の行のまとまりを生成する。
+     *
+     * @param first 最初の行の番号
+     * @param lineNum 行数
+     * @return 行のまとまり
+     */
+    private static LineBatch createBatch(int first, int lineNum)
+    {
+        LineBatch batch = new LineBatch(16, 4);
+        for (int index = first; index < first + lineNum; index++)
+        {
+            byte[] line = String.valueOf(index).getBytes(CHARSET);
+            batch.add(line, 0, line.length);
+        }
+        return batch;
+    }
+
+    /**
+     * 待機中の割り込みを無視して待つ。
+     *
+     * @param latch 待機するラッチ
+     */
+    private static void awaitQuietly(CountDownLatch latch)
+    {
+        try
+        {
+            latch.await();
+        }
+        catch (InterruptedException ex)
+        {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    /**
+     * 割り込みを無視して指定時間待つ。
+     *
+     * @param millis 待機時間(ミリ秒)
+     */
+    private static void sleepQuietly(long millis)
+    {
+        try
+        {
+            Thread.sleep(millis);
+        }
+        catch (InterruptedException ex)
+        {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    /**
+     * 行をそのままメッセージに変換するコンバータ
+     */
+    static class TextConverter implements BatchConverter
+    {
+        @Override
+        public List<KeyedMessage<String, String>> convert(LineBatch batch)
+        {
+            List<KeyedMessage<String, String>> messages = new ArrayList<>();
+            for (int index = 0; index < batch.getLineCount(); index++)
+            {
+                int start = batch.getLineStart(index);
+                messages.add(new KeyedMessage<String, String>("topic", new String(batch.getData(),
+                        start, batch.getLineEnd(index) - start, CHARSET)));
+            }
+            return messages;
+        }
+    }
+}
@@ -0,0 +1,170 @@
+/**
+* Copyright (c) Acroquest Technology Co, Ltd. All Rights Reserved.
+* Please read the associated COPYRIGHTS file for more details.
+*
+* THE SOFTWARE IS PROVIDED BY Acroquest Technolog Co., Ltd.,
+* WITHOUT WARRANTY OF ANY KIND, EXPRESS OR IMPLIED, INCLUDING
+* BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+* FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT.
+* IN NO EVENT SHALL THE AUTHORS OR COPYRIGHT HOLDER BE LIABLE FOR ANY
+* CLAIM, DAMAGES SUFFERED BY LICENSEE AS A RESULT OF USING, MODIFYING
+* OR DISTRIBUTING THIS SOFTWARE OR ITS DERIVATIVES.
+*/
+package acromusashi.kafka.log.producer;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import java.io.IOException;
+import java.nio.charset.Charset;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+import kafka.producer.KeyedMessage;
+
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import acromusashi.kafka.log.producer.util.CompiledLogFormat;
+
+/**
+ * MultiFileTailExecutorクラスのテストコード
+ *
+ * @author kimura
+ */
+public class MultiFileTailExecutorTest
+{
+    /** ログの文字コード */
+    private static final Charset CHARSET      = Charset.forName("UTF-8");
+
+    /** 読込完了を待つ最大時間(ミリ秒) */
+    private static final long    WAIT_TIMEOUT = 10000L;
+
+    /** まとまりの最大待機時間(ミリ秒) */
+    private static final long    LINGER       = 300L;
+
+    /** 一時ディレクトリ */
+    @Rule
+    public TemporaryFolder       folder       = new TemporaryFolder();
+
+    /**
+     * 待機時間の上限に達していない行を、タイマーが待機時間の経過後に送信させることを確認する。
+     *
+     * @target {@link MultiFileTailExecutor#flushIfLingered(long)}
+     * @test 複数回に分けて追記した行が1つのまとまりとして、待機時間の経過後に送信されること。
+     *    condition:: 待機時間を300ミリ秒として空のファイルの追尾を開始し、2回に分けて1行ずつ追記する。
+     *    result:: 2行が1回で送信され、最初の追記から送信まで待機時間以上経過していること。契機は待機時間となること。
+     */
+    @Test
+    public void testRun_待機時間()
+    {
+        // 準備
+        Path root = this.folder.getRoot().toPath();
+        Path path = root.resolve("vhost").resolve("access_log");
+        append(path, "");
+        LingerTimer timer = new LingerTimer(LingerTimer.DEFAULT_TICK_INTERVAL, 0L);
+        CollectingExecutor target = new CollectingExecutor(root + "/*/access_log");
+        target.setBatching(500, 1024 * 1024, LINGER);
+        target.setLingerTimer(timer);
+        Thread thread = new Thread(target);
+
+        try
+        {
+            // 実施
+            thread.start();
+            long deadline = System.currentTimeMillis() + WAIT_TIMEOUT;
+            while (target.getTailer().getFileCount() == 0 && System.currentTimeMillis() < deadline)
+            {
+                Thread.sleep(20L);
+            }
+            long startNanos = System.nanoTime();
+            append(path, "a1\n");
+            Thread.sleep(50L);
+            append(path, "a2\n");
+            deadline = System.currentTimeMillis() + WAIT_TIMEOUT;
+            while (target.getBatches().isEmpty() && System.currentTimeMillis() < deadline)
+            {
+                Thread.sleep(20L);
+            }
+            long elapsedMillis = TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - startNanos);
+            Thread.sleep(LINGER);
+
+            // 検証
+            assertEquals(1, target.getBatches().size());
+            assertEquals(2, target.getBatches().get(0).size());
+            assertTrue(target.getBatches().get(0).get(0).message().contains("a1"));
+            assertTrue(target.getBatches().get(0).get(1).message().contains("a2"));
+            assertTrue("elapsed=" + elapsedMillis, elapsedMillis >= LINGER);
+            assertEquals(1L, target.getBatchStatistics().getFlushCount(BatchStatistics.FLUSH_LINGER));
+        }
+        catch (InterruptedException ex)
+        {
+            throw new AssertionError(ex);
+        }
+        finally
+        {
+            target.getTailer().close();
+            timer.close();
+        }
+    }
+
+    /**
+     * ファイルに内容を追記する。
+     *
+     * @param path ファイル
+     * @param text 追記する内容
+     */
+    private static void append(Path path, String text)
+    {
+        try
+        {
+            Files.createDirectories(path.getParent());
+            Files.write(path, text.getBytes(CHARSET), StandardOpenOption.CREATE,
+                    StandardOpenOption.APPEND);
+        }
+        catch (IOException ex)
+        {
+            throw new AssertionError(ex);
+        }
+    }
+
+    /**
+     * Kafkaの代わりに送信したメッセージを保持する追尾
+     */
+    private static class CollectingExecutor extends MultiFileTailExecutor
+    {
+        /** 送信したまとまり */
+        private final List<List<KeyedMessage<String, String>>> batches = Collections
+                .synchronizedList(new ArrayList<List<KeyedMessage<String, String>>>());
+
+        /**
+         * @param glob 追尾するファイルのglob
+         */
+        CollectingExecutor(String glob)
+        {
+            super(Collections.singletonList(glob), "ApacheLog", Collections.singletonList(
+                    CompiledLogFormat.compile("%v")), "yyyy-MM-dd'T'HH:mm:ss.SSSZ", "localhost",
+                    false, false, 2, 1024L * 1024L, 50L, 100L);
+        }
+
+        @Override
+        protected void sendMessages(List<KeyedMessage<String, String>> messageList)
+        {
+            this.batches.add(new ArrayList<>(messageList));
+        }
+
+        /**
+         * @return 送信したまとまり
+         */
+        List<List<KeyedMessage<String, String>>> getBatches()
+        {
+            return this.batches;
+        }
+    }
+}
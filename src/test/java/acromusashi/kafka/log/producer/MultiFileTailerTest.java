@@ -0,0 +1,285 @@
+/**
+* Copyright (c) Acroquest Technology Co, Ltd. All Rights Reserved.
+* Please read the associated COPYRIGHTS file for more details.
+*
+* THE SOFTWARE IS PROVIDED BY Acroquest Technolog Co., Ltd.,
+* WITHOUT WARRANTY OF ANY KIND, EXPRESS OR IMPLIED, INCLUDING
+* BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+* FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT.
+* IN NO EVENT SHALL THE AUTHORS OR COPYRIGHT HOLDER BE LIABLE FOR ANY
+* CLAIM, DAMAGES SUFFERED BY LICENSEE AS A RESULT OF USING, MODIFYING
+* OR DISTRIBUTING THIS SOFTWARE OR ITS DERIVATIVES.
+*/
+package acromusashi.kafka.log.producer;
+
+import static org.junit.Assert.assertEquals;
+
+import java.io.IOException;
+import java.nio.charset.Charset;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.CopyOnWriteArrayList;
+
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+/**
+ * MultiFileTailerクラスのテストコード
+ *
+ * @author kimura
+ */
+public class MultiFileTailerTest
+{
+    /** ログの文字コード */
+    private static final Charset CHARSET      = Charset.forName("UTF-8");
+
+    /** 読込完了を待つ最大時間(ミリ秒) */
+    private static final long    WAIT_TIMEOUT = 10000L;
+
+    /** 一時ディレクトリ */
+    @Rule
+    public TemporaryFolder       folder       = new TemporaryFolder();
+
+    /**
+     * globに一致するファイルを取得できることを確認する。
+     *
+     * @target {@link MultiFileTailer#findFiles(String)}
+     * @test 一致するファイルのみ取得できること。
+     *    condition:: 3つのディレクトリにaccess_logとerror_logを作成し、"*&#47;access_log"で取得する。
+     *    result:: 3つのaccess_logのみ取得できること。
+     */
+    @Test
+    public void testFindFiles_glob()
+    {
+        // 準備
+        Path root = this.folder.getRoot().toPath();
+        for (String vhost : new String[]{"a.example.com", "b.example.com", "c.example.com"})
+        {
+            append(root.resolve(vhost).resolve("access_log"), "");
+            append(root.resolve(vhost).resolve("error_log"), "");
+        }
+
+        // 実施
+        List<Path> actual = new ArrayList<>(MultiFileTailer.findFiles(root + "/*/access_log"));
+
+        // 検証
+        Collections.sort(actual);
+        assertEquals(3, actual.size());
+        assertEquals(root.resolve("a.example.com").resolve("access_log"), actual.get(0));
+        assertEquals(root.resolve("c.example.com").resolve("access_log"), actual.get(2));
+    }
+
+    /**
+     * 複数ファイルへの追記を、読込予算を超える場合も含めて全て読み込めることを確認する。
+     *
+     * @target {@link MultiFileTailer#run()}
+     * @test 全てのファイルの追記が順に読み込まれること。
+     *    condition:: 読込予算を64byteとし、起動時に存在する2ファイルのうち1ファイルに多数の行を追記する。起動後に3ファイル目を作成する。
+     *    result:: 起動前の内容は読み込まず、起動後の追記は全て順に読み込まれること。起動後に作成したファイルは先頭から読み込まれること。
+     */
+    @Test
+    public void testRun_複数ファイル()
+    {
+        // 準備
+        Path root = this.folder.getRoot().toPath();
+        Path hot = root.resolve("hot").resolve("access_log");
+        Path cold = root.resolve("cold").resolve("access_log");
+        append(hot, "old\n");
+        append(cold, "old\n");
+
+        CollectingHandler handler = new CollectingHandler();
+        MultiFileTailer target = new MultiFileTailer(
+                Collections.singletonList(root + "/*/access_log"), handler, 2, 64L, 50L, 100L);
+        Thread thread = new Thread(target);
+
+        try
+        {
+            // 実施
+            thread.start();
+            waitFor(target, 2);
+            StringBuilder hotLines = new StringBuilder();
+            for (int index = 0; index < 100; index++)
+            {
+                hotLines.append("hot line ").append(index).append('\n');
+            }
+            append(hot, hotLines.toString());
+            append(cold, "cold line\r\n");
+            Path created = root.resolve("new").resolve("access_log");
+            append(created, "new line\n");
+            waitFor(handler, hot, 100);
+            waitFor(handler, cold, 1);
+            waitFor(handler, created, 1);
+
+            // 検証
+            List<String> hotActual = handler.getLines(hot);
+            assertEquals(100, hotActual.size());
+            assertEquals("hot line 0", hotActual.get(0));
+            assertEquals("hot line 99", hotActual.get(99));
+            assertEquals(Collections.singletonList("cold line"), handler.getLines(cold));
+            assertEquals(Collections.singletonList("new line"), handler.getLines(created));
+        }
+        finally
+        {
+            target.close();
+        }
+    }
+
+    /**
+     * ローテーションで置き換えられる前のファイルへの追記を、切り替え前に読み込めることを確認する。
+     *
+     * @target {@link MultiFileTailer#drain(TailedFile)}
+     * @test 置き換え前のファイルの残りを読み込んでから、新しいファイルを先頭から読み込むこと。
+     *    condition:: 1行読み込んだ後に、元のファイルに1行と改行のない行を追記して別名に変更し、同じ名前で新しいファイルを作成する。
+     *    result:: 元のファイルの残り2行、新しいファイルの1行の順に読み込まれること。
+     */
+    @Test
+    public void testDrain_ローテーション()
+    {
+        // 準備
+        Path path = this.folder.getRoot().toPath().resolve("access_log");
+        append(path, "a1\n");
+        CollectingHandler handler = new CollectingHandler();
+        MultiFileTailer target = new MultiFileTailer(
+                Collections.singletonList(path.toString()), handler, 1, 64L, 50L, 100L);
+        TailedFile file = new TailedFile(path, 0L);
+
+        try
+        {
+            target.drain(file);
+            append(path, "a2\na3");
+            Files.move(path, path.resolveSibling("access_log.1"));
+            append(path, "b1\n");
+
+            // 実施
+            target.drain(file);
+
+            // 検証
+            assertEquals(Arrays.asList("a1", "a2", "a3", "b1"), handler.getLines(path));
+            assertEquals(3L, file.getPosition());
+        }
+        catch (IOException ex)
+        {
+            throw new AssertionError(ex);
+        }
+        finally
+        {
+            target.close();
+        }
+    }
+
+    /**
+     * 追尾するファイル数が指定数になるまで待つ。
+     *
+     * @param tailer 追尾
+     * @param count ファイル数
+     */
+    private static void waitFor(MultiFileTailer tailer, int count)
+    {
+        long deadline = System.currentTimeMillis() + WAIT_TIMEOUT;
+        while (tailer.getFileCount() < count && System.currentTimeMillis() < deadline)
+        {
+            sleep();
+        }
+    }
+
+    /**
+     * ファイルから指定行数を読み込むまで待つ。
+     *
+     * @param handler ハンドラ
+     * @param path ファイル
+     * @param count 行数
+     */
+    private static void waitFor(CollectingHandler handler, Path path, int count)
+    {
+        long deadline = System.currentTimeMillis() + WAIT_TIMEOUT;
+        while (handler.getLines(path).size() < count && System.currentTimeMillis() < deadline)
+        {
+            sleep();
+        }
+    }
+
+    /**
+     * 少し待つ。
+     */
+    private static void sleep()
+    {
+        try
+        {
+            Thread.sleep(20L);
+        }
+        catch (InterruptedException ex)
+        {
+            throw new AssertionError(ex);
+        }
+    }
+
+    /**
+     * ファイルに内容を追記する。
+     *
+     * @param path ファイル
+     * @param text 追記する内容
+     */
+    private static void append(Path path, String text)
+    {
+        try
+        {
+            Files.createDirectories(path.getParent());
+            Files.write(path, text.getBytes(CHARSET), StandardOpenOption.CREATE,
+                    StandardOpenOption.APPEND);
+        }
+        catch (IOException ex)
+        {
+            throw new AssertionError(ex);
+        }
+    }
+
+    /**
+     * 読み込んだ行をファイルごとに保持するハンドラ
+     */
+    private static class CollectingHandler implements LineHandler
+    {
+        /** ファイルごとの読み込んだ行 */
+        private final ConcurrentMap<Path, List<String>> lines = new ConcurrentHashMap<>();
+
+        /**
+         * {@inheritDoc}
+         */
+        @Override
+        public void handleLine(TailedFile file, byte[] buffer, int start, int end)
+        {
+            getLines(file.getPath()).add(new String(buffer, start, end - start, CHARSET));
+        }
+
+        /**
+         * {@inheritDoc}
+         */
+        @Override
+        public void endBatch(TailedFile file)
+        {
+            // 確定処理はない
+        }
+
+        /**
+         * @param path ファイル
+         * @return 読み込んだ行
+         */
+        public List<String> getLines(Path path)
+        {
+            List<String> fileLines = this.lines.get(path);
+            if (fileLines == null)
+            {
+                this.lines.putIfAbsent(path, new CopyOnWriteArrayList<String>());
+                fileLines = this.lines.get(path);
+            }
+            return fileLines;
+        }
+    }
+}
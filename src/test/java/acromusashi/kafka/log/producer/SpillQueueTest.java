@@ -0,0 +1,195 @@
+/**
+* Copyright (c) Acroquest Technology Co, Ltd. All Rights Reserved.
+* Please read the associated COPYRIGHTS file for more details.
+*
+* THE SOFTWARE IS PROVIDED BY Acroquest Technolog Co., Ltd.,
+* WITHOUT WARRANTY OF ANY KIND, EXPRESS OR IMPLIED, INCLUDING
+* BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+* FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT.
+* IN NO EVENT SHALL THE AUTHORS OR COPYRIGHT HOLDER BE LIABLE FOR ANY
+* CLAIM, DAMAGES SUFFERED BY LICENSEE AS A RESULT OF USING, MODIFYING
+* OR DISTRIBUTING THIS SOFTWARE OR ITS DERIVATIVES.
+*/
+package acromusashi.kafka.log.producer;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+import java.io.IOException;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+
+import kafka.producer.KeyedMessage;
+
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+/**
+ * SpillQueueクラスのテストコード
+ *
+ * @author kimura
+ */
+public class SpillQueueTest
+{
+    /** 一時ディレクトリ */
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+
+    /**
+     * 退避したまとまりを、再起動後に続きから取り出せることを確認する。
+     *
+     * @target {@link SpillQueue#peek()}
+     * @test 取り出していないまとまりが、追記した順に取り出せること。
+     *    condition:: 複数のセグメントにまたがるまとまりを追記し、一部を取り出した後に閉じて、別のインスタンスで開く。
+     *    result:: 取り出していないまとまりのみが、追記した順・内容で取り出せること。
+     */
+    @Test
+    public void testPeek_再起動()
+    {
+        try
+        {
+            // 準備
+            Path root = this.folder.getRoot().toPath();
+            SpillQueue before = new SpillQueue(root, 256L, 1024L * 1024L);
+            for (int index = 0; index < 10; index++)
+            {
+                before.append(createMessages("batch" + index, 3));
+            }
+            before.remove(before.peek());
+            before.remove(before.peek());
+            before.close();
+
+            // 実施
+            SpillQueue target = new SpillQueue(root, 256L, 1024L * 1024L);
+            List<String> actual = new ArrayList<>();
+            SpillQueue.SpilledRecord record;
+            while ((record = target.peek()) != null)
+            {
+                List<KeyedMessage<String, String>> messages = record.getMessages();
+                actual.add(messages.get(0).message());
+                assertEquals(3, messages.size());
+                assertEquals("topic", messages.get(2).topic());
+                assertNull(messages.get(2).key());
+                target.remove(record);
+            }
+
+            // 検証
+            assertEquals(8, actual.size());
+            for (int index = 0; index < actual.size(); index++)
+            {
+                assertEquals("batch" + (index + 2) + "-0", actual.get(index));
+            }
+            assertTrue(target.isEmpty());
+            target.close();
+        }
+        catch (IOException ex)
+        {
+            throw new AssertionError(ex);
+        }
+    }
+
+    /**
+     * ディスク使用量が上限を超える場合、古いまとまりから破棄することを確認する。
+     *
+     * @target {@link SpillQueue#append(List)}
+     * @test ディスク使用量が上限を超えず、破棄したまとまりの数とメッセージ数が記録されること。
+     *    condition:: 上限がセグメント2つ分の退避キューに、セグメント4つ分を超えるまとまりを追記する。
+     *    result:: ディスク使用量が上限以下となり、先頭のまとまりが残っているまとまりのうち最も古いものとなること。
+     */
+    @Test
+    public void testAppend_上限超過()
+    {
+        try
+        {
+            // 準備
+            Path root = this.folder.getRoot().toPath();
+            SpillQueue target = new SpillQueue(root, 256L, 512L);
+
+            // 実施
+            int appended = 40;
+            for (int index = 0; index < appended; index++)
+            {
+                target.append(createMessages("batch" + index, 2));
+            }
+
+            // 検証
+            assertTrue(target.getUsedBytes() <= 512L);
+            assertTrue(target.getDroppedRecordCount() > 0);
+            assertEquals(appended, target.getRecordCount() + target.getDroppedRecordCount());
+            assertEquals(target.getDroppedRecordCount() * 2, target.getDroppedMessageCount());
+            assertFalse(target.isEmpty());
+            assertEquals("batch" + target.getDroppedRecordCount() + "-0", target.peek()
+                    .getMessages().get(0).message());
+            target.close();
+        }
+        catch (IOException ex)
+        {
+            throw new AssertionError(ex);
+        }
+    }
+
+    /**
+     * 取り出したまとまりが、送信済みとする前に上限を超えて削除された場合、他のまとまりを取り除かないことを確認する。
+     *
+     * @target {@link SpillQueue#remove(SpillQueue.SpilledRecord)}
+     * @test 削除済みのまとまりの指定では何も取り除かず、送信されたまとまりが破棄数に含まれないこと。
+     *    condition:: 先頭のまとまりを取り出した後、先頭のセグメントが削除されるまで追記し、取り出したまとまりを指定して取り除く。
+     *    result:: 取り除かれず、先頭のまとまりが変わらず、破棄数が削除されたまとまりのうち送信されていないものの数となること。
+     */
+    @Test
+    public void testRemove_取り出し後に削除()
+    {
+        try
+        {
+            // 準備
+            Path root = this.folder.getRoot().toPath();
+            SpillQueue target = new SpillQueue(root, 256L, 512L);
+            target.append(createMessages("batch0", 2));
+            SpillQueue.SpilledRecord sending = target.peek();
+            int appended = 1;
+            while (target.getDroppedRecordCount() == 0)
+            {
+                target.append(createMessages("batch" + appended, 2));
+                appended++;
+            }
+            long dropped = target.getDroppedRecordCount();
+            String head = target.peek().getMessages().get(0).message();
+
+            // 実施
+            boolean removed = target.remove(sending);
+
+            // 検証
+            assertFalse(removed);
+            assertEquals(head, target.peek().getMessages().get(0).message());
+            assertEquals(dropped - 1, target.getDroppedRecordCount());
+            assertEquals((dropped - 1) * 2, target.getDroppedMessageCount());
+            assertEquals(appended, target.getRecordCount() + dropped);
+            target.close();
+        }
+        catch (IOException ex)
+        {
+            throw new AssertionError(ex);
+        }
+    }
+
+    /**
+     * メッセージのまとまりを生成する。
+     *
+     * @param prefix メッセージの接頭辞
+     * @param count メッセージ数
+     * @return メッセージのまとまり
+     */
+    static List<KeyedMessage<String, String>> createMessages(String prefix, int count)
+    {
+        List<KeyedMessage<String, String>> messages = new ArrayList<>();
+        for (int index = 0; index < count; index++)
+        {
+            messages.add(new KeyedMessage<String, String>("topic", null, prefix + "-" + index));
+        }
+        return messages;
+    }
+}
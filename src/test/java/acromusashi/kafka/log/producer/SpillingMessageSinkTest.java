@@ -0,0 +1,178 @@
+/**
+* Copyright (c) Acroquest Technology Co, Ltd. All Rights Reserved.
+* Please read the associated COPYRIGHTS file for more details.
+*
+* THE SOFTWARE IS PROVIDED BY Acroquest Technolog Co., Ltd.,
+* WITHOUT WARRANTY OF ANY KIND, EXPRESS OR IMPLIED, INCLUDING
+* BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+* FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT.
+* IN NO EVENT SHALL THE AUTHORS OR COPYRIGHT HOLDER BE LIABLE FOR ANY
+* CLAIM, DAMAGES SUFFERED BY LICENSEE AS A RESULT OF USING, MODIFYING
+* OR DISTRIBUTING THIS SOFTWARE OR ITS DERIVATIVES.
+*/
+package acromusashi.kafka.log.producer;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+
+import kafka.producer.KeyedMessage;
+
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+/**
+ * SpillingMessageSinkクラスのテストコード
+ *
+ * @author kimura
+ */
+public class SpillingMessageSinkTest
+{
+    /** 一時ディレクトリ */
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+
+    /**
+     * 送信先の停止中のメッセージを退避し、復旧後に送信順を保って再送することを確認する。
+     *
+     * @target {@link SpillingMessageSink#drain()}
+     * @test 全てのまとまりが、送信した順に送信先に届くこと。
+     *    condition:: 送信先が失敗する間にまとまりを送信し、送信先を復旧させてから続けてまとまりを送信する。
+     *    result:: 停止中のまとまりが退避され、再送後に全てのまとまりが送信した順に届くこと。
+     */
+    @Test
+    public void testDrain_復旧()
+    {
+        try
+        {
+            // 準備
+            StubSink stub = new StubSink();
+            SpillQueue queue = new SpillQueue(this.folder.getRoot().toPath(), 4096L,
+                    1024L * 1024L);
+            SpillingMessageSink target = new SpillingMessageSink(stub, queue, 1000L);
+            target.send(SpillQueueTest.createMessages("batch0", 2));
+            stub.failing = true;
+            target.send(SpillQueueTest.createMessages("batch1", 2));
+            target.send(SpillQueueTest.createMessages("batch2", 2));
+            assertEquals(0, target.drain());
+
+            // 実施
+            stub.failing = false;
+            target.send(SpillQueueTest.createMessages("batch3", 2));
+            int drained = target.drain();
+
+            // 検証
+            assertEquals(3L, target.getSpilledCount());
+            assertEquals(3, drained);
+            assertTrue(queue.isEmpty());
+            assertEquals(8, stub.received.size());
+            for (int index = 0; index < 4; index++)
+            {
+                assertEquals("batch" + index + "-0", stub.received.get(index * 2));
+                assertEquals("batch" + index + "-1", stub.received.get(index * 2 + 1));
+            }
+            target.close();
+            queue.close();
+        }
+        catch (IOException ex)
+        {
+            throw new AssertionError(ex);
+        }
+    }
+
+    /**
+     * 複数のスレッドから並行して送信先に送信できることを確認する。
+     *
+     * @target {@link SpillingMessageSink#send(List)}
+     * @test 送信先への送信中に、他のスレッドの送信が待たされないこと。
+     *    condition:: 2つ目の送信が届くまで応答しない送信先に、2つのスレッドから送信する。
+     *    result:: 両方の送信が完了し、退避されないこと。
+     */
+    @Test
+    public void testSend_並行送信()
+    {
+        try
+        {
+            // 準備
+            final CountDownLatch entered = new CountDownLatch(2);
+            MessageSink blocking = new MessageSink() {
+                @Override
+                public void send(List<KeyedMessage<String, String>> messages)
+                {
+                    entered.countDown();
+                    try
+                    {
+                        if (entered.await(5, TimeUnit.SECONDS) == false)
+                        {
+                            throw new IllegalStateException("Sends are serialized.");
+                        }
+                    }
+                    catch (InterruptedException ex)
+                    {
+                        Thread.currentThread().interrupt();
+                    }
+                }
+            };
+            SpillQueue queue = new SpillQueue(this.folder.getRoot().toPath(), 4096L,
+                    1024L * 1024L);
+            final SpillingMessageSink target = new SpillingMessageSink(blocking, queue, 1000L);
+
+            // 実施
+            Thread other = new Thread() {
+                @Override
+                public void run()
+                {
+                    target.send(SpillQueueTest.createMessages("batch1", 1));
+                }
+            };
+            other.start();
+            target.send(SpillQueueTest.createMessages("batch0", 1));
+            other.join();
+
+            // 検証
+            assertEquals(0L, target.getSpilledCount());
+            assertTrue(queue.isEmpty());
+            target.close();
+            queue.close();
+        }
+        catch (IOException | InterruptedException ex)
+        {
+            throw new AssertionError(ex);
+        }
+    }
+
+    /**
+     * 要求に応じて送信に失敗する、送信先の代替
+     */
+    private static class StubSink implements MessageSink
+    {
+        /** 送信に失敗させる場合true */
+        volatile boolean   failing;
+
+        /** 受信したメッセージ */
+        final List<String> received = new ArrayList<>();
+
+        /**
+         * {@inheritDoc}
+         */
+        @Override
+        public void send(List<KeyedMessage<String, String>> messages)
+        {
+            if (this.failing)
+            {
+                throw new IllegalStateException("Destination is down.");
+            }
+
+            for (KeyedMessage<String, String> message : messages)
+            {
+                this.received.add(message.message());
+            }
+        }
+    }
+}
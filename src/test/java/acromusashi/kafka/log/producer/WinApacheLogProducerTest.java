@@ -0,0 +1,276 @@
+/**
+* Copyright (c) Acroquest Technology Co, Ltd. All Rights Reserved.
+* Please read the associated COPYRIGHTS file for more details.
+*
+* THE SOFTWARE IS PROVIDED BY Acroquest Technolog Co., Ltd.,
+* WITHOUT WARRANTY OF ANY KIND, EXPRESS OR IMPLIED, INCLUDING
+* BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+* FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT.
+* IN NO EVENT SHALL THE AUTHORS OR COPYRIGHT HOLDER BE LIABLE FOR ANY
+* CLAIM, DAMAGES SUFFERED BY LICENSEE AS A RESULT OF USING, MODIFYING
+* OR DISTRIBUTING THIS SOFTWARE OR ITS DERIVATIVES.
+*/
+package acromusashi.kafka.log.producer;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import java.io.IOException;
+import java.nio.charset.Charset;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import kafka.producer.KeyedMessage;
+
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+/**
+ * WinApacheLogProducerクラスのテストコード
+ *
+ * @author kimura
+ */
+public class WinApacheLogProducerTest
+{
+    /** ログの文字コード */
+    private static final Charset CHARSET = Charset.forName("UTF-8");
+
+    /** 一時ディレクトリ */
+    @Rule
+    public TemporaryFolder       folder  = new TemporaryFolder();
+
+    /** ログファイルがあるディレクトリ */
+    private Path                 logDir;
+
+    /** 送信先の代替 */
+    private StubSink             stub;
+
+    /** 試験対象 */
+    private WinApacheLogProducer target;
+
+    /**
+     * バーチャルホスト名のみのフォーマットでログを変換し、送信先の代替に送信するよう初期化する。
+     */
+    @Before
+    public void setUp()
+    {
+        this.logDir = this.folder.getRoot().toPath();
+        Map<String, Object> configMap = new HashMap<>();
+        configMap.put("tail.target.dir", this.logDir.toString());
+        configMap.put("kafka.topic", "ApacheLog");
+        configMap.put("apachelog.format", "%v");
+        configMap.put("json.fields", "");
+        configMap.put("jsondate.format", "yyyy-MM-dd'T'HH:mm:ss.SSSZ");
+        configMap.put("send.retry.interval", 10);
+
+        this.stub = new StubSink();
+        this.target = new WinApacheLogProducer();
+        this.target.configure(configMap);
+        this.target.initialize(this.stub);
+    }
+
+    /**
+     * ローテートされた場合、ローテート前のファイルを最後まで送信してから次のファイルに切り替えることを確認する。
+     *
+     * @target {@link WinApacheLogProducer#processChange(Path, List)}
+     * @test ローテート前のファイルの追記分と改行で終わっていない最終行が、次のファイルより先に送信されること。
+     *    condition:: 収集中のファイルに追記し、改行で終わらない行を書き込んだ後、次のファイルを作成する。
+     *    result:: ローテート前のファイルの行、次のファイルの行の順に送信されること。
+     */
+    @Test
+    public void testProcessChange_ローテート()
+    {
+        try
+        {
+            // 準備
+            write("access_00001.log", "a1\na2\n");
+            this.target.processChange(this.logDir, this.target.selectTargetFile(this.logDir));
+            append("access_00001.log", "a3\na4");
+            write("access_00002.log", "b1\n");
+
+            // 実施
+            this.target.processChange(this.logDir, this.target.selectTargetFile(this.logDir));
+
+            // 検証
+            assertHosts(Arrays.asList("a1", "a2", "a3", "a4", "b1"), this.stub.received);
+        }
+        catch (IOException | InterruptedException ex)
+        {
+            throw new AssertionError(ex);
+        }
+    }
+
+    /**
+     * 同名の別のファイルに置き換えられた場合、サイズによらず先頭から読み込むことを確認する。
+     *
+     * @target {@link WinApacheLogProducer#processChange(Path, List)}
+     * @test 置き換え後のファイルの内容が先頭から送信されること。
+     *    condition:: 収集中のファイルを、同じサイズの別のファイルで置き換える。
+     *    result:: 置き換え後のファイルの行が送信されること。
+     */
+    @Test
+    public void testProcessChange_置き換え()
+    {
+        try
+        {
+            // 準備
+            write("access_00001.log", "a1\n");
+            this.target.processChange(this.logDir, this.target.selectTargetFile(this.logDir));
+            write("replacement", "c1\n");
+
+            // 実施
+            Files.move(this.logDir.resolve("replacement"), this.logDir.resolve("access_00001.log"),
+                    StandardCopyOption.REPLACE_EXISTING);
+            this.target.processChange(this.logDir, this.target.selectTargetFile(this.logDir));
+
+            // 検証
+            assertHosts(Arrays.asList("a1", "c1"), this.stub.received);
+        }
+        catch (IOException | InterruptedException ex)
+        {
+            throw new AssertionError(ex);
+        }
+    }
+
+    /**
+     * 切り詰められた場合(copytruncate)、先頭から読み込むことを確認する。
+     *
+     * @target {@link WinApacheLogProducer#processChange(Path, List)}
+     * @test 切り詰め後に書き込まれた内容が先頭から送信されること。
+     *    condition:: 収集中のファイルを切り詰め、読込位置より短い内容を書き込む。
+     *    result:: 切り詰め後の行が送信されること。
+     */
+    @Test
+    public void testProcessChange_切り詰め()
+    {
+        try
+        {
+            // 準備
+            write("access_00001.log", "a1\na2\n");
+            this.target.processChange(this.logDir, this.target.selectTargetFile(this.logDir));
+
+            // 実施
+            write("access_00001.log", "c1\n");
+            this.target.processChange(this.logDir, this.target.selectTargetFile(this.logDir));
+
+            // 検証
+            assertHosts(Arrays.asList("a1", "a2", "c1"), this.stub.received);
+        }
+        catch (IOException | InterruptedException ex)
+        {
+            throw new AssertionError(ex);
+        }
+    }
+
+    /**
+     * ローテート前のファイルの送信中に失敗した場合、同じファイルの送信済み位置から送信し直すことを確認する。
+     *
+     * @target {@link WinApacheLogProducer#processChange(Path, List)}
+     * @test 最新のファイルに切り替えず、ローテート前のファイルの残りを送信してから切り替えること。
+     *    condition:: 収集中のファイルに追記して次のファイルを作成し、送信先を2回失敗させる。
+     *    result:: 全ての行が重複・欠落なく順に送信されること。
+     */
+    @Test
+    public void testProcessChange_送信失敗()
+    {
+        try
+        {
+            // 準備
+            write("access_00001.log", "a1\n");
+            this.target.processChange(this.logDir, this.target.selectTargetFile(this.logDir));
+            append("access_00001.log", "a2\na3\n");
+            write("access_00002.log", "b1\n");
+            this.stub.failures = 2;
+
+            // 実施
+            this.target.processChange(this.logDir, this.target.selectTargetFile(this.logDir));
+
+            // 検証
+            assertEquals(0, this.stub.failures);
+            assertHosts(Arrays.asList("a1", "a2", "a3", "b1"), this.stub.received);
+        }
+        catch (IOException | InterruptedException ex)
+        {
+            throw new AssertionError(ex);
+        }
+    }
+
+    /**
+     * 送信されたメッセージが、指定したバーチャルホスト名の行を順に変換したものであることを検証する。
+     *
+     * @param expected バーチャルホスト名
+     * @param actual 送信されたメッセージ
+     */
+    private static void assertHosts(List<String> expected, List<String> actual)
+    {
+        assertEquals(actual.toString(), expected.size(), actual.size());
+        for (int index = 0; index < expected.size(); index++)
+        {
+            assertTrue(actual.get(index), actual.get(index).contains("\"" + expected.get(index)
+                    + "\""));
+        }
+    }
+
+    /**
+     * ファイルを指定した内容で作成する。既存の場合は内容を置き換える。
+     *
+     * @param name ファイル名
+     * @param text 内容
+     * @throws IOException 書き込み失敗時
+     */
+    private void write(String name, String text) throws IOException
+    {
+        Files.write(this.logDir.resolve(name), text.getBytes(CHARSET));
+    }
+
+    /**
+     * ファイルに追記する。
+     *
+     * @param name ファイル名
+     * @param text 追記する内容
+     * @throws IOException 書き込み失敗時
+     */
+    private void append(String name, String text) throws IOException
+    {
+        Files.write(this.logDir.resolve(name), text.getBytes(CHARSET), StandardOpenOption.APPEND);
+    }
+
+    /**
+     * 指定した回数だけ送信に失敗する、送信先の代替
+     */
+    private static class StubSink implements MessageSink
+    {
+        /** 残りの失敗させる回数 */
+        int                failures;
+
+        /** 受信したメッセージ */
+        final List<String> received = new ArrayList<>();
+
+        /**
+         * {@inheritDoc}
+         */
+        @Override
+        public void send(List<KeyedMessage<String, String>> messages)
+        {
+            if (this.failures > 0)
+            {
+                this.failures--;
+                throw new IllegalStateException("Destination is down.");
+            }
+
+            for (KeyedMessage<String, String> message : messages)
+            {
+                this.received.add(message.message());
+            }
+        }
+    }
+}
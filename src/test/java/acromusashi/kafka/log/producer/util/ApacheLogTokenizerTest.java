@@ -0,0 +1,138 @@
+/**
+* Copyright (c) Acroquest Technology Co, Ltd. All Rights Reserved.
+* Please read the associated COPYRIGHTS file for more details.
+*
+* THE SOFTWARE IS PROVIDED BY Acroquest Technolog Co., Ltd.,
+* WITHOUT WARRANTY OF ANY KIND, EXPRESS OR IMPLIED, INCLUDING
+* BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+* FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT.
+* IN NO EVENT SHALL THE AUTHORS OR COPYRIGHT HOLDER BE LIABLE FOR ANY
+* CLAIM, DAMAGES SUFFERED BY LICENSEE AS A RESULT OF USING, MODIFYING
+* OR DISTRIBUTING THIS SOFTWARE OR ITS DERIVATIVES.
+*/
+package acromusashi.kafka.log.producer.util;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+import java.nio.charset.Charset;
+
+import org.junit.Test;
+
+import acromusashi.kafka.log.producer.entity.ParsedLog;
+
+/**
+ * ApacheLogTokenizerクラスのテストコード
+ *
+ * @author kimura
+ */
+public class ApacheLogTokenizerTest
+{
+    /** combined形式のログフォーマット */
+    private static final String COMBINED_FORMAT = "%h %l %u %t \"%r\" %>s %b \"%{Referer}i\" \"%{User-Agent}i\"";
+
+    /**
+     * トークナイザと正規表現のパース結果が一致することを確認する。
+     *
+     * @target {@link CompiledLogFormat#parse(String)}
+     * @test パース結果が一致すること。
+     *    condition:: combined形式のログをトークナイザと正規表現でそれぞれパースする。
+     *    result:: パース結果が一致し、正規表現へのフォールバックが発生しないこと。
+     */
+    @Test
+    public void testParse_正規表現と同一結果()
+    {
+        // 準備
+        CompiledLogFormat tokenizer = CompiledLogFormat.compile(COMBINED_FORMAT,
+                LogParserType.TOKENIZER);
+        CompiledLogFormat regex = CompiledLogFormat.compile(COMBINED_FORMAT, LogParserType.REGEX);
+        String[] logs = {
+                "127.0.0.1 - - [30/Aug/2013:14:44:00 +0900] \"GET / HTTP/1.1\" 304 0 \"-\" \"Mozilla/5.0\"",
+                "10.0.0.12 - frank [10/Oct/2000:13:55:36 -0700] \"GET /apache_pb.gif HTTP/1.0\" 200 2326 \"http://www.example.com/start.html\" \"Mozilla/4.08 [en] (Win98; I ;Nav)\"",
+                "10.0.0.12 - - [10/Oct/2000:13:55:36 -0700] \"GET /a?q=\\\"x\\\" HTTP/1.0\" 200 - \"\" \"\""};
+
+        for (String log : logs)
+        {
+            // 実施
+            assertEquals(regex.parse(log).getParsedLog(), tokenizer.parse(log).getParsedLog());
+        }
+
+        // 検証
+        assertTrue(tokenizer.isTokenizerEnabled());
+        assertEquals(0L, tokenizer.getFallbackCount());
+    }
+
+    /**
+     * トークナイザで扱えない行は正規表現でパースされることを確認する。
+     *
+     * @target {@link CompiledLogFormat#parse(String)}
+     * @test 正規表現でパースされること。
+     *    condition:: ホスト名にIPアドレス以外を含むログをパースする。
+     *    result:: 正規表現と同一の結果となり、フォールバック件数が加算されること。
+     */
+    @Test
+    public void testParse_フォールバック()
+    {
+        // 準備
+        CompiledLogFormat tokenizer = CompiledLogFormat.compile(COMBINED_FORMAT,
+                LogParserType.TOKENIZER);
+        CompiledLogFormat regex = CompiledLogFormat.compile(COMBINED_FORMAT, LogParserType.REGEX);
+        String log = "::1 - - [30/Aug/2013:14:44:00 +0900] \"GET / HTTP/1.1\" 304 0 \"-\" \"curl\"";
+
+        // 実施
+        assertEquals(regex.parse(log).getParsedLog(), tokenizer.parse(log).getParsedLog());
+
+        // 検証
+        assertEquals(1L, tokenizer.getFallbackCount());
+    }
+
+    /**
+     * byte配列上のログを文字列と同一の結果でパースできることを確認する。
+     *
+     * @target {@link CompiledLogFormat#parse(byte[], int, int, Charset)}
+     * @test パース結果が一致すること。
+     *    condition:: マルチバイト文字を含むログをbyte配列の途中に配置してパースする。
+     *    result:: 文字列をパースした結果と一致すること。
+     */
+    @Test
+    public void testParse_byte配列()
+    {
+        // 準備
+        Charset charset = Charset.forName("UTF-8");
+        CompiledLogFormat tokenizer = CompiledLogFormat.compile(COMBINED_FORMAT,
+                LogParserType.TOKENIZER);
+        String log = "127.0.0.1 - - [30/Aug/2013:14:44:00 +0900] \"GET /検索?q=ログ HTTP/1.1\" 200 10 \"-\" \"ブラウザ\"";
+        byte[] logBytes = log.getBytes(charset);
+        byte[] buffer = new byte[logBytes.length + 4];
+        System.arraycopy(logBytes, 0, buffer, 2, logBytes.length);
+
+        // 実施
+        ParsedLog actual = tokenizer.parse(buffer, 2, logBytes.length, charset);
+
+        // 検証
+        assertEquals(tokenizer.parse(log).getParsedLog(), actual.getParsedLog());
+        assertEquals("GET /検索?q=ログ HTTP/1.1", actual.getParsedLog().get("%r"));
+        assertEquals(0L, tokenizer.getFallbackCount());
+    }
+
+    /**
+     * strftime形式の時刻を含むフォーマットはトークナイザを生成しないことを確認する。
+     *
+     * @target {@link ApacheLogTokenizer#create(java.util.List)}
+     * @test トークナイザが生成されないこと。
+     *    condition:: strftime形式の時刻を含むフォーマットを指定する。
+     *    result:: nullが返ること。
+     */
+    @Test
+    public void testCreate_未対応フォーマット()
+    {
+        // 実施
+        ApacheLogTokenizer actual = ApacheLogTokenizer.create(ApacheLogParseUtil.getEachApacheLogFormat("%h %{%d/%b/%Y}t"));
+
+        // 検証
+        assertNull(actual);
+        assertFalse(CompiledLogFormat.compile("%h %{%d/%b/%Y}t", LogParserType.TOKENIZER).isTokenizerEnabled());
+    }
+}
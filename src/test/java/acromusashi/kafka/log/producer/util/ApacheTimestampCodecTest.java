@@ -0,0 +1,111 @@
+/**
+* Copyright (c) Acroquest Technology Co, Ltd. All Rights Reserved.
+* Please read the associated COPYRIGHTS file for more details.
+*
+* THE SOFTWARE IS PROVIDED BY Acroquest Technolog Co., Ltd.,
+* WITHOUT WARRANTY OF ANY KIND, EXPRESS OR IMPLIED, INCLUDING
+* BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+* FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT.
+* IN NO EVENT SHALL THE AUTHORS OR COPYRIGHT HOLDER BE LIABLE FOR ANY
+* CLAIM, DAMAGES SUFFERED BY LICENSEE AS A RESULT OF USING, MODIFYING
+* OR DISTRIBUTING THIS SOFTWARE OR ITS DERIVATIVES.
+*/
+package acromusashi.kafka.log.producer.util;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import java.text.DateFormat;
+import java.text.SimpleDateFormat;
+import java.util.Date;
+import java.util.Locale;
+import java.util.Random;
+import java.util.TimeZone;
+
+import org.junit.Test;
+
+/**
+ * ApacheTimestampCodecクラスのテストコード
+ *
+ * @author kimura
+ */
+public class ApacheTimestampCodecTest
+{
+    /** ISO-8601形式の出力時刻フォーマット */
+    private static final String[] ISO_PATTERNS = {"yyyy-MM-dd'T'HH:mm:ss.SSSZ",
+            "yyyy-MM-dd'T'HH:mm:ssZ", "yyyy-MM-dd'T'HH:mm:ss.SSSXXX", "yyyy-MM-dd'T'HH:mm:ssXXX"};
+
+    /**
+     * 読み取りと書き出しの結果がSimpleDateFormatと一致することを確認する。
+     *
+     * @target {@link ApacheTimestampCodec#parseApacheTime(CharSequence, int, int)}
+     * @target {@link ApacheTimestampCodec#appendIso(StringBuilder, long, TimeZone, int)}
+     * @test SimpleDateFormatと同一の結果となること。
+     *    condition:: 1970年～2100年の時刻を、複数のオフセット、タイムゾーン、出力形式で変換する。
+     *    result:: SimpleDateFormatで読み取り、書き出した結果と一致すること。
+     */
+    @Test
+    public void testParseAndAppend_SimpleDateFormatと同一結果() throws Exception
+    {
+        // 準備
+        Random random = new Random(1234L);
+        String[] zones = {"UTC", "Asia/Tokyo", "America/New_York", "Asia/Kolkata"};
+        String[] offsets = {"+0000", "+0900", "-0700", "+0530"};
+
+        for (int count = 0; count < 2000; count++)
+        {
+            long millis = (long) (random.nextDouble() * 4102444800000L) / 1000 * 1000;
+            String offset = offsets[count % offsets.length];
+            DateFormat apacheFormat = new SimpleDateFormat(ApacheTimestampCodec.APACHE_PATTERN,
+                    Locale.ENGLISH);
+            apacheFormat.setTimeZone(TimeZone.getTimeZone("GMT" + offset));
+            String timeStr = apacheFormat.format(new Date(millis));
+
+            // 実施
+            long actual = ApacheTimestampCodec.parseApacheTime(timeStr, 0, timeStr.length());
+
+            // 検証
+            assertEquals(timeStr, apacheFormat.parse(timeStr).getTime(), actual);
+
+            TimeZone zone = TimeZone.getTimeZone(zones[count % zones.length]);
+            for (String pattern : ISO_PATTERNS)
+            {
+                DateFormat isoFormat = new SimpleDateFormat(pattern);
+                isoFormat.setTimeZone(zone);
+                StringBuilder builder = new StringBuilder();
+                assertTrue(ApacheTimestampCodec.appendIso(builder, actual + count % 1000, zone,
+                        ApacheTimestampCodec.getIsoLayout(pattern)));
+                assertEquals(isoFormat.format(new Date(actual + count % 1000)), builder.toString());
+            }
+        }
+    }
+
+    /**
+     * 形式に一致しない値は読み取り失敗となることを確認する。
+     *
+     * @target {@link ApacheTimestampCodec#parseApacheTime(CharSequence, int, int)}
+     * @test 読み取り失敗となること。
+     *    condition:: 月の略称、日付、区切り文字、オフセットが不正な値を指定する。
+     *    result:: INVALIDが返ること。
+     */
+    @Test
+    public void testParseApacheTime_不正な値()
+    {
+        // 準備
+        String[] values = {"30/aug/2013:14:44:00 +0900", "31/Sep/2013:14:44:00 +0900",
+                "29/Feb/2013:14:44:00 +0900", "30/Aug/2013 14:44:00 +0900",
+                "30/Aug/2013:14:44:00 0900", "30/Aug/2013:24:00:00 +0900", "30/Aug/2013:14:44:00",
+                "30/Aug/1500:14:44:00 +0900"};
+
+        for (String value : values)
+        {
+            // 実施・検証
+            assertEquals(value, ApacheTimestampCodec.INVALID,
+                    ApacheTimestampCodec.parseApacheTime(value, 0, value.length()));
+        }
+
+        // うるう年の2/29は読み取れること
+        String leapDay = "29/Feb/2012:00:00:00 +0000";
+        assertEquals(1330473600000L, ApacheTimestampCodec.parseApacheTime(leapDay, 0, leapDay.length()));
+    }
+}
@@ -0,0 +1,192 @@
+/**
+* Copyright (c) Acroquest Technology Co, Ltd. All Rights Reserved.
+* Please read the associated COPYRIGHTS file for more details.
+*
+* THE SOFTWARE IS PROVIDED BY Acroquest Technolog Co., Ltd.,
+* WITHOUT WARRANTY OF ANY KIND, EXPRESS OR IMPLIED, INCLUDING
+* BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+* FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT.
+* IN NO EVENT SHALL THE AUTHORS OR COPYRIGHT HOLDER BE LIABLE FOR ANY
+* CLAIM, DAMAGES SUFFERED BY LICENSEE AS A RESULT OF USING, MODIFYING
+* OR DISTRIBUTING THIS SOFTWARE OR ITS DERIVATIVES.
+*/
+package acromusashi.kafka.log.producer.util;
+
+import java.nio.charset.Charset;
+import java.text.ParseException;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.runner.Runner;
+import org.openjdk.jmh.runner.RunnerException;
+import org.openjdk.jmh.runner.options.Options;
+import org.openjdk.jmh.runner.options.OptionsBuilder;
+
+import acromusashi.kafka.log.producer.entity.ParsedLog;
+
+/**
+ * ログ1行ごとにフォーマットをコンパイルする従来方式、コンパイル済みフォーマットを再利用する方式、トークナイザ方式の
+ * スループット(lines/sec)を比較するベンチマーク<br>
+ * あわせて、byte配列上のログをJSONまで変換する際の、ParsedLogを経由する方式とLogRecordを再利用する方式を比較する。<br>
+ * <br>
+ * 実行方法：mvn test-compile 後、本クラスのmainメソッドを実行する。
+ * 1行あたりの生成量を確認する場合は、起動引数に「-prof gc」を指定してJMHのMainクラスから実行する。
+ *
+ * @author kimura
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class CompiledLogFormatBenchmark
+{
+    /** ベンチマークに使用するログフォーマット */
+    private static final String LOG_FORMAT = "%h %l %u %t \"%r\" %>s %b \"%{Referer}i\" \"%{User-Agent}i\" %D %T";
+
+    /** ベンチマークに使用するログ */
+    private static final String LOG        = "192.168.0.1 - - [30/Aug/2013:14:44:00 +0900] \"GET /index.html?id=1234 HTTP/1.1\" 200 5120 "
+                                                   + "\"http://example.com/top.html\" \"Mozilla/5.0 (Windows NT 6.1; WOW64) AppleWebKit/537.36\" 500 0";
+
+    /** コンパイル済みフォーマット */
+    private CompiledLogFormat   compiled;
+
+    /** トークナイザを用いるコンパイル済みフォーマット */
+    private CompiledLogFormat   tokenized;
+
+    /** byte配列上のログ */
+    private byte[]              logBytes;
+
+    /** 文字コード */
+    private Charset             charset;
+
+    /** トークナイザを用いるシリアライザ */
+    private JsonLogSerializer   serializer;
+
+    /** 再利用するレコード */
+    private LogRecord           record;
+
+    /**
+     * コンパイル済みフォーマットを生成する。
+     */
+    @Setup
+    public void setUp()
+    {
+        this.compiled = CompiledLogFormat.compile(LOG_FORMAT);
+        this.tokenized = CompiledLogFormat.compile(LOG_FORMAT, LogParserType.TOKENIZER);
+        this.charset = Charset.forName("UTF-8");
+        this.logBytes = LOG.getBytes(this.charset);
+        this.serializer = new JsonLogSerializer(this.tokenized, "host01",
+                "yyyy-MM-dd'T'HH:mm:ss.SSSZ");
+        this.record = this.tokenized.newRecord();
+    }
+
+    /**
+     * 1行ごとにフォーマットの解析と正規表現のコンパイルを行う従来方式。
+     *
+     * @return パース結果
+     */
+    @Benchmark
+    public ParsedLog perLineCompile()
+    {
+        List<String> eachApacheLogFormat = ApacheLogParseUtil.getEachApacheLogFormat(LOG_FORMAT);
+        ParsedLog parsedLog = new ParsedLog(new HashMap<String, String>(), "");
+        String regex = ApacheLogParseUtil.convertLogFormat2Regex(eachApacheLogFormat, parsedLog);
+        Matcher matcher = Pattern.compile(regex).matcher(LOG);
+
+        List<String> eachLog = new ArrayList<String>();
+        if (matcher.find())
+        {
+            for (int count = 1; count <= matcher.groupCount(); count++)
+            {
+                eachLog.add(matcher.group(count));
+            }
+        }
+
+        Map<String, String> returnMap = new HashMap<String, String>();
+        for (int index = 0; index < eachLog.size(); index++)
+        {
+            returnMap.put(eachApacheLogFormat.get(index), eachLog.get(index));
+        }
+        parsedLog.setParsedLog(returnMap);
+        return parsedLog;
+    }
+
+    /**
+     * コンパイル済みフォーマットを再利用する方式。
+     *
+     * @return パース結果
+     */
+    @Benchmark
+    public ParsedLog compiledFormat()
+    {
+        return this.compiled.parse(LOG);
+    }
+
+    /**
+     * トークナイザを用いる方式。
+     *
+     * @return パース結果
+     */
+    @Benchmark
+    public ParsedLog tokenizer()
+    {
+        return this.tokenized.parse(LOG);
+    }
+
+    /**
+     * byte配列上のログをParsedLogにパースしてからJSONに変換する方式。
+     *
+     * @return JSON文字列
+     * @throws ParseException 時刻の変換失敗時
+     */
+    @Benchmark
+    public String parsedLogToJson() throws ParseException
+    {
+        ParsedLog parsedLog = this.tokenized.parse(this.logBytes, 0, this.logBytes.length,
+                this.charset);
+        return this.serializer.serialize(parsedLog);
+    }
+
+    /**
+     * byte配列上のログを再利用するレコードにパースしてからJSONに変換する方式。
+     *
+     * @return JSON文字列
+     * @throws ParseException 時刻の変換失敗時
+     */
+    @Benchmark
+    public String recordToJson() throws ParseException
+    {
+        this.tokenized.parse(this.logBytes, 0, this.logBytes.length, this.charset, this.record);
+        return this.serializer.serialize(this.record);
+    }
+
+    /**
+     * ベンチマークを実行する。
+     *
+     * @param args 起動引数
+     * @throws RunnerException ベンチマーク実行失敗時
+     */
+    public static void main(String... args) throws RunnerException
+    {
+        Options options = new OptionsBuilder().include(
+                CompiledLogFormatBenchmark.class.getSimpleName()).build();
+        new Runner(options).run();
+    }
+}
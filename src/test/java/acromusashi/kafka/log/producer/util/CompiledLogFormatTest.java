@@ -0,0 +1,113 @@
+/**
+* Copyright (c) Acroquest Technology Co, Ltd. All Rights Reserved.
+* Please read the associated COPYRIGHTS file for more details.
+*
+* THE SOFTWARE IS PROVIDED BY Acroquest Technolog Co., Ltd.,
+* WITHOUT WARRANTY OF ANY KIND, EXPRESS OR IMPLIED, INCLUDING
+* BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+* FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT.
+* IN NO EVENT SHALL THE AUTHORS OR COPYRIGHT HOLDER BE LIABLE FOR ANY
+* CLAIM, DAMAGES SUFFERED BY LICENSEE AS A RESULT OF USING, MODIFYING
+* OR DISTRIBUTING THIS SOFTWARE OR ITS DERIVATIVES.
+*/
+package acromusashi.kafka.log.producer.util;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertSame;
+
+import java.util.Arrays;
+import java.util.Map;
+
+import org.junit.Test;
+
+import acromusashi.kafka.log.producer.entity.ParsedLog;
+
+/**
+ * CompiledLogFormatクラスのテストコード
+ *
+ * @author kimura
+ */
+public class CompiledLogFormatTest
+{
+    /**
+     * コンパイル済みフォーマットでApacheの固定フォーマットのログをパースできることを確認する。
+     *
+     * @target {@link CompiledLogFormat#parse(String)}
+     * @test パースが行われること。
+     *    condition:: 固定フォーマットをコンパイルし、ログをパースする。
+     *    result:: 各フォーマットに対応した値が取得できること。
+     */
+    @Test
+    public void testParse_固定ログをパース()
+    {
+        // 準備
+        CompiledLogFormat format = CompiledLogFormat.compile("%h %l %u %t \"%r\" %>s %b %D %T");
+
+        // 実施
+        ParsedLog actual = format.parse("127.0.0.1 - - [30/Aug/2013:14:44:00 +0900] \"GET / HTTP/1.1\" 304 0 500 0");
+
+        // 検証
+        Map<String, String> parsed = actual.getParsedLog();
+        assertEquals(9, parsed.size());
+        assertEquals("127.0.0.1", parsed.get("%h"));
+        assertEquals("30/Aug/2013:14:44:00 +0900", parsed.get("%t"));
+        assertEquals("GET / HTTP/1.1", parsed.get("%r"));
+        assertEquals("304", parsed.get("%>s"));
+        assertEquals("500", parsed.get("%D"));
+        assertEquals("", actual.getStrftimeFormat());
+    }
+
+    /**
+     * 同一のフォーマットに対しては同一のコンパイル済みフォーマットが返ることを確認する。
+     *
+     * @target {@link ApacheLogParseUtil#getCompiledLogFormat(String)}
+     * @test キャッシュが使用されること。
+     *    condition:: 同一のフォーマットで2回取得する。
+     *    result:: 同一インスタンスが返ること。
+     */
+    @Test
+    public void testGetCompiledLogFormat_キャッシュ()
+    {
+        // 実施
+        CompiledLogFormat first = ApacheLogParseUtil.getCompiledLogFormat("%h %l %u %t");
+        CompiledLogFormat second = ApacheLogParseUtil.getCompiledLogFormat("%h %l %u %t");
+
+        // 検証
+        assertSame(first, second);
+    }
+
+    /**
+     * 出力するフィールドを指定した場合、指定したフィールドのみが取り出されることを確認する。
+     *
+     * @target {@link CompiledLogFormat#parse(String)}
+     * @test 指定したフィールドのみが取り出されること。
+     *    condition:: 正規表現、トークナイザそれぞれで、時刻を含まないフィールドを指定してパースする。
+     *    result:: 指定したフィールドのみが取り出され、JSONにも時刻が出力されないこと。
+     */
+    @Test
+    public void testParse_出力フィールド指定() throws Exception
+    {
+        // 準備
+        String format = "%h %l %u %t \"%r\" %>s %b \"%{Referer}i\" \"%{User-Agent}i\"";
+        String log = "10.0.0.12 - - [10/Oct/2000:13:55:36 -0700] \"GET / HTTP/1.0\" 200 2326 \"-\" \"UA\"";
+
+        for (LogParserType parserType : LogParserType.values())
+        {
+            CompiledLogFormat compiled = CompiledLogFormat.compile(format, parserType,
+                    Arrays.asList("host", "status", "ua"));
+
+            // 実施
+            Map<String, String> actual = compiled.parse(log).getParsedLog();
+            String json = new JsonLogSerializer(compiled, "server", "yyyy").serialize(compiled.parse(log));
+
+            // 検証
+            assertEquals(3, actual.size());
+            assertEquals("10.0.0.12", actual.get("%h"));
+            assertEquals("200", actual.get("%>s"));
+            assertEquals("UA", actual.get("%{User-Agent}i"));
+            assertFalse(compiled.isTimeProjected());
+            assertEquals("{\"host\":\"10.0.0.12\",\"status\":\"200\",\"ua\":\"UA\",\"hostname\":\"server\"}", json);
+        }
+    }
+}
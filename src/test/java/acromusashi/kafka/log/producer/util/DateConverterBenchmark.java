@@ -0,0 +1,175 @@
+/**
+* Copyright (c) Acroquest Technology Co, Ltd. All Rights Reserved.
+* Please read the associated COPYRIGHTS file for more details.
+*
+* THE SOFTWARE IS PROVIDED BY Acroquest Technolog Co., Ltd.,
+* WITHOUT WARRANTY OF ANY KIND, EXPRESS OR IMPLIED, INCLUDING
+* BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+* FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT.
+* IN NO EVENT SHALL THE AUTHORS OR COPYRIGHT HOLDER BE LIABLE FOR ANY
+* CLAIM, DAMAGES SUFFERED BY LICENSEE AS A RESULT OF USING, MODIFYING
+* OR DISTRIBUTING THIS SOFTWARE OR ITS DERIVATIVES.
+*/
+package acromusashi.kafka.log.producer.util;
+
+import java.text.DateFormat;
+import java.text.ParseException;
+import java.text.SimpleDateFormat;
+import java.util.Date;
+import java.util.Locale;
+import java.util.TimeZone;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.runner.Runner;
+import org.openjdk.jmh.runner.RunnerException;
+import org.openjdk.jmh.runner.options.Options;
+import org.openjdk.jmh.runner.options.OptionsBuilder;
+
+/**
+ * Apacheの標準の時刻形式をISO-8601形式に変換する際の、SimpleDateFormatを用いる方式と
+ * ApacheTimestampCodecを用いる方式のスループット(変換数/sec)を比較するベンチマーク<br>
+ * キャッシュの効果を除くため、毎回異なる時刻を変換する。<br>
+ * <br>
+ * 実行方法：mvn test-compile 後、本クラスのmainメソッドを実行する。
+ *
+ * @author kimura
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class DateConverterBenchmark
+{
+    /** 変換する時刻の数 */
+    private static final int    TIME_COUNT     = 4096;
+
+    /** 出力時刻フォーマット */
+    private static final String OUTPUT_PATTERN = "yyyy-MM-dd'T'HH:mm:ss.SSSZ";
+
+    /** 変換する時刻 */
+    private String[]            times;
+
+    /** 入力用DateFormat */
+    private DateFormat          inputFormat;
+
+    /** 出力用DateFormat */
+    private DateFormat          outputFormat;
+
+    /** ISO-8601形式の書き出し形式 */
+    private int                 isoLayout;
+
+    /** 出力時のタイムゾーン */
+    private TimeZone            timeZone;
+
+    /** 書き出し先バッファ */
+    private StringBuilder       builder;
+
+    /** 変換する時刻の位置 */
+    private int                 position;
+
+    /**
+     * 変換する時刻を生成する。
+     */
+    @Setup
+    public void setUp()
+    {
+        this.inputFormat = new SimpleDateFormat(ApacheTimestampCodec.APACHE_PATTERN, Locale.ENGLISH);
+        this.outputFormat = new SimpleDateFormat(OUTPUT_PATTERN);
+        this.isoLayout = ApacheTimestampCodec.getIsoLayout(OUTPUT_PATTERN);
+        this.timeZone = TimeZone.getDefault();
+        this.builder = new StringBuilder(32);
+
+        this.times = new String[TIME_COUNT];
+        long baseMillis = 1377841440000L;
+        for (int index = 0; index < TIME_COUNT; index++)
+        {
+            this.times[index] = this.inputFormat.format(new Date(baseMillis + index * 1000L));
+        }
+    }
+
+    /**
+     * @return 次に変換する時刻
+     */
+    private String nextTime()
+    {
+        this.position = (this.position + 1) & (TIME_COUNT - 1);
+        return this.times[this.position];
+    }
+
+    /**
+     * SimpleDateFormatで読み取り、書き出す方式。
+     *
+     * @return 変換結果
+     * @throws ParseException 変換失敗時
+     */
+    @Benchmark
+    public String simpleDateFormat() throws ParseException
+    {
+        return this.outputFormat.format(this.inputFormat.parse(nextTime()));
+    }
+
+    /**
+     * ApacheTimestampCodecで読み取り、書き出す方式。
+     *
+     * @return 変換結果
+     */
+    @Benchmark
+    public String codec()
+    {
+        String time = nextTime();
+        this.builder.setLength(0);
+        ApacheTimestampCodec.appendIso(this.builder,
+                ApacheTimestampCodec.parseApacheTime(time, 0, time.length()), this.timeZone,
+                this.isoLayout);
+        return this.builder.toString();
+    }
+
+    /**
+     * SimpleDateFormatでエポックミリ秒に変換する方式。
+     *
+     * @return エポックミリ秒
+     * @throws ParseException 変換失敗時
+     */
+    @Benchmark
+    public long simpleDateFormatEpoch() throws ParseException
+    {
+        return this.inputFormat.parse(nextTime()).getTime();
+    }
+
+    /**
+     * ApacheTimestampCodecでエポックミリ秒に変換する方式。
+     *
+     * @return エポックミリ秒
+     */
+    @Benchmark
+    public long codecEpoch()
+    {
+        String time = nextTime();
+        return ApacheTimestampCodec.parseApacheTime(time, 0, time.length());
+    }
+
+    /**
+     * ベンチマークを実行する。
+     *
+     * @param args 起動引数
+     * @throws RunnerException ベンチマーク実行失敗時
+     */
+    public static void main(String... args) throws RunnerException
+    {
+        Options options = new OptionsBuilder().include(
+                DateConverterBenchmark.class.getSimpleName()).build();
+        new Runner(options).run();
+    }
+}
@@ -0,0 +1,135 @@
+/**
+* Copyright (c) Acroquest Technology Co, Ltd. All Rights Reserved.
+* Please read the associated COPYRIGHTS file for more details.
+*
+* THE SOFTWARE IS PROVIDED BY Acroquest Technolog Co., Ltd.,
+* WITHOUT WARRANTY OF ANY KIND, EXPRESS OR IMPLIED, INCLUDING
+* BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+* FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT.
+* IN NO EVENT SHALL THE AUTHORS OR COPYRIGHT HOLDER BE LIABLE FOR ANY
+* CLAIM, DAMAGES SUFFERED BY LICENSEE AS A RESULT OF USING, MODIFYING
+* OR DISTRIBUTING THIS SOFTWARE OR ITS DERIVATIVES.
+*/
+package acromusashi.kafka.log.producer.util;
+
+import java.util.Map;
+import java.util.Map.Entry;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.runner.Runner;
+import org.openjdk.jmh.runner.RunnerException;
+import org.openjdk.jmh.runner.options.Options;
+import org.openjdk.jmh.runner.options.OptionsBuilder;
+
+import acromusashi.kafka.log.producer.entity.ParsedLog;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.google.common.collect.Maps;
+
+/**
+ * 1行ごとにMapとObjectMapperを生成してJacksonで変換する従来方式と、
+ * JsonLogSerializerで直接書き出す方式のスループット(lines/sec)を比較するベンチマーク<br>
+ * パース処理の影響を除くため、パース済みのログを変換対象とする。<br>
+ * <br>
+ * 実行方法：mvn test-compile 後、本クラスのmainメソッドを実行する。
+ *
+ * @author kimura
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class JsonLogSerializerBenchmark
+{
+    /** ベンチマークに使用するログフォーマット */
+    private static final String LOG_FORMAT  = "%h %l %u %t \"%r\" %>s %b \"%{Referer}i\" \"%{User-Agent}i\" %D %T";
+
+    /** ベンチマークに使用するログ */
+    private static final String LOG         = "192.168.0.1 - - [30/Aug/2013:14:44:00 +0900] \"GET /index.html?id=1234 HTTP/1.1\" 200 5120 "
+                                                    + "\"http://example.com/top.html\" \"Mozilla/5.0 (Windows NT 6.1; WOW64) AppleWebKit/537.36\" 500 0";
+
+    /** 日付フォーマット */
+    private static final String DATE_FORMAT = "yyyy-MM-dd'T'HH:mm:ss.SSSZ";
+
+    /** パース済みのログ */
+    private ParsedLog           parsedLog;
+
+    /** シリアライザ */
+    private JsonLogSerializer   serializer;
+
+    /**
+     * パース済みのログとシリアライザを生成する。
+     */
+    @Setup
+    public void setUp()
+    {
+        CompiledLogFormat format = CompiledLogFormat.compile(LOG_FORMAT);
+        this.parsedLog = format.parse(LOG);
+        this.serializer = new JsonLogSerializer(format, "host01", DATE_FORMAT);
+    }
+
+    /**
+     * 1行ごとにMapとObjectMapperを生成してJacksonで変換する従来方式。
+     *
+     * @return JSON文字列
+     * @throws Exception 変換失敗時
+     */
+    @Benchmark
+    public String jackson() throws Exception
+    {
+        Map<String, String> jsonMapLog = Maps.newHashMap();
+        for (Entry<String, String> apacheLogEntry : this.parsedLog.getParsedLog().entrySet())
+        {
+            String jsonKey = ApacheLtsvMapper.convertApacheFormatToLtsvKey(apacheLogEntry.getKey());
+            if (jsonKey.equals("time"))
+            {
+                jsonMapLog.put("time", StrftimeFormatMapper.convertStftToDateStr(
+                        apacheLogEntry.getValue(), this.parsedLog.getStrftimeFormat(), DATE_FORMAT));
+            }
+            else
+            {
+                jsonMapLog.put(jsonKey, apacheLogEntry.getValue());
+            }
+        }
+        jsonMapLog.put("hostname", "host01");
+
+        return new ObjectMapper().writeValueAsString(jsonMapLog);
+    }
+
+    /**
+     * JsonLogSerializerで直接書き出す方式。
+     *
+     * @return JSON文字列
+     * @throws Exception 変換失敗時
+     */
+    @Benchmark
+    public String serializer() throws Exception
+    {
+        return this.serializer.serialize(this.parsedLog);
+    }
+
+    /**
+     * ベンチマークを実行する。
+     *
+     * @param args 起動引数
+     * @throws RunnerException ベンチマーク実行失敗時
+     */
+    public static void main(String... args) throws RunnerException
+    {
+        Options options = new OptionsBuilder().include(
+                JsonLogSerializerBenchmark.class.getSimpleName()).build();
+        new Runner(options).run();
+    }
+}
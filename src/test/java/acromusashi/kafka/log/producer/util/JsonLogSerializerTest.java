@@ -0,0 +1,182 @@
+/**
+* Copyright (c) Acroquest Technology Co, Ltd. All Rights Reserved.
+* Please read the associated COPYRIGHTS file for more details.
+*
+* THE SOFTWARE IS PROVIDED BY Acroquest Technolog Co., Ltd.,
+* WITHOUT WARRANTY OF ANY KIND, EXPRESS OR IMPLIED, INCLUDING
+* BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+* FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT.
+* IN NO EVENT SHALL THE AUTHORS OR COPYRIGHT HOLDER BE LIABLE FOR ANY
+* CLAIM, DAMAGES SUFFERED BY LICENSEE AS A RESULT OF USING, MODIFYING
+* OR DISTRIBUTING THIS SOFTWARE OR ITS DERIVATIVES.
+*/
+package acromusashi.kafka.log.producer.util;
+
+import static org.junit.Assert.assertEquals;
+
+import java.nio.charset.Charset;
+import java.util.HashMap;
+import java.util.Map;
+
+import org.junit.Test;
+
+import acromusashi.kafka.log.producer.entity.ParsedLog;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+
+/**
+ * JsonLogSerializerクラスのテストコード
+ *
+ * @author kimura
+ */
+public class JsonLogSerializerTest
+{
+    /** combined形式のログフォーマット */
+    private static final String COMBINED_FORMAT = "%h %l %u %t \"%r\" %>s %b \"%{Referer}i\" \"%{User-Agent}i\"";
+
+    /** 日付フォーマット */
+    private static final String DATE_FORMAT     = "yyyy-MM-dd'T'HH:mm:ss.SSSZ";
+
+    /**
+     * Jacksonを用いた従来の変換と同一内容のJSONが生成されることを確認する。
+     *
+     * @target {@link JsonLogSerializer#serialize(ParsedLog)}
+     * @test 同一内容のJSONが生成されること。
+     *    condition:: エスケープが必要な文字を含むログを従来の変換とシリアライザでそれぞれ変換する。
+     *    result:: JSONとして読み込んだ結果が一致すること。
+     */
+    @Test
+    @SuppressWarnings("unchecked")
+    public void testSerialize_従来の変換と同一内容() throws Exception
+    {
+        // 準備
+        CompiledLogFormat format = CompiledLogFormat.compile(COMBINED_FORMAT);
+        JsonLogSerializer serializer = new JsonLogSerializer(format, "host\"01", DATE_FORMAT);
+        String log = "10.0.0.12 - - [10/Oct/2000:13:55:36 -0700] \"GET /a?q=\\\"x\\\" HTTP/1.0\" 200 - \"\" \"UA\\\\1\u0001ログ\"";
+        ObjectMapper mapper = new ObjectMapper();
+
+        // 実施
+        String expected = KeyedMessageConverter.convertToMessage(log, "topic", "host\"01",
+                format, DATE_FORMAT).message();
+        String actual = serializer.serialize(format.parse(log));
+
+        // 検証
+        assertEquals(mapper.readValue(expected, Map.class), mapper.readValue(actual, Map.class));
+    }
+
+    /**
+     * 値のエスケープがJacksonと同一の規則で行われることを確認する。
+     *
+     * @target {@link JsonLogSerializer#serialize(ParsedLog)}
+     * @test Jacksonと同一の文字列が生成されること。
+     *    condition:: 制御文字、ダブルクォート、バックスラッシュ、マルチバイト文字を含む値を変換する。
+     *    result:: Jacksonで変換した文字列と一致すること。
+     */
+    @Test
+    public void testSerialize_エスケープ() throws Exception
+    {
+        // 準備
+        CompiledLogFormat format = CompiledLogFormat.compile("%u");
+        JsonLogSerializer serializer = new JsonLogSerializer(format, "host", DATE_FORMAT);
+        Map<String, String> parsed = new HashMap<String, String>();
+        parsed.put("%u", "a\"b\\c\b\t\n\f\r\u0000\u001f/ログ");
+        Map<String, String> expectedMap = new HashMap<String, String>();
+        expectedMap.put("user", parsed.get("%u"));
+        String expectedValue = new ObjectMapper().writeValueAsString(expectedMap);
+
+        // 実施
+        String actual = serializer.serialize(new ParsedLog(parsed, ""));
+
+        // 検証
+        assertEquals(expectedValue.substring(0, expectedValue.length() - 1)
+                + ",\"hostname\":\"host\"}", actual);
+    }
+
+    /**
+     * パースに失敗した行はhostnameのみのJSONとなることを確認する。
+     *
+     * @target {@link JsonLogSerializer#serialize(ParsedLog)}
+     * @test hostnameのみのJSONが生成されること。
+     *    condition:: フォーマットに一致しないログを変換する。
+     *    result:: hostnameのみのJSONが生成されること。
+     */
+    @Test
+    public void testSerialize_パース失敗() throws Exception
+    {
+        // 準備
+        CompiledLogFormat format = CompiledLogFormat.compile(COMBINED_FORMAT);
+        JsonLogSerializer serializer = new JsonLogSerializer(format, "host", DATE_FORMAT);
+
+        // 実施
+        String actual = serializer.serialize(format.parse("invalid log"));
+
+        // 検証
+        assertEquals("{\"hostname\":\"host\"}", actual);
+    }
+
+    /**
+     * 数値のフィールドと時刻を数値として出力できることを確認する。
+     *
+     * @target {@link JsonLogSerializer#serialize(ParsedLog)}
+     * @test 数値として出力されること。
+     *    condition:: 型付き出力とエポックミリ秒出力を指定し、sizeが「-」のログを変換する。
+     *    result:: statusとtimeが数値、sizeがnullとして出力されること。
+     */
+    @Test
+    @SuppressWarnings("unchecked")
+    public void testSerialize_型付き出力() throws Exception
+    {
+        // 準備
+        CompiledLogFormat format = CompiledLogFormat.compile(COMBINED_FORMAT);
+        JsonLogSerializer serializer = new JsonLogSerializer(format, "host", DATE_FORMAT, true,
+                true);
+        String log = "10.0.0.12 - - [10/Oct/2000:13:55:36 -0700] \"GET / HTTP/1.0\" 200 - \"-\" \"UA\"";
+
+        // 実施
+        String actual = serializer.serialize(format.parse(log));
+
+        // 検証
+        Map<String, Object> actualMap = new ObjectMapper().readValue(actual, HashMap.class);
+        assertEquals(200, actualMap.get("status"));
+        assertEquals(true, actualMap.containsKey("size"));
+        assertEquals(null, actualMap.get("size"));
+        assertEquals(971211336000L, actualMap.get("time"));
+        assertEquals("10.0.0.12", actualMap.get("host"));
+    }
+
+    /**
+     * レコードを再利用して変換した結果が、ParsedLogを経由した変換と一致することを確認する。
+     *
+     * @target {@link JsonLogSerializer#serialize(LogRecord)}
+     * @test 同一のJSONが生成されること。
+     *    condition:: マルチバイト文字を含むログ、トークナイザで扱えないログを、同一のレコードを再利用して変換する。
+     *    result:: ParsedLogを経由した変換と同一のJSONが生成されること。
+     */
+    @Test
+    public void testSerialize_レコード再利用() throws Exception
+    {
+        // 準備
+        Charset charset = Charset.forName("UTF-8");
+        CompiledLogFormat format = CompiledLogFormat.compile(COMBINED_FORMAT,
+                LogParserType.TOKENIZER);
+        JsonLogSerializer serializer = new JsonLogSerializer(format, "host01", DATE_FORMAT, true,
+                false);
+        LogRecord record = format.newRecord();
+        String[] logs = {
+                "127.0.0.1 - - [30/Aug/2013:14:44:00 +0900] \"GET /検索?q=ログ HTTP/1.1\" 200 10 \"-\" \"ブラウザ\\\"1\"",
+                "::1 - - [30/Aug/2013:14:44:00 +0900] \"GET / HTTP/1.1\" 304 - \"-\" \"curl\"",
+                "127.0.0.1 - - [30/Aug/2013:14:44:01 +0900] \"GET / HTTP/1.1\" 200 0 \"-\" \"UA\""};
+
+        for (String log : logs)
+        {
+            byte[] logBytes = log.getBytes(charset);
+
+            // 実施
+            format.parse(logBytes, 0, logBytes.length, charset, record);
+            String actual = serializer.serialize(record);
+
+            // 検証
+            assertEquals(serializer.serialize(format.parse(log)), actual);
+        }
+    }
+}
@@ -0,0 +1,128 @@
+/**
+* Copyright (c) Acroquest Technology Co, Ltd. All Rights Reserved.
+* Please read the associated COPYRIGHTS file for more details.
+*
+* THE SOFTWARE IS PROVIDED BY Acroquest Technolog Co., Ltd.,
+* WITHOUT WARRANTY OF ANY KIND, EXPRESS OR IMPLIED, INCLUDING
+* BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+* FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT.
+* IN NO EVENT SHALL THE AUTHORS OR COPYRIGHT HOLDER BE LIABLE FOR ANY
+* CLAIM, DAMAGES SUFFERED BY LICENSEE AS A RESULT OF USING, MODIFYING
+* OR DISTRIBUTING THIS SOFTWARE OR ITS DERIVATIVES.
+*/
+package acromusashi.kafka.log.producer.util;
+
+import static org.junit.Assert.assertEquals;
+
+import java.nio.charset.Charset;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+
+import org.junit.Test;
+
+/**
+ * LogFormatSelectorクラスのテストコード
+ *
+ * @author kimura
+ */
+public class LogFormatSelectorTest
+{
+    /** common形式のログフォーマット */
+    private static final String COMMON_FORMAT   = "%h %l %u %t \"%r\" %>s %b";
+
+    /** combined形式のログフォーマット */
+    private static final String COMBINED_FORMAT = "%h %l %u %t \"%r\" %>s %b \"%{Referer}i\" \"%{User-Agent}i\"";
+
+    /** vhost_common形式のログフォーマット */
+    private static final String VHOST_FORMAT    = "%v %h %l %u %t \"%r\" %>s %b";
+
+    /**
+     * 混在する形式のログが、それぞれ一致するフォーマットでパースされることを確認する。
+     *
+     * @target {@link LogFormatSelector#parse(byte[], int, int, Charset, LogRecord[])}
+     * @test 一致するフォーマットが選択されること。
+     *    condition:: common、combined、vhost_common形式のログを、正規表現とトークナイザそれぞれで交互にパースする。
+     *    result:: 各ログに一致するフォーマットが選択され、一致しない行はないこと。
+     */
+    @Test
+    public void testParse_形式混在()
+    {
+        // 準備
+        Charset charset = Charset.forName("UTF-8");
+        String common = "127.0.0.1 - - [30/Aug/2013:14:44:00 +0900] \"GET / HTTP/1.1\" 200 10";
+        String combined = "127.0.0.1 - - [30/Aug/2013:14:44:00 +0900] \"GET / HTTP/1.1\" 200 10 \"-\" \"Mozilla/5.0 (X11)\"";
+        String vhost = "www.example.com 127.0.0.1 - - [30/Aug/2013:14:44:00 +0900] \"GET / HTTP/1.1\" 200 10";
+        String[] logs = {combined, common, vhost, vhost, common, combined};
+        int[] expected = {1, 0, 2, 2, 0, 1};
+
+        for (LogParserType parserType : LogParserType.values())
+        {
+            List<CompiledLogFormat> formats = ApacheLogParseUtil.getCompiledLogFormats(
+                    Arrays.asList(COMMON_FORMAT, COMBINED_FORMAT, VHOST_FORMAT), parserType,
+                    Collections.<String> emptyList());
+            LogFormatSelector selector = new LogFormatSelector(formats);
+            LogRecord[] records = selector.newRecords();
+
+            for (int index = 0; index < logs.length; index++)
+            {
+                byte[] logBytes = logs[index].getBytes(charset);
+
+                // 実施
+                int actual = selector.parse(logBytes, 0, logBytes.length, charset, records);
+
+                // 検証
+                assertEquals(expected[index], actual);
+                assertEquals("127.0.0.1", records[actual].getValue(actual == 2 ? 1 : 0));
+            }
+            assertEquals("www.example.com", records[2].getValue(0));
+            assertEquals(0L, selector.getUnmatchedCount());
+        }
+    }
+
+    /**
+     * どのフォーマットにも一致しない行は、先頭のフォーマットでパースされることを確認する。
+     *
+     * @target {@link LogFormatSelector#parse(CharSequence, LogRecord[])}
+     * @test 先頭のフォーマットが選択されること。
+     *    condition:: いずれのフォーマットとも形の異なるログをパースする。
+     *    result:: 先頭のフォーマットが選択され、一致しなかった行数が加算されること。
+     */
+    @Test
+    public void testParse_一致なし()
+    {
+        // 準備
+        LogFormatSelector selector = new LogFormatSelector(Arrays.asList(
+                CompiledLogFormat.compile(COMMON_FORMAT), CompiledLogFormat.compile(COMBINED_FORMAT)));
+        LogRecord[] records = selector.newRecords();
+
+        // 実施
+        int actual = selector.parse("not an access log", records);
+
+        // 検証
+        assertEquals(0, actual);
+        assertEquals(1L, selector.getUnmatchedCount());
+    }
+
+    /**
+     * 行の形が、フィールド数とダブルクォートで囲まれたフィールドの位置を表すことを確認する。
+     *
+     * @target {@link LogFormatSelector#getLineShape(CharSequence)}
+     * @test 行の形が求められること。
+     *    condition:: ダブルクォート内と角括弧内に空白、エスケープされたダブルクォートを含むログを指定する。
+     *    result:: 同じフィールド構成のフォーマットと同じ値になること。
+     */
+    @Test
+    public void testGetLineShape_クォートと角括弧()
+    {
+        // 準備
+        String log = "127.0.0.1 - - [30/Aug/2013:14:44:00 +0900] \"GET /a?q=\\\" b HTTP/1.1\" 200 10 \"\" \"UA x\"";
+
+        // 実施
+        long actual = LogFormatSelector.getLineShape(log);
+
+        // 検証
+        long expected = (9L << 56) | (1L << 4) | (1L << 7) | (1L << 8);
+        assertEquals(expected, actual);
+    }
+}
@@ -0,0 +1,109 @@
+/**
+* Copyright (c) Acroquest Technology Co, Ltd. All Rights Reserved.
+* Please read the associated COPYRIGHTS file for more details.
+*
+* THE SOFTWARE IS PROVIDED BY Acroquest Technolog Co., Ltd.,
+* WITHOUT WARRANTY OF ANY KIND, EXPRESS OR IMPLIED, INCLUDING
+* BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+* FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT.
+* IN NO EVENT SHALL THE AUTHORS OR COPYRIGHT HOLDER BE LIABLE FOR ANY
+* CLAIM, DAMAGES SUFFERED BY LICENSEE AS A RESULT OF USING, MODIFYING
+* OR DISTRIBUTING THIS SOFTWARE OR ITS DERIVATIVES.
+*/
+package acromusashi.kafka.log.producer.util;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+import org.junit.Test;
+
+/**
+ * SpscRingBufferクラスのテストコード
+ *
+ * @author kimura
+ */
+public class SpscRingBufferTest
+{
+    /**
+     * 容量まで追加でき、追加した順に取り出せることを確認する。
+     *
+     * @target {@link SpscRingBuffer#offer(Object)}
+     * @test 容量を超える追加は失敗し、取り出した分だけ再度追加できること。
+     *    condition:: 容量3(4に切り上げ)のバッファに、追加と取り出しを繰り返して位置を一周させる。
+     *    result:: 追加した順に取り出され、満杯時の追加と空の時の取り出しが失敗すること。
+     */
+    @Test
+    public void testOffer_満杯()
+    {
+        // 準備
+        SpscRingBuffer<Integer> target = new SpscRingBuffer<>(3);
+
+        // 実施・検証
+        assertEquals(4, target.getCapacity());
+        for (int round = 0; round < 3; round++)
+        {
+            for (int index = 0; index < 4; index++)
+            {
+                assertTrue(target.offer(round * 10 + index));
+            }
+            assertFalse(target.offer(-1));
+            assertEquals(4, target.size());
+
+            for (int index = 0; index < 4; index++)
+            {
+                assertEquals(Integer.valueOf(round * 10 + index), target.poll());
+            }
+            assertNull(target.poll());
+            assertEquals(0, target.size());
+        }
+    }
+
+    /**
+     * 追加と取り出しを別のスレッドで並行して行っても、欠落・重複なく順序が保たれることを確認する。
+     *
+     * @target {@link SpscRingBuffer#poll()}
+     * @test 追加した全ての要素が追加した順に取り出されること。
+     *    condition:: 容量8のバッファに、追加側のスレッドから100000件追加し、取り出し側のスレッドで取り出す。
+     *    result:: 0から99999までが順に取り出されること。
+     */
+    @Test
+    public void testPoll_並行()
+    {
+        // 準備
+        final SpscRingBuffer<Integer> target = new SpscRingBuffer<>(8);
+        final int count = 100000;
+        Thread producer = new Thread() {
+            @Override
+            public void run()
+            {
+                for (int index = 0; index < count; index++)
+                {
+                    while (target.offer(index) == false)
+                    {
+                        Thread.yield();
+                    }
+                }
+            }
+        };
+
+        // 実施
+        producer.start();
+        int expected = 0;
+        while (expected < count)
+        {
+            Integer actual = target.poll();
+            if (actual == null)
+            {
+                Thread.yield();
+                continue;
+            }
+
+            // 検証
+            assertEquals(expected, actual.intValue());
+            expected++;
+        }
+        assertNull(target.poll());
+    }
+}
@@ -13,8 +13,11 @@
 package acromusashi.kafka.log.producer.util;
 
 import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertSame;
 
 import java.text.ParseException;
+import java.text.SimpleDateFormat;
+import java.util.Locale;
 
 import org.junit.Test;
 
@@ -52,4 +55,31 @@ public class StrftimeFormatMapperTest
         assertEquals(expected, actual);
     }
 
+    /**
+     * 同一の時刻を繰り返し変換した場合に、キャッシュした変換結果が返ることを確認する。
+     * 
+     * @target {@link StrftimeFormatMapper#getDateConverter(String, String)}
+     * @test 同一の時刻変換オブジェクト、変換結果が返ること。
+     *    condition:: 同一のフォーマットの組で時刻変換オブジェクトを2回取得し、同一時刻を2回変換する。
+     *    result:: 同一の時刻変換オブジェクト、同一の変換結果インスタンスが返ること。変換結果はデフォルトのタイムゾーンで出力されること。
+     */
+    @Test
+    public void testGetDateConverter_キャッシュ() throws ParseException
+    {
+        // 準備
+        String outputFormat = "yyyy-MM-dd'T'HH:mm:ssZ";
+        CachedDateConverter converter = StrftimeFormatMapper.getDateConverter("", outputFormat);
+        // 実行環境のタイムゾーンに依存しないよう、期待値もデフォルトのタイムゾーンで生成する
+        String expected = new SimpleDateFormat(outputFormat).format(new SimpleDateFormat(
+                "dd/MMM/yyyy:HH:mm:ss Z", Locale.ENGLISH).parse("08/Jan/2014:15:32:30 +0900"));
+
+        // 実施
+        String first = converter.convert("08/Jan/2014:15:32:30 +0900");
+        String second = converter.convert("08/Jan/2014:15:32:30 +0900");
+
+        // 検証
+        assertSame(converter, StrftimeFormatMapper.getDateConverter("", outputFormat));
+        assertSame(first, second);
+        assertEquals(expected, first);
+    }
 }